@@ -6,6 +6,7 @@ import dk.ilios.spanner.AfterExperiment;
 import dk.ilios.spanner.BeforeExperiment;
 import dk.ilios.spanner.Benchmark;
 import dk.ilios.spanner.BenchmarkConfiguration;
+import dk.ilios.spanner.Blackhole;
 import dk.ilios.spanner.Param;
 import dk.ilios.spanner.SpannerConfig;
 
@@ -45,29 +46,23 @@ public class ActivityBenchmarks {
     }
 
     @Benchmark
-    public boolean instanceOf(int reps) {
-        boolean result = false;
+    public void instanceOf(int reps, Blackhole blackhole) {
         for (int i = 0; i < reps; i++) {
-             result = (testClass instanceof Object);
+            blackhole.consume(testClass instanceof Object);
         }
-        return result;
     }
 
     @Benchmark
-    public boolean directComparison(int reps) {
-        boolean result = false;
+    public void directComparison(int reps, Blackhole blackhole) {
         for (int i = 0; i < reps; i++) {
-            result = testClass == Object.class;
+            blackhole.consume(testClass == Object.class);
         }
-        return result;
     }
 
     @Benchmark
-    public boolean equalsTo(int reps) {
-        boolean result = false;
+    public void equalsTo(int reps, Blackhole blackhole) {
         for (int i = 0; i < reps; i++) {
-            result = testClass.equals(Object.class);
+            blackhole.consume(testClass.equals(Object.class));
         }
-        return result;
     }
 }
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.example;
+
+import dk.ilios.spanner.Benchmark;
+import dk.ilios.spanner.Blackhole;
+
+/**
+ * Shows why results should be passed to a {@link Blackhole}. Both benchmarks do the same work, but the result of
+ * {@link #unusedResult(int, Blackhole)} is never used, so an optimizing compiler can remove the work and the benchmark
+ * reports a runtime close to 0.
+ */
+public class BlackholeBenchmarks {
+
+    @Benchmark
+    public void unusedResult(int reps, Blackhole blackhole) {
+        for (int i = 0; i < reps; i++) {
+            work(i);
+        }
+    }
+
+    @Benchmark
+    public void consumedResult(int reps, Blackhole blackhole) {
+        for (int i = 0; i < reps; i++) {
+            blackhole.consume(work(i));
+        }
+    }
+
+    /**
+     * A chain of dependent multiplications, which takes a lot longer than the loop around it unless it is removed.
+     */
+    private static long work(long value) {
+        long result = value;
+        for (int i = 0; i < 16; i++) {
+            result = result * 31 + value;
+        }
+        return result;
+    }
+}
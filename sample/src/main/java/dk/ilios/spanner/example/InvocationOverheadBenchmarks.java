@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.example;
+
+import java.lang.reflect.Method;
+
+import dk.ilios.spanner.BeforeExperiment;
+import dk.ilios.spanner.Benchmark;
+import dk.ilios.spanner.benchmark.BenchmarkInvoker;
+
+/**
+ * Compares the overhead of calling an empty benchmark method the way the workers used to do it
+ * ({@code Method.invoke(benchmark, reps)}) against the pre-resolved {@link BenchmarkInvoker} used now.
+ *
+ * Each rep is one call of the empty benchmark method, so the result is the harness overhead pr. measurement.
+ */
+public class InvocationOverheadBenchmarks {
+
+    private EmptyBenchmark target;
+    private Method emptyMethod;
+    private BenchmarkInvoker invoker;
+
+    @BeforeExperiment
+    public void before() throws NoSuchMethodException {
+        target = new EmptyBenchmark();
+        emptyMethod = EmptyBenchmark.class.getMethod("empty", int.class);
+        invoker = BenchmarkInvoker.create(target, emptyMethod);
+    }
+
+    @Benchmark
+    public void reflectiveInvoke(int reps) throws Exception {
+        for (int i = 0; i < reps; i++) {
+            emptyMethod.invoke(target, i);
+        }
+    }
+
+    @Benchmark
+    public void preparedInvoke(int reps) throws Exception {
+        for (int i = 0; i < reps; i++) {
+            invoker.prepare(i);
+            invoker.invoke();
+        }
+    }
+
+    @Benchmark
+    public void reusedInvoke(int reps) throws Exception {
+        invoker.prepare(1);
+        for (int i = 0; i < reps; i++) {
+            invoker.invoke();
+        }
+    }
+
+    public static class EmptyBenchmark {
+        public void empty(int reps) {
+        }
+    }
+}
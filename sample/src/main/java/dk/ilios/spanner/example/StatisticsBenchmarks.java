@@ -0,0 +1,100 @@
+package dk.ilios.spanner.example;
+
+import org.apache.commons.math.stat.descriptive.DescriptiveStatistics;
+import org.apache.commons.math.stat.descriptive.rank.Percentile;
+
+import java.util.Random;
+
+import dk.ilios.spanner.BeforeExperiment;
+import dk.ilios.spanner.Benchmark;
+import dk.ilios.spanner.Param;
+import dk.ilios.spanner.stats.QuantileEstimator;
+import dk.ilios.spanner.stats.StreamingSummary;
+
+/**
+ * Compares the commons-math statistics previously used for trial results against {@link StreamingSummary} and
+ * {@link QuantileEstimator}.
+ *
+ * The {@code summarize} benchmarks calculate min, max, mean, median and quartiles once over all samples, like a trial
+ * does when it completes. The {@code incremental} benchmarks ask for the median after every sample, like the runtime
+ * instrument does when it checks whether the target precision has been reached.
+ */
+public class StatisticsBenchmarks {
+
+    @Param({"100", "1000"})
+    public int samples;
+
+    private double[] values;
+
+    @BeforeExperiment
+    public void before() {
+        Random random = new Random(42);
+        values = new double[samples];
+        for (int i = 0; i < samples; i++) {
+            values[i] = random.nextGaussian() * 100 + 1000;
+        }
+    }
+
+    @Benchmark
+    public double summarizeCommonsMath(int reps) {
+        double result = 0;
+        for (int i = 0; i < reps; i++) {
+            Percentile percentile = new Percentile();
+            percentile.setData(values);
+            DescriptiveStatistics statistics = new DescriptiveStatistics(values);
+            result += statistics.getMin() + statistics.getMax() + statistics.getMean()
+                    + percentile.evaluate(25) + percentile.evaluate(50) + percentile.evaluate(75);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public double summarizeStreaming(int reps) {
+        double result = 0;
+        for (int i = 0; i < reps; i++) {
+            StreamingSummary summary = StreamingSummary.of(values);
+            result += summary.min() + summary.max() + summary.mean()
+                    + summary.percentile(25) + summary.percentile(50) + summary.percentile(75);
+        }
+        return result;
+    }
+
+    @Benchmark
+    public double incrementalCommonsMath(int reps) {
+        double result = 0;
+        for (int i = 0; i < reps; i++) {
+            DescriptiveStatistics statistics = new DescriptiveStatistics();
+            for (double value : values) {
+                statistics.addValue(value);
+                result += statistics.getPercentile(50);
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    public double incrementalStreaming(int reps) {
+        double result = 0;
+        for (int i = 0; i < reps; i++) {
+            StreamingSummary summary = new StreamingSummary();
+            for (double value : values) {
+                summary.add(value);
+                result += summary.median();
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    public double incrementalEstimator(int reps) {
+        double result = 0;
+        for (int i = 0; i < reps; i++) {
+            QuantileEstimator median = new QuantileEstimator(50);
+            for (double value : values) {
+                median.add(value);
+                result += median.estimate();
+            }
+        }
+        return result;
+    }
+}
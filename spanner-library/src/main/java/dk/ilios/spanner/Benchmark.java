@@ -38,7 +38,9 @@ import java.lang.annotation.Target;
  * argument representing a number of repetitions to perform in a given execution. It is critical
  * that the work done in the benchmark method scale linearly to the number of repetitions.
  *
- * <p>Benchmark methods may return any value. It will be ignored.
+ * <p>Benchmark methods may return any value. It is consumed by a {@link Blackhole}, so the JIT compiler cannot
+ * optimize away the computation of it. Values computed inside the reps loop should be consumed by a blackhole taken
+ * as the last parameter, e.g. {@code foo(int reps, Blackhole blackhole)}, or injected into a field.
  *
  * <p>This class is instantiated and injected only once per child VM invocation, to measure one
  * particular combination of parameters.
@@ -73,7 +75,33 @@ import java.lang.annotation.Target;
  * two {@link Param Params} ({@code feature} and {@code size}). For each experiment performed by
  * Spanner (e.g. {@code foo} with {@code feature == FeatureEnum.A} and {@code size == 100}),
  * {@code initializeObject} will be called exactly once, but {@code foo} may be called many times.
+ *
+ * <p>Benchmark methods taking a reps parameter can be run by several threads at the same time to measure how the
+ * code behaves under contention. All threads call the method on the same instance, so it must be thread safe. The
+ * threads are released together and the results are the runtime pr. rep as seen by each thread and the combined
+ * throughput of all threads. For example: {@code
+ *   {@literal @}Benchmark(threads = 4) int contended(int reps) { ... }
+ * }
+ *
+ * <p>To see how the code scales, take the number of threads from an int {@link Param} instead. A scaling curve is
+ * printed for each benchmark method once all thread counts have run: {@code
+ *   {@literal @}Param({"1", "2", "4", "8"}) int threads;
+ *
+ *   {@literal @}Benchmark(threadsParam = "threads") int contended(int reps) { ... }
+ * }
  */
 @Target(METHOD)
 @Retention(RUNTIME)
-public @interface Benchmark {}
+public @interface Benchmark {
+
+  /**
+   * Number of threads calling the benchmark method at the same time.
+   */
+  int threads() default 1;
+
+  /**
+   * Name of the int {@link Param} holding the number of threads calling the benchmark method at the same time. This
+   * cannot be combined with {@link #threads()}.
+   */
+  String threadsParam() default "";
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner;
+
+/**
+ * Consumes values so the JIT compiler cannot remove the code computing them as dead code. A benchmark that computes
+ * a value and throws it away might end up measuring an empty loop.
+ * <p>
+ * A blackhole can be injected in two ways:
+ * <ul>
+ * <li>As the last parameter of a {@link Benchmark} or {@link Throughput} method, e.g.
+ * {@code public void foo(int reps, Blackhole blackhole)}.
+ * <li>As a field of type {@code Blackhole} in the benchmark class. It is set before any {@link BeforeExperiment}
+ * methods are called.
+ * </ul>
+ * Values returned from benchmark methods are consumed automatically, so it is only needed for values computed inside
+ * the reps loop:
+ * <pre>{@code
+ *   {@literal @}Benchmark public void foo(int reps, Blackhole blackhole) {
+ *     for (int i = 0; i < reps; i++) {
+ *       blackhole.consume(object.foo(i));
+ *     }
+ *   }
+ * }</pre>
+ * Consuming a value costs about as much as reading a volatile field, which is counted as part of the benchmark. All
+ * methods are safe to call from several threads, but threads sharing a blackhole also share its cache lines.
+ */
+public final class Blackhole {
+
+    // Each pair is never equal, but the compiler cannot know that, as they are volatile and could change at any time.
+    // Consumed values are compared against both, so they must be computed, but the branch is never taken.
+    private volatile int i1 = 1;
+    private volatile int i2 = 2;
+    private volatile long l1 = 1;
+    private volatile long l2 = 2;
+    private volatile float f1 = 1;
+    private volatile float f2 = 2;
+    private volatile double d1 = 1;
+    private volatile double d2 = 2;
+    private volatile boolean b1 = false;
+    private volatile boolean b2 = true;
+
+    // Objects are stored in sink at exponentially increasing random intervals, so they escape without paying for a
+    // volatile write on every call and without keeping more than one object alive.
+    private volatile int objectMask = 1;
+    private int random = (int) System.nanoTime();
+    private volatile Object sink;
+
+    public void consume(boolean value) {
+        if (value == b1 & value == b2) {
+            sink = this;
+        }
+    }
+
+    /**
+     * Consumes an {@code int}. {@code byte}, {@code short} and {@code char} values are widened to this.
+     */
+    public void consume(int value) {
+        if (value == i1 & value == i2) {
+            sink = this;
+        }
+    }
+
+    public void consume(long value) {
+        if (value == l1 & value == l2) {
+            sink = this;
+        }
+    }
+
+    public void consume(float value) {
+        if (value == f1 & value == f2) {
+            sink = this;
+        }
+    }
+
+    public void consume(double value) {
+        if (value == d1 & value == d2) {
+            sink = this;
+        }
+    }
+
+    public void consume(Object value) {
+        int mask = objectMask;
+        int next = random * 1103515245 + 12345;
+        random = next;
+        if ((next & mask) == 0) {
+            sink = value;
+            objectMask = (mask << 1) + 1;
+        }
+    }
+}
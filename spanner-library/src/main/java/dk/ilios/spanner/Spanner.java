@@ -16,6 +16,7 @@
 
 package dk.ilios.spanner;
 
+import com.google.common.base.Predicate;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.util.concurrent.ListeningExecutorService;
 import com.google.common.util.concurrent.MoreExecutors;
@@ -31,6 +32,7 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
@@ -42,17 +44,22 @@ import dk.ilios.spanner.config.InstrumentConfig;
 import dk.ilios.spanner.exception.InvalidCommandException;
 import dk.ilios.spanner.http.HttpUploader;
 import dk.ilios.spanner.internal.AndroidExperimentSelector;
+import dk.ilios.spanner.internal.BaselineIndex;
 import dk.ilios.spanner.internal.ExperimentSelector;
 import dk.ilios.spanner.internal.ExperimentingSpannerRun;
 import dk.ilios.spanner.internal.Instrument;
 import dk.ilios.spanner.internal.InvalidBenchmarkException;
 import dk.ilios.spanner.internal.SpannerRun;
 import dk.ilios.spanner.json.AnnotationExclusionStrategy;
+import dk.ilios.spanner.json.BaselineReader;
 import dk.ilios.spanner.json.InstantTypeAdapter;
 import dk.ilios.spanner.log.AndroidStdOut;
 import dk.ilios.spanner.log.StdOut;
+import dk.ilios.spanner.model.BenchmarkSpec;
 import dk.ilios.spanner.model.Run;
 import dk.ilios.spanner.model.Trial;
+import dk.ilios.spanner.output.BinaryFileDumper;
+import dk.ilios.spanner.output.BinaryResultReader;
 import dk.ilios.spanner.output.OutputFileDumper;
 import dk.ilios.spanner.output.ResultProcessor;
 import dk.ilios.spanner.util.NanoTimeGranularityTester;
@@ -113,21 +120,28 @@ public class Spanner {
                     .configuration(benchmarkConfig)
                     .build();
 
-            ExperimentSelector experimentSelector = new AndroidExperimentSelector(benchmarkClass, instruments);
+            ExperimentSelector experimentSelector = new AndroidExperimentSelector(benchmarkClass, instruments,
+                    benchmarkConfig.getParameters(), benchmarkConfig.getParameterSelection(),
+                    benchmarkConfig.getShardIndex(), benchmarkConfig.getShardCount());
 
             // GSON config
             GsonBuilder gsonBuilder = new GsonBuilder().setExclusionStrategies(new AnnotationExclusionStrategy());
             gsonBuilder.registerTypeAdapterFactory(TypeAdapters.newFactory(Instant.class, new InstantTypeAdapter()));
             Gson gson = gsonBuilder.create();
 
-            // Configure baseline data
-            Trial[] baselineData;
+            // Configure baseline data. The index is built once, so experiments can find their baseline without
+            // scanning all trials.
+            List<Trial> baselineData;
             if (baseline != null) {
                 BufferedReader br = null;
                 try {
-                    br = new BufferedReader(new FileReader(baseline));
-                    baselineData = gson.fromJson(br, Trial[].class);
-                    br.close();
+                    if (BinaryResultReader.isBinaryResultFile(baseline)) {
+                        baselineData = new BinaryResultReader(gson).readBaselines(baseline, isSelectedBenchmark());
+                    } else {
+                        br = new BufferedReader(new FileReader(baseline));
+                        baselineData = new BaselineReader(gson, isSelectedBenchmark()).read(br);
+                        br.close();
+                    }
                 } catch (java.io.IOException e) {
                     throw new RuntimeException(e);
                 } finally {
@@ -139,8 +153,9 @@ public class Spanner {
                     }
                 }
             } else {
-                baselineData = new Trial[0];
+                baselineData = Collections.emptyList();
             }
+            BaselineIndex baselines = new BaselineIndex(baselineData, benchmarkConfig.getTrialsPrBaseline());
 
             // Configure ResultProcessors
             Set<ResultProcessor> processors = new HashSet<>();
@@ -148,6 +163,10 @@ public class Spanner {
                 OutputFileDumper dumper = new OutputFileDumper(gson, benchmarkConfig.getResultsFile());
                 processors.add(dumper);
             }
+            if (benchmarkConfig.getBinaryResultsFile() != null) {
+                processors.add(new BinaryFileDumper(gson, benchmarkConfig.getBinaryResultsFile(),
+                        benchmarkConfig.isCompressBinaryResults()));
+            }
             if (benchmarkConfig.isUploadResults()) {
                 HttpUploader uploader = new HttpUploader(stdOut, gson, benchmarkConfig);
                 processors.add(uploader);
@@ -163,7 +182,7 @@ public class Spanner {
                     resultProcessors,
                     experimentSelector,
                     executor,
-                    baselineData,
+                    baselines,
                     callback
             );
 
@@ -176,6 +195,22 @@ public class Spanner {
         }
     }
 
+    /**
+     * Returns a filter accepting the benchmark methods that are going to run.
+     */
+    private Predicate<BenchmarkSpec> isSelectedBenchmark() {
+        final Set<String> selectedMethods = new HashSet<>();
+        for (Method method : benchmarkClass.getMethods()) {
+            selectedMethods.add(method.getDeclaringClass().getName() + "#" + method.getName());
+        }
+        return new Predicate<BenchmarkSpec>() {
+            @Override
+            public boolean apply(BenchmarkSpec spec) {
+                return selectedMethods.contains(spec.className() + "#" + spec.methodName());
+            }
+        };
+    }
+
     public ImmutableSet<Instrument> getInstruments(SpannerConfig benchmarkConfig) throws InvalidCommandException {
         ImmutableSet.Builder<Instrument> builder = ImmutableSet.builder();
         Set<InstrumentConfig> configuredInstruments = benchmarkConfig.getInstrumentConfigurations();
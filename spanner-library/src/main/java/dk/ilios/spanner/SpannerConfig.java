@@ -1,18 +1,29 @@
 package dk.ilios.spanner;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.SetMultimap;
+
 import java.io.File;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import dk.ilios.spanner.config.CustomInstrumentConfig;
 import dk.ilios.spanner.config.InstrumentConfig;
+import dk.ilios.spanner.config.ParameterSelection;
 import dk.ilios.spanner.config.RuntimeInstrumentConfig;
+import dk.ilios.spanner.model.Trial;
 import dk.ilios.spanner.output.ResultProcessor;
+import dk.ilios.spanner.stats.ComparisonMethod;
 import dk.ilios.spanner.util.ShortDuration;
 
 /**
@@ -21,34 +32,69 @@ import dk.ilios.spanner.util.ShortDuration;
 public class SpannerConfig {
 
     public static final float NOT_ENABLED = -1.0F;
+    public static final ShortDuration DEFAULT_TIME_LIMIT = ShortDuration.of(5, TimeUnit.MINUTES);
+    public static final ShortDuration MIN_BASELINE_TIME_LIMIT = ShortDuration.of(30, TimeUnit.SECONDS);
 
     private final File resultsFile;
+    private final File binaryResultsFile;
+    private final boolean compressBinaryResults;
     private final File baseLineFile;
     private final boolean warnIfWrongTestGranularity;
     private final URL uploadUrl;
     private final String apiKey;
     private final boolean uploadResults;
+    private final File uploadSpoolDir;
     private final Map<Float, Float> percentileFailureLimits;
     private float meanFailureLimit;
+    private final ComparisonMethod comparisonMethod;
+    private final double significanceLevel;
     private int maxBenchmarkThreads;
+    private int coresPrTrial;
     private int trialsPrExperiment;
+    private int trialsPrBaseline;
+    private final ImmutableSetMultimap<String, String> parameters;
+    private final ParameterSelection parameterSelection;
+    private final int shardIndex;
+    private final int shardCount;
+    private final boolean forkTrials;
+    private final ImmutableList<String> forkJvmArgs;
+    private final ShortDuration timeLimit;
+    private final float baselineTimeLimitFactor;
+    private final ShortDuration runTimeLimit;
     private Set<InstrumentConfig> configs = new HashSet<>();
     private Set<ResultProcessor> resultProcessors;
 
     private SpannerConfig(Builder builder) {
         this.resultsFile = builder.resultsFile;
+        this.binaryResultsFile = builder.binaryResultsFile;
+        this.compressBinaryResults = builder.compressBinaryResults;
         this.baseLineFile = builder.baseLineFile;
         this.warnIfWrongTestGranularity = builder.warnIfWrongTestGranularity;
         this.uploadResults = builder.uploadResults;
+        this.uploadSpoolDir = builder.uploadSpoolDir;
         this.uploadUrl = builder.uploadUrl;
         this.apiKey = builder.apiKey;
         this.percentileFailureLimits = builder.percentileFailureLimits;
         this.meanFailureLimit = builder.meanFailureLimit;
+        this.comparisonMethod = builder.comparisonMethod;
+        this.significanceLevel = builder.significanceLevel;
         this.maxBenchmarkThreads = builder.maxBenchmarkThreads;
+        this.coresPrTrial = builder.coresPrTrial;
         this.trialsPrExperiment = builder.trialsPrExperiment;
+        this.trialsPrBaseline = builder.trialsPrBaseline;
+        this.parameters = ImmutableSetMultimap.copyOf(builder.parameters);
+        this.parameterSelection = builder.parameterSelection;
+        this.shardIndex = builder.shardIndex;
+        this.shardCount = builder.shardCount;
+        this.forkTrials = builder.forkTrials;
+        this.forkJvmArgs = ImmutableList.copyOf(builder.forkJvmArgs);
+        this.timeLimit = builder.timeLimit;
+        this.baselineTimeLimitFactor = builder.baselineTimeLimitFactor;
+        this.runTimeLimit = builder.runTimeLimit;
         this.resultProcessors = builder.resultProcessors;
         if (builder.instrumentationConfigs.isEmpty()) {
             configs.add(RuntimeInstrumentConfig.defaultConfig());
+            configs.add(RuntimeInstrumentConfig.throughputConfig());
             configs.add(CustomInstrumentConfig.defaultConfig());
         } else {
             configs.addAll(builder.instrumentationConfigs);
@@ -59,6 +105,17 @@ public class SpannerConfig {
         return resultsFile;
     }
 
+    /**
+     * Returns the file binary results are written to or {@code null} if they are not written.
+     */
+    public File getBinaryResultsFile() {
+        return binaryResultsFile;
+    }
+
+    public boolean isCompressBinaryResults() {
+        return compressBinaryResults;
+    }
+
     public File getBaseLineFile() {
         return baseLineFile;
     }
@@ -79,6 +136,13 @@ public class SpannerConfig {
         return uploadResults;
     }
 
+    /**
+     * Returns the folder trials are queued in before they are uploaded or {@code null} if they are uploaded directly.
+     */
+    public File getUploadSpoolDir() {
+        return uploadSpoolDir;
+    }
+
     public Set<InstrumentConfig> getInstrumentConfigurations() {
         return configs;
     }
@@ -87,12 +151,90 @@ public class SpannerConfig {
         return maxBenchmarkThreads;
     }
 
+    public int getCoresPrTrial() {
+        return coresPrTrial;
+    }
+
     public int getTrialsPrExperiment() {
         return trialsPrExperiment;
     }
 
+    /**
+     * Returns the number of matching baseline trials considered when choosing the baseline of an experiment.
+     */
+    public int getTrialsPrBaseline() {
+        return trialsPrBaseline;
+    }
+
+    /**
+     * Returns the parameter values that replace the defaults from the {@link Param} annotations.
+     */
+    public ImmutableSetMultimap<String, String> getParameters() {
+        return parameters;
+    }
+
+    public ParameterSelection getParameterSelection() {
+        return parameterSelection;
+    }
+
+    /**
+     * Returns the index of the shard of experiments run by this configuration, starting from {@code 0}.
+     */
+    public int getShardIndex() {
+        return shardIndex;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * Returns {@code true} if each trial runs in a new JVM.
+     */
+    public boolean isForkTrials() {
+        return forkTrials;
+    }
+
+    /**
+     * Returns the extra arguments given to the JVMs running forked trials.
+     */
+    public ImmutableList<String> getForkJvmArgs() {
+        return forkJvmArgs;
+    }
+
+    /**
+     * Returns the time limit of trials without a baseline.
+     */
     public ShortDuration getTimeLimit() {
-        return ShortDuration.of(5, TimeUnit.MINUTES); // TODO Make this configurable?
+        return timeLimit != null ? timeLimit : DEFAULT_TIME_LIMIT;
+    }
+
+    /**
+     * Returns the time limit of a trial with the given baseline, which may be {@code null}. A configured time limit is
+     * always used. Otherwise the limit is a multiple of how long the baseline took, if that was recorded, but never
+     * less than {@link #MIN_BASELINE_TIME_LIMIT}, so a fast baseline doesn't fail trials on a slower or busier device.
+     */
+    public ShortDuration getTimeLimit(Trial baseline) {
+        if (timeLimit == null && baseline != null && baseline.durationNanos() > 0) {
+            long limitNanos = (long) (baseline.durationNanos() * (double) baselineTimeLimitFactor);
+            return ShortDuration.of(Math.max(limitNanos, MIN_BASELINE_TIME_LIMIT.to(TimeUnit.NANOSECONDS)),
+                    TimeUnit.NANOSECONDS);
+        }
+        return getTimeLimit();
+    }
+
+    /**
+     * Returns how many times longer than its baseline a trial may take, if no time limit is configured.
+     */
+    public float getBaselineTimeLimitFactor() {
+        return baselineTimeLimitFactor;
+    }
+
+    /**
+     * Returns the time the entire run may take or {@code null} if it isn't limited.
+     */
+    public ShortDuration getRunTimeLimit() {
+        return runTimeLimit;
     }
 
     public float getMinFailureLimit() {
@@ -126,6 +268,21 @@ public class SpannerConfig {
         }
     }
 
+    /**
+     * Returns how trials are compared against their baseline.
+     */
+    public ComparisonMethod getComparisonMethod() {
+        return comparisonMethod;
+    }
+
+    /**
+     * Returns the p-value a change must be below before it is considered significant. Only used by statistical
+     * comparison methods.
+     */
+    public double getSignificanceLevel() {
+        return significanceLevel;
+    }
+
     public Set<ResultProcessor> getResultProcessors() {
         return resultProcessors;
     }
@@ -162,15 +319,31 @@ public class SpannerConfig {
      */
     public static class Builder {
         private File resultsFile = null;
+        private File binaryResultsFile = null;
+        private boolean compressBinaryResults = false;
         private File baseLineFile = null;
         private boolean warnIfWrongTestGranularity = true;
         private boolean uploadResults = false;
+        private File uploadSpoolDir = null;
         private String apiKey = "";
         private URL uploadUrl = getUrl("https://microbenchmarks.appspot.com");
         private int maxBenchmarkThreads = 1; // Maximum number of concurrent benchmark threads.
+        private int coresPrTrial = 1;
         private Set<InstrumentConfig> instrumentationConfigs = new HashSet<>();
         private int trialsPrExperiment = 1;
+        private int trialsPrBaseline = 1;
+        private SetMultimap<String, String> parameters = LinkedHashMultimap.create();
+        private ParameterSelection parameterSelection = ParameterSelection.fullCartesian();
+        private int shardIndex = 0;
+        private int shardCount = 1;
+        private boolean forkTrials = false;
+        private List<String> forkJvmArgs = new ArrayList<>();
+        private ShortDuration timeLimit = null;
+        private float baselineTimeLimitFactor = 5.0F;
+        private ShortDuration runTimeLimit = null;
         private float meanFailureLimit = NOT_ENABLED;
+        private ComparisonMethod comparisonMethod = ComparisonMethod.THRESHOLD;
+        private double significanceLevel = 0.05;
         // All values > 0. All keys: [0,100] -> 0 = Min, 100 = max, 50 = median
         private Map<Float, Float> percentileFailureLimits = new HashMap<>();
         private Set<ResultProcessor> resultProcessors = new HashSet<>();
@@ -182,6 +355,11 @@ public class SpannerConfig {
          * Constructs an instance of {@link SpannerConfig}.
          */
         public SpannerConfig build() {
+            // Refined sweep values depend on the results of the experiments already run, which a shard only has part
+            // of, so shards would run overlapping experiments that cannot be merged.
+            if (shardCount > 1 && parameterSelection.type() == ParameterSelection.Type.ADAPTIVE_SWEEP) {
+                throw new IllegalArgumentException("An adaptive sweep cannot be sharded. Run it as a single shard.");
+            }
             return new SpannerConfig(this);
         }
 
@@ -201,7 +379,27 @@ public class SpannerConfig {
         }
 
         /**
-         * Set a baseline for the tests being run.
+         * Also save the results in a compact binary format. Measurements are stored as primitive columns, so the
+         * file is smaller and faster to write than the JSON results. Binary result files can be used as baselines
+         * and converted to JSON using {@link dk.ilios.spanner.output.BinaryResultConverter}.
+         *
+         * @param dir Reference to folder.
+         * @param filename name of the binary results file.
+         * @param compress {@code true} if measurements should be compressed.
+         * @return Builder object.
+         */
+        public Builder saveBinaryResults(File dir, String filename, boolean compress) {
+            if (dir != null) {
+                dir.mkdirs();
+            }
+            checkValidWritableFolder(dir);
+            this.binaryResultsFile = new File(dir, filename);
+            this.compressBinaryResults = compress;
+            return this;
+        }
+
+        /**
+         * Set a baseline for the tests being run. The baseline can be either a JSON or a binary results file.
          *
          * @param file Baseline file to use.
          * @return Builder object.
@@ -232,6 +430,24 @@ public class SpannerConfig {
             return this;
         }
 
+        /**
+         * Queue results in the given folder before uploading them. Trials are then uploaded in compressed batches
+         * in the background and failed uploads are retried. Anything that couldn't be uploaded before the run ends
+         * stays in the folder and is uploaded by the next run using the same folder.
+         *
+         * Only used if results are uploaded, see {@link #uploadResults()}.
+         *
+         * @param dir folder used to queue results. It is created if it doesn't exist.
+         * @return Builder object.
+         */
+        public Builder uploadSpool(File dir) {
+            checkNotNull(dir, "Non-null spool folder required.");
+            dir.mkdirs();
+            checkValidWritableFolder(dir);
+            this.uploadSpoolDir = dir;
+            return this;
+        }
+
         public Builder uploadUrl(String url) {
             this.uploadUrl = getUrl(url);
             return this;
@@ -324,17 +540,64 @@ public class SpannerConfig {
         }
 
         /**
-         * Maximum number of worker threads used to run the benchmarks.
+         * Compare trials against their baseline using a statistical test. A trial then only fails if the change
+         * from the baseline is both statistically significant and larger than the failure limit. The p-value and
+         * confidence interval of each comparison are reported in the test description and the result file.
+         *
+         * The default is {@link ComparisonMethod#THRESHOLD} which fails as soon as the change is larger than the
+         * limit.
+         *
+         * @param method how to compare trials against the baseline.
+         * @param significanceLevel p-value a change must be below to be significant, e.g. {@code 0.05}.
+         * @return the Builder.
+         */
+        public Builder baselineComparison(ComparisonMethod method, double significanceLevel) {
+            checkNotNull(method, "Non-null comparison method required.");
+            if (significanceLevel <= 0 || significanceLevel >= 1) {
+                throw new IllegalArgumentException("Significance level must be between 0 and 1: " + significanceLevel);
+            }
+            this.comparisonMethod = method;
+            this.significanceLevel = significanceLevel;
+            return this;
+        }
+
+        /**
+         * Maximum number of worker threads used to run the benchmarks. This is also the number of cores trials can
+         * reserve, see {@link #coresPrTrial(int)}.
+         *
+         * Only trials from instruments using {@link dk.ilios.spanner.trial.TrialSchedulingPolicy#PARALLEL} are run at
+         * the same time. Serial trials always run alone.
+         *
          * The default value is {@code 1}.
          *
          * @param threadCount number of threads that can run benchmarks.
          * @return the Builder.
          */
         public Builder maxBenchmarkThreads(int threadCount) {
+            if (threadCount < 1) {
+                throw new IllegalArgumentException("At least one benchmark thread is required: " + threadCount);
+            }
             this.maxBenchmarkThreads = threadCount;
             return this;
         }
 
+        /**
+         * Number of cores reserved by each parallel trial. A trial only starts when enough cores are available, so
+         * at most {@code maxBenchmarkThreads / coresPrTrial} parallel trials run at the same time.
+         *
+         * The default value is {@code 1}.
+         *
+         * @param cores number of cores reserved pr. trial.
+         * @return the Builder.
+         */
+        public Builder coresPrTrial(int cores) {
+            if (cores < 1) {
+                throw new IllegalArgumentException("A trial must reserve at least one core: " + cores);
+            }
+            this.coresPrTrial = cores;
+            return this;
+        }
+
         /**
          * Set the number of trials run for each experiment. Each trial is self-contained and will output
          * its results independently of the other trials for the same experiment.
@@ -349,6 +612,158 @@ public class SpannerConfig {
             return this;
         }
 
+        /**
+         * Set the number of matching trials in the baseline file that are considered when choosing the baseline
+         * of an experiment. The last {@code trials} matching trials are used and the one with the median result
+         * becomes the baseline, so a single unusually fast or slow run doesn't become the baseline.
+         *
+         * The default value is {@code 1}, which uses the most recent matching trial.
+         *
+         * @param trials number of baseline trials to consider pr. experiment.
+         * @return the Builder.
+         */
+        public Builder trialsPrBaseline(int trials) {
+            if (trials < 1) {
+                throw new IllegalArgumentException("At least one baseline trial is required: " + trials);
+            }
+            this.trialsPrBaseline = trials;
+            return this;
+        }
+
+        /**
+         * Set the values used for a {@link Param} field, replacing the values from the annotation. An experiment is
+         * created for each combination of parameter values.
+         *
+         * @param name name of the {@link Param} field.
+         * @param values values to run the benchmarks with.
+         * @return the Builder.
+         */
+        public Builder parameter(String name, String... values) {
+            checkNotNull(name, "Non-null parameter name required.");
+            if (values.length == 0) {
+                throw new IllegalArgumentException("At least one value is required for parameter: " + name);
+            }
+            parameters.replaceValues(name, Arrays.asList(values));
+            return this;
+        }
+
+        /**
+         * Choose which combinations of parameter values experiments are created for. Benchmarks with many
+         * parameters can run a pairwise or random selection instead of every combination, and scaling curves can
+         * be measured using an adaptive sweep of a numeric parameter.
+         *
+         * The default is {@link ParameterSelection#fullCartesian()}.
+         *
+         * @param selection how to select parameter combinations.
+         * @return the Builder.
+         */
+        public Builder parameterSelection(ParameterSelection selection) {
+            checkNotNull(selection, "Non-null parameter selection required.");
+            this.parameterSelection = selection;
+            return this;
+        }
+
+        /**
+         * Only run a part of the experiments. The experiments are ordered the same way on all devices and split
+         * into {@code count} shards of roughly the same size, so the full set of experiments can be run by
+         * starting the same benchmark with each shard index on a different device and merging the results.
+         *
+         * The default is to run all experiments, i.e. shard {@code 0} of {@code 1}. An
+         * {@link ParameterSelection#adaptiveSweep(String, double, int, int) adaptive sweep} cannot be sharded.
+         *
+         * @param index shard to run, {@code [0, count[}.
+         * @param count total number of shards.
+         * @return the Builder.
+         */
+        public Builder shard(int index, int count) {
+            if (count < 1) {
+                throw new IllegalArgumentException("At least one shard is required: " + count);
+            }
+            if (index < 0 || index >= count) {
+                throw new IllegalArgumentException("Shard index must be [0, " + count + "[. Yours was: " + index);
+            }
+            this.shardIndex = index;
+            this.shardCount = count;
+            return this;
+        }
+
+        /**
+         * Run each trial in a new JVM instead of the current thread. JIT profiles, heap state and loaded classes from
+         * earlier trials then can't influence later ones, and trials that exceed the time limit can be killed. The
+         * worker JVM uses the same java executable and class path as the current JVM, followed by the given
+         * arguments and those from {@link dk.ilios.spanner.api.VmOptions} on the benchmark class.
+         *
+         * This is only possible on a desktop JVM, not on Android. The default is to run trials in the current JVM.
+         *
+         * @param jvmArgs extra arguments for the worker JVMs, e.g. {@code "-Xmx512m"}.
+         * @return the Builder.
+         */
+        public Builder forkTrials(String... jvmArgs) {
+            for (String arg : jvmArgs) {
+                checkNotNull(arg, "Non-null JVM arguments required.");
+            }
+            this.forkTrials = true;
+            this.forkJvmArgs = Arrays.asList(jvmArgs);
+            return this;
+        }
+
+        /**
+         * Set the time a single trial may take, including setup and warmup. A trial exceeding it is interrupted and
+         * fails. If it doesn't stop when interrupted, it is abandoned, so the rest of the run can continue.
+         *
+         * By default the limit is {@link #baselineTimeLimitFactor(float)} times how long the baseline trial took, but at
+         * least 30 seconds, or 5 minutes if there is no baseline.
+         *
+         * @param duration time limit pr. trial.
+         * @param unit unit of the duration.
+         * @return the Builder.
+         */
+        public Builder trialTimeLimit(long duration, TimeUnit unit) {
+            checkNotNull(unit, "Non-null time unit required.");
+            if (duration <= 0) {
+                throw new IllegalArgumentException("Time limit must be positive: " + duration);
+            }
+            this.timeLimit = ShortDuration.of(duration, unit);
+            return this;
+        }
+
+        /**
+         * Set how many times longer than its baseline a trial may take. This is only used if no
+         * {@link #trialTimeLimit(long, TimeUnit)} is set and the baseline recorded how long it took. The resulting limit
+         * is never less than {@link SpannerConfig#MIN_BASELINE_TIME_LIMIT}.
+         *
+         * The default value is {@code 5}.
+         *
+         * @param factor multiple of the baseline duration, at least {@code 1}.
+         * @return the Builder.
+         */
+        public Builder baselineTimeLimitFactor(float factor) {
+            if (factor < 1.0F) {
+                throw new IllegalArgumentException("Factor must be at least 1. Yours was: " + factor);
+            }
+            this.baselineTimeLimitFactor = factor;
+            return this;
+        }
+
+        /**
+         * Set the time the entire run may take. Trials are limited to what is left of it, and once it is used up the
+         * remaining trials fail right away, so unattended runs always complete.
+         *
+         * The default is no limit.
+         *
+         * @param duration time limit for the run.
+         * @param unit unit of the duration.
+         * @return the Builder.
+         */
+        public Builder runTimeLimit(long duration, TimeUnit unit) {
+            checkNotNull(unit, "Non-null time unit required.");
+            if (duration <= 0) {
+                throw new IllegalArgumentException("Time limit must be positive: " + duration);
+            }
+            this.runTimeLimit = ShortDuration.of(duration, unit);
+            return this;
+        }
+
         /**
          * Add a custom results processor that can process all trial results.
          * This can e.g be used to convert the trial results to some custom output.
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Annotation that identifies a method as a throughput benchmark. The method is invoked repeatedly for a fixed time
+ * slice and the result is the number of operations completed pr. second.
+ *
+ * The method either takes no parameters, in which case each invocation is one operation, or a single int or long
+ * parameter with the number of operations it should perform. The latter should be used for very fast operations, as
+ * the cost of invoking the method is then shared between many operations. Either can be followed by a
+ * {@link Blackhole} parameter.
+ *
+ * Throughput benchmarks are run by {@link dk.ilios.spanner.internal.ThroughputInstrument}. The length of the time
+ * slice is the timing interval of its {@link dk.ilios.spanner.config.RuntimeInstrumentConfig}.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface Throughput {
+}
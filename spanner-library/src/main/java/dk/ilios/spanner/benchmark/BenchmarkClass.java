@@ -40,8 +40,10 @@ import dk.ilios.spanner.BeforeExperiment;
 import dk.ilios.spanner.Benchmark;
 import dk.ilios.spanner.BenchmarkConfiguration;
 import dk.ilios.spanner.CustomMeasurement;
+import dk.ilios.spanner.Footprint;
 import dk.ilios.spanner.SpannerConfig;
 import dk.ilios.spanner.Param;
+import dk.ilios.spanner.Throughput;
 import dk.ilios.spanner.exception.InvalidCommandException;
 import dk.ilios.spanner.internal.InvalidBenchmarkException;
 import dk.ilios.spanner.exception.SkipThisScenarioException;
@@ -119,15 +121,25 @@ public final class BenchmarkClass {
             // Verify annotations
             boolean isBenchmarkMethod = method.isAnnotationPresent(Benchmark.class);
             boolean isCustomMeasurementMethod = method.isAnnotationPresent(CustomMeasurement.class);
+            boolean isFootprintMethod = method.isAnnotationPresent(Footprint.class);
+            boolean isThroughputMethod = method.isAnnotationPresent(Throughput.class);
 
             if (isBenchmarkMethod && isCustomMeasurementMethod) {
                 throw new InvalidBenchmarkException("Cannot mix @Benchmark and @CustomMeasurement on the same method");
             }
+            if (isFootprintMethod && (isBenchmarkMethod || isCustomMeasurementMethod)) {
+                throw new InvalidBenchmarkException("Cannot mix @Footprint with other benchmark annotations on the same method");
+            }
+            if (isThroughputMethod && (isBenchmarkMethod || isCustomMeasurementMethod || isFootprintMethod)) {
+                throw new InvalidBenchmarkException("Cannot mix @Throughput with other benchmark annotations on the same method");
+            }
 
-            if (isBenchmarkMethod) {
+            if (isBenchmarkMethod || isThroughputMethod) {
                 verifyBenchmarkMethod(method);
             } else if (isCustomMeasurementMethod) {
                 verifyCustomMeasurementMethod(method);
+            } else if (isFootprintMethod) {
+                verifyFootprintMethod(method);
             } else {
                 throw new InvalidBenchmarkException(String.format("Method %s is not a valid benchmark method.", method.getName()));
             }
@@ -140,8 +152,8 @@ public final class BenchmarkClass {
             throw new InvalidBenchmarkException("Benchmark methods must only be public: " + method.getName());
         }
 
-        // Verify parameter types
-        Class<?>[] parameterTypes = method.getParameterTypes();
+        // Verify parameter types. A Blackhole may follow the reps parameter.
+        Class<?>[] parameterTypes = BenchmarkMethods.repsParameterTypes(method);
         if (parameterTypes.length > 1) {
             throw new InvalidBenchmarkException("Only 1 int or long parameter allowed: " + method.getName());
         }
@@ -151,6 +163,42 @@ public final class BenchmarkClass {
                 throw new InvalidBenchmarkException("Only 1 int or long parameter allowed: " + method.getName());
             }
         }
+
+        Benchmark benchmark = method.getAnnotation(Benchmark.class);
+        if (benchmark != null) {
+            verifyBenchmarkThreads(method, benchmark);
+        }
+    }
+
+    private void verifyBenchmarkThreads(Method method, Benchmark benchmark) throws InvalidBenchmarkException {
+        if (benchmark.threads() < 1) {
+            throw new InvalidBenchmarkException("Benchmark methods must run on at least 1 thread: " + method.getName());
+        }
+        if (!BenchmarkMethods.isConcurrent(method)) {
+            return;
+        }
+        if (BenchmarkMethods.repsParameterTypes(method).length == 0) {
+            throw new InvalidBenchmarkException(
+                    "Multi-threaded benchmark methods must take an int or long reps parameter: " + method.getName());
+        }
+        String threadsParam = benchmark.threadsParam();
+        if (threadsParam.isEmpty()) {
+            return;
+        }
+        if (benchmark.threads() != 1) {
+            throw new InvalidBenchmarkException(
+                    "Cannot set both threads and threadsParam on the same method: " + method.getName());
+        }
+        try {
+            Field field = method.getDeclaringClass().getDeclaredField(threadsParam);
+            if (!field.isAnnotationPresent(Param.class) || field.getType() != int.class) {
+                throw new InvalidBenchmarkException(
+                        "Threads parameter %s of %s must be an int @Param field", threadsParam, method.getName());
+            }
+        } catch (NoSuchFieldException e) {
+            throw new InvalidBenchmarkException(
+                    "Unknown threads parameter %s for %s", threadsParam, method.getName());
+        }
     }
 
     private void verifyCustomMeasurementMethod(Method method) throws InvalidBenchmarkException {
@@ -171,10 +219,31 @@ public final class BenchmarkClass {
         }
     }
 
+    private void verifyFootprintMethod(Method method) throws InvalidBenchmarkException {
+        int modifiers = method.getModifiers();
+        if (modifiers != Modifier.PUBLIC) {
+            throw new InvalidBenchmarkException("Footprint methods must only be public: " + method.getName());
+        }
+
+        // Verify parameter types
+        Class<?>[] parameterTypes = method.getParameterTypes();
+        if (parameterTypes.length > 0) {
+            throw new InvalidBenchmarkException("Footprint methods must not have parameters: " + method.getName());
+        }
+
+        Class<?> returnType = method.getReturnType();
+        if (returnType.isPrimitive()) {
+            throw new InvalidBenchmarkException("Footprint methods must return an object: " + method.getName());
+        }
+    }
+
     private List<Method> findAllBenchmarkMethods(Class<?> benchmarkClass) {
         List<Method> benchmarkMethods = new ArrayList<>();
         for (Method method : benchmarkClass.getDeclaredMethods()) {
-            if (method.isAnnotationPresent(Benchmark.class) || method.isAnnotationPresent(CustomMeasurement.class)) {
+            if (method.isAnnotationPresent(Benchmark.class)
+                    || method.isAnnotationPresent(CustomMeasurement.class)
+                    || method.isAnnotationPresent(Footprint.class)
+                    || method.isAnnotationPresent(Throughput.class)) {
                 benchmarkMethods.add(method);
             }
         }
@@ -203,6 +272,14 @@ public final class BenchmarkClass {
         return classInstance;
     }
 
+    /**
+     * Returns a copy of this wrapper around a new instance of the Benchmark class. Trials running at the same time
+     * must not share an instance, as parameters are injected into it and it is set up and torn down by each trial.
+     */
+    public BenchmarkClass withNewInstance() throws InvalidBenchmarkException {
+        return new BenchmarkClass(classReference, benchmarkMethods);
+    }
+
     /**
      * Returns the configuration for this class or the default configuration if no configuration is provided.
      */
@@ -0,0 +1,157 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.benchmark;
+
+import java.lang.reflect.Method;
+
+import dk.ilios.spanner.Blackhole;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A call stub for a single benchmark method bound to a single benchmark instance.
+ * <p>
+ * The method is resolved once when the invoker is created. Everything that {@link Method#invoke(Object, Object...)}
+ * would otherwise do on every call (access checks, allocating the varargs array and boxing the reps parameter) is
+ * either done up front or moved into {@link #prepare(long)}, so it can happen outside the timed region.
+ * <p>
+ * Neither {@code java.lang.invoke} nor runtime bytecode generation is available on all Android versions we support,
+ * so this is the closest thing to a direct call that works everywhere.
+ * <p>
+ * If the method takes a {@link Blackhole} after the reps, the same blackhole is passed on every call.
+ */
+public abstract class BenchmarkInvoker {
+
+    protected final Object benchmark;
+    protected final Method method;
+    protected final Object[] args;
+
+    /**
+     * Creates an invoker for the given benchmark method. A new {@link Blackhole} is used if the method takes one.
+     *
+     * @see #create(Object, Method, Blackhole)
+     */
+    public static BenchmarkInvoker create(Object benchmark, Method method) {
+        return create(benchmark, method, new Blackhole());
+    }
+
+    /**
+     * Creates an invoker for the given benchmark method.
+     *
+     * @param benchmark instance the method should be invoked on.
+     * @param method benchmark method taking either no arguments, an {@code int} or a {@code long}, optionally followed
+     *               by a {@link Blackhole}.
+     * @param blackhole blackhole passed to the method if it takes one.
+     * @return invoker matching the signature of the method.
+     */
+    public static BenchmarkInvoker create(Object benchmark, Method method, Blackhole blackhole) {
+        checkNotNull(benchmark);
+        checkNotNull(method);
+        checkNotNull(blackhole);
+        method.setAccessible(true); // Skips the access check on every call.
+        Object[] args = new Object[method.getParameterTypes().length];
+        if (BenchmarkMethods.takesBlackhole(method)) {
+            args[args.length - 1] = blackhole;
+        }
+        Class<?>[] repsTypes = BenchmarkMethods.repsParameterTypes(method);
+        if (repsTypes.length == 0) {
+            return new NoReps(benchmark, method, args);
+        } else if (repsTypes.length == 1 && repsTypes[0] == int.class) {
+            return new IntReps(benchmark, method, args);
+        } else if (repsTypes.length == 1 && repsTypes[0] == long.class) {
+            return new LongReps(benchmark, method, args);
+        } else {
+            throw new IllegalArgumentException("Invalid benchmark method parameters: " + method);
+        }
+    }
+
+    private BenchmarkInvoker(Object benchmark, Method method, Object[] args) {
+        this.benchmark = benchmark;
+        this.method = method;
+        this.args = args;
+    }
+
+    /**
+     * Returns the method being invoked.
+     */
+    public Method method() {
+        return method;
+    }
+
+    /**
+     * Prepares the arguments for the next call to {@link #invoke()}. This should be called before starting the timer.
+     * Invokers for methods without a reps parameter ignore this.
+     *
+     * @param reps number of repetitions the benchmark method should do.
+     */
+    public abstract void prepare(long reps);
+
+    /**
+     * Invokes the benchmark method using the arguments set by the last call to {@link #prepare(long)}.
+     *
+     * @return the value returned by the benchmark method or {@code null} if it is {@code void}.
+     */
+    public final Object invoke() throws Exception {
+        return method.invoke(benchmark, args);
+    }
+
+    private static final class NoReps extends BenchmarkInvoker {
+
+        NoReps(Object benchmark, Method method, Object[] args) {
+            super(benchmark, method, args);
+        }
+
+        @Override
+        public void prepare(long reps) {
+            // No reps parameter
+        }
+    }
+
+    private static final class IntReps extends BenchmarkInvoker {
+
+        IntReps(Object benchmark, Method method, Object[] args) {
+            super(benchmark, method, args);
+            args[0] = 0;
+        }
+
+        @Override
+        public void prepare(long reps) {
+            int intReps = (int) reps;
+            if (intReps != reps) {
+                throw new IllegalArgumentException("Reps does not fit in an int: " + reps);
+            }
+            if ((Integer) args[0] != intReps) {
+                args[0] = intReps;
+            }
+        }
+    }
+
+    private static final class LongReps extends BenchmarkInvoker {
+
+        LongReps(Object benchmark, Method method, Object[] args) {
+            super(benchmark, method, args);
+            args[0] = 0L;
+        }
+
+        @Override
+        public void prepare(long reps) {
+            if ((Long) args[0] != reps) {
+                args[0] = reps;
+            }
+        }
+    }
+}
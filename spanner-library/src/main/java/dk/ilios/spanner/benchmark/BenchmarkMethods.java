@@ -20,8 +20,10 @@ import static com.google.common.base.Preconditions.checkArgument;
 
 import java.lang.reflect.Method;
 import java.util.Arrays;
+import java.util.Map;
 
 import dk.ilios.spanner.Benchmark;
+import dk.ilios.spanner.Blackhole;
 import dk.ilios.spanner.internal.InvalidBenchmarkException;
 import dk.ilios.spanner.util.Util;
 
@@ -41,7 +43,7 @@ public final class BenchmarkMethods {
     PICO;
 
     public static Type of(Method benchmarkMethod) {
-      Class<?>[] parameterTypes = benchmarkMethod.getParameterTypes();
+      Class<?>[] parameterTypes = repsParameterTypes(benchmarkMethod);
       if (Arrays.equals(parameterTypes, MACROBENCHMARK_PARAMS)) {
         return MACRO;
       } else if (Arrays.equals(parameterTypes, MICROBENCHMARK_PARAMS)) {
@@ -54,6 +56,75 @@ public final class BenchmarkMethods {
     }
   }
 
+  /**
+   * Returns {@code true} if the last parameter of the method is a {@link Blackhole}.
+   */
+  public static boolean takesBlackhole(Method method) {
+    Class<?>[] parameterTypes = method.getParameterTypes();
+    return parameterTypes.length > 0 && parameterTypes[parameterTypes.length - 1] == Blackhole.class;
+  }
+
+  /**
+   * Returns the parameter types of the method without a trailing {@link Blackhole}, i.e. the reps parameter of a
+   * valid benchmark method if it has one.
+   */
+  public static Class<?>[] repsParameterTypes(Method method) {
+    Class<?>[] parameterTypes = method.getParameterTypes();
+    return takesBlackhole(method)
+        ? Arrays.copyOf(parameterTypes, parameterTypes.length - 1)
+        : parameterTypes;
+  }
+
+  /**
+   * Returns the arguments for calling the benchmark method once with the given number of reps, e.g. for a dry run.
+   * The reps are ignored if the method has no reps parameter, and a trailing {@link Blackhole} parameter gets a new
+   * blackhole.
+   */
+  public static Object[] arguments(Method method, int reps) {
+    Class<?>[] parameterTypes = method.getParameterTypes();
+    Object[] arguments = new Object[parameterTypes.length];
+    for (int i = 0; i < parameterTypes.length; i++) {
+      if (parameterTypes[i] == Blackhole.class) {
+        arguments[i] = new Blackhole();
+      } else if (parameterTypes[i] == long.class) {
+        arguments[i] = (long) reps;
+      } else {
+        arguments[i] = reps;
+      }
+    }
+    return arguments;
+  }
+
+  /**
+   * Returns {@code true} if the method is a {@link Benchmark} that should be run by several threads at the same time,
+   * i.e. it either has a fixed number of threads above one or takes the number of threads from a parameter.
+   */
+  public static boolean isConcurrent(Method method) {
+    Benchmark benchmark = method.getAnnotation(Benchmark.class);
+    return benchmark != null && (benchmark.threads() > 1 || !benchmark.threadsParam().isEmpty());
+  }
+
+  /**
+   * Returns the number of threads that should call the benchmark method at the same time.
+   *
+   * @param method benchmark method.
+   * @param userParameters parameter values of the experiment.
+   */
+  public static int threads(Method method, Map<String, String> userParameters) {
+    Benchmark benchmark = method.getAnnotation(Benchmark.class);
+    if (benchmark == null) {
+      return 1;
+    }
+    if (benchmark.threadsParam().isEmpty()) {
+      return benchmark.threads();
+    }
+    String threads = userParameters.get(benchmark.threadsParam());
+    checkArgument(threads != null, "No value for threads parameter: %s", benchmark.threadsParam());
+    int count = Integer.parseInt(threads);
+    checkArgument(count > 0, "Benchmarks must run on at least 1 thread: %s", count);
+    return count;
+  }
+
   /**
    * Several instruments look for benchmark methods like {@code timeBlah(int reps)}; this is the
    * centralized code that identifies such methods.
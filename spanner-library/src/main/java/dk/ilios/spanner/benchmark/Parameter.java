@@ -95,6 +95,13 @@ public final class Parameter {
         return field.getName();
     }
 
+    /**
+     * Returns the type of the parameter field.
+     */
+    public Class<?> type() {
+        return field.getType();
+    }
+
     ImmutableList<String> defaults() {
         return defaults;
     }
@@ -95,6 +95,20 @@ public final class ParameterSet {
         return combined.orderKeysBy(Ordering.natural()).build();
     }
 
+    /**
+     * Verifies that all given values belong to a parameter and can be converted to the type of its field.
+     */
+    public void validate(ImmutableSetMultimap<String, String> values) throws InvalidBenchmarkException {
+        for (String name : values.keySet()) {
+            Parameter parameter = map.get(name);
+            if (parameter == null) {
+                throw new InvalidBenchmarkException("No @Param field named '%s' found. Known parameters: %s",
+                        name, map.keySet());
+            }
+            parameter.validate(values.get(name));
+        }
+    }
+
     public void injectAll(Object benchmark, Map<String, String> actualValues) {
         for (Parameter parameter : map.values()) {
             String value = actualValues.get(parameter.name());
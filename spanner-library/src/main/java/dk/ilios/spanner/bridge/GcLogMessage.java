@@ -20,13 +20,18 @@ import static com.google.common.base.Preconditions.checkNotNull;
 
 import com.google.common.base.Objects;
 
+import java.io.Serializable;
+import java.util.concurrent.TimeUnit;
+
 import dk.ilios.spanner.util.ShortDuration;
 
 
 /**
- * A message representing output produced by the JVM when {@code -XX:+PrintGC} is enabled.
+ * A message representing a garbage collection detected by a {@link dk.ilios.spanner.vm.GcMonitor}.
  */
-public final class GcLogMessage extends LogMessage {
+public final class GcLogMessage extends LogMessage implements Serializable {
+  private static final long serialVersionUID = 1L;
+
   /**
    * The type of the garbage collection performed.
    */
@@ -36,11 +41,12 @@ public final class GcLogMessage extends LogMessage {
   }
 
   private final Type type;
-  private final ShortDuration duration;
+  // ShortDuration isn't serializable
+  private final long durationNanos;
 
-  GcLogMessage(Type type, ShortDuration duration) {
+  public GcLogMessage(Type type, ShortDuration duration) {
     this.type = checkNotNull(type);
-    this.duration = checkNotNull(duration);
+    this.durationNanos = duration.to(TimeUnit.NANOSECONDS);
   }
 
   public Type type() {
@@ -48,7 +54,7 @@ public final class GcLogMessage extends LogMessage {
   }
 
   public ShortDuration duration() {
-    return duration;
+    return ShortDuration.of(durationNanos, TimeUnit.NANOSECONDS);
   }
 
   @Override
@@ -58,7 +64,7 @@ public final class GcLogMessage extends LogMessage {
 
   @Override
   public int hashCode() {
-    return Objects.hashCode(type, duration);
+    return Objects.hashCode(type, durationNanos);
   }
 
   @Override
@@ -68,7 +74,7 @@ public final class GcLogMessage extends LogMessage {
     } else if (obj instanceof GcLogMessage) {
       GcLogMessage that = (GcLogMessage) obj;
       return this.type == that.type
-          && this.duration.equals(that.duration);
+          && this.durationNanos == that.durationNanos;
     } else {
       return false;
     }
@@ -78,7 +84,7 @@ public final class GcLogMessage extends LogMessage {
   public String toString() {
     return Objects.toStringHelper(this)
         .addValue(type)
-        .add("duration", duration)
+        .add("duration", duration())
         .toString();
   }
 }
@@ -16,11 +16,16 @@
 
 package dk.ilios.spanner.bridge;
 
+import java.io.Serializable;
+
 /**
- * A message representing output produced by the JVM when {@code -XX:+PrintCompliation} is enabled.
+ * A message representing JIT compilation detected by a {@link dk.ilios.spanner.vm.CompilationMonitor}. It is sent
+ * while measuring if the compilation happened during timing, otherwise before the measurement starts.
  */
-public final class HotspotLogMessage extends LogMessage {
-  HotspotLogMessage() {}
+public final class HotspotLogMessage extends LogMessage implements Serializable {
+  private static final long serialVersionUID = 1L;
+
+  public HotspotLogMessage() {}
 
   @Override
   public void accept(LogMessageVisitor visitor) {
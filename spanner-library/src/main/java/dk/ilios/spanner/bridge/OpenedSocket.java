@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.bridge;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.net.Socket;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * A simple tuple for the opened object streams of a socket connecting the runner and a forked worker.
+ */
+public final class OpenedSocket {
+
+    /**
+     * Returns a new {@link OpenedSocket} for the given connected {@link Socket} instance.
+     */
+    public static OpenedSocket fromSocket(Socket socket) throws IOException {
+        // Disable Nagle's algorithm. The protocol sends many small messages and waits for an answer to some of
+        // them, so without this they can be delayed by up to the delayed ack timeout.
+        socket.setTcpNoDelay(true);
+        // N.B. order is important here, constructing an ObjectOutputStream writes a header and constructing an
+        // ObjectInputStream reads that header. So the OOS must be created first on both ends to avoid a deadlock.
+        ObjectOutputStream output = new ObjectOutputStream(socket.getOutputStream());
+        output.flush();
+        ObjectInputStream input = new ObjectInputStream(socket.getInputStream());
+        return new OpenedSocket(socket, new Reader(input), new Writer(output));
+    }
+
+    private final Socket socket;
+    private final Reader reader;
+    private final Writer writer;
+
+    private OpenedSocket(Socket socket, Reader reader, Writer writer) {
+        this.socket = socket;
+        this.reader = reader;
+        this.writer = writer;
+    }
+
+    public Socket socket() {
+        return socket;
+    }
+
+    public Reader reader() {
+        return reader;
+    }
+
+    public Writer writer() {
+        return writer;
+    }
+
+    /**
+     * Reads objects from the socket.
+     */
+    public static final class Reader implements Closeable {
+        private final ObjectInputStream input;
+
+        Reader(ObjectInputStream input) {
+            this.input = input;
+        }
+
+        /**
+         * Returns the next object, or {@code null} if we are at EOF.
+         */
+        public Serializable read() throws IOException {
+            try {
+                return (Serializable) checkNotNull(input.readObject());
+            } catch (EOFException eof) {
+                return null;
+            } catch (ClassNotFoundException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+
+    /**
+     * Writes objects to the socket.
+     */
+    public static final class Writer implements Closeable, Flushable {
+        private final ObjectOutputStream output;
+
+        Writer(ObjectOutputStream output) {
+            this.output = output;
+        }
+
+        /**
+         * Writes the object and flushes it, so the other end can react to it right away.
+         */
+        public void write(Serializable serializable) throws IOException {
+            output.writeObject(serializable);
+            // Messages are small and the streams keep a reference to every object written unless reset.
+            output.reset();
+            output.flush();
+        }
+
+        @Override
+        public void flush() throws IOException {
+            output.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            output.close();
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.bridge;
+
+import com.google.common.collect.ImmutableList;
+
+import java.io.Serializable;
+import java.util.List;
+
+import dk.ilios.spanner.model.HarnessOverhead;
+import dk.ilios.spanner.model.LatencyHistogram;
+import dk.ilios.spanner.model.Measurement;
+
+/**
+ * Sent by a forked worker when it has stopped measuring and torn down the benchmark. It carries the results that are
+ * only known at the end of the trial.
+ */
+public final class WorkerCompleteMessage implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final HarnessOverhead harnessOverhead;
+    private final LatencyHistogram latencyHistogram;
+    private final ImmutableList<Measurement> trialMeasurements;
+
+    public WorkerCompleteMessage(HarnessOverhead harnessOverhead, LatencyHistogram latencyHistogram,
+                                 List<Measurement> trialMeasurements) {
+        this.harnessOverhead = harnessOverhead;
+        this.latencyHistogram = latencyHistogram;
+        this.trialMeasurements = ImmutableList.copyOf(trialMeasurements);
+    }
+
+    /**
+     * Returns the overhead measured by the worker or {@code null} if it does not measure it.
+     */
+    public HarnessOverhead harnessOverhead() {
+        return harnessOverhead;
+    }
+
+    /**
+     * Returns the latencies sampled by the worker or {@code null} if it does not sample latency.
+     */
+    public LatencyHistogram latencyHistogram() {
+        return latencyHistogram;
+    }
+
+    /**
+     * Returns the measurements summarizing all measurements after warmup, e.g. the split of the CPU time.
+     */
+    public ImmutableList<Measurement> trialMeasurements() {
+        return trialMeasurements;
+    }
+}
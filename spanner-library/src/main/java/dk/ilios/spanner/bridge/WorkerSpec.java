@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.bridge;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.UUID;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Everything a forked worker needs to recreate the experiment of a trial. It is sent by the runner as the first
+ * message after the worker has connected.
+ * <p>
+ * The worker creates its own instance of the benchmark class and reads the instrument configuration from it, so only
+ * names and option values are sent.
+ */
+public final class WorkerSpec implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final UUID trialId;
+    private final String benchmarkClassName;
+    private final String methodName;
+    private final ImmutableList<String> methodParameterClasses;
+    private final String instrumentClassName;
+    private final HashMap<String, String> instrumentOptions;
+    private final ImmutableSortedMap<String, String> userParameters;
+    private final boolean warmupComplete;
+
+    public WorkerSpec(
+            UUID trialId,
+            String benchmarkClassName,
+            String methodName,
+            List<String> methodParameterClasses,
+            String instrumentClassName,
+            Map<String, String> instrumentOptions,
+            SortedMap<String, String> userParameters,
+            boolean warmupComplete) {
+        this.trialId = checkNotNull(trialId);
+        this.benchmarkClassName = checkNotNull(benchmarkClassName);
+        this.methodName = checkNotNull(methodName);
+        this.methodParameterClasses = ImmutableList.copyOf(methodParameterClasses);
+        this.instrumentClassName = checkNotNull(instrumentClassName);
+        this.instrumentOptions = new HashMap<>(instrumentOptions);
+        this.userParameters = ImmutableSortedMap.copyOfSorted(userParameters);
+        this.warmupComplete = warmupComplete;
+    }
+
+    public UUID trialId() {
+        return trialId;
+    }
+
+    public String benchmarkClassName() {
+        return benchmarkClassName;
+    }
+
+    public String methodName() {
+        return methodName;
+    }
+
+    /**
+     * Returns the names of the parameter types of the benchmark method, so overloaded methods can be told apart.
+     */
+    public ImmutableList<String> methodParameterClasses() {
+        return methodParameterClasses;
+    }
+
+    public String instrumentClassName() {
+        return instrumentClassName;
+    }
+
+    public Map<String, String> instrumentOptions() {
+        return instrumentOptions;
+    }
+
+    public SortedMap<String, String> userParameters() {
+        return userParameters;
+    }
+
+    /**
+     * Returns {@code true} if earlier trials of the experiment already completed the warmup.
+     */
+    public boolean isWarmupComplete() {
+        return warmupComplete;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("trialId", trialId)
+                .add("benchmark", benchmarkClassName + "#" + methodName + methodParameterClasses)
+                .add("instrument", instrumentClassName)
+                .add("instrumentOptions", instrumentOptions)
+                .add("userParameters", userParameters)
+                .toString();
+    }
+}
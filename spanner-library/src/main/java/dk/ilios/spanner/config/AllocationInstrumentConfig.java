@@ -0,0 +1,140 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.config;
+
+import dk.ilios.spanner.internal.AllocationInstrument;
+import dk.ilios.spanner.internal.Instrument;
+import dk.ilios.spanner.vm.AllocationCounter;
+
+/**
+ * Configuration for the {@link AllocationInstrument} that measures the number of bytes and objects allocated pr.
+ * rep by {@link dk.ilios.spanner.Benchmark} methods.
+ *
+ * The bytes allocated pr. rep is the primary measurement of allocation trials, so the failure limits in
+ * {@link dk.ilios.spanner.SpannerConfig} will work on allocations the same way they work on runtime.
+ */
+public class AllocationInstrumentConfig extends InstrumentConfig {
+
+    private static final String KEY_CLASS = "class";
+    private static final String KEY_MEASUREMENTS = "measurements";
+    private static final String KEY_MAX_REPS = "maxReps";
+
+    private final Class<? extends Instrument> instrumentClass;
+    private final int measurements;
+    private final int maxReps;
+    private final AllocationCounter allocationCounter;
+
+    /**
+     * Returns the default configuration.
+     */
+    public static AllocationInstrumentConfig defaultConfig() {
+        return new AllocationInstrumentConfig.Builder().build();
+    }
+
+    /**
+     * Returns a configuration suitable for being used by unit tests.
+     */
+    public static AllocationInstrumentConfig unittestConfig() {
+        return new AllocationInstrumentConfig.Builder()
+                .measurements(3)
+                .maxReps(10)
+                .build();
+    }
+
+    private AllocationInstrumentConfig(Builder builder) {
+        super(builder.instrumentClass);
+        this.instrumentClass = builder.instrumentClass;
+        this.measurements = builder.measurements;
+        this.maxReps = builder.maxReps;
+        this.allocationCounter = builder.allocationCounter;
+
+        addOption(KEY_CLASS, instrumentClass.getName());
+        addOption(KEY_MEASUREMENTS, Integer.toString(measurements));
+        addOption(KEY_MAX_REPS, Integer.toString(maxReps));
+    }
+
+    public int measurements() {
+        return measurements;
+    }
+
+    public int maxReps() {
+        return maxReps;
+    }
+
+    /**
+     * Returns the allocation counter to use or {@code null} if the default counter for the VM should be used.
+     */
+    public AllocationCounter allocationCounter() {
+        return allocationCounter;
+    }
+
+    /**
+     * Builder for configuring an Allocation Instrument.
+     */
+    public static class Builder {
+        private Class<? extends Instrument> instrumentClass = AllocationInstrument.class;
+        private int measurements = 9;
+        private int maxReps = 100;
+        private AllocationCounter allocationCounter = null;
+
+        public Builder instrumentClass(Class<? extends Instrument> instrumentClass) {
+            this.instrumentClass = instrumentClass;
+            return this;
+        }
+
+        /**
+         * Number of measurements to record. These will provide the basis for the final benchmark result.
+         *
+         * @param measurements Number of measurements to do. Default value is {@code 9}.
+         */
+        public Builder measurements(int measurements) {
+            this.measurements = measurements;
+            return this;
+        }
+
+        /**
+         * Maximum number of reps used for a single measurement. Each measurement uses a random number of reps
+         * between 1 and this value.
+         *
+         * @param maxReps Maximum number of reps. Default value is {@code 100}.
+         */
+        public Builder maxReps(int maxReps) {
+            if (maxReps < 1) {
+                throw new IllegalArgumentException("maxReps must be at least 1: " + maxReps);
+            }
+            this.maxReps = maxReps;
+            return this;
+        }
+
+        /**
+         * Set a custom allocation counter. This can be used on VMs not supported by Spanner out of the box.
+         *
+         * Default is the counter returned by {@link dk.ilios.spanner.vm.Platform#allocationCounter()}.
+         */
+        public Builder allocationCounter(AllocationCounter allocationCounter) {
+            if (allocationCounter == null) {
+                throw new IllegalArgumentException("Non-null allocation counter required.");
+            }
+            this.allocationCounter = allocationCounter;
+            return this;
+        }
+
+        public AllocationInstrumentConfig build() {
+            return new AllocationInstrumentConfig(this);
+        }
+    }
+}
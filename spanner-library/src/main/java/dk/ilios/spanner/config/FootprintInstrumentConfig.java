@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.config;
+
+import dk.ilios.spanner.internal.FootprintInstrument;
+import dk.ilios.spanner.internal.Instrument;
+import dk.ilios.spanner.memory.MemoryLayout;
+
+/**
+ * Configuration for the {@link FootprintInstrument} that measures the memory footprint of objects returned by
+ * {@link dk.ilios.spanner.Footprint} methods.
+ */
+public class FootprintInstrumentConfig extends InstrumentConfig {
+
+    private static final String KEY_CLASS = "class";
+    private static final String KEY_MEASUREMENTS = "measurements";
+    private static final String KEY_MEMORY_LAYOUT = "memoryLayout";
+
+    private final Class<? extends Instrument> instrumentClass;
+    private final int measurements;
+    private final MemoryLayout memoryLayout;
+
+    /**
+     * Returns the default configuration.
+     */
+    public static FootprintInstrumentConfig defaultConfig() {
+        return new FootprintInstrumentConfig.Builder().build();
+    }
+
+    /**
+     * Returns a configuration suitable for being used by unit tests.
+     */
+    public static FootprintInstrumentConfig unittestConfig() {
+        return new FootprintInstrumentConfig.Builder()
+                .measurements(1)
+                .build();
+    }
+
+    private FootprintInstrumentConfig(Builder builder) {
+        super(builder.instrumentClass);
+        this.instrumentClass = builder.instrumentClass;
+        this.measurements = builder.measurements;
+        this.memoryLayout = builder.memoryLayout;
+
+        addOption(KEY_CLASS, instrumentClass.getName());
+        addOption(KEY_MEASUREMENTS, Integer.toString(measurements));
+        addOption(KEY_MEMORY_LAYOUT, memoryLayout.toString());
+    }
+
+    public int measurements() {
+        return measurements;
+    }
+
+    public MemoryLayout memoryLayout() {
+        return memoryLayout;
+    }
+
+    /**
+     * Builder for configuring a Footprint Instrument.
+     */
+    public static class Builder {
+        private Class<? extends Instrument> instrumentClass = FootprintInstrument.class;
+        private int measurements = 3;
+        private MemoryLayout memoryLayout = MemoryLayout.forCurrentVm();
+
+        public Builder instrumentClass(Class<? extends Instrument> instrumentClass) {
+            this.instrumentClass = instrumentClass;
+            return this;
+        }
+
+        /**
+         * Number of measurements to record. Each measurement calls the footprint method again and measures the new
+         * object.
+         *
+         * @param measurements Number of measurements to do. Default value is {@code 3}.
+         */
+        public Builder measurements(int measurements) {
+            this.measurements = measurements;
+            return this;
+        }
+
+        /**
+         * Set the memory layout used to estimate the size of objects. The layout is part of the instrument
+         * options, so only results estimated using the same layout are compared against each other.
+         *
+         * Default is the layout returned by {@link MemoryLayout#forCurrentVm()}.
+         */
+        public Builder memoryLayout(MemoryLayout memoryLayout) {
+            if (memoryLayout == null) {
+                throw new IllegalArgumentException("Non-null memory layout required.");
+            }
+            this.memoryLayout = memoryLayout;
+            return this;
+        }
+
+        public FootprintInstrumentConfig build() {
+            return new FootprintInstrumentConfig(this);
+        }
+    }
+}
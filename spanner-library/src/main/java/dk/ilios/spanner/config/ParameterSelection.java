@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.config;
+
+import com.google.common.base.Objects;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Describes which combinations of {@link dk.ilios.spanner.Param} values experiments are created for.
+ * <p>
+ * Running every combination quickly becomes too expensive for benchmarks with many parameters, so it is also possible
+ * to only run a combination of every pair of values, a random sample of the combinations or to sweep a numeric
+ * parameter, adding values where the result changes sharply.
+ */
+public final class ParameterSelection {
+
+    public enum Type {
+        /**
+         * Every combination of parameter values.
+         */
+        FULL_CARTESIAN,
+
+        /**
+         * The smallest set of combinations found that contains every pair of values of any two parameters.
+         */
+        PAIRWISE,
+
+        /**
+         * A random sample of the combinations.
+         */
+        RANDOM,
+
+        /**
+         * Every combination of the configured values, after which values of a numeric parameter are added between
+         * neighbouring values where the result changes more than a threshold.
+         */
+        ADAPTIVE_SWEEP
+    }
+
+    private static final ParameterSelection FULL_CARTESIAN = new ParameterSelection(Type.FULL_CARTESIAN, 0, 0L,
+            null, 0, 0, 0);
+    private static final ParameterSelection PAIRWISE = new ParameterSelection(Type.PAIRWISE, 0, 0L, null, 0, 0, 0);
+
+    private final Type type;
+    private final int sampleSize;
+    private final long seed;
+    private final String sweepParameter;
+    private final double changeThreshold;
+    private final int maxRounds;
+    private final int maxValuesPrRound;
+
+    private ParameterSelection(Type type, int sampleSize, long seed, String sweepParameter, double changeThreshold,
+                               int maxRounds, int maxValuesPrRound) {
+        this.type = type;
+        this.sampleSize = sampleSize;
+        this.seed = seed;
+        this.sweepParameter = sweepParameter;
+        this.changeThreshold = changeThreshold;
+        this.maxRounds = maxRounds;
+        this.maxValuesPrRound = maxValuesPrRound;
+    }
+
+    /**
+     * Run every combination of parameter values. This is the default.
+     */
+    public static ParameterSelection fullCartesian() {
+        return FULL_CARTESIAN;
+    }
+
+    /**
+     * Run a set of combinations that contains every pair of values of any two parameters. This usually finds the
+     * same problems as running every combination, as most effects depend on at most two parameters.
+     */
+    public static ParameterSelection pairwise() {
+        return PAIRWISE;
+    }
+
+    /**
+     * Run a random sample of the combinations. The same seed selects the same combinations.
+     *
+     * @param sampleSize number of combinations to run.
+     * @param seed seed of the random sample.
+     */
+    public static ParameterSelection random(int sampleSize, long seed) {
+        checkArgument(sampleSize > 0, "Sample size must be positive: %s", sampleSize);
+        return new ParameterSelection(Type.RANDOM, sampleSize, seed, null, 0, 0, 0);
+    }
+
+    /**
+     * Sweep a numeric parameter. All combinations of the configured values are run first. After that a value is
+     * added halfway between two neighbouring values of the sweep parameter if the results for them differ more
+     * than {@code changeThreshold}, e.g. where the data set no longer fits in a cache. Values far apart, like sizes
+     * growing by powers of two, are split at the geometric mean.
+     * <p>
+     * The results are compared directly, so the benchmark should report a cost that is comparable across the values
+     * of the sweep parameter, e.g. the cost pr. element. Which values are added depends on all earlier results, so
+     * an adaptive sweep cannot be split into shards.
+     *
+     * @param parameter name of the numeric {@link dk.ilios.spanner.Param} field to sweep.
+     * @param changeThreshold relative change between neighbouring results that causes a value to be added, e.g.
+     * {@code 0.25} for 25%.
+     * @param maxRounds maximum number of times values are added.
+     * @param maxValuesPrRound maximum number of values added in each round, largest changes first.
+     */
+    public static ParameterSelection adaptiveSweep(String parameter, double changeThreshold, int maxRounds,
+                                                   int maxValuesPrRound) {
+        checkNotNull(parameter);
+        checkArgument(changeThreshold > 0, "Change threshold must be positive: %s", changeThreshold);
+        checkArgument(maxRounds > 0, "At least one round is required: %s", maxRounds);
+        checkArgument(maxValuesPrRound > 0, "At least one value pr. round is required: %s", maxValuesPrRound);
+        return new ParameterSelection(Type.ADAPTIVE_SWEEP, 0, 0L, parameter, changeThreshold, maxRounds,
+                maxValuesPrRound);
+    }
+
+    public Type type() {
+        return type;
+    }
+
+    public int sampleSize() {
+        return sampleSize;
+    }
+
+    public long seed() {
+        return seed;
+    }
+
+    public String sweepParameter() {
+        return sweepParameter;
+    }
+
+    public double changeThreshold() {
+        return changeThreshold;
+    }
+
+    public int maxRounds() {
+        return maxRounds;
+    }
+
+    public int maxValuesPrRound() {
+        return maxValuesPrRound;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        } else if (obj instanceof ParameterSelection) {
+            ParameterSelection that = (ParameterSelection) obj;
+            return this.type == that.type
+                    && this.sampleSize == that.sampleSize
+                    && this.seed == that.seed
+                    && Objects.equal(this.sweepParameter, that.sweepParameter)
+                    && this.changeThreshold == that.changeThreshold
+                    && this.maxRounds == that.maxRounds
+                    && this.maxValuesPrRound == that.maxValuesPrRound;
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(type, sampleSize, seed, sweepParameter, changeThreshold, maxRounds, maxValuesPrRound);
+    }
+
+    @Override
+    public String toString() {
+        switch (type) {
+            case FULL_CARTESIAN:
+                return "Full cartesian product";
+            case PAIRWISE:
+                return "Pairwise";
+            case RANDOM:
+                return String.format("Random sample of %d (seed %d)", sampleSize, seed);
+            case ADAPTIVE_SWEEP:
+                return String.format("Adaptive sweep of '%s' (threshold %.0f%%, max %d rounds of %d values)",
+                        sweepParameter, changeThreshold * 100, maxRounds, maxValuesPrRound);
+            default:
+                throw new AssertionError(type);
+        }
+    }
+}
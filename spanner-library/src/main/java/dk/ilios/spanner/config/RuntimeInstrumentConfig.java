@@ -21,6 +21,8 @@ import java.util.concurrent.TimeUnit;
 
 import dk.ilios.spanner.internal.Instrument;
 import dk.ilios.spanner.internal.RuntimeInstrument;
+import dk.ilios.spanner.internal.ThroughputInstrument;
+import dk.ilios.spanner.trial.TrialSchedulingPolicy;
 
 /**
  * Type safe configuration object for Runtime {@link dk.ilios.spanner.internal.Instrument}s.
@@ -38,6 +40,42 @@ public class RuntimeInstrumentConfig extends InstrumentConfig {
     private static final String KEY_MEASUREMENTS = "measurements";
     private static final String KEY_GC_BEFORE_EACH = "gcBeforeEach";
     private static final String KEY_SUGGEST_GRANULARITY = "suggestGranularity";
+    private static final String KEY_SUBTRACT_OVERHEAD = "subtractOverhead";
+    private static final String KEY_TARGET_PRECISION = "targetPrecision";
+    private static final String KEY_PRECISION_ESTIMATE = "precisionEstimate";
+    private static final String KEY_CONFIDENCE_LEVEL = "confidenceLevel";
+    private static final String KEY_MAX_MEASUREMENTS = "maxMeasurements";
+    private static final String KEY_MAX_MEASUREMENT_TIME = "maxMeasurement_time";
+    private static final String KEY_MAX_MEASUREMENT_TIMEUNIT = "maxMeasurement_unit";
+    private static final String KEY_WARMUP_POLICY = "warmupPolicy";
+    private static final String KEY_STEADY_STATE_WINDOW = "steadyStateWindow";
+    private static final String KEY_STEADY_STATE_TOLERANCE = "steadyStateTolerance";
+    private static final String KEY_LATENCY_SAMPLE_REPS = "latencySampleReps";
+    private static final String KEY_CPU_TIME = "cpuTime";
+
+    /**
+     * The estimate of the true runtime that the confidence interval is calculated around.
+     */
+    public enum Estimate {
+        MEAN,
+        MEDIAN
+    }
+
+    /**
+     * How to decide that warmup is complete.
+     */
+    public enum WarmupPolicy {
+        /**
+         * Warmup is complete when the benchmark method has run for the configured warmup time.
+         */
+        FIXED_TIME,
+
+        /**
+         * Warmup is complete when the runtime pr. rep has stopped drifting. The configured warmup time is the
+         * minimum amount of warmup.
+         */
+        STEADY_STATE
+    }
 
     private final Class<? extends Instrument> instrumentClass;
     private final long warmupTime;
@@ -49,6 +87,19 @@ public class RuntimeInstrumentConfig extends InstrumentConfig {
     private final int measurements;
     private final boolean gcBeforeEachMeasurement;
     private final boolean suggestGranularity;
+    private final boolean subtractOverhead;
+    private final TrialSchedulingPolicy schedulingPolicy;
+    private final double targetPrecision;
+    private final Estimate precisionEstimate;
+    private final double confidenceLevel;
+    private final int maxMeasurements;
+    private final long maxMeasurementTime;
+    private final TimeUnit maxMeasurementTimeUnit;
+    private final WarmupPolicy warmupPolicy;
+    private final int steadyStateWindow;
+    private final double steadyStateTolerance;
+    private final int latencySampleReps;
+    private final boolean measureCpuTime;
 
     /**
      * Returns the default configuration.
@@ -57,6 +108,17 @@ public class RuntimeInstrumentConfig extends InstrumentConfig {
         return new RuntimeInstrumentConfig.Builder().build();
     }
 
+    /**
+     * Returns the default configuration for {@link dk.ilios.spanner.Throughput} benchmarks. Each measurement is a 1
+     * second time slice.
+     */
+    public static RuntimeInstrumentConfig throughputConfig() {
+        return new RuntimeInstrumentConfig.Builder()
+                .instrumentClass(ThroughputInstrument.class)
+                .timingInterval(1, TimeUnit.SECONDS)
+                .build();
+    }
+
     /**
      * Returns a configuration suitable for being used by unit tests.
      */
@@ -82,6 +144,19 @@ public class RuntimeInstrumentConfig extends InstrumentConfig {
         this.measurements = builder.measurements;
         this.gcBeforeEachMeasurement = builder.gcBeforeEachMeasurement;
         this.suggestGranularity = builder.suggestGranularity;
+        this.subtractOverhead = builder.subtractOverhead;
+        this.schedulingPolicy = builder.schedulingPolicy;
+        this.targetPrecision = builder.targetPrecision;
+        this.precisionEstimate = builder.precisionEstimate;
+        this.confidenceLevel = builder.confidenceLevel;
+        this.maxMeasurements = builder.maxMeasurements;
+        this.maxMeasurementTime = builder.maxMeasurementTime;
+        this.maxMeasurementTimeUnit = builder.maxMeasurementTimeUnit;
+        this.warmupPolicy = builder.warmupPolicy;
+        this.steadyStateWindow = builder.steadyStateWindow;
+        this.steadyStateTolerance = builder.steadyStateTolerance;
+        this.latencySampleReps = builder.latencySampleReps;
+        this.measureCpuTime = builder.measureCpuTime;
 
         addOption(KEY_CLASS, instrumentClass.getName());
         addOption(KEY_WARMUP, Long.toString(warmupTime));
@@ -93,6 +168,29 @@ public class RuntimeInstrumentConfig extends InstrumentConfig {
         addOption(KEY_MEASUREMENTS, Long.toString(measurements));
         addOption(KEY_GC_BEFORE_EACH, Boolean.toString(gcBeforeEachMeasurement));
         addOption(KEY_SUGGEST_GRANULARITY, Boolean.toString(suggestGranularity));
+        if (subtractOverhead) {
+            // Only added when enabled, so baselines recorded before this option existed still match.
+            addOption(KEY_SUBTRACT_OVERHEAD, Boolean.toString(subtractOverhead));
+        }
+        if (isAdaptive()) {
+            addOption(KEY_TARGET_PRECISION, Double.toString(targetPrecision));
+            addOption(KEY_PRECISION_ESTIMATE, precisionEstimate.toString());
+            addOption(KEY_CONFIDENCE_LEVEL, Double.toString(confidenceLevel));
+            addOption(KEY_MAX_MEASUREMENTS, Integer.toString(maxMeasurements));
+            addOption(KEY_MAX_MEASUREMENT_TIME, Long.toString(maxMeasurementTime));
+            addOption(KEY_MAX_MEASUREMENT_TIMEUNIT, maxMeasurementTimeUnit.toString());
+        }
+        if (warmupPolicy == WarmupPolicy.STEADY_STATE) {
+            addOption(KEY_WARMUP_POLICY, warmupPolicy.toString());
+            addOption(KEY_STEADY_STATE_WINDOW, Integer.toString(steadyStateWindow));
+            addOption(KEY_STEADY_STATE_TOLERANCE, Double.toString(steadyStateTolerance));
+        }
+        if (isSamplingLatency()) {
+            addOption(KEY_LATENCY_SAMPLE_REPS, Integer.toString(latencySampleReps));
+        }
+        if (measureCpuTime) {
+            addOption(KEY_CPU_TIME, Boolean.toString(measureCpuTime));
+        }
     }
 
     public Class<? extends Instrument> instrumentationClass() {
@@ -135,6 +233,79 @@ public class RuntimeInstrumentConfig extends InstrumentConfig {
         return suggestGranularity;
     }
 
+    public boolean subtractOverhead() {
+        return subtractOverhead;
+    }
+
+    public TrialSchedulingPolicy schedulingPolicy() {
+        return schedulingPolicy;
+    }
+
+    /**
+     * Returns {@code true} if measurements are collected until the target precision is reached instead of a fixed
+     * number of measurements.
+     */
+    public boolean isAdaptive() {
+        return targetPrecision > 0;
+    }
+
+    public double targetPrecision() {
+        return targetPrecision;
+    }
+
+    public Estimate precisionEstimate() {
+        return precisionEstimate;
+    }
+
+    public double confidenceLevel() {
+        return confidenceLevel;
+    }
+
+    public int maxMeasurements() {
+        return maxMeasurements;
+    }
+
+    public long maxMeasurementTime() {
+        return maxMeasurementTime;
+    }
+
+    public TimeUnit maxMeasurementTimeUnit() {
+        return maxMeasurementTimeUnit;
+    }
+
+    public WarmupPolicy warmupPolicy() {
+        return warmupPolicy;
+    }
+
+    public int steadyStateWindow() {
+        return steadyStateWindow;
+    }
+
+    public double steadyStateTolerance() {
+        return steadyStateTolerance;
+    }
+
+    /**
+     * Returns {@code true} if the latency of individual invocations is recorded in a histogram.
+     */
+    public boolean isSamplingLatency() {
+        return latencySampleReps > 0;
+    }
+
+    /**
+     * Returns the number of reps timed together for each latency sample or {@code 0} if latency isn't sampled.
+     */
+    public int latencySampleReps() {
+        return latencySampleReps;
+    }
+
+    /**
+     * Returns {@code true} if the CPU time of the benchmark thread is measured together with the wall-clock time.
+     */
+    public boolean measureCpuTime() {
+        return measureCpuTime;
+    }
+
     /**
      * Builder for configuring a Runtime Instrument.
      */
@@ -149,6 +320,19 @@ public class RuntimeInstrumentConfig extends InstrumentConfig {
         private int measurements = 9;
         private boolean gcBeforeEachMeasurement = true;
         private boolean suggestGranularity = true;
+        private boolean subtractOverhead = false;
+        private TrialSchedulingPolicy schedulingPolicy = TrialSchedulingPolicy.SERIAL;
+        private double targetPrecision = 0;
+        private Estimate precisionEstimate = Estimate.MEDIAN;
+        private double confidenceLevel = 0.95;
+        private int maxMeasurements = 100;
+        private long maxMeasurementTime = 2;
+        private TimeUnit maxMeasurementTimeUnit = TimeUnit.MINUTES;
+        private WarmupPolicy warmupPolicy = WarmupPolicy.FIXED_TIME;
+        private int steadyStateWindow = 10;
+        private double steadyStateTolerance = 0.05;
+        private int latencySampleReps = 0;
+        private boolean measureCpuTime = false;
 
         public Builder instrumentClass(Class<? extends Instrument> instrumentClass) {
             this.instrumentClass = instrumentClass;
@@ -182,7 +366,8 @@ public class RuntimeInstrumentConfig extends InstrumentConfig {
 
         /**
          * Number of measurements to record after any warmup time. These will provide the basis for the
-         * final benchmark result.
+         * final benchmark result. In adaptive mode, see {@link #targetPrecision(double)}, this is the minimum number
+         * of measurements.
          *
          * @param measurements Number of measurements to do.
          */
@@ -213,6 +398,176 @@ public class RuntimeInstrumentConfig extends InstrumentConfig {
             return this;
         }
 
+        /**
+         * Subtract the overhead of the benchmark harness from all measurements. The overhead is measured by timing
+         * an empty benchmark method with the same signature before the trial starts. The uncorrected values are
+         * still available using {@link dk.ilios.spanner.model.Measurement#rawValue()}.
+         *
+         * Default value is {@code false}.
+         */
+        public Builder subtractOverhead(boolean subtractOverhead) {
+            this.subtractOverhead = subtractOverhead;
+            return this;
+        }
+
+        /**
+         * Whether trials can run at the same time as other trials. Running trials in parallel is faster, but the
+         * trials compete for CPU, memory bandwidth and caches. The number of trials running at the same time is
+         * recorded in the {@link dk.ilios.spanner.model.Host} of each trial, and results are only compared against
+         * baselines measured under the same conditions.
+         *
+         * Default value is {@link TrialSchedulingPolicy#SERIAL}.
+         */
+        public Builder schedulingPolicy(TrialSchedulingPolicy schedulingPolicy) {
+            if (schedulingPolicy == null) {
+                throw new IllegalArgumentException("Non-null scheduling policy required.");
+            }
+            this.schedulingPolicy = schedulingPolicy;
+            return this;
+        }
+
+        /**
+         * Enables adaptive collection. Instead of stopping after a fixed number of measurements, measurements are
+         * collected until the confidence interval around the estimate is narrow enough, or until
+         * {@link #maxMeasurements(int)} or {@link #maxMeasurementTime(long, TimeUnit)} is reached.
+         *
+         * The precision is the half width of the confidence interval relative to the estimate, so {@code 0.01} stops
+         * when the true value is within &plusmn;1% of the estimate.
+         *
+         * Default value is {@code 0}, which disables adaptive collection.
+         *
+         * @param targetPrecision relative half width of the confidence interval.
+         */
+        public Builder targetPrecision(double targetPrecision) {
+            if (targetPrecision < 0) {
+                throw new IllegalArgumentException("Target precision must be positive: " + targetPrecision);
+            }
+            this.targetPrecision = targetPrecision;
+            return this;
+        }
+
+        /**
+         * The estimate the confidence interval is calculated around when collecting adaptively.
+         *
+         * Default value is {@link Estimate#MEDIAN}.
+         */
+        public Builder precisionEstimate(Estimate estimate) {
+            if (estimate == null) {
+                throw new IllegalArgumentException("Non-null estimate required.");
+            }
+            this.precisionEstimate = estimate;
+            return this;
+        }
+
+        /**
+         * The confidence level of the confidence interval.
+         *
+         * Default value is {@code 0.95}.
+         */
+        public Builder confidenceLevel(double confidenceLevel) {
+            if (confidenceLevel <= 0 || confidenceLevel >= 1) {
+                throw new IllegalArgumentException("Confidence level must be between 0 and 1: " + confidenceLevel);
+            }
+            this.confidenceLevel = confidenceLevel;
+            return this;
+        }
+
+        /**
+         * Maximum number of measurements to record when collecting adaptively.
+         *
+         * Measurements that were discarded because of GC or compilation during timing count towards this limit.
+         *
+         * Default value is {@code 100}.
+         */
+        public Builder maxMeasurements(int maxMeasurements) {
+            if (maxMeasurements < 1) {
+                throw new IllegalArgumentException("At least one measurement is required: " + maxMeasurements);
+            }
+            this.maxMeasurements = maxMeasurements;
+            return this;
+        }
+
+        /**
+         * Maximum amount of wall clock time spent measuring after warmup when collecting adaptively.
+         *
+         * Default value is {@code 2 min}.
+         */
+        public Builder maxMeasurementTime(long maxMeasurementTime, TimeUnit unit) {
+            this.maxMeasurementTime = maxMeasurementTime;
+            this.maxMeasurementTimeUnit = unit;
+            return this;
+        }
+
+        /**
+         * How to decide that warmup is complete. The max warmup time always applies.
+         *
+         * Default value is {@link WarmupPolicy#FIXED_TIME}.
+         */
+        public Builder warmupPolicy(WarmupPolicy warmupPolicy) {
+            if (warmupPolicy == null) {
+                throw new IllegalArgumentException("Non-null warmup policy required.");
+            }
+            this.warmupPolicy = warmupPolicy;
+            return this;
+        }
+
+        /**
+         * Configures steady state detection used by {@link WarmupPolicy#STEADY_STATE}. Warmup is complete when the
+         * medians of the older and newer half of the last {@code window} warmup measurements differ by less than
+         * {@code tolerance} and the measurements show no significant trend.
+         *
+         * Default values are a window of {@code 10} measurements and a tolerance of {@code 0.05} (5%).
+         */
+        public Builder steadyState(int window, double tolerance) {
+            if (window < 4) {
+                throw new IllegalArgumentException("Window must contain at least 4 measurements: " + window);
+            }
+            if (tolerance < 0) {
+                throw new IllegalArgumentException("Tolerance must be positive: " + tolerance);
+            }
+            this.steadyStateWindow = window;
+            this.steadyStateTolerance = tolerance;
+            return this;
+        }
+
+        /**
+         * Enables latency sampling. Instead of timing all reps of a measurement together, each invocation with
+         * {@code repsPrSample} reps is timed on its own and its runtime is recorded in a
+         * {@link dk.ilios.spanner.model.LatencyHistogram}. Trials then report the p50, p90, p99, p99.9 and max
+         * latency pr. rep, and the histogram is saved with the trial. The total runtime of each sample is kept, so
+         * the latency of reps faster than a nanosecond is not rounded away.
+         *
+         * Reading the timer for every sample adds overhead, so use the smallest number of reps where the timer
+         * granularity is not a problem. Macro benchmarks always time each invocation on its own.
+         *
+         * Default value is {@code 0}, which disables latency sampling.
+         */
+        public Builder sampleLatency(int repsPrSample) {
+            if (repsPrSample < 0) {
+                throw new IllegalArgumentException("Reps pr. sample must be positive: " + repsPrSample);
+            }
+            this.latencySampleReps = repsPrSample;
+            return this;
+        }
+
+        /**
+         * Measure the CPU time used by the benchmark thread in addition to the wall-clock time. CPU time is not
+         * affected by the thread being preempted or blocked, so it is more stable on busy machines. Trials then
+         * report the {@code cpu time} pr. rep and the {@code cpu/wall} ratio of each measurement. Where the VM supports
+         * it, trials using at least a second of CPU time after warmup also report their total split into
+         * {@code user cpu time} and {@code system cpu time}, as user time is only updated every scheduler tick. A ratio
+         * well below 1 means the benchmark spent time waiting or was not scheduled.
+         *
+         * The wall-clock runtime is still the primary result. CPU time is not measured for benchmarks using more
+         * than one thread.
+         *
+         * Default value is {@code false}.
+         */
+        public Builder measureCpuTime(boolean measureCpuTime) {
+            this.measureCpuTime = measureCpuTime;
+            return this;
+        }
+
         public RuntimeInstrumentConfig build() {
             return new RuntimeInstrumentConfig(this);
         }
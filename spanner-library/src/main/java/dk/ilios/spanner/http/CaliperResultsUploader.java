@@ -25,8 +25,12 @@ import com.sun.jersey.api.client.ClientHandlerException;
 import com.sun.jersey.api.client.UniformInterfaceException;
 import com.sun.jersey.api.client.WebResource;
 
+import java.io.File;
+import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
@@ -39,7 +43,7 @@ import dk.ilios.spanner.config.InvalidConfigurationException;
 import dk.ilios.spanner.config.ResultProcessorConfig;
 import dk.ilios.spanner.log.StdOut;
 import dk.ilios.spanner.model.Trial;
-import dk.ilios.spanner.output.ResultProcessor;
+import dk.ilios.spanner.output.BatchResultProcessor;
 
 import static java.util.logging.Level.SEVERE;
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON_TYPE;
@@ -48,10 +52,13 @@ import static javax.ws.rs.core.MediaType.APPLICATION_JSON_TYPE;
  * {@link ResultProcessor} implementation that uploads the JSON-serialized results to the Caliper
  * webapp at https://microbenchmarks.appspot.com/
  */
-abstract class CaliperResultsUploader implements ResultProcessor {
+abstract class CaliperResultsUploader implements BatchResultProcessor {
     private static final Logger logger = Logger.getLogger(CaliperResultsUploader.class.getName());
     private static final String POST_PATH = "/data/trials";
     private static final String RESULTS_PATH_PATTERN = "/runs/%s";
+    private static final long INITIAL_BACKOFF_MILLIS = TimeUnit.SECONDS.toMillis(1);
+    private static final long MAX_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    private static final long DRAIN_TIMEOUT_SECONDS = 30;
 
     private final StdOut stdout;
     private final Client client;
@@ -61,6 +68,7 @@ abstract class CaliperResultsUploader implements ResultProcessor {
     private Optional<UUID> runId = Optional.absent();
     private boolean failure = false;
     private ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Optional<UploadQueue> queue;
 
     CaliperResultsUploader(StdOut stdout, Gson gson, Client client, ResultProcessorConfig resultProcessorConfig) throws InvalidConfigurationException {
         this.stdout = stdout;
@@ -92,15 +100,78 @@ abstract class CaliperResultsUploader implements ResultProcessor {
                 throw new InvalidConfigurationException(urlString + " is an invalid upload url", e);
             }
         }
+
+        // If a spool folder is given, trials are queued on disk and uploaded in batches in the background.
+        String spoolDir = resultProcessorConfig.options().get("spool");
+        if (uploadUri.isPresent() && !Strings.isNullOrEmpty(spoolDir)) {
+            // Don't let a dead connection stall the background upload forever.
+            client.setConnectTimeout((int) TimeUnit.SECONDS.toMillis(30));
+            client.setReadTimeout((int) TimeUnit.MINUTES.toMillis(1));
+            try {
+                UploadQueue queue = new UploadQueue(new File(spoolDir), gson, new UploadQueue.Sender() {
+                    @Override
+                    public void send(byte[] gzippedJson) throws Exception {
+                        sendBatch(gzippedJson);
+                    }
+                }, INITIAL_BACKOFF_MILLIS, MAX_BACKOFF_MILLIS);
+                queue.start();
+                this.queue = Optional.of(queue);
+            } catch (IOException e) {
+                throw new InvalidConfigurationException("Could not use upload spool folder: " + spoolDir, e);
+            }
+        } else {
+            this.queue = Optional.absent();
+        }
+    }
+
+    private WebResource uploadResource() {
+        WebResource resource = client.resource(uploadUri.get());
+        if (apiKey.isPresent()) {
+            resource = resource.queryParam("key", apiKey.get().toString());
+        }
+        return resource;
+    }
+
+    private void sendBatch(byte[] gzippedJson) throws UploadQueue.RejectedBatchException {
+        try {
+            uploadResource().type(APPLICATION_JSON_TYPE).header("Content-Encoding", "gzip").post(gzippedJson);
+        } catch (UniformInterfaceException e) {
+            int status = e.getResponse().getStatus();
+            // Client errors won't go away by retrying, except timeouts and rate limiting.
+            if (status >= 400 && status < 500 && status != 408 && status != 429) {
+                throw new UploadQueue.RejectedBatchException("Upload failed with status " + status, e);
+            }
+            throw e;
+        }
     }
 
     @Override
-    public final void processTrial(final Trial trial) {
-        if (uploadUri.isPresent()) {
-            WebResource resource = client.resource(uploadUri.get());
-            if (apiKey.isPresent()) {
-                resource = resource.queryParam("key", apiKey.get().toString());
+    public final void processTrials(List<Trial> trials) {
+        if (queue.isPresent()) {
+            try {
+                queue.get().add(trials);
+                runId = Optional.of(trials.get(trials.size() - 1).run().id());
+            } catch (IOException e) {
+                failure = true;
+                for (Trial trial : trials) {
+                    logUploadFailure(trial, e);
+                }
             }
+        } else {
+            for (Trial trial : trials) {
+                uploadTrial(trial);
+            }
+        }
+    }
+
+    @Override
+    public final void processTrial(Trial trial) {
+        processTrials(Collections.singletonList(trial));
+    }
+
+    private void uploadTrial(final Trial trial) {
+        if (uploadUri.isPresent()) {
+            WebResource resource = uploadResource();
             boolean threw = true;
             try {
                 // FIXME Cheating the Android kill switch when doing network on the UI thread.
@@ -145,7 +216,10 @@ abstract class CaliperResultsUploader implements ResultProcessor {
 
     @Override
     public final void close() {
-        if (uploadUri.isPresent()) {
+        executor.shutdown();
+        if (queue.isPresent()) {
+            closeQueue(queue.get());
+        } else if (uploadUri.isPresent()) {
             if (runId.isPresent()) {
                 stdout.printf("Results have been uploaded. View them at: %s%n",
                         uploadUri.get().resolve(String.format(RESULTS_PATH_PATTERN, runId.get())));
@@ -158,4 +232,25 @@ abstract class CaliperResultsUploader implements ResultProcessor {
             logger.fine("No upload URL was provided, so results were not uploaded.");
         }
     }
+
+    private void closeQueue(UploadQueue queue) {
+        int pending;
+        try {
+            pending = queue.close(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            pending = queue.pendingBatches();
+        }
+        if (runId.isPresent() && queue.uploadedBatches() > 0) {
+            stdout.printf("Results have been uploaded. View them at: %s%n",
+                    uploadUri.get().resolve(String.format(RESULTS_PATH_PATTERN, runId.get())));
+        }
+        if (pending > 0) {
+            stdout.printf("%d batches of trials could not be uploaded yet. They will be uploaded by the next run.%n",
+                    pending);
+        }
+        if (failure) {
+            stdout.println("Some trials could not be queued for upload. Consider uploading them manually.");
+        }
+    }
 }
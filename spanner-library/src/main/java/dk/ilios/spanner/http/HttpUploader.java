@@ -37,11 +37,14 @@ public class HttpUploader extends CaliperResultsUploader {
     }
 
     private static ResultProcessorConfig getConfig(SpannerConfig config) {
-        return new ResultProcessorConfig.Builder()
+        ResultProcessorConfig.Builder builder = new ResultProcessorConfig.Builder()
                 .addOption("key", config.getApiKey())
                 .addOption("url", config.getUploadUrl().toString())
-                .className(HttpUploader.class.getName())
-                .build();
+                .className(HttpUploader.class.getName());
+        if (config.getUploadSpoolDir() != null) {
+            builder.addOption("spool", config.getUploadSpoolDir().getAbsolutePath());
+        }
+        return builder.build();
 
 
     }
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.http;
+
+import com.google.common.io.Files;
+import com.google.gson.Gson;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+
+import dk.ilios.spanner.model.Trial;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * A queue of trials waiting to be uploaded, stored on disk so no results are lost if the network or the process goes
+ * away.
+ * <p>
+ * Each batch of trials is written as a gzipped JSON array to its own file in the spool folder. A low priority
+ * background thread sends the files in the order they were written and deletes them once the server has accepted
+ * them. Failed uploads are retried with exponential backoff. Files left behind by an earlier process are sent as
+ * soon as the queue is started again.
+ */
+final class UploadQueue {
+
+    private static final Logger logger = Logger.getLogger(UploadQueue.class.getName());
+
+    static final String BATCH_SUFFIX = ".json.gz";
+    static final String REJECTED_SUFFIX = ".rejected";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Sends a single batch to the server.
+     */
+    interface Sender {
+
+        /**
+         * Sends the gzipped JSON array of trials.
+         *
+         * @throws RejectedBatchException if the server will never accept the batch.
+         * @throws Exception if the upload failed and should be retried.
+         */
+        void send(byte[] gzippedJson) throws Exception;
+    }
+
+    /**
+     * Thrown by a {@link Sender} if retrying the batch is pointless, e.g. because the server considers it malformed.
+     */
+    static final class RejectedBatchException extends Exception {
+        RejectedBatchException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    private final File dir;
+    private final Gson gson;
+    private final Sender sender;
+    private final long initialBackoffMillis;
+    private final long maxBackoffMillis;
+    private final Object lock = new Object();
+    private final Thread thread;
+    private long sequence = 0;
+    private int uploadedBatches = 0;
+    private boolean stopped = false;
+
+    /**
+     * @param dir folder batches are spooled to. It is created if it doesn't exist.
+     * @param initialBackoffMillis time to wait before retrying the first failed upload.
+     * @param maxBackoffMillis maximum time to wait between retries.
+     */
+    UploadQueue(File dir, Gson gson, Sender sender, long initialBackoffMillis, long maxBackoffMillis)
+            throws IOException {
+        checkArgument(initialBackoffMillis > 0, "Backoff must be positive: %s", initialBackoffMillis);
+        checkArgument(maxBackoffMillis >= initialBackoffMillis, "Max backoff must be >= initial backoff");
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Could not create upload spool folder: " + dir);
+        }
+        this.dir = dir;
+        this.gson = gson;
+        this.sender = sender;
+        this.initialBackoffMillis = initialBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                sendAll();
+            }
+        }, "Spanner result upload");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.setDaemon(true);
+
+        // Batches only partially written by an earlier process were never handed to the queue.
+        for (File file : listFiles(TEMP_SUFFIX)) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Starts sending batches, including those left behind by earlier processes.
+     */
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Writes the trials to the spool folder as one batch. The batch is uploaded by the background thread.
+     */
+    void add(List<Trial> trials) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Writer writer = new OutputStreamWriter(new GZIPOutputStream(bytes), "UTF-8");
+        try {
+            gson.toJson(trials, writer);
+        } finally {
+            writer.close();
+        }
+
+        synchronized (lock) {
+            checkState(!stopped, "Upload queue is closed");
+            // The name sorts in the order batches are added, also across processes.
+            String name = String.format("%013d-%06d", System.currentTimeMillis(), sequence++);
+            File temp = new File(dir, name + TEMP_SUFFIX);
+            Files.write(bytes.toByteArray(), temp);
+            if (!temp.renameTo(new File(dir, name + BATCH_SUFFIX))) {
+                temp.delete();
+                throw new IOException("Could not add batch to upload spool: " + dir);
+            }
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Returns the number of batches waiting to be uploaded.
+     */
+    int pendingBatches() {
+        return listFiles(BATCH_SUFFIX).length;
+    }
+
+    /**
+     * Returns the number of batches uploaded since the queue was started.
+     */
+    int uploadedBatches() {
+        synchronized (lock) {
+            return uploadedBatches;
+        }
+    }
+
+    /**
+     * Waits up to the given time for all batches to be uploaded and stops the background thread. Batches that
+     * couldn't be uploaded in time stay in the spool folder and are sent the next time a queue is started for it.
+     *
+     * @return the number of batches still waiting to be uploaded.
+     */
+    int close(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (lock) {
+            long remaining;
+            while (pendingBatches() > 0 && (remaining = deadline - System.nanoTime()) > 0) {
+                TimeUnit.NANOSECONDS.timedWait(lock, remaining);
+            }
+            stopped = true;
+            lock.notifyAll();
+        }
+        thread.interrupt();
+        thread.join();
+        return pendingBatches();
+    }
+
+    private void sendAll() {
+        long backoffMillis = initialBackoffMillis;
+        while (true) {
+            File batch = null;
+            synchronized (lock) {
+                while (!stopped && (batch = oldestBatch()) == null) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException ignored) {
+                        // Only close() stops the thread.
+                    }
+                }
+                if (stopped) {
+                    return;
+                }
+            }
+
+            try {
+                sender.send(Files.toByteArray(batch));
+                batch.delete();
+                backoffMillis = initialBackoffMillis;
+                synchronized (lock) {
+                    uploadedBatches++;
+                    lock.notifyAll();
+                }
+            } catch (RejectedBatchException e) {
+                logger.log(Level.SEVERE, "The server rejected " + batch + ". It will not be uploaded again.", e);
+                batch.renameTo(new File(dir, batch.getName() + REJECTED_SUFFIX));
+                synchronized (lock) {
+                    lock.notifyAll();
+                }
+            } catch (Exception e) {
+                logger.log(Level.WARNING, String.format("Could not upload %s. Retrying in %d ms.",
+                        batch, backoffMillis), e);
+                synchronized (lock) {
+                    if (stopped) {
+                        return;
+                    }
+                    try {
+                        lock.wait(backoffMillis);
+                    } catch (InterruptedException ignored) {
+                        // Checked by the outer loop.
+                    }
+                }
+                backoffMillis = Math.min(backoffMillis * 2, maxBackoffMillis);
+            }
+        }
+    }
+
+    private File oldestBatch() {
+        File[] batches = listFiles(BATCH_SUFFIX);
+        if (batches.length == 0) {
+            return null;
+        }
+        Arrays.sort(batches);
+        return batches[0];
+    }
+
+    private File[] listFiles(final String suffix) {
+        File[] files = dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(suffix);
+            }
+        });
+        return files != null ? files : new File[0];
+    }
+}
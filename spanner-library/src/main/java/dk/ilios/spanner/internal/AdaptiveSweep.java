@@ -0,0 +1,214 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.internal;
+
+import com.google.common.primitives.Primitives;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import dk.ilios.spanner.config.ParameterSelection;
+import dk.ilios.spanner.model.Trial;
+
+/**
+ * Chooses new values of a numeric parameter between neighbouring values where the results change sharply.
+ * <p>
+ * Experiments that only differ in the value of the swept parameter form a curve. Every round, the neighbouring
+ * points with the largest relative change in median result are split, until no change is above the threshold or
+ * the maximum number of rounds is reached.
+ */
+final class AdaptiveSweep {
+
+    private static final Set<Class<?>> INTEGRAL_TYPES = new HashSet<Class<?>>(
+            Arrays.<Class<?>>asList(Byte.class, Short.class, Integer.class, Long.class));
+    private static final Set<Class<?>> DECIMAL_TYPES = new HashSet<Class<?>>(
+            Arrays.<Class<?>>asList(Float.class, Double.class));
+
+    // Points further apart than this are split at the geometric mean instead of the arithmetic mean.
+    private static final double GEOMETRIC_SPLIT_RATIO = 4;
+
+    private final ParameterSelection selection;
+    private final String parameter;
+    private final boolean integral;
+    private final Map<String, Curve> curves = new HashMap<>();
+    private final Set<String> scheduled = new HashSet<>();
+    private int rounds = 0;
+
+    AdaptiveSweep(ParameterSelection selection, Class<?> parameterType, Iterable<String> values)
+            throws InvalidBenchmarkException {
+        this.selection = selection;
+        this.parameter = selection.sweepParameter();
+        Class<?> type = Primitives.wrap(parameterType);
+        if (!INTEGRAL_TYPES.contains(type) && !DECIMAL_TYPES.contains(type)) {
+            throw new InvalidBenchmarkException("Parameter '%s' must be numeric to be swept: %s", parameter, type);
+        }
+        this.integral = INTEGRAL_TYPES.contains(type);
+        for (String value : values) {
+            try {
+                Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                throw new InvalidBenchmarkException("Value '%s' of parameter '%s' is not a number", value, parameter);
+            }
+        }
+    }
+
+    /**
+     * Records that an experiment is going to run, so it isn't chosen again.
+     */
+    void scheduled(Experiment experiment) {
+        scheduled.add(key(experiment, experiment.userParameters()));
+    }
+
+    /**
+     * Returns new experiments between the points where the results of the given trials changed the most, or an
+     * empty list if the sweep is complete.
+     */
+    List<Experiment> refine(Iterable<Trial> trials) throws InvalidBenchmarkException {
+        for (Trial trial : trials) {
+            Experiment experiment = trial.experiment();
+            if (experiment == null || !trial.isResultsCalculated() || trial.statistics().count() == 0) {
+                continue;
+            }
+            SortedMap<String, String> others = new TreeMap<>(experiment.userParameters());
+            double value = Double.parseDouble(others.remove(parameter));
+            String curveKey = key(experiment, others);
+            Curve curve = curves.get(curveKey);
+            if (curve == null) {
+                curve = new Curve(experiment);
+                curves.put(curveKey, curve);
+            }
+            curve.add(value, trial.getMedian());
+        }
+
+        if (rounds >= selection.maxRounds()) {
+            return Collections.emptyList();
+        }
+        rounds++;
+
+        List<Split> splits = new ArrayList<>();
+        for (Curve curve : curves.values()) {
+            curve.findSplits(splits);
+        }
+        Collections.sort(splits, new Comparator<Split>() {
+            @Override
+            public int compare(Split lhs, Split rhs) {
+                return Double.compare(rhs.change, lhs.change);
+            }
+        });
+
+        List<Experiment> experiments = new ArrayList<>();
+        for (Split split : splits) {
+            if (experiments.size() == selection.maxValuesPrRound()) {
+                break;
+            }
+            Experiment template = split.curve.template;
+            Map<String, String> parameters = new TreeMap<>(template.userParameters());
+            parameters.put(parameter, split.value);
+            String experimentKey = key(template, parameters);
+            if (scheduled.add(experimentKey)) {
+                Instrument instrument = template.instrumentation().instrument();
+                Method method = template.instrumentation().benchmarkMethod();
+                experiments.add(new Experiment(instrument.createInstrumentation(method), parameters));
+            }
+        }
+        return experiments;
+    }
+
+    /**
+     * Returns the formatted value halfway between two points or {@code null} if there is no such value.
+     */
+    private String split(double lower, double upper) {
+        double value = (lower > 0 && upper / lower >= GEOMETRIC_SPLIT_RATIO)
+                ? Math.sqrt(lower * upper)
+                : (lower + upper) / 2;
+        if (integral) {
+            long rounded = Math.round(value);
+            return (rounded > lower && rounded < upper) ? Long.toString(rounded) : null;
+        } else {
+            return (value > lower && value < upper) ? Double.toString(value) : null;
+        }
+    }
+
+    private static String key(Experiment experiment, Map<String, String> parameters) {
+        Instrument instrument = experiment.instrumentation().instrument();
+        Method method = experiment.instrumentation().benchmarkMethod();
+        return instrument.getSpec().className() + instrument.getSpec().options()
+                + "/" + method.getDeclaringClass().getName() + "#" + method.getName()
+                + new TreeMap<>(parameters);
+    }
+
+    private static final class Split {
+        final Curve curve;
+        final String value;
+        final double change;
+
+        Split(Curve curve, String value, double change) {
+            this.curve = curve;
+            this.value = value;
+            this.change = change;
+        }
+    }
+
+    /**
+     * Median results of the experiments only differing in the value of the swept parameter.
+     */
+    private final class Curve {
+        final Experiment template;
+        final TreeMap<Double, double[]> points = new TreeMap<>(); // value -> [sum of medians, trials]
+
+        Curve(Experiment template) {
+            this.template = template;
+        }
+
+        void add(double value, double median) {
+            double[] point = points.get(value);
+            if (point == null) {
+                point = new double[2];
+                points.put(value, point);
+            }
+            point[0] += median;
+            point[1]++;
+        }
+
+        void findSplits(List<Split> splits) {
+            Map.Entry<Double, double[]> previous = null;
+            for (Map.Entry<Double, double[]> point : points.entrySet()) {
+                if (previous != null) {
+                    double lowerResult = previous.getValue()[0] / previous.getValue()[1];
+                    double upperResult = point.getValue()[0] / point.getValue()[1];
+                    double smallest = Math.min(Math.abs(lowerResult), Math.abs(upperResult));
+                    double change = (smallest > 0) ? Math.abs(upperResult - lowerResult) / smallest : 0;
+                    String value = split(previous.getKey(), point.getKey());
+                    if (change > selection.changeThreshold() && value != null) {
+                        splits.add(new Split(this, value, change));
+                    }
+                }
+                previous = point;
+            }
+        }
+    }
+}
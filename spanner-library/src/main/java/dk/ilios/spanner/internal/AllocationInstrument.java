@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.internal;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableSet;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.SortedMap;
+
+import dk.ilios.spanner.Benchmark;
+import dk.ilios.spanner.Macrobenchmark;
+import dk.ilios.spanner.benchmark.BenchmarkClass;
+import dk.ilios.spanner.benchmark.BenchmarkMethods;
+import dk.ilios.spanner.config.AllocationInstrumentConfig;
+import dk.ilios.spanner.exception.SkipThisScenarioException;
+import dk.ilios.spanner.exception.UserCodeException;
+import dk.ilios.spanner.trial.TrialSchedulingPolicy;
+import dk.ilios.spanner.util.ShortDuration;
+import dk.ilios.spanner.util.Util;
+import dk.ilios.spanner.vm.AllocationCounter;
+import dk.ilios.spanner.vm.Platform;
+import dk.ilios.spanner.worker.AllocationWorker;
+import dk.ilios.spanner.worker.Worker;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Throwables.propagateIfInstanceOf;
+
+/**
+ * The instrument responsible for measuring the number of bytes and objects allocated pr. rep by {@link Benchmark}
+ * methods.
+ */
+public final class AllocationInstrument extends Instrument {
+
+    private static final int DRY_RUN_REPS = 1;
+
+    private final AllocationInstrumentConfig configuration;
+    private final AllocationCounter counter;
+
+    public AllocationInstrument(ShortDuration timerGranularityNanoSec, AllocationInstrumentConfig configuration) {
+        super(configuration.options());
+        this.configuration = configuration;
+        this.counter = (configuration.allocationCounter() != null)
+                ? configuration.allocationCounter()
+                : Platform.allocationCounter();
+    }
+
+    @Override
+    public boolean isBenchmarkMethod(Method method) {
+        return method.isAnnotationPresent(Benchmark.class)
+                || BenchmarkMethods.isTimeMethod(method)
+                || method.isAnnotationPresent(Macrobenchmark.class);
+    }
+
+    @Override
+    public Instrumentation createInstrumentation(Method benchmarkMethod) throws InvalidBenchmarkException {
+        checkNotNull(benchmarkMethod);
+        checkArgument(isBenchmarkMethod(benchmarkMethod));
+        if (Util.isStatic(benchmarkMethod)) {
+            throw new InvalidBenchmarkException("Benchmark methods must not be static: %s", benchmarkMethod.getName());
+        }
+        try {
+            BenchmarkMethods.Type.of(benchmarkMethod);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidBenchmarkException("Benchmark methods must have no arguments or accept "
+                    + "a single int or long parameter: %s", benchmarkMethod.getName());
+        }
+        return new AllocationInstrumentation(benchmarkMethod);
+    }
+
+    @Override
+    public TrialSchedulingPolicy schedulingPolicy() {
+        // Allocations are counted pr. thread, so other trials running at the same time only affect the results if the
+        // counter itself is shared by the whole process.
+        return counter.supportsParallelTrials() ? TrialSchedulingPolicy.PARALLEL : TrialSchedulingPolicy.SERIAL;
+    }
+
+    private final class AllocationInstrumentation extends Instrumentation {
+
+        AllocationInstrumentation(Method benchmarkMethod) {
+            super(benchmarkMethod);
+        }
+
+        @Override
+        public void dryRun(Object benchmark) throws UserCodeException {
+            try {
+                benchmarkMethod.invoke(benchmark, BenchmarkMethods.arguments(benchmarkMethod, DRY_RUN_REPS));
+            } catch (IllegalAccessException impossible) {
+                throw new AssertionError(impossible);
+            } catch (InvocationTargetException e) {
+                Throwable userException = e.getCause();
+                propagateIfInstanceOf(userException, SkipThisScenarioException.class);
+                throw new UserCodeException(userException);
+            }
+        }
+
+        @Override
+        public MeasurementCollectingVisitor getMeasurementCollectingVisitor() {
+            ImmutableSet<String> descriptions = counter.countsObjects()
+                    ? ImmutableSet.of("bytes", "objects")
+                    : ImmutableSet.of("bytes");
+            return new DefaultMeasurementCollectingVisitor(descriptions, configuration.measurements());
+        }
+
+        @Override
+        public Worker createWorker(BenchmarkClass benchmark, Ticker ticker, SortedMap<String, String> userParameters) {
+            return new AllocationWorker(
+                    benchmark,
+                    benchmarkMethod,
+                    counter,
+                    configuration,
+                    userParameters
+            );
+        }
+    }
+}
@@ -1,23 +1,30 @@
 package dk.ilios.spanner.internal;
 
-import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSetMultimap;
-import com.google.common.collect.Ordering;
 import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Sets;
+import com.google.common.math.LongMath;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
 import java.util.Set;
+import java.util.TreeSet;
 
 import dk.ilios.spanner.benchmark.BenchmarkClass;
+import dk.ilios.spanner.config.ParameterSelection;
 import dk.ilios.spanner.model.Trial;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 /**
  * Experiment selector for Android.
  * Based on the annotations in the benchmark class this class creates the Scenarios that needs to run.
@@ -29,12 +36,52 @@ public class AndroidExperimentSelector implements ExperimentSelector {
     private final ImmutableSet<Instrument> instruments;
     private final BenchmarkClass benchmarkClass;
     private final ImmutableSetMultimap<String, String> userParameters;
+    private final ParameterSelection selection;
+    private final List<List<String>> parameterCombinations;
+    private final AdaptiveSweep sweep;
+    private final int shardIndex;
+    private final int shardCount;
 
     public AndroidExperimentSelector(BenchmarkClass benchmarkClass,
-                                     ImmutableSet<Instrument> instruments) {
+                                     ImmutableSet<Instrument> instruments) throws InvalidBenchmarkException {
+        this(benchmarkClass, instruments, ImmutableSetMultimap.<String, String>of(),
+                ParameterSelection.fullCartesian(), 0, 1);
+    }
+
+    /**
+     * @param parameters parameter values replacing the defaults from the {@code @Param} annotations.
+     * @param selection which combinations of parameter values to create experiments for.
+     * @param shardIndex index of the shard of experiments to select.
+     * @param shardCount number of shards the experiments are split into.
+     */
+    public AndroidExperimentSelector(BenchmarkClass benchmarkClass,
+                                     ImmutableSet<Instrument> instruments,
+                                     ImmutableSetMultimap<String, String> parameters,
+                                     ParameterSelection selection,
+                                     int shardIndex,
+                                     int shardCount) throws InvalidBenchmarkException {
+        checkArgument(shardCount > 0 && shardIndex >= 0 && shardIndex < shardCount,
+                "Invalid shard %s of %s", shardIndex, shardCount);
+        checkArgument(shardCount == 1 || selection.type() != ParameterSelection.Type.ADAPTIVE_SWEEP,
+                "An adaptive sweep cannot be sharded");
+        benchmarkClass.userParameters().validate(parameters);
         this.instruments = instruments;
         this.benchmarkClass = benchmarkClass;
-        this.userParameters = benchmarkClass.userParameters().fillInDefaultsFor(ImmutableSetMultimap.<String, String>of());
+        this.userParameters = benchmarkClass.userParameters().fillInDefaultsFor(parameters);
+        this.selection = selection;
+        this.parameterCombinations = selectCombinations();
+        if (selection.type() == ParameterSelection.Type.ADAPTIVE_SWEEP) {
+            String name = selection.sweepParameter();
+            if (!userParameters.containsKey(name)) {
+                throw new InvalidBenchmarkException("No @Param field named '%s' found to sweep", name);
+            }
+            this.sweep = new AdaptiveSweep(selection, benchmarkClass.userParameters().get(name).type(),
+                    userParameters.get(name));
+        } else {
+            this.sweep = null;
+        }
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
     }
 
     @Override
@@ -49,22 +96,17 @@ public class AndroidExperimentSelector implements ExperimentSelector {
 
     @Override
     public ImmutableSetMultimap<String, String> userParameters() {
-        // TODO Figure out which user parameters to set
-        ArrayListMultimap<String, String> multimap = ArrayListMultimap.create();
-        return new ImmutableSetMultimap.Builder<String, String>()
-                .orderKeysBy(Ordering.natural())
-                .putAll(multimap)
-                .build();
+        return userParameters;
     }
 
     @Override
-    public ImmutableSet<Experiment> selectExperiments(Trial[] baselineData) {
+    public ImmutableSet<Experiment> selectExperiments(BaselineIndex baselines) {
         try {
             // Create all combinations
             List<Experiment> experiments = new ArrayList<>();
             for (Instrument instrument : instruments) { // of instruments
                 for (Method method : benchmarkClass.getMethods()) { // of methods
-                    for (List<String> userParamsChoice : cartesian(userParameters)) { // of parameters
+                    for (List<String> userParamsChoice : parameterCombinations) { // of parameters
                         // Ignore incompatible combinations of Instruments and benchmark methods
                         if (!instrument.isBenchmarkMethod(method)) {
                             continue;
@@ -73,49 +115,161 @@ public class AndroidExperimentSelector implements ExperimentSelector {
                         ImmutableMap<String, String> experimentBenchmarkParameters = zip(userParameters.keySet(), userParamsChoice);
                         Instrument.Instrumentation instrumentation = instrument.createInstrumentation(method);
                         Experiment experiment = new Experiment(instrumentation, experimentBenchmarkParameters);
-                        experiment.setBaseline(findBaseline(experiment, baselineData));
                         experiments.add(experiment);
                     }
                 }
             }
-            return ImmutableSet.copyOf(experiments);
+
+            return withBaselines(shard(experiments), baselines);
+        } catch (InvalidBenchmarkException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public ImmutableSet<Experiment> refineExperiments(Iterable<Trial> completedTrials, BaselineIndex baselines) {
+        if (sweep == null) {
+            return ImmutableSet.of();
+        }
+        try {
+            return withBaselines(sweep.refine(completedTrials), baselines);
         } catch (InvalidBenchmarkException e) {
             throw new RuntimeException(e);
         }
     }
 
+    private ImmutableSet<Experiment> withBaselines(List<Experiment> experiments, BaselineIndex baselines) {
+        for (Experiment experiment : experiments) {
+            experiment.setBaseline(baselines.findBaseline(
+                    experiment.instrumentation().instrument().getSpec(), experiment.benchmarkSpec()));
+            if (sweep != null) {
+                sweep.scheduled(experiment);
+            }
+        }
+        return ImmutableSet.copyOf(experiments);
+    }
+
+    @Override
+    public String selectionType() {
+        String type = selection.toString();
+        if (selection.type() != ParameterSelection.Type.FULL_CARTESIAN
+                && selection.type() != ParameterSelection.Type.ADAPTIVE_SWEEP) {
+            type += String.format(" (%d of %d parameter combinations)",
+                    parameterCombinations.size(), combinationCount());
+        }
+        if (shardCount > 1) {
+            type += String.format(" (shard %d of %d)", shardIndex + 1, shardCount);
+        }
+        return type;
+    }
+
+    /**
+     * Returns the combinations of parameter values experiments are created for. Each combination has a value for
+     * each parameter, in the order of {@code userParameters.keySet()}.
+     */
+    private List<List<String>> selectCombinations() {
+        List<List<String>> values = new ArrayList<>();
+        for (String name : userParameters.keySet()) {
+            values.add(userParameters.get(name).asList());
+        }
+        switch (selection.type()) {
+            case PAIRWISE:
+                int[] sizes = new int[values.size()];
+                for (int i = 0; i < sizes.length; i++) {
+                    sizes[i] = values.get(i).size();
+                }
+                List<List<String>> rows = new ArrayList<>();
+                for (int[] row : CoveringArray.pairwise(sizes)) {
+                    rows.add(combination(values, row));
+                }
+                return rows;
+
+            case RANDOM:
+                long count = combinationCount();
+                if (selection.sampleSize() >= count) {
+                    return new ArrayList<>(cartesian(userParameters));
+                }
+                // Sorted, so the combinations run in the same order as they would in the full product.
+                Random random = new Random(selection.seed());
+                Set<Long> indexes = new TreeSet<>();
+                while (indexes.size() < selection.sampleSize()) {
+                    indexes.add((random.nextLong() & Long.MAX_VALUE) % count);
+                }
+                List<List<String>> sample = new ArrayList<>();
+                for (long index : indexes) {
+                    sample.add(combination(values, index));
+                }
+                return sample;
+
+            default:
+                return new ArrayList<>(cartesian(userParameters));
+        }
+    }
+
+    private static List<String> combination(List<List<String>> values, int[] row) {
+        List<String> combination = new ArrayList<>(row.length);
+        for (int i = 0; i < row.length; i++) {
+            combination.add(values.get(i).get(row[i]));
+        }
+        return combination;
+    }
+
     /**
-     * Find an trial from an old experiment that can be used for a new experiment of the same kind.
-     *
-     * @param experiment new experiment
-     * @param baselineData old trial data
-     * @return trial that was run on a previous experiment or null of no trial matches.
+     * Returns the combination at the given index of the cartesian product, the last parameter changing fastest.
      */
-    private Trial findBaseline(Experiment experiment, Trial[] baselineData) {
-        for (Trial trial : baselineData) {
+    private static List<String> combination(List<List<String>> values, long index) {
+        String[] combination = new String[values.size()];
+        for (int i = values.size() - 1; i >= 0; i--) {
+            List<String> parameterValues = values.get(i);
+            combination[i] = parameterValues.get((int) (index % parameterValues.size()));
+            index /= parameterValues.size();
+        }
+        return Arrays.asList(combination);
+    }
 
-            // Need same instrumentationSpec: instrumentationClass + parameters
-            if (!experiment.instrumentation().instrument().getSpec().equals(trial.instrumentSpec())) {
-                continue;
+    /**
+     * Returns the number of combinations in the full cartesian product, or {@code Long.MAX_VALUE} if there are more.
+     */
+    private long combinationCount() {
+        long count = 1;
+        for (String name : userParameters.keySet()) {
+            try {
+                count = LongMath.checkedMultiply(count, userParameters.get(name).size());
+            } catch (ArithmeticException e) {
+                return Long.MAX_VALUE;
             }
+        }
+        return count;
+    }
 
-            // Need same benchmarkSpec: class, method and parameters
-            if (!experiment.benchmarkSpec().equals(trial.scenario().benchmarkSpec())) {
-                continue;
+    /**
+     * Returns the experiments belonging to this shard. Experiments are sorted by a key that is the same on all
+     * devices and dealt out to the shards in turn, so all shards together cover every experiment exactly once.
+     */
+    private List<Experiment> shard(List<Experiment> experiments) {
+        if (shardCount == 1) {
+            return experiments;
+        }
+        List<Experiment> sorted = new ArrayList<>(experiments);
+        Collections.sort(sorted, new Comparator<Experiment>() {
+            @Override
+            public int compare(Experiment lhs, Experiment rhs) {
+                return shardKey(lhs).compareTo(shardKey(rhs));
             }
-
-            // Other parameters might differ like number of measurements/trials. These are excluded for the
-            // purpose of finding a a previous trial, so if we got this far the trial is sufficiently similar
-            // to function as a baseline for the given experiment.
-            return trial;
+        });
+        List<Experiment> shard = new ArrayList<>();
+        for (int i = shardIndex; i < sorted.size(); i += shardCount) {
+            shard.add(sorted.get(i));
         }
-
-        return null;
+        return shard;
     }
 
-    @Override
-    public String selectionType() {
-        return null;
+    private static String shardKey(Experiment experiment) {
+        Instrument instrument = experiment.instrumentation().instrument();
+        Method method = experiment.instrumentation().benchmarkMethod();
+        return instrument.getSpec().className() + instrument.getSpec().options()
+                + "/" + method.getDeclaringClass().getName() + "#" + method.getName()
+                + experiment.userParameters();
     }
 
     private static <K, V> ImmutableMap<K, V> zip(Set<K> keys, Collection<V> values) {
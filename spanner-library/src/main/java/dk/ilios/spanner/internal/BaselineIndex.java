@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.internal;
+
+import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ListMultimap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import dk.ilios.spanner.model.BenchmarkSpec;
+import dk.ilios.spanner.model.InstrumentSpec;
+import dk.ilios.spanner.model.Trial;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Index of baseline trials by the instrument and benchmark they measured.
+ * <p>
+ * Trials are keyed by the persistent hashes of their {@link InstrumentSpec} and {@link BenchmarkSpec}, so finding
+ * the baseline of an experiment doesn't require comparing it against every trial in the baseline file. Hash
+ * collisions are resolved by comparing the specs.
+ */
+public final class BaselineIndex {
+
+    private final ListMultimap<Long, Trial> trials = ArrayListMultimap.create();
+    private final int trialsPrBaseline;
+
+    /**
+     * Returns an index without any baselines.
+     */
+    public static BaselineIndex empty() {
+        return new BaselineIndex(Collections.<Trial>emptyList(), 1);
+    }
+
+    /**
+     * Creates an index of the given trials.
+     *
+     * @param baselineTrials trials in the order they were recorded.
+     * @param trialsPrBaseline number of matching trials to consider when choosing a baseline, see
+     * {@link #findBaseline(InstrumentSpec, BenchmarkSpec)}.
+     */
+    public BaselineIndex(Iterable<Trial> baselineTrials, int trialsPrBaseline) {
+        checkArgument(trialsPrBaseline > 0, "At least one trial pr. baseline is required: %s", trialsPrBaseline);
+        this.trialsPrBaseline = trialsPrBaseline;
+        for (Trial trial : baselineTrials) {
+            trials.put(key(trial.instrumentSpec(), trial.scenario().benchmarkSpec()), trial);
+        }
+    }
+
+    private static long key(InstrumentSpec instrumentSpec, BenchmarkSpec benchmarkSpec) {
+        return ((long) instrumentSpec.hashCode() << 32) | (benchmarkSpec.hashCode() & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns the number of trials in the index.
+     */
+    public int size() {
+        return trials.size();
+    }
+
+    /**
+     * Returns all trials measured with the same instrument and benchmark, in the order they were recorded.
+     * Other parameters, like the number of measurements, are allowed to differ.
+     */
+    public List<Trial> find(InstrumentSpec instrumentSpec, BenchmarkSpec benchmarkSpec) {
+        List<Trial> candidates = trials.get(key(instrumentSpec, benchmarkSpec));
+        ImmutableList.Builder<Trial> matches = ImmutableList.builder();
+        for (Trial trial : candidates) {
+            if (instrumentSpec.equals(trial.instrumentSpec())
+                    && benchmarkSpec.equals(trial.scenario().benchmarkSpec())) {
+                matches.add(trial);
+            }
+        }
+        return matches.build();
+    }
+
+    /**
+     * Find the trial that should be used as baseline for a new experiment of the same kind.
+     * <p>
+     * The most recently recorded matching trials are considered, as many as the configured number of trials pr.
+     * baseline, and the one with the median result is returned. A single unusually fast or slow run therefore doesn't
+     * become the baseline. With one trial pr. baseline this is the most recent matching trial.
+     *
+     * @return matching trial or {@code null} if no trial matches.
+     */
+    public Trial findBaseline(InstrumentSpec instrumentSpec, BenchmarkSpec benchmarkSpec) {
+        List<Trial> matches = find(instrumentSpec, benchmarkSpec);
+        if (matches.isEmpty()) {
+            return null;
+        }
+
+        List<Trial> latest = new ArrayList<>(matches.subList(Math.max(0, matches.size() - trialsPrBaseline),
+                matches.size()));
+        if (latest.size() == 1) {
+            return latest.get(0);
+        }
+        for (Trial trial : latest) {
+            if (!trial.isResultsCalculated()) {
+                trial.calculateResults();
+            }
+        }
+        Collections.sort(latest, new Comparator<Trial>() {
+            @Override
+            public int compare(Trial lhs, Trial rhs) {
+                return Double.compare(lhs.getMedian(), rhs.getMedian());
+            }
+        });
+        return latest.get((latest.size() - 1) / 2);
+    }
+}
@@ -19,35 +19,46 @@ package dk.ilios.spanner.internal;
 import com.google.common.base.Function;
 import com.google.common.base.Stopwatch;
 import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Multimaps;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.Sets;
 
-import org.apache.commons.math.stat.descriptive.DescriptiveStatistics;
-import org.apache.commons.math.stat.descriptive.rank.Percentile;
 
 import java.io.Closeable;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import dk.ilios.spanner.exception.TrialFailureException;
 import dk.ilios.spanner.log.StdOut;
 import dk.ilios.spanner.model.BenchmarkSpec;
+import dk.ilios.spanner.model.HarnessOverhead;
 import dk.ilios.spanner.model.InstrumentSpec;
+import dk.ilios.spanner.model.LatencyHistogram;
 import dk.ilios.spanner.model.Measurement;
 import dk.ilios.spanner.model.Scenario;
 import dk.ilios.spanner.model.Trial;
+import dk.ilios.spanner.model.Warmup;
+import dk.ilios.spanner.stats.BaselineComparison;
+import dk.ilios.spanner.stats.ConfidenceInterval;
+import dk.ilios.spanner.stats.StreamingSummary;
 
 /**
  * Prints a brief summary of the results collected.  It does not contain the measurements themselves
  * as that is the responsibility of the webapp.
  */
 final class ConsoleOutput implements Closeable {
+
+    // Values are printed with 2 decimals, so anything smaller is shown as 0.00
+    private static final double MIN_PRINTED_VALUE = 0.005;
+
     private final StdOut stdout;
 
     private final Set<InstrumentSpec> instrumentSpecs = Sets.newHashSet();
     private final Set<BenchmarkSpec> benchmarkSpecs = Sets.newHashSet();
+    private final List<Trial> trials = Lists.newArrayList();
     private int numMeasurements = 0;
     private int trialsCompleted = 0;
     private final int numberOfTrials;
@@ -76,7 +87,8 @@ final class ConsoleOutput implements Closeable {
      * Prints a summary of a successful trial result.
      */
     void processTrial(Trial.Result result) {
-        Trial baseline = result.getExperiment().getBaseline();
+        Trial trial = result.getTrial();
+        Trial baseline = trial.hasBaseline() ? result.getExperiment().getBaseline() : null;
 
         trialsCompleted++;
 
@@ -89,7 +101,11 @@ final class ConsoleOutput implements Closeable {
                 stdout.println(message);
             }
         }
-        Trial trial = result.getTrial();
+        if (baseline == null && result.getExperiment().getBaseline() != null) {
+            stdout.printf("  Baseline ignored: it ran with %d concurrent trial(s), this trial ran with %d.%n",
+                    result.getExperiment().getBaseline().scenario().host().concurrentTrials(),
+                    trial.scenario().host().concurrentTrials());
+        }
 
         // Group measurements by their description
         // TODO Why? All measurements for a single trial should have the same description
@@ -110,41 +126,102 @@ final class ConsoleOutput implements Closeable {
             Collection<Measurement> measurements = entry.getValue();
             String unit = measurements.iterator().next().value().unit();
 
-            double[] weightedValues = new double[measurements.size()];
-            int i = 0;
+            StreamingSummary summary = new StreamingSummary(measurements.size());
             for (Measurement measurement : measurements) {
-                weightedValues[i] = measurement.value().magnitude() / measurement.weight();
-                i++;
+                summary.add(measurement.value().magnitude() / measurement.weight(), measurement.weight());
             }
-            Percentile percentile = new Percentile();
-            percentile.setData(weightedValues);
-            DescriptiveStatistics descriptiveStatistics = new DescriptiveStatistics(weightedValues);
             stdout.printf(
                     "    %s%s: min=%.2f, 1st qu.=%.2f, median=%.2f (%s), mean=%.2f, 3rd qu.=%.2f, max=%.2f%n",
                     entry.getKey(), unit.isEmpty() ? "" : "(" + unit + ")",
-                    descriptiveStatistics.getMin(), percentile.evaluate(25),
-                    percentile.evaluate(50),
-                    calculateDiff(percentile.evaluate(50), baseline),
-                    descriptiveStatistics.getMean(), percentile.evaluate(75),
-                    descriptiveStatistics.getMax());
+                    summary.min(), summary.percentile(25),
+                    summary.median(),
+                    calculateDiff(trial, entry.getKey()),
+                    summary.mean(), summary.percentile(75),
+                    summary.max());
+        }
+
+        ConfidenceInterval interval = trial.confidenceInterval();
+        if (interval != null) {
+            // The precision is relative to the estimate, so it is meaningless for estimates that round to 0.
+            String precision = (Math.abs(interval.estimate()) < MIN_PRINTED_VALUE)
+                    ? "n/a"
+                    : String.format("%.2f%%", interval.relativeHalfWidth() * 100);
+            stdout.printf("    %.0f%% confidence interval: [%.2f, %.2f], precision=%s%n",
+                    interval.level() * 100, interval.lower(), interval.upper(), precision);
+        }
+
+        for (BaselineComparison comparison : trial.baselineComparisons()) {
+            stdout.printf("    %s change from baseline: %.2f%%, %.0f%% CI: [%.2f%%, %.2f%%], p=%.3f%s%n",
+                    comparison.percentile() == BaselineComparison.MEAN ? "mean" : "p" + comparison.percentile(),
+                    comparison.change() * 100, comparison.level() * 100,
+                    comparison.lower() * 100, comparison.upper() * 100, comparison.pValue(),
+                    comparison.isSignificant() ? " (significant)" : "");
+        }
+
+        LatencyHistogram latencies = trial.latencyHistogram();
+        if (latencies != null && trial.getLatencyChangeFromBaseline(50) != null) {
+            StringBuilder changes = new StringBuilder();
+            for (double percentile : LatencyHistogram.REPORTED_PERCENTILES) {
+                double change = trial.getLatencyChangeFromBaseline(percentile) * 100;
+                changes.append(changes.length() == 0 ? "" : ", ")
+                        .append(String.format("%s=%s%.2f%%",
+                                LatencyHistogram.percentileLabel(percentile), change > 0 ? "+" : "", change));
+            }
+            stdout.printf("    latency change from baseline: %s%n", changes);
+        }
+
+        Warmup warmup = trial.warmup();
+        if (warmup != null && warmup.measurements() > 0) {
+            stdout.printf("    warmup: %d measurements, %.2f ms%n",
+                    warmup.measurements(), warmup.wallTimeNanos() / 1e6);
+        }
+
+        HarnessOverhead overhead = trial.harnessOverhead();
+        if (overhead != null) {
+            stdout.printf("    harness overhead(ns): fixed=%.2f, per rep=%.4f%n",
+                    overhead.fixedNanos(), overhead.perRepNanos());
         }
 
         instrumentSpecs.add(trial.instrumentSpec());
         Scenario scenario = trial.scenario();
         benchmarkSpecs.add(scenario.benchmarkSpec());
         numMeasurements += trial.measurements().size();
+        trials.add(trial);
     }
 
-    private String calculateDiff(double newMedian, Trial oldValue) {
-        if (oldValue == null) return "-";
-        double oldMedian = oldValue.getMedian();
-        double diff = (oldMedian - newMedian) * 100 / oldMedian;
+    /**
+     * Returns the change of the median from baseline for the measurements with the given description. Each kind of
+     * measurement, e.g. runtime and cpu time, is compared against the same kind in the baseline. The primary
+     * measurements use {@link Trial#getChangeFromBaseline(float)}, so they show the same change the run is checked
+     * against.
+     */
+    private String calculateDiff(Trial trial, String description) {
+        if (!trial.hasBaseline()) return "-";
+        Double change = description.equals(trial.primaryDescription())
+                ? trial.getChangeFromBaseline(50)
+                : trial.getChangeFromBaseline(description, 50);
+        if (change == null) return "-";
+        double diff = change * 100;
         return String.format("%s%.2f%%", diff > 0 ? "+" : "", diff);
     }
 
+    private void printScalingCurves() {
+        for (ScalingCurve curve : ScalingCurve.fromTrials(trials)) {
+            stdout.printf("Scaling of %s:%n", curve.name());
+            stdout.printf("  %8s %20s %8s %11s%n", "threads", "throughput(ops/s)", "speedup", "efficiency");
+            for (Map.Entry<Integer, Double> point : curve.throughput().entrySet()) {
+                int threads = point.getKey();
+                stdout.printf("  %8d %20.2f %7.2fx %10.1f%%%n",
+                        threads, point.getValue(), curve.speedup(threads), curve.efficiency(threads) * 100);
+            }
+            stdout.println();
+        }
+    }
+
     @Override
     public void close() {
         if (trialsCompleted == numberOfTrials) {  // if we finished all the trials
+            printScalingCurves();
             stdout.printf("Collected %d measurements from:%n", numMeasurements);
             stdout.printf("  %d instrument(s)%n", instrumentSpecs.size());
             stdout.printf("  %d benchmark(s)%n", benchmarkSpecs.size());
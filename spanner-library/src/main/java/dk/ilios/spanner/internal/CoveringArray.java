@@ -0,0 +1,119 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Greedy construction of pairwise covering arrays, i.e. a set of rows choosing a value for each parameter such that
+ * every pair of values of any two parameters appears in at least one row.
+ * <p>
+ * Rows are built one at a time. Each row starts from the first pair that isn't covered yet and the remaining
+ * parameters get the value covering the most new pairs. This doesn't find the smallest array, but it is
+ * deterministic and usually close to it.
+ */
+final class CoveringArray {
+
+    private CoveringArray() {
+    }
+
+    /**
+     * Returns the rows of a pairwise covering array.
+     *
+     * @param sizes number of values of each parameter.
+     * @return rows containing the index of the value chosen for each parameter.
+     */
+    static List<int[]> pairwise(int[] sizes) {
+        int n = sizes.length;
+        List<int[]> rows = new ArrayList<>();
+        if (n < 2) {
+            int values = (n == 0) ? 1 : sizes[0];
+            for (int v = 0; v < values; v++) {
+                rows.add(n == 0 ? new int[0] : new int[] {v});
+            }
+            return rows;
+        }
+
+        // covered[i][j][vi * sizes[j] + vj] for i < j.
+        boolean[][][] covered = new boolean[n][n][];
+        int uncovered = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                covered[i][j] = new boolean[sizes[i] * sizes[j]];
+                uncovered += sizes[i] * sizes[j];
+            }
+        }
+
+        while (uncovered > 0) {
+            int[] row = new int[n];
+            Arrays.fill(row, -1);
+            seedWithFirstUncoveredPair(sizes, covered, row);
+            for (int p = 0; p < n; p++) {
+                if (row[p] != -1) {
+                    continue;
+                }
+                int bestValue = 0;
+                int bestGain = -1;
+                for (int v = 0; v < sizes[p]; v++) {
+                    int gain = 0;
+                    for (int q = 0; q < n; q++) {
+                        if (q != p && row[q] != -1 && !isCovered(sizes, covered, p, v, q, row[q])) {
+                            gain++;
+                        }
+                    }
+                    if (gain > bestGain) {
+                        bestGain = gain;
+                        bestValue = v;
+                    }
+                }
+                row[p] = bestValue;
+            }
+
+            for (int i = 0; i < n; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    int index = row[i] * sizes[j] + row[j];
+                    if (!covered[i][j][index]) {
+                        covered[i][j][index] = true;
+                        uncovered--;
+                    }
+                }
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    private static void seedWithFirstUncoveredPair(int[] sizes, boolean[][][] covered, int[] row) {
+        for (int i = 0; i < sizes.length; i++) {
+            for (int j = i + 1; j < sizes.length; j++) {
+                for (int index = 0; index < covered[i][j].length; index++) {
+                    if (!covered[i][j][index]) {
+                        row[i] = index / sizes[j];
+                        row[j] = index % sizes[j];
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private static boolean isCovered(int[] sizes, boolean[][][] covered, int p, int vp, int q, int vq) {
+        return (p < q) ? covered[p][q][vp * sizes[q] + vq] : covered[q][p][vq * sizes[p] + vp];
+    }
+}
@@ -34,6 +34,7 @@ import dk.ilios.spanner.config.CustomInstrumentConfig;
 import dk.ilios.spanner.exception.SkipThisScenarioException;
 import dk.ilios.spanner.exception.UserCodeException;
 import dk.ilios.spanner.model.Measurement;
+import dk.ilios.spanner.stats.ConfidenceInterval;
 import dk.ilios.spanner.trial.TrialSchedulingPolicy;
 import dk.ilios.spanner.util.ShortDuration;
 import dk.ilios.spanner.util.Util;
@@ -157,6 +158,11 @@ public final class CustomMeasurementInstrument extends Instrument {
             this.measurement = Optional.of(Iterables.getOnlyElement(logMessage.measurements()));
         }
 
+        @Override
+        public ConfidenceInterval getConfidenceInterval() {
+            return null;
+        }
+
         @Override
         public ImmutableList<String> getMessages() {
             return ImmutableList.of();
@@ -30,6 +30,12 @@ public interface ExperimentSelector {
     BenchmarkClass benchmarkClass();
     ImmutableSet<Instrument> instruments();
     ImmutableSetMultimap<String, String> userParameters();
-    ImmutableSet<Experiment> selectExperiments(Trial[] baselineData);
+    ImmutableSet<Experiment> selectExperiments(BaselineIndex baselines);
+
+    /**
+     * Returns additional experiments chosen from the results of the trials run so far, or an empty set if no more
+     * experiments should run.
+     */
+    ImmutableSet<Experiment> refineExperiments(Iterable<Trial> completedTrials, BaselineIndex baselines);
     String selectionType();
 }
@@ -32,23 +32,29 @@ import com.google.common.util.concurrent.MoreExecutors;
 import com.google.common.util.concurrent.SettableFuture;
 import com.google.common.util.concurrent.Uninterruptibles;
 
-import java.io.IOException;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import dk.ilios.spanner.Spanner;
 import dk.ilios.spanner.SpannerConfig;
+import dk.ilios.spanner.output.ResultPipeline;
 import dk.ilios.spanner.output.ResultProcessor;
 import dk.ilios.spanner.exception.SkipThisScenarioException;
 import dk.ilios.spanner.exception.TrialFailureException;
 import dk.ilios.spanner.benchmark.BenchmarkClass;
+import dk.ilios.spanner.benchmark.BenchmarkMethods;
 import dk.ilios.spanner.trial.AndroidTrial;
+import dk.ilios.spanner.trial.CoreBudget;
+import dk.ilios.spanner.trial.ForkedTrial;
+import dk.ilios.spanner.trial.RunTimeBudget;
 import dk.ilios.spanner.trial.ScheduledTrial;
 import dk.ilios.spanner.trial.TrialContext;
 import dk.ilios.spanner.model.BenchmarkSpec;
@@ -59,6 +65,9 @@ import dk.ilios.spanner.model.Scenario;
 import dk.ilios.spanner.model.Trial;
 import dk.ilios.spanner.trial.TrialSchedulingPolicy;
 import dk.ilios.spanner.log.StdOut;
+import dk.ilios.spanner.stats.BaselineComparator;
+import dk.ilios.spanner.stats.ComparisonMethod;
+import dk.ilios.spanner.util.ShortDuration;
 
 /**
  * An execution of each {@link Experiment} for the configured number of trials.
@@ -83,7 +92,7 @@ public final class ExperimentingSpannerRun implements SpannerRun {
     private final ExperimentSelector selector;
     private final ListeningExecutorService executorProvider;
     private final Spanner.Callback callback;
-    private final Trial[] baselineData;
+    private final BaselineIndex baselines;
 
     public ExperimentingSpannerRun(
             SpannerConfig configuration,
@@ -92,7 +101,7 @@ public final class ExperimentingSpannerRun implements SpannerRun {
             ImmutableSet<ResultProcessor> resultProcessors,
             ExperimentSelector selector,
             ListeningExecutorService executorProvider,
-            Trial[] baselineData,
+            BaselineIndex baselines,
             Spanner.Callback callback
     ) {
         this.options = configuration;
@@ -101,14 +110,14 @@ public final class ExperimentingSpannerRun implements SpannerRun {
         this.resultProcessors = resultProcessors;
         this.selector = selector;
         this.executorProvider = executorProvider;
-        this.baselineData = baselineData;
+        this.baselines = baselines;
         this.callback = callback;
     }
 
     @Override
     public void run() throws InvalidBenchmarkException {
 
-        ImmutableSet<Experiment> allExperiments = selector.selectExperiments(baselineData);
+        ImmutableSet<Experiment> allExperiments = selector.selectExperiments(baselines);
 
         // TODO(lukes): move this standard-out handling into the ConsoleOutput class?
         stdout.println("Experiment selection: ");
@@ -149,21 +158,49 @@ public final class ExperimentingSpannerRun implements SpannerRun {
 
         stdout.flush();
 
+        ResultPipeline pipeline = new ResultPipeline(resultProcessors);
+        RunTimeBudget runBudget = new RunTimeBudget(options.getRunTimeLimit());
+        try {
+            // Adaptive selections choose more experiments based on the results, so keep going until they are done.
+            while (!experimentsToRun.isEmpty()) {
+                List<Trial> completedTrials = runExperiments(experimentsToRun, pipeline, runBudget);
+                experimentsToRun = dryRun(selector.refineExperiments(completedTrials, baselines));
+                if (!experimentsToRun.isEmpty()) {
+                    stdout.format("%nRefining the selection with %s experiments.%n", experimentsToRun.size());
+                    stdout.flush();
+                }
+            }
+        } finally {
+            try {
+                executorProvider.shutdown();
+            } finally {
+                // Waits for the remaining trials to be processed and closes the processors, also if the run failed,
+                // so results of completed trials are not lost.
+                pipeline.close();
+            }
+        }
+    }
+
+    /**
+     * Runs all trials of the given experiments and returns the trials that completed.
+     */
+    private List<Trial> runExperiments(ImmutableSet<Experiment> experimentsToRun, ResultPipeline pipeline,
+                                       RunTimeBudget runBudget) throws InvalidBenchmarkException {
         int totalTrials = experimentsToRun.size() * options.getTrialsPrExperiment();
         Stopwatch stopwatch = Stopwatch.createStarted();
-        List<ScheduledTrial> trials = createScheduledTrials(experimentsToRun, totalTrials);
+        List<ScheduledTrial> trials = createScheduledTrials(experimentsToRun, totalTrials, runBudget);
 
         List<ListenableFuture<Trial.Result>> pendingTrials = scheduleTrials(trials, executorProvider);
         ConsoleOutput output = new ConsoleOutput(stdout, totalTrials, stopwatch);
+        List<Trial> completedTrials = Lists.newArrayListWithCapacity(totalTrials);
         try {
             // Process results as they complete.
             for (ListenableFuture<Trial.Result> trialFuture : inCompletionOrder(pendingTrials)) {
                 try {
                     Trial.Result result = trialFuture.get();
                     output.processTrial(result);
-                    for (ResultProcessor resultProcessor : resultProcessors) {
-                        resultProcessor.processTrial(result.getTrial());
-                    }
+                    pipeline.processTrial(result.getTrial());
+                    completedTrials.add(result.getTrial());
                 } catch (ExecutionException e) {
                     if (e.getCause() instanceof TrialFailureException) {
                         output.processFailedTrial((TrialFailureException) e.getCause());
@@ -183,17 +220,9 @@ public final class ExperimentingSpannerRun implements SpannerRun {
                 }
             }
         } finally {
-            executorProvider.shutdown();
             output.close();
         }
-
-        for (ResultProcessor resultProcessor : resultProcessors) {
-            try {
-                resultProcessor.close();
-            } catch (IOException e) {
-                logger.log(Level.WARNING, "Could not close a result processor: " + resultProcessor, e);
-            }
-        }
+        return completedTrials;
     }
 
     /**
@@ -238,8 +267,11 @@ public final class ExperimentingSpannerRun implements SpannerRun {
     /**
      * Returns all the ScheduledTrials for this run.
      */
-    private List<ScheduledTrial> createScheduledTrials(ImmutableSet<Experiment> experimentsToRun, int totalTrials) {
+    private List<ScheduledTrial> createScheduledTrials(ImmutableSet<Experiment> experimentsToRun, int totalTrials,
+                                                       RunTimeBudget runBudget) throws InvalidBenchmarkException {
         List<ScheduledTrial> trials = Lists.newArrayListWithCapacity(totalTrials);
+        CoreBudget coreBudget = new CoreBudget(options.getNoBenchmarkThreads());
+        BaselineComparator baselineComparator = createBaselineComparator();
             for (Experiment experiment : experimentsToRun) {
                 for (int i = 0; i < options.getTrialsPrExperiment(); i++) {
 
@@ -258,20 +290,65 @@ public final class ExperimentingSpannerRun implements SpannerRun {
                 /** This is 1-indexed because it's only used for display to users.  E.g. "Trial 1 of 27" */
                 int trialNumber = i + 1;
                 TrialContext trialContext = new TrialContext(UUID.randomUUID(), trialNumber, experiment);
-                Trial trial = new Trial.Builder(trialContext)
+                Trial.Builder trialBuilder = new Trial.Builder(trialContext)
                         .run(runInfo)
                         .scenario(scenario)
-                        .instrumentSpec(instrumentSpec)
-                        .build();
+                        .instrumentSpec(instrumentSpec);
+                if (baselineComparator != null) {
+                    trialBuilder.baselineComparator(baselineComparator);
+                }
+                Trial trial = trialBuilder.build();
 
-                AndroidTrial runLoop = new AndroidTrial(trial, selector.benchmarkClass(), measurementsVisitor, callback);
-                ScheduledTrial scheduledTrial = new ScheduledTrial(trial, runLoop, TrialSchedulingPolicy.SERIAL);
+                // Parallel trials need their own benchmark instance and only reserve some of the cores, or one for
+                // each benchmark thread. Serial trials reserve all cores, so nothing else runs while they do.
+                TrialSchedulingPolicy policy = experiment.instrumentation().instrument().schedulingPolicy();
+                BenchmarkClass benchmarkClass;
+                int cores;
+                if (policy == TrialSchedulingPolicy.PARALLEL) {
+                    benchmarkClass = selector.benchmarkClass().withNewInstance();
+                    cores = Math.max(options.getCoresPrTrial(), BenchmarkMethods.threads(
+                            experiment.instrumentation().benchmarkMethod(), experiment.userParameters()));
+                } else {
+                    benchmarkClass = selector.benchmarkClass();
+                    cores = coreBudget.cores();
+                }
+
+                ShortDuration timeLimit = options.getTimeLimit(experiment.getBaseline());
+                Callable<Trial.Result> runLoop;
+                if (options.isForkTrials()) {
+                    runLoop = new ForkedTrial(trial, benchmarkClass, measurementsVisitor, callback, coreBudget, cores,
+                            options.getForkJvmArgs(), timeLimit, runBudget);
+                } else {
+                    runLoop = new AndroidTrial(trial, benchmarkClass, measurementsVisitor, callback, coreBudget,
+                            cores, timeLimit, runBudget);
+                }
+                ScheduledTrial scheduledTrial = new ScheduledTrial(trial, runLoop, policy);
                 trials.add(scheduledTrial);
             }
         }
         return trials;
     }
 
+    /**
+     * Returns the comparator used to compare trials against their baseline or {@code null} if the configured failure
+     * limits should be checked without a statistical test.
+     */
+    private BaselineComparator createBaselineComparator() {
+        if (options.getComparisonMethod() == ComparisonMethod.THRESHOLD) {
+            return null;
+        }
+        Set<Float> percentiles = new HashSet<>();
+        for (Float percentile : options.getPercentileFailureLimits()) {
+            if (options.getPercentileFailureLimit(percentile) != SpannerConfig.NOT_ENABLED) {
+                percentiles.add(percentile);
+            }
+        }
+        percentiles.add(50.0F); // The median is always reported
+        boolean compareMean = options.getMeanFailureLimit() != SpannerConfig.NOT_ENABLED;
+        return new BaselineComparator(options.getComparisonMethod(), options.getSignificanceLevel(), percentiles,
+                compareMean);
+    }
+
     /**
      * Attempts to run each given scenario once, in the current VM. Returns a set of all of the
      * scenarios that didn't throw a {@link SkipThisScenarioException}.
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.internal;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableSet;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.SortedMap;
+
+import dk.ilios.spanner.Footprint;
+import dk.ilios.spanner.benchmark.BenchmarkClass;
+import dk.ilios.spanner.config.FootprintInstrumentConfig;
+import dk.ilios.spanner.exception.SkipThisScenarioException;
+import dk.ilios.spanner.exception.UserCodeException;
+import dk.ilios.spanner.trial.TrialSchedulingPolicy;
+import dk.ilios.spanner.util.ShortDuration;
+import dk.ilios.spanner.util.Util;
+import dk.ilios.spanner.worker.FootprintWorker;
+import dk.ilios.spanner.worker.Worker;
+
+import static com.google.common.base.Throwables.propagateIfInstanceOf;
+
+/**
+ * Instrument for measuring the memory footprint of the objects returned by {@link Footprint} methods.
+ * <p>
+ * The footprint is found by walking the object graph, so it measures what is retained by the returned object, not
+ * what was allocated while creating it.
+ */
+public final class FootprintInstrument extends Instrument {
+
+    private final FootprintInstrumentConfig configuration;
+
+    public FootprintInstrument(ShortDuration timerGranularityNanoSec, FootprintInstrumentConfig configuration) {
+        super(configuration.options());
+        this.configuration = configuration;
+    }
+
+    @Override
+    public boolean isBenchmarkMethod(Method method) {
+        return method.isAnnotationPresent(Footprint.class);
+    }
+
+    @Override
+    public Instrumentation createInstrumentation(Method benchmarkMethod) throws InvalidBenchmarkException {
+        if (benchmarkMethod.getParameterTypes().length != 0) {
+            throw new InvalidBenchmarkException(
+                    "Footprint methods should take no parameters: " + benchmarkMethod.getName());
+        }
+
+        Class<?> returnType = benchmarkMethod.getReturnType();
+        if (returnType.isPrimitive()) {
+            throw new InvalidBenchmarkException(
+                    "Footprint methods must return an object: " + benchmarkMethod.getName());
+        }
+
+        if (Util.isStatic(benchmarkMethod)) {
+            throw new InvalidBenchmarkException(
+                    "Footprint methods must not be static: " + benchmarkMethod.getName());
+        }
+
+        if (!Util.isPublic(benchmarkMethod)) {
+            throw new InvalidBenchmarkException(
+                    "Footprint methods must be public: " + benchmarkMethod.getName());
+        }
+
+        return new FootprintInstrumentation(benchmarkMethod);
+    }
+
+    @Override
+    public TrialSchedulingPolicy schedulingPolicy() {
+        // Walking the object graph only reads the objects from the trial itself.
+        return TrialSchedulingPolicy.PARALLEL;
+    }
+
+    private final class FootprintInstrumentation extends Instrumentation {
+
+        FootprintInstrumentation(Method benchmarkMethod) {
+            super(benchmarkMethod);
+        }
+
+        @Override
+        public void dryRun(Object benchmark) throws InvalidBenchmarkException {
+            Object result;
+            try {
+                result = benchmarkMethod.invoke(benchmark);
+            } catch (IllegalAccessException impossible) {
+                throw new AssertionError(impossible);
+            } catch (InvocationTargetException e) {
+                Throwable userException = e.getCause();
+                propagateIfInstanceOf(userException, SkipThisScenarioException.class);
+                throw new UserCodeException(userException);
+            }
+            if (result == null) {
+                throw new InvalidBenchmarkException(
+                        "Footprint methods must not return null: " + benchmarkMethod.getName());
+            }
+        }
+
+        @Override
+        public MeasurementCollectingVisitor getMeasurementCollectingVisitor() {
+            return new DefaultMeasurementCollectingVisitor(ImmutableSet.of("bytes", "objects"),
+                    configuration.measurements());
+        }
+
+        @Override
+        public Worker createWorker(BenchmarkClass benchmark, Ticker ticker, SortedMap<String, String> userParameters) {
+            return new FootprintWorker(
+                    benchmark,
+                    benchmarkMethod,
+                    configuration,
+                    userParameters
+            );
+        }
+    }
+}
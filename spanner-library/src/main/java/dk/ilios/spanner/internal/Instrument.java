@@ -39,6 +39,7 @@ import dk.ilios.spanner.trial.TrialSchedulingPolicy;
 import dk.ilios.spanner.json.ExcludeFromJson;
 import dk.ilios.spanner.model.InstrumentSpec;
 import dk.ilios.spanner.model.Measurement;
+import dk.ilios.spanner.stats.ConfidenceInterval;
 import dk.ilios.spanner.worker.Worker;
 
 import static com.google.common.base.Preconditions.checkArgument;
@@ -85,7 +86,7 @@ public abstract class Instrument {
             this.benchmarkMethod = checkNotNull(benchmarkMethod);
         }
 
-        Instrument instrument() {
+        public Instrument instrument() {
             return Instrument.this;
         }
 
@@ -184,7 +185,17 @@ public abstract class Instrument {
 
         @Override
         public List<Measurement> getMeasurements() {
-            return new ArrayList<>(measurementsByDescription.values());
+            // Keep the order of the required descriptions, the first one is the primary measurement of the trial.
+            List<Measurement> measurements = new ArrayList<>(measurementsByDescription.size());
+            for (String description : requiredDescriptions) {
+                measurements.addAll(measurementsByDescription.get(description));
+            }
+            return measurements;
+        }
+
+        @Override
+        public ConfidenceInterval getConfidenceInterval() {
+            return null;
         }
 
         @Override
@@ -4,6 +4,7 @@ import java.util.List;
 
 import dk.ilios.spanner.bridge.LogMessageVisitor;
 import dk.ilios.spanner.model.Measurement;
+import dk.ilios.spanner.stats.ConfidenceInterval;
 
 public interface MeasurementCollectingVisitor extends LogMessageVisitor {
 
@@ -11,6 +12,12 @@ public interface MeasurementCollectingVisitor extends LogMessageVisitor {
     boolean isWarmupComplete();
     List<Measurement> getMeasurements();
 
+    /**
+     * Returns the confidence interval achieved by the measurements collected so far, or {@code null} if the
+     * collector doesn't track the precision of its measurements.
+     */
+    ConfidenceInterval getConfidenceInterval();
+
     /**
      * Returns all the messages created while collecting measurements.
      * <p>
@@ -14,6 +14,7 @@
 
 package dk.ilios.spanner.internal;
 
+import com.google.common.base.Joiner;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Ticker;
 import com.google.common.collect.ImmutableList;
@@ -45,6 +46,10 @@ import dk.ilios.spanner.exception.SkipThisScenarioException;
 import dk.ilios.spanner.exception.TrialFailureException;
 import dk.ilios.spanner.exception.UserCodeException;
 import dk.ilios.spanner.model.Measurement;
+import dk.ilios.spanner.model.Value;
+import dk.ilios.spanner.stats.ConfidenceInterval;
+import dk.ilios.spanner.stats.SteadyStateDetector;
+import dk.ilios.spanner.stats.StreamingSummary;
 import dk.ilios.spanner.trial.TrialSchedulingPolicy;
 import dk.ilios.spanner.util.Reflection;
 import dk.ilios.spanner.util.ShortDuration;
@@ -124,7 +129,7 @@ public class RuntimeInstrument extends Instrument {
                     beforeRepMethod.invoke(benchmark);
                 }
                 try {
-                    benchmarkMethod.invoke(benchmark);
+                    benchmarkMethod.invoke(benchmark, BenchmarkMethods.arguments(benchmarkMethod, 1));
                 } finally {
                     for (Method afterRepMethod : afterRepMethods) {
                         afterRepMethod.invoke(benchmark);
@@ -142,7 +147,7 @@ public class RuntimeInstrument extends Instrument {
         @Override
         public MeasurementCollectingVisitor getMeasurementCollectingVisitor() {
             return new SingleInvocationMeasurementCollector(
-                    configuration.measurements(),
+                    configuration,
                     ShortDuration.of(configuration.warmpupTime(), configuration.warmupTimeUnit()),
                     ShortDuration.of(10, TimeUnit.MINUTES),
                     timerGranularityNanoSec);
@@ -162,11 +167,9 @@ public class RuntimeInstrument extends Instrument {
 
     @Override
     public TrialSchedulingPolicy schedulingPolicy() {
-        // Runtime measurements are currently believed to be too sensitive to system performance to
-        // allow parallel runners.
-        // TODO(lukes): investigate this, on a multicore system it seems like we should be able to
-        // allow some parallelism without corrupting results.
-        return TrialSchedulingPolicy.SERIAL;
+        // Runtime measurements are sensitive to system performance, so trials run serially unless
+        // parallel trials are explicitly enabled.
+        return configuration.schedulingPolicy();
     }
 
     private abstract class RuntimeInstrumentation extends Instrumentation {
@@ -177,7 +180,7 @@ public class RuntimeInstrument extends Instrument {
         @Override
         public void dryRun(Object benchmark) throws UserCodeException {
             try {
-                benchmarkMethod.invoke(benchmark, DRY_RUN_REPS);
+                benchmarkMethod.invoke(benchmark, BenchmarkMethods.arguments(benchmarkMethod, DRY_RUN_REPS));
             } catch (IllegalAccessException impossible) {
                 throw new AssertionError(impossible);
             } catch (InvocationTargetException e) {
@@ -190,7 +193,7 @@ public class RuntimeInstrument extends Instrument {
         @Override
         public MeasurementCollectingVisitor getMeasurementCollectingVisitor() {
             return new RepetitionBasedMeasurementCollector(
-                    configuration.measurements(),
+                    configuration,
                     ShortDuration.of(configuration.warmpupTime(), configuration.warmupTimeUnit()),
                     ShortDuration.of(configuration.maxWarmupTime(), configuration.maxWarmupTimeUnit()),
                     true,
@@ -239,58 +242,107 @@ public class RuntimeInstrument extends Instrument {
         }
     }
 
-    private abstract static class RuntimeMeasurementCollector extends AbstractLogMessageVisitor
+    /**
+     * Base class for collectors of timing based measurements. It handles warmup, discarding of invalid measurements
+     * and deciding when enough measurements have been collected.
+     */
+    abstract static class RuntimeMeasurementCollector extends AbstractLogMessageVisitor
             implements MeasurementCollectingVisitor {
+
+        /**
+         * Number of measurements in a row that can be discarded. Once it is reached, affected measurements are kept,
+         * so a benchmark that collects garbage in every measurement still finishes. It is also the number of
+         * warmup measurements in a row that are extended because the VM is still compiling.
+         */
+        static final int MAX_CONSECUTIVE_DISCARDS = 10;
+
+        /**
+         * Total number of measurements of a trial that can be discarded.
+         */
+        static final int MAX_DISCARDS = 50;
+
         final int targetMeasurements;
+        final RuntimeInstrumentConfig configuration;
         final ShortDuration warmup;
         final ShortDuration maxWarmupWallTime;
         final List<Measurement> measurements = Lists.newArrayList();
+        final StreamingSummary summary = new StreamingSummary();
         ShortDuration elapsedWarmup = ShortDuration.zero();
         boolean measuring = false;
         boolean invalidateMeasurements = false;
+        int consecutiveDiscards = 0;
+        int discardedMeasurements = 0;
+        boolean discardLimitReached = false;
         boolean notifiedAboutGc = false;
         boolean notifiedAboutJit = false;
         boolean notifiedAboutMeasuringJit = false;
+        boolean compiledDuringWarmupMeasurement = false;
+        boolean compilationSettled = true;
+        int unsettledWarmupMeasurements = 0;
         Stopwatch timeSinceStartOfTrial = Stopwatch.createUnstarted();
+        Stopwatch timeSinceWarmup = Stopwatch.createUnstarted();
+        boolean notifiedAboutPrecision = false;
+        boolean notifiedAboutClampedOverhead = false;
+        final SteadyStateDetector steadyStateDetector;
         final List<String> messages = Lists.newArrayList();
         final ShortDuration nanoTimeGranularity;
+        String primaryDescription = null;
 
         RuntimeMeasurementCollector(
-                int targetMeasurements,
+                RuntimeInstrumentConfig configuration,
                 ShortDuration warmup,
                 ShortDuration maxWarmupWallTime,
                 ShortDuration nanoTimeGranularity) {
-            this.targetMeasurements = targetMeasurements;
+            this.configuration = configuration;
+            this.targetMeasurements = configuration.measurements();
             this.warmup = warmup;
             this.maxWarmupWallTime = maxWarmupWallTime;
             this.nanoTimeGranularity = nanoTimeGranularity;
+            boolean detectSteadyState = configuration.warmupPolicy() == RuntimeInstrumentConfig.WarmupPolicy.STEADY_STATE;
+            this.steadyStateDetector = detectSteadyState
+                    ? new SteadyStateDetector(configuration.steadyStateWindow(), configuration.steadyStateTolerance())
+                    : null;
         }
 
         @Override
         public void visit(GcLogMessage logMessage) {
-            if (measuring && isWarmupComplete() && !notifiedAboutGc) {
-                gcWhileMeasuring();
+            if (measuring && isWarmupComplete()) {
+                gcWhileMeasuring(!notifiedAboutGc);
                 notifiedAboutGc = true;
             }
         }
 
-        abstract void gcWhileMeasuring();
+        /**
+         * Called for every measurement after warmup that was taken while the VM was collecting garbage.
+         *
+         * @param notify {@code true} the first time this happens, i.e. if the user has not been warned yet.
+         */
+        abstract void gcWhileMeasuring(boolean notify);
 
         @Override
         public void visit(HotspotLogMessage logMessage) {
-            if (isWarmupComplete()) {
-                if (measuring && notifiedAboutMeasuringJit) {
-                    hotspotWhileMeasuring();
-                    notifiedAboutMeasuringJit = true;
-                } else if (notifiedAboutJit) {
-                    hotspotWhileNotMeasuring();
-                    notifiedAboutJit = true;
-                }
+            if (!isWarmupComplete()) {
+                // Compilation since the last measurement means the code has not settled yet.
+                compiledDuringWarmupMeasurement = true;
+            } else if (measuring) {
+                hotspotWhileMeasuring(!notifiedAboutMeasuringJit);
+                notifiedAboutMeasuringJit = true;
+            } else if (!notifiedAboutJit) {
+                hotspotWhileNotMeasuring();
+                notifiedAboutJit = true;
             }
         }
 
-        abstract void hotspotWhileMeasuring();
+        /**
+         * Called for every measurement after warmup that was taken while the VM was compiling code.
+         *
+         * @param notify {@code true} the first time this happens, i.e. if the user has not been warned yet.
+         */
+        abstract void hotspotWhileMeasuring(boolean notify);
 
+        /**
+         * Called the first time the VM compiles code between measurements after warmup.
+         */
         abstract void hotspotWhileNotMeasuring();
 
         @Override
@@ -306,27 +358,44 @@ public class RuntimeInstrument extends Instrument {
         public void visit(StopMeasurementLogMessage logMessage) {
             checkState(measuring);
             Collection<Measurement> newMeasurements = logMessage.measurements();
+            if (primaryDescription == null && !newMeasurements.isEmpty()) {
+                // Workers may report secondary measurements, e.g. the throughput of multi-threaded benchmarks. Only
+                // the first description is used for warmup and precision.
+                primaryDescription = newMeasurements.iterator().next().description();
+            }
             if (!isWarmupComplete()) {
                 for (Measurement measurement : newMeasurements) {
-                    // TODO(gak): eventually we will need to resolve different units
-                    checkArgument("ns".equals(measurement.value().unit()));
-                    elapsedWarmup = elapsedWarmup.plus(
-                            ShortDuration.of(BigDecimal.valueOf(measurement.value().magnitude()), NANOSECONDS));
+                    if (!measurement.description().equals(primaryDescription)) {
+                        continue;
+                    }
+                    elapsedWarmup = elapsedWarmup.plus(measuredTime(measurement));
+                    if (steadyStateDetector != null) {
+                        steadyStateDetector.add(measurement.value().magnitude() / measurement.weight());
+                    }
                     validateMeasurement(measurement);
                 }
+                updateCompilationSettled();
+                compiledDuringWarmupMeasurement = false;
             } else {
-                if (!measuredWarmupDurationReached()) {
-                    messages.add(String.format(
-                            "WARNING: Warmup was interrupted because it took longer than %s of wall-clock time. "
-                                    + "%s was spent in the benchmark method for warmup "
-                                    + "(normal warmup duration should be %s).",
-                            maxWarmupWallTime, elapsedWarmup, warmup));
+                if (!timeSinceWarmup.isRunning()) {
+                    // First measurement after warmup
+                    checkWarmupInterrupted();
+                    timeSinceWarmup.start();
                 }
-
                 if (invalidateMeasurements) {
                     logger.fine(String.format("Discarding %s as they were marked invalid.", newMeasurements));
+                    consecutiveDiscards++;
+                    discardedMeasurements++;
                 } else {
+                    consecutiveDiscards = 0;
                     this.measurements.addAll(newMeasurements);
+                    for (Measurement measurement : newMeasurements) {
+                        if (!measurement.description().equals(primaryDescription)) {
+                            continue;
+                        }
+                        summary.add(measurement.value().magnitude() / measurement.weight(), measurement.weight());
+                        checkOverheadClamped(measurement);
+                    }
                 }
             }
             invalidateMeasurements = false;
@@ -335,6 +404,94 @@ public class RuntimeInstrument extends Instrument {
 
         abstract void validateMeasurement(Measurement measurement);
 
+        /**
+         * The compilation counters are shared by the whole VM, so other threads can keep them changing forever.
+         * Warmup is only extended by {@link #MAX_CONSECUTIVE_DISCARDS} measurements once it is otherwise complete.
+         */
+        private void updateCompilationSettled() {
+            if (!compiledDuringWarmupMeasurement) {
+                compilationSettled = true;
+                unsettledWarmupMeasurements = 0;
+                return;
+            }
+            compilationSettled = false;
+            if (measuredWarmupDurationReached() && steadyStateReached()
+                    && ++unsettledWarmupMeasurements >= MAX_CONSECUTIVE_DISCARDS) {
+                compilationSettled = true;
+                messages.add(String.format("WARNING: The VM was still compiling code after %d extra warmup "
+                        + "measurements, so warmup was ended anyway. Compilation in other threads also counts. "
+                        + "Consider running with a longer warmup.", unsettledWarmupMeasurements));
+            }
+        }
+
+        /**
+         * Marks the current measurement as invalid, so it is discarded when it stops. Once
+         * {@link #MAX_CONSECUTIVE_DISCARDS} measurements in a row or {@link #MAX_DISCARDS} in total have been
+         * discarded, all remaining measurements of the trial are kept instead and the user is warned once.
+         */
+        void invalidateMeasurement() {
+            if (discardLimitReached) {
+                return;
+            }
+            if (consecutiveDiscards < MAX_CONSECUTIVE_DISCARDS && discardedMeasurements < MAX_DISCARDS) {
+                invalidateMeasurements = true;
+            } else {
+                discardLimitReached = true;
+                messages.add(String.format("WARNING: %d measurements were discarded, %d of them in a row. Later "
+                        + "measurements were kept even if they were affected, so results may be too high. "
+                        + "Consider running with a larger heap size or a longer warmup.",
+                        discardedMeasurements, consecutiveDiscards));
+            }
+        }
+
+        /**
+         * Warns if warmup was ended by the wall-clock cap before its other conditions were met. Called once, when
+         * warmup ends.
+         */
+        private void checkWarmupInterrupted() {
+            List<String> reasons = Lists.newArrayList();
+            if (!measuredWarmupDurationReached()) {
+                reasons.add(String.format("%s was spent in the benchmark method for warmup "
+                        + "(normal warmup duration should be %s).", elapsedWarmup, warmup));
+            }
+            if (!steadyStateReached()) {
+                reasons.add(String.format("The runtime pr. rep had not reached a steady state after %d warmup "
+                        + "measurements.", steadyStateDetector.count()));
+            }
+            if (!compilationSettled()) {
+                reasons.add("The VM was still compiling code at the end of warmup.");
+            }
+            if (!reasons.isEmpty()) {
+                messages.add(String.format("WARNING: Warmup was interrupted because it took longer than %s of "
+                        + "wall-clock time. %s", maxWarmupWallTime, Joiner.on(' ').join(reasons)));
+            }
+        }
+
+        /**
+         * Warns once if subtracting the harness overhead left nothing of a measurement. The worker clamps such
+         * measurements to 0, so the results are too low.
+         */
+        private void checkOverheadClamped(Measurement measurement) {
+            Value rawValue = measurement.rawValue();
+            if (!notifiedAboutClampedOverhead && rawValue != null
+                    && measurement.value().magnitude() == 0 && rawValue.magnitude() > 0) {
+                notifiedAboutClampedOverhead = true;
+                messages.add("WARNING: The harness overhead was larger than the measured runtime, so the "
+                        + "measurement was reported as 0 ns. The benchmark is too fast to subtract the overhead "
+                        + "reliably. Consider disabling subtractOverhead.");
+            }
+        }
+
+        /**
+         * Returns the time spent in the benchmark method while taking the given measurement. This counts towards the
+         * warmup time.
+         */
+        ShortDuration measuredTime(Measurement measurement) {
+            // TODO(gak): eventually we will need to resolve different units
+            checkArgument("ns".equals(measurement.value().unit()));
+            return ShortDuration.of(BigDecimal.valueOf(measurement.value().magnitude()), NANOSECONDS);
+        }
+
         @Override
         public ImmutableList<Measurement> getMeasurements() {
             return ImmutableList.copyOf(measurements);
@@ -344,6 +501,22 @@ public class RuntimeInstrument extends Instrument {
             return elapsedWarmup.compareTo(warmup) >= 0;
         }
 
+        /**
+         * Returns {@code true} if steady state detection is disabled or the runtime pr. rep has stopped drifting.
+         */
+        boolean steadyStateReached() {
+            return steadyStateDetector == null || steadyStateDetector.isSteady();
+        }
+
+        /**
+         * Returns {@code true} if the VM did not compile any code during or right before the last warmup measurement.
+         * Always {@code true} if the VM does not report compilation, or if it kept compiling for too long after the
+         * rest of warmup was complete.
+         */
+        boolean compilationSettled() {
+            return compilationSettled;
+        }
+
         @Override
         public boolean isWarmupComplete() {
             // Fast macro-benchmarks (up to tens of ms) need lots of measurements to reach 10s of
@@ -351,13 +524,58 @@ public class RuntimeInstrument extends Instrument {
             // @AfterRep, warmup can take very long.
             //
             // To prevent this, we enforce a cap on the wall-clock time here.
-            return measuredWarmupDurationReached()
+            return (measuredWarmupDurationReached() && steadyStateReached() && compilationSettled())
                     || timeSinceStartOfTrial.elapsed(MILLISECONDS) > maxWarmupWallTime.to(MILLISECONDS);
         }
 
         @Override
         public boolean isDoneCollecting() {
-            return measurements.size() >= targetMeasurements;
+            if (summary.count() < targetMeasurements) {
+                return false;
+            }
+            if (!configuration.isAdaptive()) {
+                return true;
+            }
+
+            ConfidenceInterval interval = getConfidenceInterval();
+            if (interval != null && interval.relativeHalfWidth() <= configuration.targetPrecision()) {
+                return true;
+            }
+            // Discarded measurements count as well, so they cannot keep the trial running.
+            boolean maxMeasurementsReached = summary.count() + discardedMeasurements >= configuration.maxMeasurements();
+            boolean maxTimeReached = timeSinceWarmup.elapsed(NANOSECONDS)
+                    >= configuration.maxMeasurementTimeUnit().toNanos(configuration.maxMeasurementTime());
+            if (maxMeasurementsReached || maxTimeReached) {
+                if (!notifiedAboutPrecision) {
+                    notifiedAboutPrecision = true;
+                    messages.add(String.format(
+                            "WARNING: Target precision of %.2f%% was not reached after %d measurements (%s). "
+                                    + "Achieved precision was %s.",
+                            configuration.targetPrecision() * 100, summary.count(),
+                            ShortDuration.of(timeSinceWarmup.elapsed(NANOSECONDS), NANOSECONDS),
+                            (interval != null)
+                                    ? String.format("%.2f%%", interval.relativeHalfWidth() * 100)
+                                    : "unknown"));
+                }
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Returns the confidence interval of the measurements collected so far. The precision is only tracked when
+         * collecting adaptively, so this is {@code null} otherwise.
+         */
+        @Override
+        public ConfidenceInterval getConfidenceInterval() {
+            if (!configuration.isAdaptive() || summary.count() < 2) {
+                return null;
+            }
+            if (configuration.precisionEstimate() == RuntimeInstrumentConfig.Estimate.MEAN) {
+                return ConfidenceInterval.forMean(summary, configuration.confidenceLevel());
+            } else {
+                return ConfidenceInterval.forMedian(summary, configuration.confidenceLevel());
+            }
         }
 
         @Override
@@ -371,27 +589,31 @@ public class RuntimeInstrument extends Instrument {
         boolean notifiedAboutGranularity = false;
 
         RepetitionBasedMeasurementCollector(
-                int measurementsPerTrial,
+                RuntimeInstrumentConfig configuration,
                 ShortDuration warmup,
                 ShortDuration maxWarmupWallTime,
                 boolean suggestGranularity,
                 ShortDuration nanoTimeGranularity) {
-            super(measurementsPerTrial, warmup, maxWarmupWallTime, nanoTimeGranularity);
+            super(configuration, warmup, maxWarmupWallTime, nanoTimeGranularity);
             this.suggestGranularity = suggestGranularity;
         }
 
         @Override
-        void gcWhileMeasuring() {
-            invalidateMeasurements = true;
-            messages.add("ERROR: GC occurred during timing. Measurements were discarded.");
+        void gcWhileMeasuring(boolean notify) {
+            invalidateMeasurement();
+            if (notify) {
+                messages.add("ERROR: GC occurred during timing. Measurements were discarded.");
+            }
         }
 
         @Override
-        void hotspotWhileMeasuring() {
-            invalidateMeasurements = true;
-            messages.add(
-                    "ERROR: Hotspot compilation occurred during timing: warmup is likely insufficent. "
-                            + "Measurements were discarded.");
+        void hotspotWhileMeasuring(boolean notify) {
+            invalidateMeasurement();
+            if (notify) {
+                messages.add(
+                        "ERROR: Hotspot compilation occurred during timing: warmup is likely insufficent. "
+                                + "Measurements were discarded.");
+            }
         }
 
         @Override
@@ -421,25 +643,29 @@ public class RuntimeInstrument extends Instrument {
     private static final class SingleInvocationMeasurementCollector extends RuntimeMeasurementCollector {
 
         SingleInvocationMeasurementCollector(
-                int measurementsPerTrial,
+                RuntimeInstrumentConfig configuration,
                 ShortDuration warmup,
                 ShortDuration maxWarmupWallTime,
                 ShortDuration nanoTimeGranularity) {
-            super(measurementsPerTrial, warmup, maxWarmupWallTime, nanoTimeGranularity);
+            super(configuration, warmup, maxWarmupWallTime, nanoTimeGranularity);
         }
 
         @Override
-        void gcWhileMeasuring() {
-            messages.add("WARNING: GC occurred during timing. "
-                    + "Depending on the scope of the benchmark, this might significantly impact results. "
-                    + "Consider running with a larger heap size.");
+        void gcWhileMeasuring(boolean notify) {
+            if (notify) {
+                messages.add("WARNING: GC occurred during timing. "
+                        + "Depending on the scope of the benchmark, this might significantly impact results. "
+                        + "Consider running with a larger heap size.");
+            }
         }
 
         @Override
-        void hotspotWhileMeasuring() {
-            messages.add("WARNING: Hotspot compilation occurred during timing. "
-                    + "Depending on the scope of the benchmark, this might significantly impact results. "
-                    + "Consider running with a longer warmup.");
+        void hotspotWhileMeasuring(boolean notify) {
+            if (notify) {
+                messages.add("WARNING: Hotspot compilation occurred during timing. "
+                        + "Depending on the scope of the benchmark, this might significantly impact results. "
+                        + "Consider running with a longer warmup.");
+            }
         }
 
         @Override
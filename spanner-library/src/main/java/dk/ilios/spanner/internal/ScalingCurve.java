@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.internal;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+
+import java.lang.reflect.Method;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import dk.ilios.spanner.Benchmark;
+import dk.ilios.spanner.model.Measurement;
+import dk.ilios.spanner.model.Trial;
+import dk.ilios.spanner.stats.StreamingSummary;
+
+/**
+ * How the throughput of a multi-threaded benchmark changes with the number of threads. A curve is created for each
+ * benchmark method that takes its number of threads from a parameter (see {@link Benchmark#threadsParam()}) and all
+ * other parameters of the experiment.
+ */
+final class ScalingCurve {
+
+    private final String name;
+    private final ImmutableSortedMap<Integer, Double> throughput;
+
+    private ScalingCurve(String name, SortedMap<Integer, Double> throughput) {
+        this.name = name;
+        this.throughput = ImmutableSortedMap.copyOfSorted(throughput);
+    }
+
+    /**
+     * Returns the scaling curves of the given trials. Only curves with more than one thread count are returned.
+     */
+    static ImmutableList<ScalingCurve> fromTrials(Iterable<Trial> trials) {
+        Map<String, SortedMap<Integer, Double>> curves = new LinkedHashMap<>();
+        for (Trial trial : trials) {
+            Experiment experiment = trial.experiment();
+            Method method = experiment.instrumentation().benchmarkMethod();
+            Benchmark benchmark = method.getAnnotation(Benchmark.class);
+            if (benchmark == null || benchmark.threadsParam().isEmpty()) {
+                continue;
+            }
+            double opsPrSecond = medianThroughput(trial);
+            if (Double.isNaN(opsPrSecond)) {
+                continue;
+            }
+
+            SortedMap<String, String> otherParameters = new TreeMap<>(experiment.userParameters());
+            String threads = otherParameters.remove(benchmark.threadsParam());
+            String name = String.format("%s %s (%s)",
+                    method.getName(), otherParameters, experiment.instrumentation().instrument());
+            SortedMap<Integer, Double> curve = curves.get(name);
+            if (curve == null) {
+                curve = new TreeMap<>();
+                curves.put(name, curve);
+            }
+            curve.put(Integer.parseInt(threads), opsPrSecond);
+        }
+
+        ImmutableList.Builder<ScalingCurve> result = ImmutableList.builder();
+        for (Map.Entry<String, SortedMap<Integer, Double>> entry : curves.entrySet()) {
+            if (entry.getValue().size() > 1) {
+                result.add(new ScalingCurve(entry.getKey(), entry.getValue()));
+            }
+        }
+        return result.build();
+    }
+
+    private static double medianThroughput(Trial trial) {
+        StreamingSummary summary = new StreamingSummary();
+        for (Measurement measurement : trial.measurements()) {
+            if (measurement.description().equals("throughput")) {
+                summary.add(measurement.value().magnitude() / measurement.weight());
+            }
+        }
+        return summary.count() > 0 ? summary.median() : Double.NaN;
+    }
+
+    /**
+     * Returns the benchmark method, the other parameters and the instrument the curve is for.
+     */
+    String name() {
+        return name;
+    }
+
+    /**
+     * Returns the median throughput in ops/s for each thread count.
+     */
+    ImmutableSortedMap<Integer, Double> throughput() {
+        return throughput;
+    }
+
+    /**
+     * Returns the throughput with the given number of threads relative to the throughput with the fewest threads.
+     */
+    double speedup(int threads) {
+        return throughput.get(threads) / throughput.firstEntry().getValue();
+    }
+
+    /**
+     * Returns the speedup divided by the increase in threads, i.e. 1.0 for perfect scaling.
+     */
+    double efficiency(int threads) {
+        return speedup(threads) * throughput.firstKey() / threads;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("name", name)
+                .add("throughput", throughput)
+                .toString();
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.internal;
+
+import com.google.common.base.Ticker;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.SortedMap;
+
+import dk.ilios.spanner.Throughput;
+import dk.ilios.spanner.benchmark.BenchmarkClass;
+import dk.ilios.spanner.benchmark.BenchmarkMethods;
+import dk.ilios.spanner.config.RuntimeInstrumentConfig;
+import dk.ilios.spanner.exception.SkipThisScenarioException;
+import dk.ilios.spanner.exception.UserCodeException;
+import dk.ilios.spanner.model.Measurement;
+import dk.ilios.spanner.trial.TrialSchedulingPolicy;
+import dk.ilios.spanner.util.ShortDuration;
+import dk.ilios.spanner.util.Util;
+import dk.ilios.spanner.worker.ThroughputWorker;
+import dk.ilios.spanner.worker.Worker;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Throwables.propagateIfInstanceOf;
+
+/**
+ * The instrument responsible for measuring the throughput of {@link Throughput} methods, i.e. how many operations
+ * they complete pr. second while being called repeatedly for a fixed time slice.
+ *
+ * It uses the same warmup, steady state and precision settings as the {@link RuntimeInstrument}. The length of each
+ * time slice is the timing interval of the configuration.
+ */
+public final class ThroughputInstrument extends Instrument {
+
+    private static final int DRY_RUN_REPS = 1;
+
+    private final ShortDuration timerGranularityNanoSec;
+    private final RuntimeInstrumentConfig configuration;
+
+    public ThroughputInstrument(ShortDuration timerGranularityNanoSec, RuntimeInstrumentConfig configuration) {
+        super(configuration.options());
+        this.timerGranularityNanoSec = timerGranularityNanoSec;
+        this.configuration = configuration;
+    }
+
+    @Override
+    public boolean isBenchmarkMethod(Method method) {
+        return method.isAnnotationPresent(Throughput.class);
+    }
+
+    @Override
+    public Instrumentation createInstrumentation(Method benchmarkMethod) throws InvalidBenchmarkException {
+        checkNotNull(benchmarkMethod);
+        checkArgument(isBenchmarkMethod(benchmarkMethod));
+        if (Util.isStatic(benchmarkMethod)) {
+            throw new InvalidBenchmarkException("Throughput methods must not be static: %s", benchmarkMethod.getName());
+        }
+        Class<?>[] parameterTypes = BenchmarkMethods.repsParameterTypes(benchmarkMethod);
+        boolean validParameters = parameterTypes.length == 0
+                || (parameterTypes.length == 1 && (parameterTypes[0] == int.class || parameterTypes[0] == long.class));
+        if (!validParameters) {
+            throw new InvalidBenchmarkException("Throughput methods must have no arguments or accept "
+                    + "a single int or long parameter: %s", benchmarkMethod.getName());
+        }
+        return new ThroughputInstrumentation(benchmarkMethod);
+    }
+
+    @Override
+    public TrialSchedulingPolicy schedulingPolicy() {
+        // Same as runtime measurements, throughput depends on the rest of the system being idle.
+        return configuration.schedulingPolicy();
+    }
+
+    private final class ThroughputInstrumentation extends Instrumentation {
+
+        ThroughputInstrumentation(Method benchmarkMethod) {
+            super(benchmarkMethod);
+        }
+
+        @Override
+        public void dryRun(Object benchmark) throws UserCodeException {
+            try {
+                benchmarkMethod.invoke(benchmark, BenchmarkMethods.arguments(benchmarkMethod, DRY_RUN_REPS));
+            } catch (IllegalAccessException impossible) {
+                throw new AssertionError(impossible);
+            } catch (InvocationTargetException e) {
+                Throwable userException = e.getCause();
+                propagateIfInstanceOf(userException, SkipThisScenarioException.class);
+                throw new UserCodeException(userException);
+            }
+        }
+
+        @Override
+        public MeasurementCollectingVisitor getMeasurementCollectingVisitor() {
+            return new ThroughputMeasurementCollector(
+                    configuration,
+                    ShortDuration.of(configuration.warmpupTime(), configuration.warmupTimeUnit()),
+                    ShortDuration.of(configuration.maxWarmupTime(), configuration.maxWarmupTimeUnit()),
+                    timerGranularityNanoSec);
+        }
+
+        @Override
+        public Worker createWorker(BenchmarkClass benchmark, Ticker ticker, SortedMap<String, String> userParameters) {
+            return new ThroughputWorker(
+                    benchmark,
+                    benchmarkMethod,
+                    ticker,
+                    configuration,
+                    userParameters
+            );
+        }
+    }
+
+    /**
+     * Collects ops/s measurements. Each measurement covers a full time slice, so GC and compilation are part of the
+     * sustained throughput and only result in warnings.
+     */
+    private static final class ThroughputMeasurementCollector extends RuntimeInstrument.RuntimeMeasurementCollector {
+
+        private final ShortDuration timeSlice;
+
+        ThroughputMeasurementCollector(
+                RuntimeInstrumentConfig configuration,
+                ShortDuration warmup,
+                ShortDuration maxWarmupWallTime,
+                ShortDuration nanoTimeGranularity) {
+            super(configuration, warmup, maxWarmupWallTime, nanoTimeGranularity);
+            this.timeSlice = ShortDuration.of(configuration.timingInterval(), configuration.timingIntervalUnit());
+        }
+
+        @Override
+        void gcWhileMeasuring(boolean notify) {
+            if (notify) {
+                messages.add("WARNING: GC occurred during timing. "
+                        + "The cost of GC is included in the measured throughput.");
+            }
+        }
+
+        @Override
+        void hotspotWhileMeasuring(boolean notify) {
+            if (notify) {
+                messages.add("WARNING: Hotspot compilation occurred during timing: warmup is likely insufficent. "
+                        + "Consider running with a longer warmup.");
+            }
+        }
+
+        @Override
+        void hotspotWhileNotMeasuring() {
+            messages.add(
+                    "WARNING: Hotspot compilation occurred after warmup, but outside of timing. "
+                            + "Results may be affected. Run with --verbose to see which method was compiled.");
+        }
+
+        @Override
+        void validateMeasurement(Measurement measurement) {
+            // Every measurement covers a full time slice, so the timer granularity is never an issue.
+        }
+
+        @Override
+        ShortDuration measuredTime(Measurement measurement) {
+            return timeSlice;
+        }
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.json;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import dk.ilios.spanner.model.BenchmarkSpec;
+import dk.ilios.spanner.model.InstrumentSpec;
+import dk.ilios.spanner.model.LatencyHistogram;
+import dk.ilios.spanner.model.Scenario;
+import dk.ilios.spanner.model.Trial;
+import dk.ilios.spanner.stats.StreamingSummary;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reads baseline trials from a results file one trial at a time.
+ * <p>
+ * Only the parts of a trial needed to use it as a baseline are kept: its id, instrument spec, scenario, a
+ * {@link StreamingSummary} of the measurements of each description and its latency histogram if it has one.
+ * Measurement objects, messages and the embedded experiment are skipped without being deserialized, and trials of
+ * benchmarks that are not selected are dropped, so memory use depends on the selected trials and not on the size of
+ * the file.
+ */
+public final class BaselineReader {
+
+    private final Gson gson;
+    private final Predicate<BenchmarkSpec> filter;
+
+    /**
+     * @param gson Gson instance configured the same way as the one that wrote the results.
+     * @param filter only trials of benchmarks accepted by the filter are kept.
+     */
+    public BaselineReader(Gson gson, Predicate<BenchmarkSpec> filter) {
+        this.gson = checkNotNull(gson);
+        this.filter = checkNotNull(filter);
+    }
+
+    /**
+     * Reads all selected trials from a JSON array of trials.
+     *
+     * @return summarized trials in the order they appear in the file.
+     */
+    public List<Trial> read(Reader input) throws IOException {
+        JsonReader reader = new JsonReader(input);
+        ImmutableList.Builder<Trial> trials = ImmutableList.builder();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            Trial trial = readTrial(reader);
+            if (trial != null) {
+                trials.add(trial);
+            }
+        }
+        reader.endArray();
+        return trials.build();
+    }
+
+    /**
+     * Returns the summarized trial or {@code null} if it isn't selected or incomplete.
+     */
+    private Trial readTrial(JsonReader reader) throws IOException {
+        UUID id = null;
+        InstrumentSpec instrumentSpec = null;
+        Scenario scenario = null;
+        Map<String, StreamingSummary> statistics = null;
+        LatencyHistogram latencyHistogram = null;
+        long durationNanos = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (name.equals("id")) {
+                id = UUID.fromString(reader.nextString());
+            } else if (name.equals("instrumentSpec")) {
+                instrumentSpec = gson.fromJson(reader, InstrumentSpec.class);
+            } else if (name.equals("scenario")) {
+                scenario = gson.fromJson(reader, Scenario.class);
+            } else if (name.equals("measurements") && (scenario == null || filter.apply(scenario.benchmarkSpec()))) {
+                statistics = readMeasurements(reader);
+            } else if (name.equals("latencyHistogram")
+                    && (scenario == null || filter.apply(scenario.benchmarkSpec()))) {
+                latencyHistogram = gson.fromJson(reader, LatencyHistogram.class);
+            } else if (name.equals("durationNanos")) {
+                durationNanos = reader.nextLong();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (id == null || instrumentSpec == null || scenario == null || statistics == null
+                || !filter.apply(scenario.benchmarkSpec())) {
+            return null;
+        }
+        // The primary measurements are those with the same description as the first measurement.
+        StreamingSummary primary = statistics.isEmpty()
+                ? new StreamingSummary()
+                : statistics.values().iterator().next();
+        return Trial.fromSummary(id, instrumentSpec, scenario, primary, statistics, latencyHistogram, durationNanos);
+    }
+
+    /**
+     * Summarizes the per-rep values of the measurements of each description, in the order the descriptions first
+     * appear.
+     */
+    private Map<String, StreamingSummary> readMeasurements(JsonReader reader) throws IOException {
+        Map<String, StreamingSummary> statistics = new LinkedHashMap<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            double magnitude = Double.NaN;
+            double weight = Double.NaN;
+            String description = null;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("value")) {
+                    magnitude = readMagnitude(reader);
+                } else if (name.equals("weight")) {
+                    weight = reader.nextDouble();
+                } else if (name.equals("description") && reader.peek() == JsonToken.STRING) {
+                    description = reader.nextString();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+
+            if (description != null) {
+                StreamingSummary summary = statistics.get(description);
+                if (summary == null) {
+                    summary = new StreamingSummary();
+                    statistics.put(description, summary);
+                }
+                summary.add(magnitude / weight, weight);
+            }
+        }
+        reader.endArray();
+        return statistics;
+    }
+
+    private double readMagnitude(JsonReader reader) throws IOException {
+        double magnitude = Double.NaN;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (reader.nextName().equals("magnitude")) {
+                magnitude = reader.nextDouble();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return magnitude;
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.json;
+
+import com.google.common.primitives.Longs;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import dk.ilios.spanner.model.LatencyHistogram;
+
+/**
+ * Serializes and deserializes {@link LatencyHistogram} instances. Only non-empty buckets are written, as pairs of the
+ * lowest value in the bucket and the number of values in it:
+ * <pre>
+ * {"significantBits": 7, "count": 3, "min": 10, "max": 12000, "buckets": [[10, 2], [11968, 1]]}
+ * </pre>
+ * The exact min and max are kept separately, so they survive a round trip.
+ */
+public final class LatencyHistogramTypeAdapter extends TypeAdapter<LatencyHistogram> {
+
+    @Override
+    public void write(JsonWriter out, LatencyHistogram histogram) throws IOException {
+        if (histogram == null) {
+            out.nullValue();
+            return;
+        }
+        out.beginObject();
+        out.name("significantBits").value(histogram.significantBits());
+        out.name("repsPrValue").value(histogram.repsPrValue());
+        out.name("count").value(histogram.count());
+        out.name("min").value(histogram.min());
+        out.name("max").value(histogram.max());
+        out.name("buckets").beginArray();
+        for (int i = 0; i < histogram.buckets(); i++) {
+            long count = histogram.countInBucket(i);
+            if (count > 0) {
+                out.beginArray().value(histogram.lowestValueInBucket(i)).value(count).endArray();
+            }
+        }
+        out.endArray();
+        out.endObject();
+    }
+
+    @Override
+    public LatencyHistogram read(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return null;
+        }
+        int significantBits = LatencyHistogram.DEFAULT_SIGNIFICANT_BITS;
+        long repsPrValue = 1; // Not written by older versions, where every value was a single rep
+        long min = 0;
+        long max = 0;
+        List<Long> lowestValues = new ArrayList<>();
+        List<Long> counts = new ArrayList<>();
+
+        in.beginObject();
+        while (in.hasNext()) {
+            String name = in.nextName();
+            if (name.equals("significantBits")) {
+                significantBits = in.nextInt();
+            } else if (name.equals("repsPrValue")) {
+                repsPrValue = in.nextLong();
+            } else if (name.equals("min")) {
+                min = in.nextLong();
+            } else if (name.equals("max")) {
+                max = in.nextLong();
+            } else if (name.equals("buckets")) {
+                in.beginArray();
+                while (in.hasNext()) {
+                    in.beginArray();
+                    lowestValues.add(in.nextLong());
+                    counts.add(in.nextLong());
+                    in.endArray();
+                }
+                in.endArray();
+            } else {
+                in.skipValue();
+            }
+        }
+        in.endObject();
+        return LatencyHistogram.fromBuckets(significantBits, repsPrValue, Longs.toArray(lowestValues),
+                Longs.toArray(counts), min, max);
+    }
+}
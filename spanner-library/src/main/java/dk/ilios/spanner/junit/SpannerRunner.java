@@ -27,10 +27,13 @@ import java.util.concurrent.TimeUnit;
 import dk.ilios.spanner.Benchmark;
 import dk.ilios.spanner.BenchmarkConfiguration;
 import dk.ilios.spanner.CustomMeasurement;
+import dk.ilios.spanner.Footprint;
 import dk.ilios.spanner.Spanner;
 import dk.ilios.spanner.SpannerConfig;
+import dk.ilios.spanner.Throughput;
 import dk.ilios.spanner.exception.TrialFailureException;
 import dk.ilios.spanner.model.Trial;
+import dk.ilios.spanner.stats.BaselineComparison;
 
 /**
  * Runner for handling the individual Benchmarks.
@@ -104,6 +107,14 @@ public class SpannerRunner extends Runner {
                 testMethods.add(classMethod);
             }
 
+            if (classMethod.getAnnotation(Footprint.class) != null) {
+                testMethods.add(classMethod);
+            }
+
+            if (classMethod.getAnnotation(Throughput.class) != null) {
+                testMethods.add(classMethod);
+            }
+
             if (classMethod.getAnnotation(Ignore.class) != null) {
                 testMethods.remove(classMethod);
             }
@@ -168,6 +179,8 @@ public class SpannerRunner extends Runner {
                 runNotifier.fireTestStarted(spec);
                 if (trial.hasBaseline()) {
                     checkMetricChanges(trial, benchmarkConfiguration, runNotifier);
+                } else if (trial.experiment().getBaseline() != null && hasFailureLimits(benchmarkConfiguration)) {
+                    reportIgnoredBaseline(trial, runNotifier);
                 }
                 runNotifier.fireTestFinished(spec);
             }
@@ -213,21 +226,29 @@ public class SpannerRunner extends Runner {
             if (maxLimit == SpannerConfig.NOT_ENABLED) {
                 continue;
             }
-            Double change = trial.getChangeFromBaseline(percentile);
-            if (Math.abs(change) > maxLimit) {
+            BaselineComparison comparison = trial.getBaselineComparison(percentile);
+            double change = change(trial.getChangeFromBaseline(percentile), comparison);
+            if (Math.abs(change) > maxLimit && isSignificant(comparison)) {
                 sb.append("\n");
                 String errorMsg = String.format("Change from baseline at %s was to big: %.2f%%. Limit is %.2f%%",
                         prettyPercentile(percentile), change * 100, maxLimit * 100);
                 sb.append(errorMsg);
+                if (comparison != null) {
+                    sb.append(" (").append(formatComparison(comparison)).append(")");
+                }
             }
         }
 
         float meanLimit = benchmarkConfiguration.getMeanFailureLimit();
-        double meanChange = Math.abs(trial.getChangeFromBaselineMean());
-        if (meanLimit != SpannerConfig.NOT_ENABLED && meanChange > meanLimit) {
+        BaselineComparison meanComparison = trial.getBaselineComparison(BaselineComparison.MEAN);
+        double meanChange = Math.abs(change(trial.getChangeFromBaselineMean(), meanComparison));
+        if (meanLimit != SpannerConfig.NOT_ENABLED && meanChange > meanLimit && isSignificant(meanComparison)) {
             sb.append("\n");
             sb.append(String.format("Change from baseline mean was to big: %.2f%%. Limit is %.2f%%",
                     meanChange * 100, meanLimit * 100));
+            if (meanComparison != null) {
+                sb.append(" (").append(formatComparison(meanComparison)).append(")");
+            }
         }
 
         if (sb.length() > 0) {
@@ -236,6 +257,43 @@ public class SpannerRunner extends Runner {
         }
     }
 
+    private boolean hasFailureLimits(SpannerConfig benchmarkConfiguration) {
+        for (Float percentile : benchmarkConfiguration.getPercentileFailureLimits()) {
+            if (benchmarkConfiguration.getPercentileFailureLimit(percentile) != SpannerConfig.NOT_ENABLED) {
+                return true;
+            }
+        }
+        return benchmarkConfiguration.getMeanFailureLimit() != SpannerConfig.NOT_ENABLED;
+    }
+
+    // A baseline measured under different contention cannot be compared against, so the configured failure limits
+    // cannot be checked. Fail the trial rather than letting a regression pass unnoticed.
+    private void reportIgnoredBaseline(Trial trial, RunNotifier runNotifier) {
+        String errorMsg = String.format("Baseline ignored: it ran with %d concurrent trial(s), this trial ran with %d. "
+                        + "Failure limits can only be checked against a baseline run with the same maxBenchmarkThreads "
+                        + "and coresPrTrial.",
+                trial.experiment().getBaseline().scenario().host().concurrentTrials(),
+                trial.scenario().host().concurrentTrials());
+        runNotifier.fireTestFailure(new Failure(getDescription(trial), new TrialFailureException(errorMsg)));
+    }
+
+    // The limit is checked against the same change the statistical comparison tested, if there is one
+    private double change(double change, BaselineComparison comparison) {
+        return (comparison != null) ? comparison.change() : change;
+    }
+
+    // Without a statistical comparison every change is treated as significant
+    private boolean isSignificant(BaselineComparison comparison) {
+        return comparison == null || comparison.isSignificant();
+    }
+
+    private String formatComparison(BaselineComparison comparison) {
+        return String.format("p=%.3f, %.0f%% CI: %s%.2f%%..%s%.2f%%",
+                comparison.pValue(), comparison.level() * 100,
+                comparison.lower() > 0 ? "+" : "", comparison.lower() * 100,
+                comparison.upper() > 0 ? "+" : "", comparison.upper() * 100);
+    }
+
     private String prettyPercentile(Float percentile) {
         if (percentile == 0.0F) {
             return "Min.";
@@ -250,7 +308,11 @@ public class SpannerRunner extends Runner {
 
     private String formatBenchmarkChange(Trial trial) {
         if (trial.hasBaseline()) {
-            Double change = trial.getChangeFromBaseline(50) * 100;
+            BaselineComparison comparison = trial.getBaselineComparison(50);
+            double change = change(trial.getChangeFromBaseline(50), comparison) * 100;
+            if (comparison != null) {
+                return String.format("[%s%.2f%%, %s]", change > 0 ? "+" : "", change, formatComparison(comparison));
+            }
             return String.format("[%s%.2f%%]", change > 0 ? "+" : "", change);
         } else {
             return "";
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.memory;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableMap;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.concurrent.ConcurrentHashMap;
+
+import dk.ilios.spanner.vm.Platform;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Describes how a VM lays out objects in memory, so the shallow size of an object can be estimated.
+ * <p>
+ * The estimate assumes fields are packed without gaps and the object as a whole is padded to the alignment. Real
+ * VMs might add a few bytes of padding between fields, so numbers should only be compared between runs on the same
+ * kind of VM.
+ */
+public final class MemoryLayout {
+
+    /**
+     * ART and Dalvik: 8 byte object header (class + lock word), 32 bit references.
+     */
+    public static final MemoryLayout ART = new MemoryLayout(8, 12, 4, 8);
+
+    /**
+     * 32 bit HotSpot VMs.
+     */
+    public static final MemoryLayout HOTSPOT_32 = new MemoryLayout(8, 12, 4, 8);
+
+    /**
+     * 64 bit HotSpot VMs using compressed references (the default for heaps smaller than 32 GB).
+     */
+    public static final MemoryLayout HOTSPOT_64_COMPRESSED_OOPS = new MemoryLayout(12, 16, 4, 8);
+
+    private static final ImmutableMap<Class<?>, Integer> PRIMITIVE_SIZES = ImmutableMap.<Class<?>, Integer>builder()
+            .put(boolean.class, 1)
+            .put(byte.class, 1)
+            .put(char.class, 2)
+            .put(short.class, 2)
+            .put(int.class, 4)
+            .put(float.class, 4)
+            .put(long.class, 8)
+            .put(double.class, 8)
+            .build();
+
+    private final int objectHeaderBytes;
+    private final int arrayHeaderBytes;
+    private final int referenceBytes;
+    private final int alignmentBytes;
+    private final ConcurrentHashMap<Class<?>, Long> instanceSizes = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the best guess for the layout used by the VM we are running on.
+     */
+    public static MemoryLayout forCurrentVm() {
+        if (Platform.isAndroid()) {
+            return ART;
+        } else if ("32".equals(System.getProperty("sun.arch.data.model"))) {
+            return HOTSPOT_32;
+        } else {
+            return HOTSPOT_64_COMPRESSED_OOPS;
+        }
+    }
+
+    public MemoryLayout(int objectHeaderBytes, int arrayHeaderBytes, int referenceBytes, int alignmentBytes) {
+        checkArgument(objectHeaderBytes >= 0);
+        checkArgument(arrayHeaderBytes >= 0);
+        checkArgument(referenceBytes > 0);
+        checkArgument(alignmentBytes > 0);
+        this.objectHeaderBytes = objectHeaderBytes;
+        this.arrayHeaderBytes = arrayHeaderBytes;
+        this.referenceBytes = referenceBytes;
+        this.alignmentBytes = alignmentBytes;
+    }
+
+    /**
+     * Returns the number of bytes used by the given object itself, not counting the objects it references.
+     */
+    public long shallowSize(Object object) {
+        checkNotNull(object);
+        Class<?> clazz = object.getClass();
+        if (clazz.isArray()) {
+            long elementSize = sizeOf(clazz.getComponentType());
+            return align(arrayHeaderBytes + elementSize * Array.getLength(object));
+        }
+
+        Long size = instanceSizes.get(clazz);
+        if (size == null) {
+            size = align(objectHeaderBytes + fieldBytes(clazz));
+            instanceSizes.putIfAbsent(clazz, size);
+        }
+        return size;
+    }
+
+    private long fieldBytes(Class<?> clazz) {
+        long bytes = 0;
+        while (clazz != null) {
+            for (Field field : clazz.getDeclaredFields()) {
+                if (!Modifier.isStatic(field.getModifiers())) {
+                    bytes += sizeOf(field.getType());
+                }
+            }
+            clazz = clazz.getSuperclass();
+        }
+        return bytes;
+    }
+
+    private long sizeOf(Class<?> type) {
+        return type.isPrimitive() ? PRIMITIVE_SIZES.get(type) : referenceBytes;
+    }
+
+    private long align(long bytes) {
+        long remainder = bytes % alignmentBytes;
+        return (remainder == 0) ? bytes : bytes + alignmentBytes - remainder;
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("objectHeaderBytes", objectHeaderBytes)
+                .add("arrayHeaderBytes", arrayHeaderBytes)
+                .add("referenceBytes", referenceBytes)
+                .add("alignmentBytes", alignmentBytes)
+                .toString();
+    }
+}
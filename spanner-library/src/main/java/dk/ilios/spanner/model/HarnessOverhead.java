@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.model;
+
+import com.google.common.base.Objects;
+
+import java.io.Serializable;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * The cost of the benchmark harness itself, i.e. what it costs to time an empty benchmark method with the same
+ * signature as the real one. It consists of a fixed part (reading the timer, invoking the method) and a part that
+ * grows with the number of reps (the empty loop).
+ */
+public final class HarnessOverhead implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private double fixedNanos;
+    private double perRepNanos;
+
+    public HarnessOverhead(double fixedNanos, double perRepNanos) {
+        checkArgument(fixedNanos >= 0);
+        checkArgument(perRepNanos >= 0);
+        this.fixedNanos = fixedNanos;
+        this.perRepNanos = perRepNanos;
+    }
+
+    /**
+     * Returns the overhead that is paid once pr. measurement.
+     */
+    public double fixedNanos() {
+        return fixedNanos;
+    }
+
+    /**
+     * Returns the overhead that is paid for each rep.
+     */
+    public double perRepNanos() {
+        return perRepNanos;
+    }
+
+    /**
+     * Returns the total overhead of a measurement doing the given number of reps.
+     */
+    public double nanosFor(long reps) {
+        return fixedNanos + perRepNanos * reps;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        } else if (obj instanceof HarnessOverhead) {
+            HarnessOverhead that = (HarnessOverhead) obj;
+            return this.fixedNanos == that.fixedNanos
+                    && this.perRepNanos == that.perRepNanos;
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(fixedNanos, perRepNanos);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("fixedNanos", fixedNanos)
+                .add("perRepNanos", perRepNanos)
+                .toString();
+    }
+}
@@ -42,6 +42,11 @@ import dk.ilios.spanner.util.PersistentHashing;
 public final class Host {
     private static final Logger logger = Logger.getLogger(Host.class.getName());
 
+    /**
+     * Property recording the number of trials allowed to run at the same time as the trial, including itself.
+     */
+    public static final String CONCURRENT_TRIALS = "spanner.concurrentTrials";
+
     private int id;
     private SortedMap<String, String> properties;
 
@@ -58,6 +63,15 @@ public final class Host {
         return ImmutableSortedMap.copyOf(properties);
     }
 
+    /**
+     * Returns the number of trials allowed to run at the same time on this host, including the trial itself.
+     * Hosts recorded before this was tracked ran all trials serially, so they report {@code 1}.
+     */
+    public int concurrentTrials() {
+        String value = properties.get(CONCURRENT_TRIALS);
+        return (value != null) ? Integer.parseInt(value) : 1;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == this) {
@@ -0,0 +1,332 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.model;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.annotations.JsonAdapter;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import dk.ilios.spanner.json.LatencyHistogramTypeAdapter;
+
+/**
+ * A high dynamic range histogram of latencies in nanoseconds.
+ * <p>
+ * Values are counted in buckets with a relative size of {@code 2^-significantBits}, so e.g. 7 significant bits keeps
+ * all values within 0.8% of their real value, no matter if they are nanoseconds or minutes. Values below
+ * {@code 2^significantBits} are counted exactly. Memory use is fixed when the histogram is created and recording a
+ * value does not allocate, so it can be used inside the timed region.
+ * <p>
+ * Values above {@link #HIGHEST_TRACKABLE_BITS} bits (about 18 minutes) are counted in the last bucket. The min and
+ * max values are always tracked exactly.
+ * <p>
+ * Each value can cover several reps, e.g. a sample of reps timed together, see {@link #repsPrValue()}. Recording the
+ * total time keeps reps faster than a nanosecond apart, and {@link #latencyAtPercentile(double)} scales the result
+ * back to the latency of a single rep.
+ */
+@JsonAdapter(LatencyHistogramTypeAdapter.class)
+public final class LatencyHistogram implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    public static final int DEFAULT_SIGNIFICANT_BITS = 7;
+    public static final int HIGHEST_TRACKABLE_BITS = 40;
+
+    /**
+     * The percentiles reported for trials that sample latency, in addition to the max.
+     */
+    public static final ImmutableList<Double> REPORTED_PERCENTILES = ImmutableList.of(50.0, 90.0, 99.0, 99.9);
+
+    private final int significantBits;
+    private final long repsPrValue;
+    private final long highestTrackableValue;
+    private final long[] counts;
+    private long count;
+    private long min = Long.MAX_VALUE;
+    private long max = 0;
+
+    public LatencyHistogram() {
+        this(DEFAULT_SIGNIFICANT_BITS);
+    }
+
+    /**
+     * @param significantBits number of bits of each value that are kept, between 1 and 16.
+     */
+    public LatencyHistogram(int significantBits) {
+        this(significantBits, 1);
+    }
+
+    /**
+     * @param significantBits number of bits of each value that are kept, between 1 and 16.
+     * @param repsPrValue number of reps each recorded value is the total time of.
+     */
+    public LatencyHistogram(int significantBits, long repsPrValue) {
+        if (significantBits < 1 || significantBits > 16) {
+            throw new IllegalArgumentException("Significant bits must be between 1 and 16: " + significantBits);
+        }
+        if (repsPrValue < 1) {
+            throw new IllegalArgumentException("Reps pr. value must be positive: " + repsPrValue);
+        }
+        this.significantBits = significantBits;
+        this.repsPrValue = repsPrValue;
+        this.highestTrackableValue = (1L << HIGHEST_TRACKABLE_BITS) - 1;
+        this.counts = new long[bucketIndex(highestTrackableValue) + 1];
+    }
+
+    /**
+     * Recreates a histogram from its non-empty buckets, e.g. when reading it from a results file.
+     *
+     * @param lowestValues lowest value of each non-empty bucket, see {@link #lowestValueInBucket(int)}.
+     * @param bucketCounts number of values in each of those buckets.
+     * @param min exact smallest value recorded.
+     * @param max exact largest value recorded.
+     */
+    public static LatencyHistogram fromBuckets(int significantBits, long[] lowestValues, long[] bucketCounts,
+                                               long min, long max) {
+        return fromBuckets(significantBits, 1, lowestValues, bucketCounts, min, max);
+    }
+
+    /**
+     * Recreates a histogram where each value covers {@code repsPrValue} reps from its non-empty buckets.
+     */
+    public static LatencyHistogram fromBuckets(int significantBits, long repsPrValue, long[] lowestValues,
+                                               long[] bucketCounts, long min, long max) {
+        if (lowestValues.length != bucketCounts.length) {
+            throw new IllegalArgumentException("Every bucket must have a count");
+        }
+        LatencyHistogram histogram = new LatencyHistogram(significantBits, repsPrValue);
+        for (int i = 0; i < lowestValues.length; i++) {
+            histogram.record(lowestValues[i], bucketCounts[i]);
+        }
+        if (histogram.count > 0) {
+            histogram.min = min;
+            histogram.max = max;
+        }
+        return histogram;
+    }
+
+    /**
+     * Counts a single value.
+     */
+    public void record(long value) {
+        record(value, 1);
+    }
+
+    /**
+     * Counts the same value a number of times.
+     */
+    public void record(long value, long times) {
+        if (value < 0 || times < 0) {
+            throw new IllegalArgumentException("Values and counts must not be negative: " + value + ", " + times);
+        }
+        if (times == 0) {
+            return;
+        }
+        counts[bucketIndex(Math.min(value, highestTrackableValue))] += times;
+        count += times;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    /**
+     * Adds all values of another histogram with the same number of significant bits and reps pr. value to this one.
+     */
+    public void add(LatencyHistogram other) {
+        if (other.significantBits != significantBits) {
+            throw new IllegalArgumentException(String.format("Cannot add a histogram with %d significant bits to "
+                    + "one with %d significant bits", other.significantBits, significantBits));
+        }
+        if (other.repsPrValue != repsPrValue) {
+            throw new IllegalArgumentException(String.format("Cannot add a histogram with %d reps pr. value to "
+                    + "one with %d reps pr. value", other.repsPrValue, repsPrValue));
+        }
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Removes all values.
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+
+    public int significantBits() {
+        return significantBits;
+    }
+
+    /**
+     * Returns the number of reps each value is the total time of, {@code 1} if values are single invocations.
+     */
+    public long repsPrValue() {
+        return repsPrValue;
+    }
+
+    /**
+     * Returns the number of values recorded.
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * Returns the smallest value recorded or 0 if the histogram is empty.
+     */
+    public long min() {
+        return count == 0 ? 0 : min;
+    }
+
+    /**
+     * Returns the largest value recorded or 0 if the histogram is empty.
+     */
+    public long max() {
+        return max;
+    }
+
+    /**
+     * Returns the value that the given percentage of all values are less than or equal to. The result is the highest
+     * value of the bucket it falls in, but never above {@link #max()}.
+     *
+     * @param percentile percentile between 0 and 100.
+     */
+    public long valueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+        }
+        if (count == 0) {
+            return 0;
+        }
+        long target = Math.max(1, Math.round(percentile / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.max(min(), Math.min(max, highestValueInBucket(i)));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Returns the latency of a single rep at the given percentile, i.e. {@link #valueAtPercentile(double)} divided by
+     * {@link #repsPrValue()}.
+     *
+     * @param percentile percentile between 0 and 100.
+     */
+    public double latencyAtPercentile(double percentile) {
+        return (double) valueAtPercentile(percentile) / repsPrValue;
+    }
+
+    /**
+     * Returns the largest latency of a single rep, i.e. {@link #max()} divided by {@link #repsPrValue()}.
+     */
+    public double maxLatency() {
+        return (double) max / repsPrValue;
+    }
+
+    /**
+     * Returns the short name of a percentile, e.g. {@code p50} or {@code p99.9}.
+     */
+    public static String percentileLabel(double percentile) {
+        return (percentile == Math.rint(percentile))
+                ? "p" + (long) percentile
+                : "p" + percentile;
+    }
+
+    /**
+     * Returns the number of buckets in the histogram.
+     */
+    public int buckets() {
+        return counts.length;
+    }
+
+    /**
+     * Returns the number of values counted in the given bucket.
+     */
+    public long countInBucket(int bucket) {
+        return counts[bucket];
+    }
+
+    /**
+     * Returns the lowest value counted in the given bucket.
+     */
+    public long lowestValueInBucket(int bucket) {
+        int subBuckets = 1 << significantBits;
+        if (bucket < subBuckets) {
+            return bucket;
+        }
+        int shift = (bucket >> significantBits) - 1;
+        long subBucket = bucket & (subBuckets - 1);
+        return (subBuckets + subBucket) << shift;
+    }
+
+    private long highestValueInBucket(int bucket) {
+        return bucket == counts.length - 1 ? Long.MAX_VALUE : lowestValueInBucket(bucket + 1) - 1;
+    }
+
+    private int bucketIndex(long value) {
+        int subBuckets = 1 << significantBits;
+        if (value < subBuckets) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - significantBits;
+        int subBucket = (int) (value >>> shift) - subBuckets;
+        return ((shift + 1) << significantBits) + subBucket;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        } else if (obj instanceof LatencyHistogram) {
+            LatencyHistogram that = (LatencyHistogram) obj;
+            return this.significantBits == that.significantBits
+                    && this.repsPrValue == that.repsPrValue
+                    && this.count == that.count
+                    && this.min() == that.min()
+                    && this.max == that.max
+                    && Arrays.equals(this.counts, that.counts);
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(significantBits, repsPrValue, count, min(), max, Arrays.hashCode(counts));
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("count", count)
+                .add("repsPrValue", repsPrValue)
+                .add("min", min())
+                .add("p50", valueAtPercentile(50))
+                .add("p99", valueAtPercentile(99))
+                .add("max", max)
+                .toString();
+    }
+}
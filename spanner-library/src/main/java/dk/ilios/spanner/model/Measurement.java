@@ -33,11 +33,13 @@ public class Measurement implements Serializable {
     private static final long serialVersionUID = 1L;
 
     private Value value;
+    private Value rawValue;
     private double weight;
     private String description;
 
     private Measurement(Builder builder) {
         this.value = builder.value;
+        this.rawValue = builder.rawValue;
         this.description = builder.description;
         this.weight = builder.weight;
     }
@@ -49,6 +51,7 @@ public class Measurement implements Serializable {
         } else if (obj instanceof Measurement) {
             Measurement that = (Measurement) obj;
             return this.value.equals(that.value)
+                    && Objects.equal(this.rawValue, that.rawValue)
                     && this.weight == that.weight
                     && this.description.equals(that.description);
         } else {
@@ -58,13 +61,14 @@ public class Measurement implements Serializable {
 
     @Override
     public int hashCode() {
-        return Objects.hashCode(value, weight, description);
+        return Objects.hashCode(value, rawValue, weight, description);
     }
 
     @Override
     public String toString() {
         return Objects.toStringHelper(this)
                 .add("value", value)
+                .add("rawValue", rawValue)
                 .add("weight", weight)
                 .add("description", description)
                 .toString();
@@ -74,6 +78,14 @@ public class Measurement implements Serializable {
         return value;
     }
 
+    /**
+     * Returns the value as it was measured if {@link #value()} has been corrected, e.g. by subtracting the harness
+     * overhead, otherwise {@code null}.
+     */
+    public Value rawValue() {
+        return rawValue;
+    }
+
     public double weight() {
         return weight;
     }
@@ -84,6 +96,7 @@ public class Measurement implements Serializable {
 
     public static final class Builder {
         private Value value;
+        private Value rawValue;
         private Double weight;
         private String description;
 
@@ -95,6 +108,14 @@ public class Measurement implements Serializable {
             return this;
         }
 
+        /**
+         * The uncorrected value if the value set using {@link #value(Value)} has been corrected in some way.
+         */
+        public Builder rawValue(Value rawValue) {
+            this.rawValue = checkNotNull(rawValue);
+            return this;
+        }
+
         /**
          * The weight of the value. Normally this is 1, but for a test that internally does repetitions
          * to get above the timer granularity, the weight is the number repetitions done internally by
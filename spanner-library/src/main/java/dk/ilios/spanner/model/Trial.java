@@ -21,20 +21,26 @@ package dk.ilios.spanner.model;
 import com.google.common.base.Defaults;
 import com.google.common.base.Objects;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 
-import org.apache.commons.math.stat.descriptive.DescriptiveStatistics;
-import org.apache.commons.math.stat.descriptive.rank.Percentile;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import dk.ilios.spanner.internal.Experiment;
 import dk.ilios.spanner.json.ExcludeFromJson;
+import dk.ilios.spanner.stats.BaselineComparator;
+import dk.ilios.spanner.stats.BaselineComparison;
+import dk.ilios.spanner.stats.ConfidenceInterval;
+import dk.ilios.spanner.stats.StreamingSummary;
 import dk.ilios.spanner.trial.TrialContext;
 
+import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Preconditions.checkState;
 
@@ -46,6 +52,9 @@ import static com.google.common.base.Preconditions.checkState;
  */
 public final class Trial {
 
+    // Unit of throughput measurements, where a higher value is better
+    private static final String HIGHER_IS_BETTER_UNIT = "ops/s";
+
     private UUID id;
     private Run run;
     private InstrumentSpec instrumentSpec;
@@ -53,11 +62,18 @@ public final class Trial {
     private List<Measurement> measurements = new ArrayList<>();
     private List<String> messages = new ArrayList<>();
     private Experiment experiment;
+    private HarnessOverhead harnessOverhead;
+    private ConfidenceInterval confidenceInterval;
+    private Warmup warmup;
+    private LatencyHistogram latencyHistogram;
+    private long durationNanos;
+    private List<BaselineComparison> baselineComparisons;
     @ExcludeFromJson private int trialNumber;
     @ExcludeFromJson private boolean trialComplete;
     @ExcludeFromJson private boolean resultsCalculated;
-    @ExcludeFromJson private Percentile percentile;
-    @ExcludeFromJson private DescriptiveStatistics descriptiveStatistics;
+    @ExcludeFromJson private StreamingSummary statistics;
+    @ExcludeFromJson private Map<String, StreamingSummary> summaries; // Only set for trials created from summaries
+    @ExcludeFromJson private BaselineComparator baselineComparator;
 
     private Trial(Builder builder) {
         this.trialNumber = builder.trialNumber;
@@ -66,6 +82,63 @@ public final class Trial {
         this.instrumentSpec = builder.instrumentSpec;
         this.scenario = builder.scenario;
         this.experiment = builder.experiment;
+        this.baselineComparator = builder.baselineComparator;
+        this.statistics = new StreamingSummary();
+    }
+
+    private Trial(UUID id, InstrumentSpec instrumentSpec, Scenario scenario, StreamingSummary statistics,
+                  Map<String, StreamingSummary> summaries, LatencyHistogram latencyHistogram, long durationNanos) {
+        this.id = id;
+        this.instrumentSpec = instrumentSpec;
+        this.scenario = scenario;
+        this.statistics = statistics;
+        this.summaries = summaries;
+        this.latencyHistogram = latencyHistogram;
+        this.durationNanos = durationNanos;
+        this.trialComplete = true;
+    }
+
+    /**
+     * Creates a completed trial that only has the summary statistics of its primary measurements, e.g. a baseline
+     * read by {@link dk.ilios.spanner.json.BaselineReader}. It has no measurements, messages, run or experiment.
+     */
+    public static Trial fromSummary(UUID id, InstrumentSpec instrumentSpec, Scenario scenario,
+                                    StreamingSummary statistics) {
+        return fromSummary(id, instrumentSpec, scenario, statistics, null);
+    }
+
+    /**
+     * Creates a completed trial from the summary statistics of its primary measurements and its latency histogram,
+     * which may be {@code null} if latency wasn't sampled.
+     */
+    public static Trial fromSummary(UUID id, InstrumentSpec instrumentSpec, Scenario scenario,
+                                    StreamingSummary statistics, LatencyHistogram latencyHistogram) {
+        return fromSummary(id, instrumentSpec, scenario, statistics, latencyHistogram, 0);
+    }
+
+    /**
+     * Creates a completed trial from the summary statistics of its primary measurements, its latency histogram and
+     * how long it took to run, which is {@code 0} if it wasn't recorded.
+     */
+    public static Trial fromSummary(UUID id, InstrumentSpec instrumentSpec, Scenario scenario,
+                                    StreamingSummary statistics, LatencyHistogram latencyHistogram,
+                                    long durationNanos) {
+        return fromSummary(id, instrumentSpec, scenario, statistics,
+                ImmutableMap.<String, StreamingSummary>of(), latencyHistogram, durationNanos);
+    }
+
+    /**
+     * Creates a completed trial from the summary statistics of its primary measurements and of all its measurements
+     * by description, so secondary measurements like {@code "cpu time"} can also be compared against it. See
+     * {@link #statistics(String)}.
+     */
+    public static Trial fromSummary(UUID id, InstrumentSpec instrumentSpec, Scenario scenario,
+                                    StreamingSummary statistics, Map<String, StreamingSummary> statisticsByDescription,
+                                    LatencyHistogram latencyHistogram, long durationNanos) {
+        checkArgument(durationNanos >= 0);
+        return new Trial(checkNotNull(id), checkNotNull(instrumentSpec), checkNotNull(scenario),
+                checkNotNull(statistics), ImmutableMap.copyOf(statisticsByDescription), latencyHistogram,
+                durationNanos);
     }
 
     public UUID id() {
@@ -100,11 +173,18 @@ public final class Trial {
     public void addMeasurement(Measurement measurement) {
         checkIsComplete();
         this.measurements.add(measurement);
+        // Instruments can record several kinds of measurements pr. trial (e.g. bytes and objects). The first
+        // description recorded is the primary one and is the only one used for the trial result.
+        if (statistics != null && measurement.description().equals(measurements.get(0).description())) {
+            statistics.add(measurement.value().magnitude() / measurement.weight(), measurement.weight());
+        }
     }
 
     public void addAllMeasurements(Iterable<Measurement> measurements) {
         checkIsComplete();
-        Iterables.addAll(this.measurements, measurements);
+        for (Measurement measurement : measurements) {
+            addMeasurement(measurement);
+        }
     }
 
     public void addAllMessages(Iterable<String> messages) {
@@ -117,6 +197,83 @@ public final class Trial {
         messages.add(message);
     }
 
+    /**
+     * Set the overhead of the benchmark harness measured before the trial started.
+     */
+    public void setHarnessOverhead(HarnessOverhead harnessOverhead) {
+        checkIsComplete();
+        this.harnessOverhead = harnessOverhead;
+    }
+
+    /**
+     * Returns the overhead of the benchmark harness or {@code null} if it wasn't measured for this trial.
+     */
+    public HarnessOverhead harnessOverhead() {
+        return harnessOverhead;
+    }
+
+    /**
+     * Set the confidence interval achieved by the measurements of this trial.
+     */
+    public void setConfidenceInterval(ConfidenceInterval confidenceInterval) {
+        checkIsComplete();
+        this.confidenceInterval = confidenceInterval;
+    }
+
+    /**
+     * Returns the confidence interval achieved by the measurements or {@code null} if the instrument doesn't track
+     * the precision of its measurements.
+     */
+    public ConfidenceInterval confidenceInterval() {
+        return confidenceInterval;
+    }
+
+    /**
+     * Set how long the trial spent warming up.
+     */
+    public void setWarmup(Warmup warmup) {
+        checkIsComplete();
+        this.warmup = warmup;
+    }
+
+    /**
+     * Returns how long the trial spent warming up or {@code null} if it wasn't recorded.
+     */
+    public Warmup warmup() {
+        return warmup;
+    }
+
+    /**
+     * Set the histogram of the latencies sampled during the trial.
+     */
+    public void setLatencyHistogram(LatencyHistogram latencyHistogram) {
+        checkIsComplete();
+        this.latencyHistogram = latencyHistogram;
+    }
+
+    /**
+     * Returns the histogram of sampled latencies in nanoseconds or {@code null} if latency wasn't sampled.
+     */
+    public LatencyHistogram latencyHistogram() {
+        return latencyHistogram;
+    }
+
+    /**
+     * Set the wall clock time it took to run the trial, including setup and warmup.
+     */
+    public void setDuration(long nanos) {
+        checkIsComplete();
+        checkArgument(nanos >= 0);
+        this.durationNanos = nanos;
+    }
+
+    /**
+     * Returns the wall clock time it took to run the trial or {@code 0} if it wasn't recorded.
+     */
+    public long durationNanos() {
+        return durationNanos;
+    }
+
     public int getTrialNumber() {
         return trialNumber;
     }
@@ -127,21 +284,42 @@ public final class Trial {
     public void calculateResults() {
         checkResultsCalculated(false);
 
-        double[] weightedValues = new double[measurements.size()];
-        int i = 0;
-        for (Measurement measurement : measurements) {
-            weightedValues[i] = measurement.value().magnitude() / measurement.weight();
-            i++;
+        // Statistics are updated as measurements are added. Trials read from JSON, e.g. baselines, only have the
+        // measurements.
+        if (statistics == null) {
+            statistics = new StreamingSummary(measurements.size());
+            String primaryDescription = primaryDescription();
+            for (Measurement measurement : measurements) {
+                if (measurement.description().equals(primaryDescription)) {
+                    statistics.add(measurement.value().magnitude() / measurement.weight(), measurement.weight());
+                }
+            }
+        }
+        Trial baseline = (experiment != null) ? experiment.getBaseline() : null;
+        if (baseline != null && !baseline.isResultsCalculated()) {
+            baseline.calculateResults();
         }
-        percentile = new Percentile();
-        percentile.setData(weightedValues);
-        descriptiveStatistics = new DescriptiveStatistics(weightedValues);
-        if (experiment.getBaseline() != null) {
-            experiment.getBaseline().calculateResults();
+        if (baselineComparator != null && hasBaseline()
+                && baseline.statistics.count() > 0 && statistics.count() > 0) {
+            baselineComparisons = baselineComparator.compare(baseline.statistics, statistics);
+            if (isHigherBetter(getUnit())) {
+                List<BaselineComparison> inverted = new ArrayList<>(baselineComparisons.size());
+                for (BaselineComparison comparison : baselineComparisons) {
+                    inverted.add(comparison.inverted());
+                }
+                baselineComparisons = inverted;
+            }
         }
         resultsCalculated = true;
     }
 
+    /**
+     * Returns {@code true} if {@link #calculateResults()} has been called.
+     */
+    public boolean isResultsCalculated() {
+        return resultsCalculated;
+    }
+
     private void checkResultsCalculated(boolean calculated) {
         if (calculated && !resultsCalculated) {
             throw new IllegalStateException("Results have not been calculated.");
@@ -161,17 +339,17 @@ public final class Trial {
 
     public double getMin() {
         checkResultsCalculated(true);
-        return descriptiveStatistics.getMin();
+        return statistics.min();
     }
 
     public double getMax() {
         checkResultsCalculated(true);
-        return descriptiveStatistics.getMax();
+        return statistics.max();
     }
 
     public double getMean() {
         checkResultsCalculated(true);
-        return descriptiveStatistics.getMean();
+        return statistics.mean();
     }
 
     /**
@@ -181,50 +359,172 @@ public final class Trial {
      */
     public double getPercentile(float percentile) {
         checkResultsCalculated(true);
-        if (percentile == 0.0f) {
-            return descriptiveStatistics.getMin();
-        } else if (percentile == 100.0f) {
-            return descriptiveStatistics.getMax();
-        } else {
-            return this.percentile.evaluate(percentile);
-        }
+        return statistics.percentile(percentile);
     }
 
     public double getMedian() {
         checkResultsCalculated(true);
-        return this.percentile.evaluate(50);
+        return statistics.median();
+    }
+
+    /**
+     * Returns the summary statistics of the primary measurements of this trial.
+     */
+    public StreamingSummary statistics() {
+        checkResultsCalculated(true);
+        return statistics;
+    }
+
+    /**
+     * Returns the summary statistics of the measurements with the given description, e.g. a secondary measurement
+     * like {@code "cpu time"}, or {@code null} if the trial has no such measurements. Values are pr. rep.
+     * <p>
+     * Trials created from summaries have no measurements, so they return the summary they were created with.
+     */
+    public StreamingSummary statistics(String description) {
+        if (summaries != null) {
+            return summaries.get(description);
+        }
+        StreamingSummary summary = null;
+        for (Measurement measurement : measurements) {
+            if (measurement.description().equals(description)) {
+                if (summary == null) {
+                    summary = new StreamingSummary();
+                }
+                summary.add(measurement.value().magnitude() / measurement.weight(), measurement.weight());
+            }
+        }
+        return summary;
     }
 
+    /**
+     * Returns {@code true} if this trial has a baseline it can be compared against. Baselines measured with a
+     * different number of concurrent trials are not comparable, as contention affects the results.
+     */
     public boolean hasBaseline() {
-        return experiment.getBaseline() != null;
+        Trial baseline = (experiment != null) ? experiment.getBaseline() : null;
+        return baseline != null
+                && baseline.scenario().host().concurrentTrials() == scenario.host().concurrentTrials();
+    }
+
+    /**
+     * Records the number of trials allowed to run at the same time as this one in the {@link Host} of this trial.
+     */
+    public void setConcurrentTrials(int concurrentTrials) {
+        Host host = new Host.Builder()
+                .addAllProperies(scenario.host().properties())
+                .addProperty(Host.CONCURRENT_TRIALS, Integer.toString(concurrentTrials))
+                .build();
+        scenario = new Scenario.Builder()
+                .benchmarkSpec(scenario.benchmarkSpec())
+                .host(host)
+                .build();
     }
 
     /**
-     * Returns changes from baseline at the given percentile.
+     * Returns the change from baseline at the given percentile, i.e. this trial's value at the percentile compared
+     * against the baseline's value at the same percentile. This is the same change as the
+     * {@link #getBaselineComparison(float) statistical comparison} reports.
+     * <p>
+     * A positive change is an improvement: a lower value, or a higher one for units where higher is better, e.g.
+     * throughput in {@code ops/s}.
      *
      * @param percentile [0.0F, 100.0F]
      * @return Change in percent from baseline. {@code 1.0} is 100%.
      */
     public double getChangeFromBaseline(float percentile) {
         checkResultsCalculated(true);
-        if (experiment.getBaseline() == null) {
-            throw new IllegalStateException("No baseline exists");
+        if (!hasBaseline()) {
+            throw new IllegalStateException("No comparable baseline exists");
         }
 
-        double newMedian = getPercentile(percentile);
-        double oldMedian = experiment.getBaseline().getMedian();
+        double newValue = getPercentile(percentile);
+        double oldValue = experiment.getBaseline().getPercentile(percentile);
 
-        return (oldMedian - newMedian) / oldMedian;
+        return relativeChange(oldValue, newValue, getUnit());
+    }
+
+    /**
+     * Returns the statistical comparisons against the baseline. The list is empty if the trial has no comparable
+     * baseline or trials are not compared statistically.
+     */
+    public List<BaselineComparison> baselineComparisons() {
+        return (baselineComparisons != null) ? baselineComparisons : Collections.<BaselineComparison>emptyList();
+    }
+
+    /**
+     * Returns the statistical comparison against the baseline for the given percentile or {@code null} if it wasn't
+     * compared.
+     *
+     * @param percentile [0.0F, 100.0F] or {@link BaselineComparison#MEAN}.
+     */
+    public BaselineComparison getBaselineComparison(float percentile) {
+        for (BaselineComparison comparison : baselineComparisons()) {
+            if (comparison.percentile() == percentile) {
+                return comparison;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the change in sampled latency from baseline at the given percentile, using the same sign as
+     * {@link #getChangeFromBaseline(float)}, or {@code null} if this trial or its baseline has no latency histogram.
+     *
+     * @param percentile [0.0, 100.0]
+     */
+    public Double getLatencyChangeFromBaseline(double percentile) {
+        if (!hasBaseline() || latencyHistogram == null) {
+            return null;
+        }
+        LatencyHistogram baselineHistogram = experiment.getBaseline().latencyHistogram();
+        if (baselineHistogram == null || baselineHistogram.count() == 0 || latencyHistogram.count() == 0) {
+            return null;
+        }
+        double oldValue = baselineHistogram.latencyAtPercentile(percentile);
+        double newValue = latencyHistogram.latencyAtPercentile(percentile);
+        return (oldValue - newValue) / oldValue;
+    }
+
+    /**
+     * Returns the change from baseline at the given percentile for the measurements with the given description, using
+     * the same sign as {@link #getChangeFromBaseline(float)}. This makes it possible to compare secondary
+     * measurements, e.g. {@code "cpu time"}, against the baseline.
+     *
+     * @param description description of the measurements to compare.
+     * @param percentile [0.0, 100.0]
+     * @return Change in percent from baseline or {@code null} if this trial or its baseline has no such measurements.
+     */
+    public Double getChangeFromBaseline(String description, float percentile) {
+        if (!hasBaseline()) {
+            return null;
+        }
+        StreamingSummary baselineStatistics = experiment.getBaseline().statistics(description);
+        StreamingSummary newStatistics = statistics(description);
+        if (baselineStatistics == null || newStatistics == null) {
+            return null;
+        }
+        double oldValue = baselineStatistics.percentile(percentile);
+        double newValue = newStatistics.percentile(percentile);
+        return relativeChange(oldValue, newValue, unit(description));
     }
 
     public Double getChangeFromBaselineMean() {
         checkResultsCalculated(true);
-        if (experiment.getBaseline() == null) return null;
+        if (!hasBaseline()) return null;
 
         double newMean = getMean();
         double oldMean = experiment.getBaseline().getMean();
 
-        return (oldMean - newMean) / oldMean;
+        return relativeChange(oldMean, newMean, getUnit());
+    }
+
+    /**
+     * Returns the description of the primary measurements, i.e. the ones the statistics and the baseline comparisons
+     * of this trial are based on, or {@code null} if the trial has no measurements.
+     */
+    public String primaryDescription() {
+        return measurements.isEmpty() ? null : measurements.get(0).description();
     }
 
     public String getUnit() {
@@ -235,6 +535,25 @@ public final class Trial {
         }
     }
 
+    private String unit(String description) {
+        for (Measurement measurement : measurements) {
+            if (measurement.description().equals(description)) {
+                return measurement.value().unit();
+            }
+        }
+        return "";
+    }
+
+    // Positive changes are improvements, so the sign is reversed for units where higher values are better
+    private static double relativeChange(double oldValue, double newValue, String unit) {
+        double change = (oldValue - newValue) / oldValue;
+        return isHigherBetter(unit) ? -change : change;
+    }
+
+    private static boolean isHigherBetter(String unit) {
+        return HIGHER_IS_BETTER_UNIT.equals(unit);
+    }
+
     private void checkIsComplete() {
         if (trialComplete) {
             throw new RuntimeException("Trial is complete. No further modifications are allowed");
@@ -289,6 +608,7 @@ public final class Trial {
         private InstrumentSpec instrumentSpec;
         private Scenario scenario;
         private Experiment experiment;
+        private BaselineComparator baselineComparator;
 
         public Builder(TrialContext context) {
             checkNotNull(context);
@@ -316,6 +636,14 @@ public final class Trial {
             return this;
         }
 
+        /**
+         * Compare the trial statistically against its baseline when results are calculated.
+         */
+        public Builder baselineComparator(BaselineComparator comparator) {
+            this.baselineComparator = checkNotNull(comparator);
+            return this;
+        }
+
         public Trial build() {
             checkState(run != null);
             checkState(instrumentSpec != null);
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.model;
+
+import com.google.common.base.Objects;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * How long a trial spent warming up before the measurements used for the result were taken.
+ */
+public final class Warmup {
+
+    private int measurements;
+    private long wallTimeNanos;
+
+    public Warmup(int measurements, long wallTimeNanos) {
+        checkArgument(measurements >= 0);
+        checkArgument(wallTimeNanos >= 0);
+        this.measurements = measurements;
+        this.wallTimeNanos = wallTimeNanos;
+    }
+
+    /**
+     * Returns the number of measurements that were discarded as warmup.
+     */
+    public int measurements() {
+        return measurements;
+    }
+
+    /**
+     * Returns the wall clock time spent warming up.
+     */
+    public long wallTimeNanos() {
+        return wallTimeNanos;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        } else if (obj instanceof Warmup) {
+            Warmup that = (Warmup) obj;
+            return this.measurements == that.measurements
+                    && this.wallTimeNanos == that.wallTimeNanos;
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(measurements, wallTimeNanos);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("measurements", measurements)
+                .add("wallTimeNanos", wallTimeNanos)
+                .toString();
+    }
+}
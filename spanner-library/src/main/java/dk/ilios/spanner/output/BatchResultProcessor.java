@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.output;
+
+import java.util.List;
+
+import dk.ilios.spanner.model.Trial;
+
+/**
+ * A {@link ResultProcessor} that can process several trials at once, e.g. to write or upload them in one go.
+ * {@link ResultPipeline} hands it all trials that are ready instead of one trial at a time.
+ */
+public interface BatchResultProcessor extends ResultProcessor {
+
+    /**
+     * Processes the trials in the order they completed.
+     */
+    void processTrials(List<Trial> trials);
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.output;
+
+import com.google.common.base.Optional;
+import com.google.common.io.Files;
+import com.google.gson.Gson;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.logging.Logger;
+
+import dk.ilios.spanner.model.Trial;
+
+import static java.util.logging.Level.SEVERE;
+
+/**
+ * {@link ResultProcessor} that writes the results in a compact binary format. Measurement values and weights are
+ * stored as primitive columns and can optionally be compressed, so the file is much smaller and faster to write than
+ * the JSON written by {@link OutputFileDumper}. See {@link BinaryResultFormat} for the layout.
+ * <p>
+ * Use {@link BinaryResultReader} to read the trials back or {@link BinaryResultConverter} to convert the file to
+ * JSON.
+ */
+public final class BinaryFileDumper implements ResultProcessor {
+
+    private static final Logger logger = Logger.getLogger(BinaryFileDumper.class.getName());
+
+    private final Gson gson;
+    private final File resultFile;
+    private final File workFile;
+    private final boolean compress;
+    private Optional<FileChannel> channel = Optional.absent();
+
+    /**
+     * @param gson Gson instance used for the trial metadata.
+     * @param resultFile file to write.
+     * @param compress {@code true} if the measurements should be compressed.
+     */
+    public BinaryFileDumper(Gson gson, File resultFile, boolean compress) {
+        this.gson = gson;
+        this.resultFile = resultFile;
+        this.workFile = new File(resultFile.getPath() + ".tmp");
+        this.compress = compress;
+        logger.fine(String.format("using %s for binary results", resultFile));
+    }
+
+    @Override
+    public void processTrial(Trial trial) {
+        try {
+            if (!channel.isPresent()) {
+                Files.createParentDirs(workFile);
+                FileChannel channel = new FileOutputStream(workFile).getChannel();
+                BinaryResultFormat.writeHeader(channel, compress);
+                this.channel = Optional.of(channel);
+            }
+            BinaryResultFormat.writeTrial(channel.get(), gson, trial, compress);
+        } catch (IOException e) {
+            logger.log(SEVERE, String.format(
+                    "An error occured writing trial %s. Results in %s will be incomplete.", trial.id(),
+                    resultFile), e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel.isPresent()) {
+            channel.get().close();
+        }
+        if (workFile.exists()) {
+            Files.move(workFile, resultFile);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.output;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.internal.bind.TypeAdapters;
+import com.google.gson.stream.JsonWriter;
+
+import org.threeten.bp.Instant;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+
+import dk.ilios.spanner.json.AnnotationExclusionStrategy;
+import dk.ilios.spanner.json.InstantTypeAdapter;
+import dk.ilios.spanner.model.Trial;
+
+/**
+ * Converts binary results written by {@link BinaryFileDumper} to the JSON written by {@link OutputFileDumper}.
+ * <p>
+ * Usage: {@code BinaryResultConverter <binary input> <json output>}
+ */
+public final class BinaryResultConverter {
+
+    private BinaryResultConverter() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: BinaryResultConverter <binary input> <json output>");
+            System.exit(1);
+        }
+        GsonBuilder gsonBuilder = new GsonBuilder().setExclusionStrategies(new AnnotationExclusionStrategy());
+        gsonBuilder.registerTypeAdapterFactory(TypeAdapters.newFactory(Instant.class, new InstantTypeAdapter()));
+        toJson(gsonBuilder.create(), new File(args[0]), new File(args[1]));
+    }
+
+    /**
+     * Converts a binary results file to JSON.
+     *
+     * @param gson Gson instance configured the same way as the one that wrote the results.
+     * @param input binary results file.
+     * @param output JSON file to write. It is overwritten if it exists.
+     */
+    public static void toJson(Gson gson, File input, File output) throws IOException {
+        Files.createParentDirs(output);
+        JsonWriter writer = new JsonWriter(new OutputStreamWriter(new FileOutputStream(output), Charsets.UTF_8));
+        try {
+            writer.setIndent("  ");
+            writer.beginArray();
+            for (Trial trial : new BinaryResultReader(gson).read(input)) {
+                gson.toJson(trial, Trial.class, writer);
+            }
+            writer.endArray();
+        } finally {
+            writer.close();
+        }
+    }
+}
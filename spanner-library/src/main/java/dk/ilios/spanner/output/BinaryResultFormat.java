@@ -0,0 +1,397 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.output;
+
+import com.google.common.base.Charsets;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import dk.ilios.spanner.model.InstrumentSpec;
+import dk.ilios.spanner.model.LatencyHistogram;
+import dk.ilios.spanner.model.Measurement;
+import dk.ilios.spanner.model.Scenario;
+import dk.ilios.spanner.model.Trial;
+import dk.ilios.spanner.model.Value;
+import dk.ilios.spanner.stats.StreamingSummary;
+
+/**
+ * The binary results format written by {@link BinaryFileDumper} and read by {@link BinaryResultReader}.
+ * <p>
+ * All numbers are big-endian. A file starts with a header followed by one record pr. trial:
+ * <pre>
+ * header:  int magic ("SPNR"), int version, byte flags
+ * record:  int metadataLength, byte[] metadata, int columnsLength, int uncompressedColumnsLength, byte[] columns
+ * </pre>
+ * The metadata is the JSON of the trial without its measurements, so the format keeps up with changes to
+ * {@link Trial}. The measurements are stored in columns that are deflated if the compressed flag is set:
+ * <pre>
+ * columns: int count,
+ *          int kinds, (string unit, string description) * kinds,
+ *          int[count] kind, double[count] magnitude, double[count] weight,
+ *          byte hasRawValues, double[count] rawMagnitude (only if hasRawValues, NaN if missing)
+ * string:  int length, byte[length] UTF-8
+ * </pre>
+ * Metadata is kept outside the compressed part, so readers can skip trials they don't need without inflating them.
+ */
+final class BinaryResultFormat {
+
+    static final int MAGIC = 0x53504E52; // "SPNR"
+    static final int VERSION = 1;
+    static final byte FLAG_COMPRESSED = 1;
+    static final int HEADER_SIZE = 9;
+
+    private BinaryResultFormat() {
+    }
+
+    static void writeHeader(WritableByteChannel channel, boolean compressed) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).put(compressed ? FLAG_COMPRESSED : 0);
+        header.flip();
+        writeFully(channel, header);
+    }
+
+    /**
+     * Reads the header and returns {@code true} if the records are compressed.
+     */
+    static boolean readHeader(ReadableByteChannel channel) throws IOException {
+        ByteBuffer header = readFully(channel, HEADER_SIZE);
+        if (header.getInt() != MAGIC) {
+            throw new IOException("Not a binary results file");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary results version: " + version);
+        }
+        return (header.get() & FLAG_COMPRESSED) != 0;
+    }
+
+    static void writeTrial(WritableByteChannel channel, Gson gson, Trial trial, boolean compress) throws IOException {
+        JsonObject json = gson.toJsonTree(trial, Trial.class).getAsJsonObject();
+        json.remove("measurements");
+        byte[] metadata = json.toString().getBytes(Charsets.UTF_8);
+
+        byte[] columns = encodeColumns(trial.measurements());
+        int uncompressedLength = columns.length;
+        if (compress) {
+            columns = deflate(columns);
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(4 + metadata.length + 8 + columns.length);
+        record.putInt(metadata.length).put(metadata);
+        record.putInt(columns.length).putInt(uncompressedLength).put(columns);
+        record.flip();
+        writeFully(channel, record);
+    }
+
+    private static byte[] encodeColumns(List<Measurement> measurements) {
+        int count = measurements.size();
+        Map<String, Integer> kindIndex = new LinkedHashMap<>();
+        List<String[]> kinds = new ArrayList<>();
+        int[] kindColumn = new int[count];
+        double[] magnitudes = new double[count];
+        double[] weights = new double[count];
+        double[] rawMagnitudes = new double[count];
+        boolean hasRawValues = false;
+        int kindsSize = 0;
+        for (int i = 0; i < count; i++) {
+            Measurement measurement = measurements.get(i);
+            String unit = measurement.value().unit();
+            String description = measurement.description();
+            String key = unit + '\u0000' + description;
+            Integer kind = kindIndex.get(key);
+            if (kind == null) {
+                kind = kinds.size();
+                kindIndex.put(key, kind);
+                kinds.add(new String[] {unit, description});
+                kindsSize += stringSize(unit) + stringSize(description);
+            }
+            kindColumn[i] = kind;
+            magnitudes[i] = measurement.value().magnitude();
+            weights[i] = measurement.weight();
+            Value rawValue = measurement.rawValue();
+            rawMagnitudes[i] = (rawValue != null) ? rawValue.magnitude() : Double.NaN;
+            hasRawValues |= rawValue != null;
+        }
+
+        int size = 4 + 4 + kindsSize + count * (4 + 8 + 8) + 1 + (hasRawValues ? count * 8 : 0);
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(count);
+        buffer.putInt(kinds.size());
+        for (String[] kind : kinds) {
+            putString(buffer, kind[0]);
+            putString(buffer, kind[1]);
+        }
+        buffer.asIntBuffer().put(kindColumn);
+        buffer.position(buffer.position() + count * 4);
+        buffer.asDoubleBuffer().put(magnitudes);
+        buffer.position(buffer.position() + count * 8);
+        buffer.asDoubleBuffer().put(weights);
+        buffer.position(buffer.position() + count * 8);
+        buffer.put(hasRawValues ? (byte) 1 : (byte) 0);
+        if (hasRawValues) {
+            buffer.asDoubleBuffer().put(rawMagnitudes);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Reads the next record. Returns {@code null} at the end of the file.
+     */
+    static Record readRecord(ReadableByteChannel channel) throws IOException {
+        ByteBuffer lengthBuffer = ByteBuffer.allocate(4);
+        if (!readFully(channel, lengthBuffer, true)) {
+            return null;
+        }
+        lengthBuffer.flip();
+        ByteBuffer metadata = readFully(channel, lengthBuffer.getInt());
+        ByteBuffer columnLengths = readFully(channel, 8);
+        int columnsLength = columnLengths.getInt();
+        int uncompressedLength = columnLengths.getInt();
+        ByteBuffer columns = readFully(channel, columnsLength);
+        return new Record(new String(metadata.array(), Charsets.UTF_8), columns.array(), uncompressedLength);
+    }
+
+    /**
+     * A trial as stored in the file. Columns are only decoded when needed.
+     */
+    static final class Record {
+        final String metadata;
+        private final byte[] columns;
+        private final int uncompressedLength;
+
+        Record(String metadata, byte[] columns, int uncompressedLength) {
+            this.metadata = metadata;
+            this.columns = columns;
+            this.uncompressedLength = uncompressedLength;
+        }
+
+        List<Measurement> measurements(boolean compressed) throws IOException {
+            Columns columns = decode(compressed);
+            List<Measurement> measurements = new ArrayList<>(columns.count);
+            for (int i = 0; i < columns.count; i++) {
+                String[] kind = columns.kinds[columns.kindColumn[i]];
+                Measurement.Builder builder = new Measurement.Builder()
+                        .value(Value.create(columns.magnitudes[i], kind[0]))
+                        .weight(columns.weights[i])
+                        .description(kind[1]);
+                if (columns.rawMagnitudes != null && !Double.isNaN(columns.rawMagnitudes[i])) {
+                    builder.rawValue(Value.create(columns.rawMagnitudes[i], kind[0]));
+                }
+                measurements.add(builder.build());
+            }
+            return measurements;
+        }
+
+        /**
+         * Summarizes the per-rep values of the measurements of each description, in the order the descriptions first
+         * appear, without creating measurement objects.
+         */
+        Map<String, StreamingSummary> summarize(boolean compressed) throws IOException {
+            Columns columns = decode(compressed);
+            Map<String, StreamingSummary> statistics = new LinkedHashMap<>();
+            for (int i = 0; i < columns.count; i++) {
+                String description = columns.kinds[columns.kindColumn[i]][1];
+                StreamingSummary summary = statistics.get(description);
+                if (summary == null) {
+                    summary = new StreamingSummary();
+                    statistics.put(description, summary);
+                }
+                summary.add(columns.magnitudes[i] / columns.weights[i], columns.weights[i]);
+            }
+            return statistics;
+        }
+
+        private Columns decode(boolean compressed) throws IOException {
+            byte[] data = compressed ? inflate(columns, uncompressedLength) : columns;
+            return new Columns(ByteBuffer.wrap(data));
+        }
+
+        /**
+         * Converts the record back to a trial.
+         */
+        Trial toTrial(Gson gson, boolean compressed) throws IOException {
+            JsonObject json = gson.fromJson(metadata, JsonObject.class);
+            json.add("measurements", new JsonArray());
+            Trial trial = gson.fromJson(json, Trial.class);
+            trial.addAllMeasurements(measurements(compressed));
+            return trial;
+        }
+
+        /**
+         * Converts the record to the same summarized trial as {@link dk.ilios.spanner.json.BaselineReader} creates
+         * for baselines. Returns {@code null} if the trial is incomplete.
+         */
+        Trial toBaseline(Gson gson, boolean compressed) throws IOException {
+            JsonObject json = gson.fromJson(metadata, JsonObject.class);
+            if (!json.has("id") || !json.has("instrumentSpec") || !json.has("scenario")) {
+                return null;
+            }
+            UUID id = UUID.fromString(json.get("id").getAsString());
+            InstrumentSpec instrumentSpec = gson.fromJson(json.get("instrumentSpec"), InstrumentSpec.class);
+            Scenario scenario = gson.fromJson(json.get("scenario"), Scenario.class);
+            LatencyHistogram latencyHistogram = json.has("latencyHistogram")
+                    ? gson.fromJson(json.get("latencyHistogram"), LatencyHistogram.class)
+                    : null;
+            long durationNanos = json.has("durationNanos") ? json.get("durationNanos").getAsLong() : 0;
+            Map<String, StreamingSummary> statistics = summarize(compressed);
+            // The primary measurements are those with the same description as the first measurement.
+            StreamingSummary primary = statistics.isEmpty()
+                    ? new StreamingSummary()
+                    : statistics.values().iterator().next();
+            return Trial.fromSummary(id, instrumentSpec, scenario, primary, statistics, latencyHistogram,
+                    durationNanos);
+        }
+    }
+
+    /**
+     * The decoded measurement columns of a record.
+     */
+    private static final class Columns {
+        final int count;
+        final String[][] kinds;
+        final int[] kindColumn;
+        final double[] magnitudes;
+        final double[] weights;
+        final double[] rawMagnitudes;
+
+        Columns(ByteBuffer buffer) {
+            count = buffer.getInt();
+            int kindCount = buffer.getInt();
+            kinds = new String[kindCount][];
+            for (int i = 0; i < kindCount; i++) {
+                kinds[i] = new String[] {getString(buffer), getString(buffer)};
+            }
+            kindColumn = new int[count];
+            magnitudes = new double[count];
+            weights = new double[count];
+            buffer.asIntBuffer().get(kindColumn);
+            buffer.position(buffer.position() + count * 4);
+            buffer.asDoubleBuffer().get(magnitudes);
+            buffer.position(buffer.position() + count * 8);
+            buffer.asDoubleBuffer().get(weights);
+            buffer.position(buffer.position() + count * 8);
+            if (buffer.get() != 0) {
+                rawMagnitudes = new double[count];
+                buffer.asDoubleBuffer().get(rawMagnitudes);
+            } else {
+                rawMagnitudes = null;
+            }
+        }
+    }
+
+    private static int stringSize(String value) {
+        return 4 + value.getBytes(Charsets.UTF_8).length;
+    }
+
+    private static void putString(ByteBuffer buffer, String value) {
+        byte[] bytes = value.getBytes(Charsets.UTF_8);
+        buffer.putInt(bytes.length).put(bytes);
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, Charsets.UTF_8);
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(data.length / 2 + 64);
+            byte[] chunk = new byte[8192];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(chunk);
+                output.write(chunk, 0, length);
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data, int uncompressedLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            byte[] result = new byte[uncompressedLength];
+            int length = 0;
+            while (length < uncompressedLength && !inflater.finished()) {
+                int read = inflater.inflate(result, length, uncompressedLength - length);
+                if (read == 0 && inflater.needsInput()) {
+                    break;
+                }
+                length += read;
+            }
+            if (length != uncompressedLength) {
+                throw new IOException("Corrupt binary results: expected " + uncompressedLength + " bytes, got "
+                        + length);
+            }
+            return result;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt binary results", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static ByteBuffer readFully(ReadableByteChannel channel, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        readFully(channel, buffer, false);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Fills the buffer. Returns {@code false} if the channel was already at its end and that is allowed.
+     */
+    private static boolean readFully(ReadableByteChannel channel, ByteBuffer buffer, boolean allowEnd)
+            throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (allowEnd && buffer.position() == 0) {
+                    return false;
+                }
+                throw new EOFException("Unexpected end of binary results");
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.output;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+
+import dk.ilios.spanner.model.BenchmarkSpec;
+import dk.ilios.spanner.model.Scenario;
+import dk.ilios.spanner.model.Trial;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reads trials written by {@link BinaryFileDumper}.
+ */
+public final class BinaryResultReader {
+
+    private final Gson gson;
+
+    /**
+     * @param gson Gson instance configured the same way as the one that wrote the results.
+     */
+    public BinaryResultReader(Gson gson) {
+        this.gson = checkNotNull(gson);
+    }
+
+    /**
+     * Returns {@code true} if the file starts like a binary results file.
+     */
+    public static boolean isBinaryResultFile(File file) throws IOException {
+        FileInputStream input = new FileInputStream(file);
+        try {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            FileChannel channel = input.getChannel();
+            while (magic.hasRemaining()) {
+                if (channel.read(magic) < 0) {
+                    return false;
+                }
+            }
+            magic.flip();
+            return magic.getInt() == BinaryResultFormat.MAGIC;
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Reads all trials in the file.
+     */
+    public List<Trial> read(File file) throws IOException {
+        return read(file, Predicates.<BenchmarkSpec>alwaysTrue());
+    }
+
+    /**
+     * Reads the trials of benchmarks accepted by the filter. The measurements of other trials are skipped without
+     * being decoded.
+     */
+    public List<Trial> read(File file, Predicate<BenchmarkSpec> filter) throws IOException {
+        ImmutableList.Builder<Trial> trials = ImmutableList.builder();
+        FileInputStream input = new FileInputStream(file);
+        try {
+            FileChannel channel = input.getChannel();
+            boolean compressed = BinaryResultFormat.readHeader(channel);
+            BinaryResultFormat.Record record;
+            while ((record = BinaryResultFormat.readRecord(channel)) != null) {
+                JsonObject metadata = gson.fromJson(record.metadata, JsonObject.class);
+                Scenario scenario = gson.fromJson(metadata.get("scenario"), Scenario.class);
+                if (scenario != null && filter.apply(scenario.benchmarkSpec())) {
+                    trials.add(record.toTrial(gson, compressed));
+                }
+            }
+        } finally {
+            input.close();
+        }
+        return trials.build();
+    }
+
+    /**
+     * Reads the trials of benchmarks accepted by the filter for use as baselines. Like
+     * {@link dk.ilios.spanner.json.BaselineReader}, only a summary of each trial is kept and no measurement objects
+     * are created.
+     *
+     * @return summarized trials in the order they appear in the file.
+     */
+    public List<Trial> readBaselines(File file, Predicate<BenchmarkSpec> filter) throws IOException {
+        ImmutableList.Builder<Trial> trials = ImmutableList.builder();
+        FileInputStream input = new FileInputStream(file);
+        try {
+            FileChannel channel = input.getChannel();
+            boolean compressed = BinaryResultFormat.readHeader(channel);
+            BinaryResultFormat.Record record;
+            while ((record = BinaryResultFormat.readRecord(channel)) != null) {
+                JsonObject metadata = gson.fromJson(record.metadata, JsonObject.class);
+                Scenario scenario = gson.fromJson(metadata.get("scenario"), Scenario.class);
+                if (scenario != null && filter.apply(scenario.benchmarkSpec())) {
+                    Trial trial = record.toBaseline(gson, compressed);
+                    if (trial != null) {
+                        trials.add(trial);
+                    }
+                }
+            }
+        } finally {
+            input.close();
+        }
+        return trials.build();
+    }
+}
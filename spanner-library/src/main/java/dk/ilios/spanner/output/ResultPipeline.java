@@ -0,0 +1,173 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.output;
+
+import com.google.common.base.Optional;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import dk.ilios.spanner.model.Trial;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Hands completed trials to the {@link ResultProcessor}s on a dedicated low priority thread, so writing results to
+ * disk or uploading them doesn't delay or disturb the trials that are still running.
+ * <p>
+ * Trials are queued in a bounded queue. If the processors fall behind and the queue is full,
+ * {@link #processTrial(Trial)} blocks until there is room again. The consumer thread takes all trials that are
+ * ready, up to the batch size, and hands them to each processor in turn. {@link #close()} waits until all queued
+ * trials have been processed and then closes the processors.
+ */
+public final class ResultPipeline implements ResultProcessor {
+
+    private static final Logger logger = Logger.getLogger(ResultPipeline.class.getName());
+
+    public static final int DEFAULT_CAPACITY = 64;
+    public static final int DEFAULT_BATCH_SIZE = 16;
+
+    private final ImmutableSet<ResultProcessor> processors;
+    private final BlockingQueue<Optional<Trial>> queue;
+    private final int batchSize;
+    private final Thread consumer;
+    private boolean closed = false;
+
+    public ResultPipeline(ImmutableSet<ResultProcessor> processors) {
+        this(processors, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param processors processors receiving all trials.
+     * @param capacity number of trials that can be queued before {@link #processTrial(Trial)} blocks.
+     * @param batchSize maximum number of trials handed to a processor at once.
+     */
+    public ResultPipeline(ImmutableSet<ResultProcessor> processors, int capacity, int batchSize) {
+        checkArgument(capacity > 0, "Capacity must be positive: %s", capacity);
+        checkArgument(batchSize > 0, "Batch size must be positive: %s", batchSize);
+        this.processors = processors;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                consume();
+            }
+        }, "Spanner result processing");
+        consumer.setPriority(Thread.MIN_PRIORITY);
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    /**
+     * Queues the trial for processing. Blocks if the queue is full.
+     */
+    @Override
+    public void processTrial(Trial trial) {
+        checkState(!closed, "Pipeline is closed");
+        try {
+            queue.put(Optional.of(trial));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            logger.log(Level.WARNING, "Interrupted while queueing trial " + trial.id() + " for processing.", e);
+        }
+    }
+
+    private void consume() {
+        List<Optional<Trial>> batch = new ArrayList<>(batchSize);
+        boolean done = false;
+        while (!done) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                // Only close() should stop the consumer, as queued trials would otherwise be lost.
+                continue;
+            }
+            queue.drainTo(batch, batchSize - 1);
+
+            ImmutableList.Builder<Trial> trials = ImmutableList.builder();
+            for (Optional<Trial> trial : batch) {
+                if (trial.isPresent()) {
+                    trials.add(trial.get());
+                } else {
+                    done = true;
+                }
+            }
+            batch.clear();
+            process(trials.build());
+        }
+    }
+
+    private void process(List<Trial> trials) {
+        if (trials.isEmpty()) {
+            return;
+        }
+        for (ResultProcessor processor : processors) {
+            try {
+                if (processor instanceof BatchResultProcessor) {
+                    ((BatchResultProcessor) processor).processTrials(trials);
+                } else {
+                    for (Trial trial : trials) {
+                        processor.processTrial(trial);
+                    }
+                }
+            } catch (RuntimeException e) {
+                logger.log(Level.SEVERE, "Result processor failed: " + processor, e);
+            }
+        }
+    }
+
+    /**
+     * Processes all queued trials and closes the processors.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        boolean interrupted = false;
+        while (true) {
+            try {
+                queue.put(Optional.<Trial>absent());
+                consumer.join();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        for (ResultProcessor processor : processors) {
+            try {
+                processor.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Could not close a result processor: " + processor, e);
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
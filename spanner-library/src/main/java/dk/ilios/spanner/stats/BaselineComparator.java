@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.stats;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.apache.commons.math.MathException;
+import org.apache.commons.math.distribution.NormalDistributionImpl;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Compares the measurements of a trial against its baseline using a statistical test, so random noise isn't
+ * mistaken for a change.
+ * <p>
+ * Confidence intervals are found using the percentile bootstrap. The random generator is seeded, so comparing the
+ * same measurements always gives the same result.
+ */
+public final class BaselineComparator {
+
+    private static final int DEFAULT_RESAMPLES = 1000;
+    private static final long SEED = 0x5BA5E11EL;
+
+    private final ComparisonMethod method;
+    private final double level;
+    private final ImmutableSet<Float> percentiles;
+    private final boolean compareMean;
+    private final int resamples;
+
+    /**
+     * @param method {@link ComparisonMethod#BOOTSTRAP} or {@link ComparisonMethod#MANN_WHITNEY}.
+     * @param significanceLevel a change is significant if its p-value is below this, e.g. {@code 0.05}.
+     * @param percentiles percentiles to compare [0.0, 100.0].
+     * @param compareMean {@code true} if the mean should be compared as well.
+     */
+    public BaselineComparator(ComparisonMethod method, double significanceLevel, Set<Float> percentiles,
+                              boolean compareMean) {
+        this(method, significanceLevel, percentiles, compareMean, DEFAULT_RESAMPLES);
+    }
+
+    BaselineComparator(ComparisonMethod method, double significanceLevel, Set<Float> percentiles,
+                       boolean compareMean, int resamples) {
+        checkNotNull(method);
+        checkArgument(method != ComparisonMethod.THRESHOLD, "Threshold comparisons are not statistical");
+        checkArgument(significanceLevel > 0 && significanceLevel < 1,
+                "Significance level must be between 0 and 1: %s", significanceLevel);
+        checkArgument(resamples > 0);
+        this.method = method;
+        this.level = 1 - significanceLevel;
+        this.percentiles = ImmutableSet.copyOf(percentiles);
+        this.compareMean = compareMean;
+        this.resamples = resamples;
+    }
+
+    /**
+     * Compares all configured statistics of the trial against the baseline.
+     *
+     * @param baseline per-rep values of the baseline.
+     * @param current per-rep values of the trial.
+     * @return one comparison pr. configured statistic, the mean last.
+     */
+    public List<BaselineComparison> compare(StreamingSummary baseline, StreamingSummary current) {
+        checkArgument(baseline.count() > 0 && current.count() > 0, "Both trials must have measurements");
+        double[] baselineValues = baseline.toSortedArray();
+        double[] currentValues = current.toSortedArray();
+        double mannWhitney = (method == ComparisonMethod.MANN_WHITNEY)
+                ? mannWhitneyPValue(baselineValues, currentValues)
+                : Double.NaN;
+        ImmutableList.Builder<BaselineComparison> comparisons = ImmutableList.builder();
+        for (Float percentile : percentiles) {
+            comparisons.add(compare(baselineValues, currentValues, percentile, mannWhitney));
+        }
+        if (compareMean) {
+            comparisons.add(compare(baselineValues, currentValues, BaselineComparison.MEAN, mannWhitney));
+        }
+        return comparisons.build();
+    }
+
+    private BaselineComparison compare(double[] baseline, double[] current, float percentile, double mannWhitney) {
+        double change = relativeChange(statistic(baseline, percentile), statistic(current, percentile));
+
+        // Resample both series and record the change each time
+        Random random = new Random(SEED);
+        double[] baselineSample = new double[baseline.length];
+        double[] currentSample = new double[current.length];
+        double[] changes = new double[resamples];
+        int atOrBelowZero = 0;
+        int atOrAboveZero = 0;
+        for (int i = 0; i < resamples; i++) {
+            resample(baseline, baselineSample, random);
+            resample(current, currentSample, random);
+            double sampleChange = relativeChange(statistic(baselineSample, percentile),
+                    statistic(currentSample, percentile));
+            changes[i] = sampleChange;
+            if (sampleChange <= 0) {
+                atOrBelowZero++;
+            }
+            if (sampleChange >= 0) {
+                atOrAboveZero++;
+            }
+        }
+        Arrays.sort(changes);
+        double alpha = 1 - level;
+        double lower = StreamingSummary.percentileOfSorted(changes, resamples, alpha / 2 * 100);
+        double upper = StreamingSummary.percentileOfSorted(changes, resamples, (1 - alpha / 2) * 100);
+
+        double pValue;
+        if (method == ComparisonMethod.MANN_WHITNEY) {
+            pValue = mannWhitney;
+        } else {
+            // Two-sided: how often the resampled change ends up on the other side of zero
+            pValue = Math.min(1.0, 2.0 * (Math.min(atOrBelowZero, atOrAboveZero) + 1) / (resamples + 1));
+        }
+        return new BaselineComparison(method, percentile, change, lower, upper, level, pValue);
+    }
+
+    private static void resample(double[] values, double[] sample, Random random) {
+        for (int i = 0; i < sample.length; i++) {
+            sample[i] = values[random.nextInt(values.length)];
+        }
+    }
+
+    private static double statistic(double[] values, float percentile) {
+        if (percentile == BaselineComparison.MEAN) {
+            double sum = 0;
+            for (double value : values) {
+                sum += value;
+            }
+            return sum / values.length;
+        }
+        Arrays.sort(values);
+        return StreamingSummary.percentileOfSorted(values, values.length, percentile);
+    }
+
+    private static double relativeChange(double oldValue, double newValue) {
+        return (oldValue - newValue) / oldValue;
+    }
+
+    /**
+     * Returns the two-sided p-value of a Mann-Whitney U test of the two series, using the normal approximation with
+     * tie and continuity correction.
+     */
+    public static double mannWhitneyPValue(double[] a, double[] b) {
+        int n1 = a.length;
+        int n2 = b.length;
+        int n = n1 + n2;
+        if (n1 == 0 || n2 == 0) {
+            return 1;
+        }
+
+        // Rank the combined values. Indexes below n1 refer to values from a.
+        double[] combined = new double[n];
+        System.arraycopy(a, 0, combined, 0, n1);
+        System.arraycopy(b, 0, combined, n1, n2);
+        Integer[] order = new Integer[n];
+        for (int i = 0; i < n; i++) {
+            order[i] = i;
+        }
+        final double[] values = combined;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer lhs, Integer rhs) {
+                return Double.compare(values[lhs], values[rhs]);
+            }
+        });
+        double rankSumA = 0;
+        double tieCorrection = 0;
+        int i = 0;
+        while (i < n) {
+            int j = i;
+            while (j + 1 < n && combined[order[j + 1]] == combined[order[i]]) {
+                j++;
+            }
+            double rank = (i + j + 2) / 2.0; // Average of the 1-based ranks i+1 .. j+1
+            for (int k = i; k <= j; k++) {
+                if (order[k] < n1) {
+                    rankSumA += rank;
+                }
+            }
+            double ties = j - i + 1;
+            tieCorrection += ties * ties * ties - ties;
+            i = j + 1;
+        }
+
+        double u = rankSumA - n1 * (n1 + 1) / 2.0;
+        double mean = n1 * (double) n2 / 2;
+        double variance = n1 * (double) n2 / 12 * ((n + 1) - tieCorrection / ((double) n * (n - 1)));
+        if (variance <= 0) {
+            return 1;
+        }
+        double z = Math.max(0, Math.abs(u - mean) - 0.5) / Math.sqrt(variance);
+        try {
+            return Math.min(1.0, 2 * (1 - new NormalDistributionImpl().cumulativeProbability(z)));
+        } catch (MathException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public ComparisonMethod method() {
+        return method;
+    }
+
+    /**
+     * Returns the confidence level of the comparisons, i.e. {@code 1 - significanceLevel}.
+     */
+    public double level() {
+        return level;
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.stats;
+
+import com.google.common.base.Objects;
+
+/**
+ * The result of comparing a statistic, e.g. the median, of a trial against the same statistic of its baseline.
+ * Changes are relative to the baseline and positive if the trial is better than the baseline, the same way as
+ * {@link dk.ilios.spanner.model.Trial#getChangeFromBaseline(float)}: a lower value, or a higher one for
+ * measurements like throughput where higher is better.
+ */
+public final class BaselineComparison {
+
+    /**
+     * Percentile used for comparisons of the mean.
+     */
+    public static final float MEAN = -1.0F;
+
+    private ComparisonMethod method;
+    private float percentile;
+    private double change;
+    private double lower;
+    private double upper;
+    private double level;
+    private double pValue;
+
+    public BaselineComparison(ComparisonMethod method, float percentile, double change, double lower, double upper,
+                              double level, double pValue) {
+        this.method = method;
+        this.percentile = percentile;
+        this.change = change;
+        this.lower = lower;
+        this.upper = upper;
+        this.level = level;
+        this.pValue = pValue;
+    }
+
+    /**
+     * Returns the same comparison for a statistic where higher values are better, i.e. with the sign of the change
+     * and its confidence interval reversed.
+     */
+    public BaselineComparison inverted() {
+        return new BaselineComparison(method, percentile, -change, -upper, -lower, level, pValue);
+    }
+
+    public ComparisonMethod method() {
+        return method;
+    }
+
+    /**
+     * Returns the percentile that was compared [0.0, 100.0] or {@link #MEAN} if the mean was compared.
+     */
+    public float percentile() {
+        return percentile;
+    }
+
+    /**
+     * Returns the change from the baseline. {@code 1.0} is 100%.
+     */
+    public double change() {
+        return change;
+    }
+
+    /**
+     * Returns the lower end of the confidence interval of the change.
+     */
+    public double lower() {
+        return lower;
+    }
+
+    /**
+     * Returns the upper end of the confidence interval of the change.
+     */
+    public double upper() {
+        return upper;
+    }
+
+    /**
+     * Returns the confidence level of the interval, e.g. {@code 0.95}.
+     */
+    public double level() {
+        return level;
+    }
+
+    /**
+     * Returns the probability of seeing a change at least this large if the trial and the baseline were the same.
+     */
+    public double pValue() {
+        return pValue;
+    }
+
+    /**
+     * Returns {@code true} if the change is statistically significant at the confidence level of the comparison.
+     */
+    public boolean isSignificant() {
+        return pValue < 1 - level;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        } else if (obj instanceof BaselineComparison) {
+            BaselineComparison that = (BaselineComparison) obj;
+            return this.method == that.method
+                    && this.percentile == that.percentile
+                    && this.change == that.change
+                    && this.lower == that.lower
+                    && this.upper == that.upper
+                    && this.level == that.level
+                    && this.pValue == that.pValue;
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(method, percentile, change, lower, upper, level, pValue);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("method", method)
+                .add("percentile", percentile)
+                .add("change", change)
+                .add("lower", lower)
+                .add("upper", upper)
+                .add("level", level)
+                .add("pValue", pValue)
+                .toString();
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.stats;
+
+/**
+ * How a trial is compared against its baseline.
+ */
+public enum ComparisonMethod {
+
+    /**
+     * The change from the baseline is compared directly against the failure limit. Noise can cause a trial to fail.
+     */
+    THRESHOLD,
+
+    /**
+     * The measurements of the trial and the baseline are resampled to find a confidence interval and p-value of the
+     * change. The change must be significant before a trial can fail.
+     */
+    BOOTSTRAP,
+
+    /**
+     * A Mann-Whitney U test decides whether the measurements of the trial and the baseline come from the same
+     * distribution. The change must be significant before a trial can fail. The confidence interval of the change is
+     * found by resampling.
+     */
+    MANN_WHITNEY
+}
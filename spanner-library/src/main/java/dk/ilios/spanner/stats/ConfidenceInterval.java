@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.stats;
+
+import com.google.common.base.Objects;
+
+import org.apache.commons.math.MathException;
+import org.apache.commons.math.distribution.NormalDistributionImpl;
+import org.apache.commons.math.distribution.TDistributionImpl;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * A confidence interval around an estimate of the true value of a benchmark, e.g. the mean or the median.
+ */
+public final class ConfidenceInterval {
+
+    private final double lower;
+    private final double estimate;
+    private final double upper;
+    private final double level;
+    private final int sampleSize;
+
+    public ConfidenceInterval(double lower, double estimate, double upper, double level, int sampleSize) {
+        checkArgument(lower <= estimate && estimate <= upper, "Estimate must be inside the interval");
+        checkArgument(level > 0 && level < 1, "Confidence level must be between 0 and 1: %s", level);
+        this.lower = lower;
+        this.estimate = estimate;
+        this.upper = upper;
+        this.level = level;
+        this.sampleSize = sampleSize;
+    }
+
+    /**
+     * Returns the confidence interval for the mean of the given values, based on Student's t-distribution.
+     *
+     * @param values at least 2 values.
+     * @param level confidence level, e.g. {@code 0.95}.
+     */
+    public static ConfidenceInterval forMean(double[] values, double level) {
+        return forMean(StreamingSummary.of(values), level);
+    }
+
+    /**
+     * Returns the confidence interval for the mean of the summarized values, based on Student's t-distribution.
+     *
+     * @param summary summary of at least 2 values.
+     * @param level confidence level, e.g. {@code 0.95}.
+     */
+    public static ConfidenceInterval forMean(StreamingSummary summary, double level) {
+        checkArgument(summary.count() >= 2, "At least 2 values required: %s", summary.count());
+        int n = summary.count();
+        double mean = summary.mean();
+        double standardError = summary.standardDeviation() / Math.sqrt(n);
+        double t = inverseCumulative(new TDistributionImpl(n - 1), 1 - (1 - level) / 2);
+        double halfWidth = t * standardError;
+        return new ConfidenceInterval(mean - halfWidth, mean, mean + halfWidth, level, n);
+    }
+
+    /**
+     * Returns the confidence interval for the median of the given values. The interval is distribution-free and
+     * bounded by the order statistics whose ranks are found using the normal approximation of the binomial
+     * distribution.
+     *
+     * @param values at least 2 values.
+     * @param level confidence level, e.g. {@code 0.95}.
+     */
+    public static ConfidenceInterval forMedian(double[] values, double level) {
+        return forMedian(StreamingSummary.of(values), level);
+    }
+
+    /**
+     * Returns the confidence interval for the median of the summarized values. See
+     * {@link #forMedian(double[], double)}.
+     *
+     * @param summary summary of at least 2 values.
+     * @param level confidence level, e.g. {@code 0.95}.
+     */
+    public static ConfidenceInterval forMedian(StreamingSummary summary, double level) {
+        checkArgument(summary.count() >= 2, "At least 2 values required: %s", summary.count());
+        int n = summary.count();
+        double median = (n % 2 == 1)
+                ? summary.sortedValue(n / 2)
+                : (summary.sortedValue(n / 2 - 1) + summary.sortedValue(n / 2)) / 2;
+        double z = inverseCumulative(new NormalDistributionImpl(), 1 - (1 - level) / 2);
+        double spread = z * Math.sqrt(n) / 2;
+        // 1-based ranks of the order statistics bounding the interval
+        int lowerRank = Math.max(1, (int) Math.floor(n / 2.0 - spread));
+        int upperRank = Math.min(n, (int) Math.ceil(1 + n / 2.0 + spread));
+        return new ConfidenceInterval(
+                summary.sortedValue(lowerRank - 1), median, summary.sortedValue(upperRank - 1), level, n);
+    }
+
+    private static double inverseCumulative(TDistributionImpl distribution, double p) {
+        try {
+            return distribution.inverseCumulativeProbability(p);
+        } catch (MathException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static double inverseCumulative(NormalDistributionImpl distribution, double p) {
+        try {
+            return distribution.inverseCumulativeProbability(p);
+        } catch (MathException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public double lower() {
+        return lower;
+    }
+
+    public double estimate() {
+        return estimate;
+    }
+
+    public double upper() {
+        return upper;
+    }
+
+    /**
+     * Returns the confidence level, e.g. {@code 0.95} for a 95% confidence interval.
+     */
+    public double level() {
+        return level;
+    }
+
+    /**
+     * Returns the number of values the interval was calculated from.
+     */
+    public int sampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * Returns the largest distance from the estimate to either end of the interval, relative to the estimate.
+     * {@code 0.01} means the true value is within &plusmn;1% of the estimate at the given confidence level.
+     */
+    public double relativeHalfWidth() {
+        double halfWidth = Math.max(estimate - lower, upper - estimate);
+        if (estimate == 0) {
+            return (halfWidth == 0) ? 0 : Double.POSITIVE_INFINITY;
+        }
+        return halfWidth / Math.abs(estimate);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) {
+            return true;
+        } else if (obj instanceof ConfidenceInterval) {
+            ConfidenceInterval that = (ConfidenceInterval) obj;
+            return this.lower == that.lower
+                    && this.estimate == that.estimate
+                    && this.upper == that.upper
+                    && this.level == that.level
+                    && this.sampleSize == that.sampleSize;
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(lower, estimate, upper, level, sampleSize);
+    }
+
+    @Override
+    public String toString() {
+        return Objects.toStringHelper(this)
+                .add("lower", lower)
+                .add("estimate", estimate)
+                .add("upper", upper)
+                .add("level", level)
+                .add("sampleSize", sampleSize)
+                .toString();
+    }
+}
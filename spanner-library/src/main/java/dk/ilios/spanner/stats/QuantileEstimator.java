@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.stats;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Approximates a single percentile of a series of values in constant memory using the P-square algorithm by Jain and
+ * Chlamtac. Unlike {@link StreamingSummary} no values are kept, so it is suitable for very long series where an
+ * approximate result is good enough.
+ */
+public final class QuantileEstimator {
+
+    private static final int MARKERS = 5;
+
+    private final double p;
+    private final double[] heights = new double[MARKERS];
+    private final double[] positions = new double[MARKERS];
+    private final double[] desiredPositions = new double[MARKERS];
+    private final double[] increments = new double[MARKERS];
+    private int count = 0;
+
+    /**
+     * @param percentile the percentile to estimate [0.0, 100.0].
+     */
+    public QuantileEstimator(double percentile) {
+        checkArgument(percentile >= 0 && percentile <= 100, "Percentile must be [0, 100.0]: %s", percentile);
+        this.p = percentile / 100;
+        increments[0] = 0;
+        increments[1] = p / 2;
+        increments[2] = p;
+        increments[3] = (1 + p) / 2;
+        increments[4] = 1;
+    }
+
+    /**
+     * Adds the next value in the series.
+     */
+    public void add(double value) {
+        if (count < MARKERS) {
+            heights[count] = value;
+            count++;
+            if (count == MARKERS) {
+                Arrays.sort(heights);
+                for (int i = 0; i < MARKERS; i++) {
+                    positions[i] = i;
+                    desiredPositions[i] = 4 * increments[i];
+                }
+            }
+            return;
+        }
+        count++;
+
+        int cell;
+        if (value < heights[0]) {
+            heights[0] = value;
+            cell = 0;
+        } else if (value >= heights[4]) {
+            heights[4] = value;
+            cell = 3;
+        } else {
+            cell = 0;
+            while (value >= heights[cell + 1]) {
+                cell++;
+            }
+        }
+        for (int i = cell + 1; i < MARKERS; i++) {
+            positions[i]++;
+        }
+        for (int i = 0; i < MARKERS; i++) {
+            desiredPositions[i] += increments[i];
+        }
+
+        // Move the middle markers towards their desired positions
+        for (int i = 1; i < MARKERS - 1; i++) {
+            double d = desiredPositions[i] - positions[i];
+            if ((d >= 1 && positions[i + 1] - positions[i] > 1) || (d <= -1 && positions[i - 1] - positions[i] < -1)) {
+                int sign = d > 0 ? 1 : -1;
+                double height = parabolic(i, sign);
+                if (heights[i - 1] < height && height < heights[i + 1]) {
+                    heights[i] = height;
+                } else {
+                    heights[i] = linear(i, sign);
+                }
+                positions[i] += sign;
+            }
+        }
+    }
+
+    private double parabolic(int i, int sign) {
+        return heights[i] + sign / (positions[i + 1] - positions[i - 1])
+                * ((positions[i] - positions[i - 1] + sign) * (heights[i + 1] - heights[i])
+                / (positions[i + 1] - positions[i])
+                + (positions[i + 1] - positions[i] - sign) * (heights[i] - heights[i - 1])
+                / (positions[i] - positions[i - 1]));
+    }
+
+    private double linear(int i, int sign) {
+        return heights[i] + sign * (heights[i + sign] - heights[i]) / (positions[i + sign] - positions[i]);
+    }
+
+    /**
+     * Returns the number of values added.
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Returns the estimated value at the percentile or {@code NaN} if no values have been added. The result is exact
+     * until 5 values have been added.
+     */
+    public double estimate() {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (count < MARKERS) {
+            return StreamingSummary.of(Arrays.copyOf(heights, count)).percentile(p * 100);
+        }
+        return heights[2];
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.stats;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Detects when a series of measurements has stopped drifting, e.g. because the JIT has finished compiling the
+ * benchmark.
+ * <p>
+ * The detector looks at a sliding window of the most recent values. The series is considered steady when both:
+ * <ol>
+ *   <li>The medians of the older and the newer half of the window differ by less than the tolerance.</li>
+ *   <li>A Mann-Kendall test finds no significant upward or downward trend in the window.</li>
+ * </ol>
+ */
+public final class SteadyStateDetector {
+
+    // Two-sided 95% quantile of the standard normal distribution.
+    private static final double TREND_Z_LIMIT = 1.96;
+
+    private final double tolerance;
+    private final double[] window;
+    private int count = 0;
+
+    /**
+     * @param windowSize number of recent values to look at. Must be at least 4.
+     * @param tolerance allowed relative difference between the medians of the two halves of the window.
+     */
+    public SteadyStateDetector(int windowSize, double tolerance) {
+        checkArgument(windowSize >= 4, "Window must contain at least 4 values: %s", windowSize);
+        checkArgument(tolerance >= 0, "Tolerance must be positive: %s", tolerance);
+        this.window = new double[windowSize];
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Adds the next value in the series.
+     */
+    public void add(double value) {
+        window[count % window.length] = value;
+        count++;
+    }
+
+    /**
+     * Returns the number of values added so far.
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Returns {@code true} if the most recent values have stopped drifting.
+     */
+    public boolean isSteady() {
+        if (count < window.length) {
+            return false;
+        }
+        double[] values = orderedWindow();
+        int half = values.length / 2;
+        double olderMedian = median(Arrays.copyOfRange(values, 0, half));
+        double newerMedian = median(Arrays.copyOfRange(values, values.length - half, values.length));
+        if (newerMedian == 0) {
+            return olderMedian == 0;
+        }
+        if (Math.abs(olderMedian - newerMedian) / Math.abs(newerMedian) > tolerance) {
+            return false;
+        }
+        return Math.abs(mannKendallZ(values)) <= TREND_Z_LIMIT;
+    }
+
+    /**
+     * Returns the window with the oldest value first.
+     */
+    private double[] orderedWindow() {
+        double[] values = new double[window.length];
+        int start = count % window.length;
+        for (int i = 0; i < window.length; i++) {
+            values[i] = window[(start + i) % window.length];
+        }
+        return values;
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int middle = sorted.length / 2;
+        return (sorted.length % 2 == 1) ? sorted[middle] : (sorted[middle - 1] + sorted[middle]) / 2;
+    }
+
+    /**
+     * Returns the normalized Mann-Kendall statistic. Large positive or negative values indicate a trend.
+     */
+    private static double mannKendallZ(double[] values) {
+        int n = values.length;
+        long s = 0;
+        for (int i = 0; i < n - 1; i++) {
+            for (int j = i + 1; j < n; j++) {
+                s += (long) Math.signum(values[j] - values[i]);
+            }
+        }
+        double variance = n * (n - 1) * (2 * n + 5) / 18.0;
+        if (s == 0) {
+            return 0;
+        }
+        return (s - Math.signum(s)) / Math.sqrt(variance);
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.stats;
+
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Summary statistics of a series of values that is updated one value at a time.
+ * <p>
+ * Mean, variance, min and max are updated in constant time and without allocating. Values are kept in a primitive
+ * array for exact percentiles. Adding a value only appends it to the array. When a percentile is requested, the values
+ * added since the last request are sorted and merged into the already sorted values, so adding values stays constant
+ * time and asking for percentiles after every new value doesn't re-sort everything.
+ * <p>
+ * Percentiles are estimated the same way as commons-math {@code Percentile} does, so results can be compared with
+ * baselines calculated before this class existed. For series too long to keep, {@link QuantileEstimator} approximates a
+ * single percentile in constant memory.
+ */
+public final class StreamingSummary {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private double[] values;
+    private int count = 0;
+    private int sortedCount = 0;
+
+    private double mean = 0;
+    private double sumOfSquaredDeviations = 0;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+    private double weightedSum = 0;
+    private double totalWeight = 0;
+
+    public StreamingSummary() {
+        this(INITIAL_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize number of values expected. The summary grows beyond this if needed.
+     */
+    public StreamingSummary(int expectedSize) {
+        checkArgument(expectedSize >= 0, "Size must be positive: %s", expectedSize);
+        this.values = new double[Math.max(expectedSize, 1)];
+    }
+
+    /**
+     * Returns a summary of the given values.
+     */
+    public static StreamingSummary of(double[] values) {
+        StreamingSummary summary = new StreamingSummary(values.length);
+        for (double value : values) {
+            summary.add(value);
+        }
+        return summary;
+    }
+
+    /**
+     * Adds a value with a weight of {@code 1}.
+     */
+    public void add(double value) {
+        add(value, 1);
+    }
+
+    /**
+     * Adds a value with the given weight. The weight is only used by {@link #weightedMean()}, e.g. a per-rep value
+     * can be weighted by the number of reps it was measured over.
+     */
+    public void add(double value, double weight) {
+        if (!(weight > 0)) {
+            // Not using checkArgument() as it would box the weight on every call
+            throw new IllegalArgumentException("Weight must be positive: " + weight);
+        }
+        // Welford's algorithm
+        count++;
+        double delta = value - mean;
+        mean += delta / count;
+        sumOfSquaredDeviations += delta * (value - mean);
+        if (count == 1) {
+            min = value;
+            max = value;
+        } else {
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+        weightedSum += value * weight;
+        totalWeight += weight;
+        store(value);
+    }
+
+    private void store(double value) {
+        if (count > values.length) {
+            values = Arrays.copyOf(values, values.length * 2);
+        }
+        values[count - 1] = value;
+    }
+
+    /**
+     * Returns the number of values added.
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Returns the arithmetic mean or {@code NaN} if no values have been added.
+     */
+    public double mean() {
+        return count == 0 ? Double.NaN : mean;
+    }
+
+    /**
+     * Returns the mean where each value is weighted by its weight or {@code NaN} if no values have been added.
+     */
+    public double weightedMean() {
+        return count == 0 ? Double.NaN : weightedSum / totalWeight;
+    }
+
+    /**
+     * Returns the sum of all weights.
+     */
+    public double totalWeight() {
+        return totalWeight;
+    }
+
+    /**
+     * Returns the sample variance, {@code 0} for a single value and {@code NaN} if no values have been added.
+     */
+    public double variance() {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        return count == 1 ? 0 : sumOfSquaredDeviations / (count - 1);
+    }
+
+    public double standardDeviation() {
+        return Math.sqrt(variance());
+    }
+
+    /**
+     * Returns the smallest value or {@code NaN} if no values have been added.
+     */
+    public double min() {
+        return min;
+    }
+
+    /**
+     * Returns the largest value or {@code NaN} if no values have been added.
+     */
+    public double max() {
+        return max;
+    }
+
+    public double median() {
+        return percentile(50);
+    }
+
+    /**
+     * Returns the exact value at the given percentile or {@code NaN} if no values have been added.
+     *
+     * @param percentile [0.0, 100.0]
+     */
+    public double percentile(double percentile) {
+        if (!(percentile >= 0 && percentile <= 100)) {
+            throw new IllegalArgumentException("Percentile must be [0, 100.0]: " + percentile);
+        }
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (percentile == 0) {
+            return min;
+        }
+        if (percentile == 100) {
+            return max;
+        }
+        sort();
+        return percentileOfSorted(values, count, percentile);
+    }
+
+    /**
+     * Returns the value at the given percentile of the first {@code count} values of an array sorted in ascending
+     * order.
+     */
+    static double percentileOfSorted(double[] sorted, int count, double percentile) {
+        double position = percentile * (count + 1) / 100;
+        double floor = Math.floor(position);
+        if (position < 1) {
+            return sorted[0];
+        }
+        if (position >= count) {
+            return sorted[count - 1];
+        }
+        int index = (int) floor;
+        double lower = sorted[index - 1];
+        double upper = sorted[index];
+        return lower + (position - floor) * (upper - lower);
+    }
+
+    /**
+     * Returns the value at the given position if all values were sorted in ascending order.
+     *
+     * @param index [0, count - 1]
+     */
+    public double sortedValue(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Index out of bounds: " + index);
+        }
+        sort();
+        return values[index];
+    }
+
+    private void sort() {
+        if (sortedCount == count) {
+            return;
+        }
+        Arrays.sort(values, sortedCount, count);
+        if (sortedCount > 0 && values[sortedCount - 1] > values[sortedCount]) {
+            mergeUnsortedValues();
+        }
+        sortedCount = count;
+    }
+
+    /**
+     * Merges the values added since the last sort, which have been sorted on their own, into the sorted values. The
+     * merge starts from the largest values, so only values larger than the smallest new value are moved.
+     */
+    private void mergeUnsortedValues() {
+        double[] added = Arrays.copyOfRange(values, sortedCount, count);
+        int sortedIndex = sortedCount - 1;
+        int addedIndex = added.length - 1;
+        int target = count - 1;
+        while (addedIndex >= 0) {
+            if (sortedIndex >= 0 && values[sortedIndex] > added[addedIndex]) {
+                values[target--] = values[sortedIndex--];
+            } else {
+                values[target--] = added[addedIndex--];
+            }
+        }
+    }
+
+    /**
+     * Returns the values in ascending order.
+     */
+    public double[] toSortedArray() {
+        sort();
+        return Arrays.copyOf(values, count);
+    }
+}
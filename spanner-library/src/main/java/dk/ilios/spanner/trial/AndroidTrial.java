@@ -1,24 +1,40 @@
 package dk.ilios.spanner.trial;
 
+import com.google.common.base.Stopwatch;
 import com.google.common.base.Ticker;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
 
 import dk.ilios.spanner.Spanner;
+import dk.ilios.spanner.SpannerConfig;
 import dk.ilios.spanner.benchmark.BenchmarkClass;
+import dk.ilios.spanner.bridge.GcLogMessage;
+import dk.ilios.spanner.bridge.HotspotLogMessage;
 import dk.ilios.spanner.bridge.ShouldContinueMessage;
 import dk.ilios.spanner.bridge.StartMeasurementLogMessage;
 import dk.ilios.spanner.bridge.StopMeasurementLogMessage;
+import dk.ilios.spanner.exception.TrialFailureException;
 import dk.ilios.spanner.internal.MeasurementCollectingVisitor;
+import dk.ilios.spanner.model.LatencyHistogram;
+import dk.ilios.spanner.model.Measurement;
 import dk.ilios.spanner.model.Trial;
+import dk.ilios.spanner.model.Value;
+import dk.ilios.spanner.model.Warmup;
+import dk.ilios.spanner.util.ShortDuration;
+import dk.ilios.spanner.vm.CompilationMonitor;
+import dk.ilios.spanner.vm.GcMonitor;
+import dk.ilios.spanner.vm.Platform;
 import dk.ilios.spanner.worker.Worker;
 
 /**
- * A Trial that is running on the thread it was started on.
- * This can be useful when e.g. running tests on the Android UI thread.
+ * A Trial that is running in the current JVM.
  * <p>
- * Warning: This will block the executing thread until the trial is complete.
+ * The trial runs on its own thread, while the thread it was started on watches its time limit using a
+ * {@link TrialWatchdog}. The starting thread is blocked until the trial is complete or has been abandoned.
  */
 public class AndroidTrial implements Callable<Trial.Result> {
 
@@ -26,36 +42,72 @@ public class AndroidTrial implements Callable<Trial.Result> {
     private final MeasurementCollectingVisitor measurementCollectingVisitor;
     private final BenchmarkClass benchmark;
     private final Spanner.Callback callback;
+    private final CoreBudget coreBudget;
+    private final int cores;
+    private final ShortDuration timeLimit;
+    private final RunTimeBudget runBudget;
+    private final TrialWatchdog watchdog = new TrialWatchdog();
 
+    /**
+     * Creates a trial that runs alone.
+     */
     public AndroidTrial(
             Trial trial,
             BenchmarkClass benchmarkClass,
             MeasurementCollectingVisitor measurementCollectingVisitor,
             Spanner.Callback callback) {
+        this(trial, benchmarkClass, measurementCollectingVisitor, callback, new CoreBudget(1), 1,
+                SpannerConfig.DEFAULT_TIME_LIMIT, RunTimeBudget.unlimited());
+    }
+
+    /**
+     * Creates a trial that reserves the given number of cores from the budget before it starts. It fails if it takes
+     * longer than the time limit or what is left of the run budget.
+     */
+    public AndroidTrial(
+            Trial trial,
+            BenchmarkClass benchmarkClass,
+            MeasurementCollectingVisitor measurementCollectingVisitor,
+            Spanner.Callback callback,
+            CoreBudget coreBudget,
+            int cores,
+            ShortDuration timeLimit,
+            RunTimeBudget runBudget) {
         this.trial = trial;
         this.measurementCollectingVisitor = measurementCollectingVisitor;
         this.benchmark = benchmarkClass;
         this.callback = callback;
+        this.coreBudget = coreBudget;
+        this.cores = cores;
+        this.timeLimit = timeLimit;
+        this.runBudget = runBudget;
     }
 
-    // TODO Timeout not possible when running on the same thread
     @Override
     public Trial.Result call() throws Exception {
+        final CoreBudget.Reservation reservation = coreBudget.reserve(cores);
         callback.trialStarted(trial);
         Trial.Result result = null;
         try {
-            result = getResult();
+            result = watchdog.call("trial-" + trial.id(), new Callable<Trial.Result>() {
+                @Override
+                public Trial.Result call() throws Exception {
+                    return getResult(reservation);
+                }
+            }, runBudget.trialTimeLimit(timeLimit));
             callback.trialSuccess(trial, result);
         } catch (Throwable e) {
             callback.trialFailure(trial, e);
             throw e;
         } finally {
+            reservation.release();
             callback.trialEnded(trial);
         }
         return result;
     }
 
-    private Trial.Result getResult() throws Exception {
+    private Trial.Result getResult(CoreBudget.Reservation reservation) throws Exception {
+        Stopwatch duration = Stopwatch.createStarted();
         Worker worker = trial.experiment().instrumentation().createWorker(
                 benchmark,
                 Ticker.systemTicker(),
@@ -65,14 +117,44 @@ public class AndroidTrial implements Callable<Trial.Result> {
         worker.setUpBenchmark();
         worker.bootstrap();
         boolean keepMeasuring = true;
-        boolean isInWarmup = true;
+        boolean isInWarmup = !measurementCollectingVisitor.isWarmupComplete();
+        int warmupMeasurements = 0;
+        Stopwatch warmupTime = Stopwatch.createStarted();
         boolean doneCollecting = false;
         StopMeasurementLogMessage stopMessage = new StopMeasurementLogMessage(Collections.EMPTY_LIST);
         ShouldContinueMessage continueMessage = new ShouldContinueMessage();
+        GcMonitor gcMonitor = Platform.gcMonitor();
+        GcStatistics gcStatistics = new GcStatistics();
+        // The compilation counters are shared by the whole VM, so trials running in parallel in this process would
+        // see each other's compilation. Only serial trials monitor it.
+        boolean monitorCompilation = trial.experiment().instrumentation().instrument().schedulingPolicy()
+                == TrialSchedulingPolicy.SERIAL;
+        CompilationMonitor compilationMonitor = Platform.compilationMonitor();
         while (keepMeasuring) {
-            new StartMeasurementLogMessage().accept(measurementCollectingVisitor);
+            if (Thread.currentThread().isInterrupted()) {
+                throw new TrialFailureException("Trial was interrupted");
+            }
+            if (isInWarmup) {
+                warmupMeasurements++;
+            } else if (warmupTime.isRunning()) {
+                warmupTime.stop();
+            }
             worker.preMeasure(isInWarmup);
+            if (monitorCompilation && compilationMonitor.hasCompiled()) {
+                new HotspotLogMessage().accept(measurementCollectingVisitor);
+            }
+            new StartMeasurementLogMessage().accept(measurementCollectingVisitor);
+            gcMonitor.startMonitoring();
             stopMessage.setMeasurements(worker.measure());
+            if (monitorCompilation && compilationMonitor.hasCompiled()) {
+                new HotspotLogMessage().accept(measurementCollectingVisitor);
+            }
+            for (GcLogMessage gcMessage : gcMonitor.stopMonitoring()) {
+                gcMessage.accept(measurementCollectingVisitor);
+                if (!isInWarmup) {
+                    gcStatistics.add(gcMessage);
+                }
+            }
             stopMessage.accept(measurementCollectingVisitor);
             if (!doneCollecting && measurementCollectingVisitor.isDoneCollecting()) {
                 doneCollecting = true;
@@ -83,8 +165,45 @@ public class AndroidTrial implements Callable<Trial.Result> {
             worker.postMeasure();
         }
         worker.tearDownBenchmark();
+        // Read at the end, as the overhead is calibrated again after warmup.
+        trial.setHarnessOverhead(worker.harnessOverhead());
         trial.addAllMeasurements(measurementCollectingVisitor.getMeasurements());
+        trial.addAllMeasurements(worker.trialMeasurements());
+        if (gcMonitor.isSupported()) {
+            trial.addAllMeasurements(gcStatistics.measurements());
+            trial.addAllMessages(gcStatistics.messages());
+        }
+        LatencyHistogram latencies = worker.latencyHistogram();
+        if (latencies != null && latencies.count() > 0) {
+            trial.setLatencyHistogram(latencies);
+            trial.addAllMeasurements(latencyMeasurements(latencies));
+        }
         trial.addAllMessages(measurementCollectingVisitor.getMessages());
+        trial.setConfidenceInterval(measurementCollectingVisitor.getConfidenceInterval());
+        trial.setWarmup(new Warmup(warmupMeasurements, warmupTime.elapsed(TimeUnit.NANOSECONDS)));
+        trial.setConcurrentTrials(reservation.concurrentTrials());
+        trial.setDuration(duration.elapsed(TimeUnit.NANOSECONDS));
         return trial.getResult();
     }
+
+    /**
+     * Returns a measurement for each of the reported percentiles and the max of the sampled latencies.
+     */
+    static List<Measurement> latencyMeasurements(LatencyHistogram latencies) {
+        List<Measurement> measurements = new ArrayList<>();
+        for (double percentile : LatencyHistogram.REPORTED_PERCENTILES) {
+            measurements.add(latencyMeasurement(
+                    LatencyHistogram.percentileLabel(percentile), latencies.latencyAtPercentile(percentile)));
+        }
+        measurements.add(latencyMeasurement("max", latencies.maxLatency()));
+        return measurements;
+    }
+
+    private static Measurement latencyMeasurement(String label, double nanos) {
+        return new Measurement.Builder()
+                .description("latency " + label)
+                .weight(1)
+                .value(Value.create(nanos, "ns"))
+                .build();
+    }
 }
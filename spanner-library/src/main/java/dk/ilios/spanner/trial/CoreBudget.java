@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.trial;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Keeps track of how many cores are available for running trials. Each trial reserves a number of cores before it
+ * starts and releases them when it is done, so the number of trials running at the same time never exceeds the budget.
+ * <p>
+ * Java has no way of pinning a thread to a given core, so cores are only counted, not assigned.
+ */
+public final class CoreBudget {
+
+    private final int cores;
+    private final Semaphore available;
+
+    /**
+     * Creates a budget of the given number of cores.
+     */
+    public CoreBudget(int cores) {
+        checkArgument(cores > 0, "Core budget must be positive: %s", cores);
+        this.cores = cores;
+        this.available = new Semaphore(cores, true);
+    }
+
+    /**
+     * Returns the total number of cores in this budget.
+     */
+    public int cores() {
+        return cores;
+    }
+
+    /**
+     * Reserves the given number of cores, blocking until they are available. Asking for more cores than the budget
+     * reserves the entire budget.
+     *
+     * @param cores number of cores to reserve.
+     * @return the reservation. It must be released when the trial is done.
+     */
+    public Reservation reserve(int cores) throws InterruptedException {
+        checkArgument(cores > 0, "Must reserve at least one core: %s", cores);
+        int reserved = Math.min(cores, this.cores);
+        available.acquire(reserved);
+        return new Reservation(reserved);
+    }
+
+    /**
+     * Cores reserved by a single trial.
+     */
+    public final class Reservation {
+
+        private final int cores;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        private Reservation(int cores) {
+            this.cores = cores;
+        }
+
+        /**
+         * Returns the number of trials, including this one, that the budget allows to run at the same time as this
+         * one. This depends only on the configuration, not on which trials happen to be running, so trials measured
+         * with the same configuration can be compared.
+         */
+        public int concurrentTrials() {
+            return CoreBudget.this.cores / cores;
+        }
+
+        /**
+         * Makes the reserved cores available to other trials again.
+         */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                available.release(cores);
+            }
+        }
+    }
+}
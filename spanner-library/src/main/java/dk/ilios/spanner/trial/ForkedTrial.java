@@ -0,0 +1,230 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.trial;
+
+import com.google.common.base.Stopwatch;
+import com.google.common.collect.ImmutableList;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import dk.ilios.spanner.Spanner;
+import dk.ilios.spanner.benchmark.BenchmarkClass;
+import dk.ilios.spanner.bridge.FailureLogMessage;
+import dk.ilios.spanner.bridge.GcLogMessage;
+import dk.ilios.spanner.bridge.LogMessage;
+import dk.ilios.spanner.bridge.OpenedSocket;
+import dk.ilios.spanner.bridge.ShouldContinueMessage;
+import dk.ilios.spanner.bridge.StartMeasurementLogMessage;
+import dk.ilios.spanner.bridge.StartupAnnounceMessage;
+import dk.ilios.spanner.bridge.StopMeasurementLogMessage;
+import dk.ilios.spanner.bridge.WorkerCompleteMessage;
+import dk.ilios.spanner.bridge.WorkerSpec;
+import dk.ilios.spanner.exception.TrialFailureException;
+import dk.ilios.spanner.internal.Experiment;
+import dk.ilios.spanner.internal.MeasurementCollectingVisitor;
+import dk.ilios.spanner.model.LatencyHistogram;
+import dk.ilios.spanner.model.Trial;
+import dk.ilios.spanner.model.Warmup;
+import dk.ilios.spanner.util.ShortDuration;
+import dk.ilios.spanner.vm.Platform;
+import dk.ilios.spanner.worker.WorkerMain;
+
+/**
+ * A Trial that is running in a fresh JVM, so JIT profiles, heap state and loaded classes from earlier trials can't
+ * influence it. The worker streams its log messages back over a local socket and is killed if the trial doesn't
+ * complete within the time limit.
+ * <p>
+ * This only works on a desktop JVM, not on Android.
+ */
+public class ForkedTrial implements Callable<Trial.Result> {
+
+    private final Trial trial;
+    private final MeasurementCollectingVisitor measurementCollectingVisitor;
+    private final BenchmarkClass benchmark;
+    private final Spanner.Callback callback;
+    private final CoreBudget coreBudget;
+    private final int cores;
+    private final ImmutableList<String> jvmArgs;
+    private final ShortDuration timeLimit;
+    private final RunTimeBudget runBudget;
+
+    public ForkedTrial(
+            Trial trial,
+            BenchmarkClass benchmarkClass,
+            MeasurementCollectingVisitor measurementCollectingVisitor,
+            Spanner.Callback callback,
+            CoreBudget coreBudget,
+            int cores,
+            List<String> jvmArgs,
+            ShortDuration timeLimit,
+            RunTimeBudget runBudget) {
+        this.trial = trial;
+        this.measurementCollectingVisitor = measurementCollectingVisitor;
+        this.benchmark = benchmarkClass;
+        this.callback = callback;
+        this.coreBudget = coreBudget;
+        this.cores = cores;
+        this.jvmArgs = ImmutableList.copyOf(jvmArgs);
+        this.timeLimit = timeLimit;
+        this.runBudget = runBudget;
+    }
+
+    @Override
+    public Trial.Result call() throws Exception {
+        CoreBudget.Reservation reservation = coreBudget.reserve(cores);
+        callback.trialStarted(trial);
+        Trial.Result result = null;
+        try {
+            result = getResult(reservation);
+            callback.trialSuccess(trial, result);
+        } catch (Throwable e) {
+            callback.trialFailure(trial, e);
+            throw e;
+        } finally {
+            reservation.release();
+            callback.trialEnded(trial);
+        }
+        return result;
+    }
+
+    private Trial.Result getResult(CoreBudget.Reservation reservation) throws Exception {
+        Stopwatch duration = Stopwatch.createStarted();
+        ShortDuration limit = runBudget.trialTimeLimit(timeLimit);
+        long deadline = System.nanoTime() + limit.to(TimeUnit.NANOSECONDS);
+        ServerSocket serverSocket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+        WorkerProcess worker = new WorkerProcess(trial.id(), jvmArgs, benchmark.getInstance().getClass(),
+                serverSocket.getLocalPort());
+        try {
+            worker.start();
+            serverSocket.setSoTimeout(remainingMillis(deadline));
+            Socket socket = serverSocket.accept();
+            try {
+                collectMeasurements(OpenedSocket.fromSocket(socket), deadline, reservation, worker);
+            } finally {
+                socket.close();
+            }
+        } catch (SocketTimeoutException e) {
+            throw new TrialFailureException(String.format("Trial exceeded the time limit of %s and was killed.%n%s",
+                    limit, worker.output()));
+        } catch (IOException e) {
+            throw new TrialFailureException(String.format("Lost the connection to the worker: %s%n%s",
+                    e.getMessage(), worker.output()));
+        } finally {
+            worker.destroy();
+            serverSocket.close();
+        }
+        trial.setDuration(duration.elapsed(TimeUnit.NANOSECONDS));
+        return trial.getResult();
+    }
+
+    private void collectMeasurements(OpenedSocket socket, long deadline, CoreBudget.Reservation reservation,
+                                     WorkerProcess worker) throws IOException {
+        socket.writer().write(createWorkerSpec());
+        boolean isInWarmup = !measurementCollectingVisitor.isWarmupComplete();
+        int warmupMeasurements = 0;
+        Stopwatch warmupTime = Stopwatch.createStarted();
+        boolean doneCollecting = false;
+        WorkerCompleteMessage completeMessage = null;
+        GcStatistics gcStatistics = new GcStatistics();
+        while (completeMessage == null) {
+            socket.socket().setSoTimeout(remainingMillis(deadline));
+            Serializable message = socket.reader().read();
+            if (message == null) {
+                throw new TrialFailureException(String.format("The worker exited before the trial was complete.%n%s",
+                        worker.output()));
+            } else if (message instanceof FailureLogMessage) {
+                throw new TrialFailureException("The worker failed: " + ((FailureLogMessage) message).stackTrace());
+            } else if (message instanceof StartupAnnounceMessage) {
+                if (!((StartupAnnounceMessage) message).trialId().equals(trial.id())) {
+                    throw new TrialFailureException("Unexpected worker connected for trial " + trial.id());
+                }
+            } else if (message instanceof WorkerCompleteMessage) {
+                completeMessage = (WorkerCompleteMessage) message;
+            } else if (message instanceof LogMessage) {
+                if (message instanceof StartMeasurementLogMessage) {
+                    if (isInWarmup) {
+                        warmupMeasurements++;
+                    } else if (warmupTime.isRunning()) {
+                        warmupTime.stop();
+                    }
+                }
+                if (message instanceof GcLogMessage && !isInWarmup) {
+                    gcStatistics.add((GcLogMessage) message);
+                }
+                ((LogMessage) message).accept(measurementCollectingVisitor);
+                if (message instanceof StopMeasurementLogMessage) {
+                    if (!doneCollecting && measurementCollectingVisitor.isDoneCollecting()) {
+                        doneCollecting = true;
+                    }
+                    boolean warmupComplete = measurementCollectingVisitor.isWarmupComplete();
+                    socket.writer().write(new ShouldContinueMessage(!doneCollecting, warmupComplete));
+                    isInWarmup = !warmupComplete;
+                }
+            }
+        }
+
+        trial.setHarnessOverhead(completeMessage.harnessOverhead());
+        trial.addAllMeasurements(measurementCollectingVisitor.getMeasurements());
+        trial.addAllMeasurements(completeMessage.trialMeasurements());
+        // The worker uses the same java executable, so it detects garbage collections if this JVM can.
+        if (Platform.gcMonitor().isSupported()) {
+            trial.addAllMeasurements(gcStatistics.measurements());
+            trial.addAllMessages(gcStatistics.messages());
+        }
+        LatencyHistogram latencies = completeMessage.latencyHistogram();
+        if (latencies != null && latencies.count() > 0) {
+            trial.setLatencyHistogram(latencies);
+            trial.addAllMeasurements(AndroidTrial.latencyMeasurements(latencies));
+        }
+        trial.addAllMessages(measurementCollectingVisitor.getMessages());
+        trial.setConfidenceInterval(measurementCollectingVisitor.getConfidenceInterval());
+        trial.setWarmup(new Warmup(warmupMeasurements, warmupTime.elapsed(TimeUnit.NANOSECONDS)));
+        trial.setConcurrentTrials(reservation.concurrentTrials());
+    }
+
+    private WorkerSpec createWorkerSpec() {
+        Experiment experiment = trial.experiment();
+        Method method = experiment.instrumentation().benchmarkMethod();
+        return new WorkerSpec(
+                trial.id(),
+                benchmark.name(),
+                method.getName(),
+                WorkerMain.parameterClasses(method),
+                experiment.instrumentation().instrument().getClass().getName(),
+                experiment.instrumentation().instrument().options(),
+                experiment.userParameters(),
+                measurementCollectingVisitor.isWarmupComplete());
+    }
+
+    /**
+     * Returns the time left before the deadline as a socket timeout. A timeout of {@code 0} means no timeout, so at
+     * least 1 ms is returned.
+     */
+    private static int remainingMillis(long deadline) {
+        long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        return (int) Math.max(1, Math.min(remaining, Integer.MAX_VALUE));
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.trial;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import dk.ilios.spanner.bridge.GcLogMessage;
+import dk.ilios.spanner.model.Measurement;
+import dk.ilios.spanner.model.Value;
+
+/**
+ * The garbage collections detected while a trial was taking its measurements, i.e. after warmup.
+ * <p>
+ * The VMs only report the time spent collecting in whole milliseconds, so pauses shorter than that are not measured
+ * and add nothing to the total.
+ */
+final class GcStatistics {
+
+    private long collections;
+    private long pauseNanos;
+    private long unmeasuredPauses;
+
+    void add(GcLogMessage message) {
+        collections++;
+        long nanos = message.duration().to(TimeUnit.NANOSECONDS);
+        pauseNanos += nanos;
+        if (nanos < TimeUnit.MILLISECONDS.toNanos(1)) {
+            unmeasuredPauses++;
+        }
+    }
+
+    /**
+     * Returns the number of collections and the total time spent in them as measurements.
+     */
+    List<Measurement> measurements() {
+        return ImmutableList.of(
+                new Measurement.Builder()
+                        .description("gc count")
+                        .weight(1)
+                        .value(Value.create(collections, "collections"))
+                        .build(),
+                new Measurement.Builder()
+                        .description("gc pause")
+                        .weight(1)
+                        .value(Value.create(pauseNanos, "ns"))
+                        .build());
+    }
+
+    /**
+     * Returns a note for the report if some of the pauses were too short to be measured.
+     */
+    List<String> messages() {
+        if (unmeasuredPauses == 0) {
+            return ImmutableList.of();
+        }
+        return ImmutableList.of(String.format("INFO: %d of %d garbage collections paused for less than the 1 ms "
+                + "resolution of the VM's GC timers. Their pauses are not included in the gc pause total.",
+                unmeasuredPauses, collections));
+    }
+}
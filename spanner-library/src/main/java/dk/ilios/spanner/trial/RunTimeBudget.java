@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.trial;
+
+import java.util.concurrent.TimeUnit;
+
+import dk.ilios.spanner.exception.TrialFailureException;
+import dk.ilios.spanner.util.ShortDuration;
+
+/**
+ * The time an entire run may take. It starts when the budget is created. Trials are limited to what is left of it,
+ * and once it is used up the remaining trials fail right away.
+ */
+public final class RunTimeBudget {
+
+    private final ShortDuration limit;
+    private final long deadlineNanos;
+
+    /**
+     * Returns a budget that never runs out.
+     */
+    public static RunTimeBudget unlimited() {
+        return new RunTimeBudget(null);
+    }
+
+    /**
+     * Creates a budget starting now.
+     *
+     * @param limit time the run may take or {@code null} if it isn't limited.
+     */
+    public RunTimeBudget(ShortDuration limit) {
+        this.limit = limit;
+        this.deadlineNanos = limit != null ? System.nanoTime() + limit.to(TimeUnit.NANOSECONDS) : 0;
+    }
+
+    /**
+     * Returns the time limit of a trial starting now, i.e. the smaller of its own limit and what is left of the run.
+     *
+     * @param trialLimit time limit of the trial itself.
+     * @throws TrialFailureException if the budget is used up.
+     */
+    public ShortDuration trialTimeLimit(ShortDuration trialLimit) {
+        if (limit == null) {
+            return trialLimit;
+        }
+        long remainingNanos = deadlineNanos - System.nanoTime();
+        if (remainingNanos <= 0) {
+            throw new TrialFailureException(String.format("The run exceeded its time limit of %s, so the trial was "
+                    + "skipped.", limit));
+        }
+        return remainingNanos < trialLimit.to(TimeUnit.NANOSECONDS)
+                ? ShortDuration.of(remainingNanos, TimeUnit.NANOSECONDS)
+                : trialLimit;
+    }
+}
@@ -17,11 +17,8 @@ package dk.ilios.spanner.trial;
 /**
  * The scheduling policy for a particular trial with regard to other trials
  * <p>
- * <p>TODO(lukes): Currently this is extremely simple.  Trials can be scheduled in parallel with
- * other trials or not.  In the future, this should use some kind of cost modeling.
- *
- * TODO(cm) Why would you ever run trials in parallel. It would most likely negatively effect the outcome. Only gain
- * would be speed?
+ * <p>Parallel trials run at the same time as other parallel trials, limited by the number of cores in the
+ * {@link CoreBudget}. Serial trials reserve all cores, so they always run alone.
  */
 public enum TrialSchedulingPolicy {
     PARALLEL,
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.trial;
+
+import com.google.common.base.Throwables;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import dk.ilios.spanner.exception.TrialFailureException;
+import dk.ilios.spanner.util.ShortDuration;
+
+/**
+ * Enforces the time limit of trials running in the current JVM.
+ * <p>
+ * The trial runs on its own thread while the calling thread watches it. A trial that exceeds its time limit is
+ * interrupted, so it can stop between measurements. If it hasn't stopped within the grace period, e.g. because the
+ * benchmark method itself never returns, it is abandoned: its thread is left running in the background and the trial
+ * fails, so one runaway benchmark can't stall the rest of the run.
+ */
+public final class TrialWatchdog {
+
+    public static final ShortDuration DEFAULT_GRACE_PERIOD = ShortDuration.of(10, TimeUnit.SECONDS);
+
+    private final ShortDuration gracePeriod;
+
+    public TrialWatchdog() {
+        this(DEFAULT_GRACE_PERIOD);
+    }
+
+    public TrialWatchdog(ShortDuration gracePeriod) {
+        this.gracePeriod = gracePeriod;
+    }
+
+    /**
+     * Runs the trial and returns its result.
+     *
+     * @param name name of the thread running the trial.
+     * @param trial the trial to run.
+     * @param timeLimit time the trial may take.
+     * @throws TrialFailureException if the trial exceeded the time limit.
+     * @throws Exception any exception thrown by the trial.
+     */
+    public <T> T call(String name, Callable<T> trial, ShortDuration timeLimit) throws Exception {
+        FutureTask<T> task = new FutureTask<>(trial);
+        Thread thread = new Thread(task, name);
+        thread.setDaemon(true); // Abandoned trials must not keep the JVM alive.
+        thread.start();
+        try {
+            return task.get(timeLimit.to(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), Exception.class);
+            throw new RuntimeException(e.getCause());
+        } catch (TimeoutException e) {
+            thread.interrupt();
+            try {
+                task.get(gracePeriod.to(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException stillRunning) {
+                throw new TrialFailureException(String.format("Trial exceeded the time limit of %s and did not stop "
+                        + "when interrupted. It was abandoned and may still be running.", timeLimit));
+            } catch (ExecutionException ignored) {
+                // Expected, the trial was interrupted.
+            }
+            throw new TrialFailureException(String.format("Trial exceeded the time limit of %s and was stopped.",
+                    timeLimit));
+        } catch (InterruptedException e) {
+            // The run is being cancelled, so stop the trial as well.
+            thread.interrupt();
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.trial;
+
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+
+import dk.ilios.spanner.api.VmOptions;
+import dk.ilios.spanner.worker.WorkerMain;
+
+/**
+ * A worker running in its own JVM. The JVM runs {@link WorkerMain} using the same java executable and class path as
+ * the current JVM, so it is only possible to fork workers when running on a desktop JVM, not on Android.
+ * <p>
+ * The output of the worker is drained continuously, so it can't block on a full pipe. The last lines are kept, so they
+ * can be reported if the worker fails.
+ */
+final class WorkerProcess {
+
+    private static final int MAX_OUTPUT_LINES = 50;
+
+    private final UUID trialId;
+    private final ProcessBuilder builder;
+    private final Deque<String> output = new ArrayDeque<>();
+    private Process process;
+    private Thread shutdownHook;
+
+    WorkerProcess(UUID trialId, List<String> jvmArgs, Class<?> benchmarkClass, int port) {
+        this.trialId = trialId;
+        this.builder = new ProcessBuilder(command(jvmArgs, benchmarkClass, port)).redirectErrorStream(true);
+    }
+
+    static List<String> command(List<String> jvmArgs, Class<?> benchmarkClass, int port) {
+        List<String> args = new ArrayList<>();
+        args.add(javaExecutable());
+        args.addAll(jvmArgs);
+        // Options from the benchmark are added last, so they take precedence.
+        VmOptions vmOptions = benchmarkClass.getAnnotation(VmOptions.class);
+        if (vmOptions != null) {
+            args.addAll(Arrays.asList(vmOptions.value()));
+        }
+        args.add("-cp");
+        args.add(System.getProperty("java.class.path"));
+        args.add(WorkerMain.class.getName());
+        args.add(Integer.toString(port));
+        return args;
+    }
+
+    private static String javaExecutable() {
+        return System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+    }
+
+    /**
+     * Starts the worker. The worker is destroyed if the runner exits before it.
+     */
+    synchronized void start() throws IOException {
+        if (process != null) {
+            throw new IllegalStateException("Worker already started: " + trialId);
+        }
+        final Process delegate = builder.start();
+        shutdownHook = new Thread("worker-shutdown-hook-" + trialId) {
+            @Override
+            public void run() {
+                delegate.destroy();
+            }
+        };
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+        process = delegate;
+
+        Thread drainer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                drainOutput(delegate);
+            }
+        }, "worker-output-" + trialId);
+        drainer.setDaemon(true);
+        drainer.start();
+    }
+
+    private void drainOutput(Process process) {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                synchronized (output) {
+                    if (output.size() == MAX_OUTPUT_LINES) {
+                        output.removeFirst();
+                    }
+                    output.addLast(line);
+                }
+            }
+        } catch (IOException ignored) {
+            // The worker was destroyed.
+        }
+    }
+
+    /**
+     * Returns the last lines written by the worker to stdout and stderr.
+     */
+    String output() {
+        synchronized (output) {
+            return Joiner.on(System.getProperty("line.separator")).join(ImmutableList.copyOf(output));
+        }
+    }
+
+    /**
+     * Kills the worker if it is still running. It is safe to call this more than once.
+     */
+    synchronized void destroy() {
+        if (process == null) {
+            return;
+        }
+        process.destroy();
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException ignored) {
+            // Already shutting down
+        }
+        process = null;
+    }
+}
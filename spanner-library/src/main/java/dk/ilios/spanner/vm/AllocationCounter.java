@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.vm;
+
+/**
+ * Counts the allocations done by the current thread. Implementations are specific to the VM they run on, see
+ * {@link Platform#allocationCounter()}.
+ */
+public interface AllocationCounter {
+
+    /**
+     * Returns {@code true} if this counter can count the number of allocated objects and not just the number of
+     * allocated bytes.
+     */
+    boolean countsObjects();
+
+    /**
+     * Returns {@code true} if counters used by different threads at the same time do not affect each other. If not,
+     * trials using this counter are run one at a time.
+     */
+    boolean supportsParallelTrials();
+
+    /**
+     * Starts counting allocations done by the current thread.
+     */
+    void startCounting();
+
+    /**
+     * Stops counting allocations. Allocations done after this are not included in {@link #allocatedBytes()} and
+     * {@link #allocatedObjects()}.
+     */
+    void stopCounting();
+
+    /**
+     * Returns the number of bytes allocated between the last calls to {@link #startCounting()} and
+     * {@link #stopCounting()}.
+     */
+    long allocatedBytes();
+
+    /**
+     * Returns the number of objects allocated between the last calls to {@link #startCounting()} and
+     * {@link #stopCounting()} or {@code 0} if {@link #countsObjects()} is {@code false}.
+     */
+    long allocatedObjects();
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.vm;
+
+import android.os.Debug;
+
+/**
+ * Allocation counter for Dalvik and ART using the thread allocation counters in {@link Debug}.
+ * <p>
+ * The counters are read pr. thread, but {@link Debug#startAllocCounting()} and {@link Debug#stopAllocCounting()}
+ * turn counting on and off for the entire process. A trial stopping its counter would also stop the counters of any
+ * other trial running at the same time, so this counter does not support parallel trials.
+ */
+final class AndroidAllocationCounter implements AllocationCounter {
+
+    private long bytes;
+    private long objects;
+
+    @Override
+    public boolean countsObjects() {
+        return true;
+    }
+
+    @Override
+    public boolean supportsParallelTrials() {
+        return false;
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void startCounting() {
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        Debug.startAllocCounting();
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void stopCounting() {
+        Debug.stopAllocCounting();
+        bytes = Debug.getThreadAllocSize();
+        objects = Debug.getThreadAllocCount();
+    }
+
+    @Override
+    public long allocatedBytes() {
+        return bytes;
+    }
+
+    @Override
+    public long allocatedObjects() {
+        return objects;
+    }
+}
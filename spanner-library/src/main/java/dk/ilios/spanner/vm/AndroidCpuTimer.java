@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.vm;
+
+import android.os.Debug;
+
+/**
+ * CPU timer for Dalvik and ART using {@link Debug#threadCpuTimeNanos()}. Android only reports the total CPU time of a
+ * thread, so it isn't split into user and system time.
+ */
+final class AndroidCpuTimer implements CpuTimer {
+
+    private long start;
+    private long cpu;
+
+    AndroidCpuTimer() {
+        if (Debug.threadCpuTimeNanos() < 0) {
+            throw new UnsupportedOperationException("The VM does not support measuring thread CPU time");
+        }
+    }
+
+    @Override
+    public boolean measuresUserTime() {
+        return false;
+    }
+
+    @Override
+    public void start() {
+        start = Debug.threadCpuTimeNanos();
+    }
+
+    @Override
+    public void stop() {
+        cpu = Debug.threadCpuTimeNanos() - start;
+    }
+
+    @Override
+    public long cpuNanos() {
+        return cpu;
+    }
+
+    @Override
+    public long userNanos() {
+        return 0;
+    }
+}
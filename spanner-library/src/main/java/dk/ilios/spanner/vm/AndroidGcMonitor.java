@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.vm;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import dk.ilios.spanner.bridge.GcLogMessage;
+import dk.ilios.spanner.util.ShortDuration;
+
+/**
+ * GC monitor for ART using the runtime statistics in {@code android.os.Debug#getRuntimeStat(String)}.
+ * <p>
+ * The statistics are only available from API 23, so they are accessed using reflection. Collections that block the
+ * application are reported as {@link GcLogMessage.Type#FULL}, the rest as {@link GcLogMessage.Type#INCREMENTAL}. The
+ * time is split evenly between the collections of each kind.
+ */
+final class AndroidGcMonitor implements GcMonitor {
+
+    private static final String GC_COUNT = "art.gc.gc-count";
+    private static final String GC_TIME = "art.gc.gc-time";
+    private static final String BLOCKING_GC_COUNT = "art.gc.blocking-gc-count";
+    private static final String BLOCKING_GC_TIME = "art.gc.blocking-gc-time";
+
+    private final Method getRuntimeStat;
+    private long startCount;
+    private long startTime;
+    private long startBlockingCount;
+    private long startBlockingTime;
+
+    AndroidGcMonitor() throws Exception {
+        getRuntimeStat = Class.forName("android.os.Debug").getMethod("getRuntimeStat", String.class);
+        if (getRuntimeStat.invoke(null, GC_COUNT) == null) {
+            throw new NoSuchMethodException("GC statistics are not supported");
+        }
+    }
+
+    @Override
+    public boolean isSupported() {
+        return true;
+    }
+
+    @Override
+    public void startMonitoring() {
+        startCount = read(GC_COUNT);
+        startTime = read(GC_TIME);
+        startBlockingCount = read(BLOCKING_GC_COUNT);
+        startBlockingTime = read(BLOCKING_GC_TIME);
+    }
+
+    @Override
+    public List<GcLogMessage> stopMonitoring() {
+        long blockingCount = read(BLOCKING_GC_COUNT) - startBlockingCount;
+        long blockingTime = read(BLOCKING_GC_TIME) - startBlockingTime;
+        long count = read(GC_COUNT) - startCount - blockingCount;
+        long time = read(GC_TIME) - startTime - blockingTime;
+        List<GcLogMessage> messages = new ArrayList<>();
+        addMessages(messages, GcLogMessage.Type.FULL, blockingCount, blockingTime);
+        addMessages(messages, GcLogMessage.Type.INCREMENTAL, count, time);
+        return messages;
+    }
+
+    private static void addMessages(List<GcLogMessage> messages, GcLogMessage.Type type, long count, long millis) {
+        if (count <= 0) {
+            return;
+        }
+        long nanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, millis));
+        for (long i = 0; i < count; i++) {
+            long duration = nanos / count + (i == 0 ? nanos % count : 0);
+            messages.add(new GcLogMessage(type, ShortDuration.of(duration, TimeUnit.NANOSECONDS)));
+        }
+    }
+
+    private long read(String stat) {
+        try {
+            String value = (String) getRuntimeStat.invoke(null, stat);
+            return value != null ? Long.parseLong(value) : 0;
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,39 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.vm;
+
+/**
+ * Detects JIT compilation. Implementations are specific to the VM they run on, see
+ * {@link Platform#compilationMonitor()}.
+ * <p>
+ * Compilation is detected by sampling the compilation counters of the VM, so {@link #hasCompiled()} should be called
+ * right before timing starts and right after it stops. Sampling the counters is not free, so it must not happen
+ * inside the timed region.
+ */
+public interface CompilationMonitor {
+
+    /**
+     * Returns {@code true} if this monitor can detect compilation on the current VM.
+     */
+    boolean isSupported();
+
+    /**
+     * Returns {@code true} if the VM spent time compiling code since the monitor was created or this method was last
+     * called.
+     */
+    boolean hasCompiled();
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.vm;
+
+/**
+ * Measures the CPU time used by the current thread. Unlike wall-clock time this does not include time where the
+ * thread was preempted, sleeping or blocked. Implementations are specific to the VM they run on, see
+ * {@link Platform#cpuTimer()}.
+ */
+public interface CpuTimer {
+
+    /**
+     * Returns {@code true} if this timer can split the CPU time into user and system time. The split can be a lot
+     * less precise than the total, so it is only meaningful for long measurements.
+     */
+    boolean measuresUserTime();
+
+    /**
+     * Starts timing the current thread.
+     */
+    void start();
+
+    /**
+     * Stops timing. CPU time used after this is not included in {@link #cpuNanos()} and {@link #userNanos()}.
+     */
+    void stop();
+
+    /**
+     * Returns the CPU time, i.e. user and system time, used by the thread between the last calls to
+     * {@link #start()} and {@link #stop()}.
+     */
+    long cpuNanos();
+
+    /**
+     * Returns the part of {@link #cpuNanos()} spent in user mode or {@code 0} if {@link #measuresUserTime()} is
+     * {@code false}.
+     */
+    long userNanos();
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.vm;
+
+import java.util.List;
+
+import dk.ilios.spanner.bridge.GcLogMessage;
+
+/**
+ * Detects garbage collections. Implementations are specific to the VM they run on, see {@link Platform#gcMonitor()}.
+ * <p>
+ * Collections are detected by sampling the collection counters of the VM when monitoring starts and stops, so the
+ * monitor should be started right before timing starts and stopped right after it stops. Sampling the counters is
+ * not free, so it must not happen inside the timed region.
+ */
+public interface GcMonitor {
+
+    /**
+     * Returns {@code true} if this monitor can detect garbage collections on the current VM.
+     */
+    boolean isSupported();
+
+    /**
+     * Starts monitoring. Only collections completed after this are reported by {@link #stopMonitoring()}.
+     */
+    void startMonitoring();
+
+    /**
+     * Stops monitoring and returns a message for each garbage collection completed since
+     * {@link #startMonitoring()}.
+     */
+    List<GcLogMessage> stopMonitoring();
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.vm;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Allocation counter for HotSpot based VMs using {@code com.sun.management.ThreadMXBean#getThreadAllocatedBytes}.
+ * <p>
+ * The management API is not part of the Android SDK, so it is accessed using reflection. The reflective call itself
+ * allocates a few objects, which is why allocation measurements should always be compared against an empty baseline
+ * measurement.
+ */
+final class JvmAllocationCounter implements AllocationCounter {
+
+    private final Object threadBean;
+    private final Method getThreadAllocatedBytes;
+    private final Object[] threadId = new Object[1];
+    private long start;
+    private long bytes;
+
+    JvmAllocationCounter() throws Exception {
+        threadBean = Class.forName("java.lang.management.ManagementFactory").getMethod("getThreadMXBean").invoke(null);
+        Class<?> sunThreadBean = Class.forName("com.sun.management.ThreadMXBean");
+        if (!sunThreadBean.isInstance(threadBean)) {
+            throw new ClassNotFoundException("Thread allocation counters are not supported by " + threadBean);
+        }
+        getThreadAllocatedBytes = sunThreadBean.getMethod("getThreadAllocatedBytes", long.class);
+    }
+
+    @Override
+    public boolean countsObjects() {
+        return false;
+    }
+
+    @Override
+    public boolean supportsParallelTrials() {
+        return true;
+    }
+
+    @Override
+    public void startCounting() {
+        threadId[0] = Thread.currentThread().getId();
+        start = read();
+    }
+
+    @Override
+    public void stopCounting() {
+        bytes = read() - start;
+    }
+
+    private long read() {
+        try {
+            return (Long) getThreadAllocatedBytes.invoke(threadBean, threadId);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @Override
+    public long allocatedBytes() {
+        return bytes;
+    }
+
+    @Override
+    public long allocatedObjects() {
+        return 0;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.vm;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Compilation monitor for desktop JVMs using the total compilation time reported by the
+ * {@code java.lang.management.CompilationMXBean}.
+ * <p>
+ * The management API is not part of the Android SDK, so it is accessed using reflection. The compilation time only
+ * has millisecond precision, so compilations shorter than that can go unnoticed until they add up.
+ * <p>
+ * The compilation time covers every thread in the VM, so code compiled for other threads, e.g. trials running in
+ * parallel in the same process or the thread processing results, is reported as well.
+ */
+final class JvmCompilationMonitor implements CompilationMonitor {
+
+    private final Object compiler;
+    private final Method getTotalCompilationTime;
+    private long lastTime;
+
+    JvmCompilationMonitor() throws Exception {
+        compiler = Class.forName("java.lang.management.ManagementFactory")
+                .getMethod("getCompilationMXBean").invoke(null);
+        if (compiler == null) {
+            throw new UnsupportedOperationException("The VM has no JIT compiler");
+        }
+        Class<?> compilerBean = Class.forName("java.lang.management.CompilationMXBean");
+        if (!(Boolean) compilerBean.getMethod("isCompilationTimeMonitoringSupported").invoke(compiler)) {
+            throw new UnsupportedOperationException("The VM does not support monitoring compilation time");
+        }
+        getTotalCompilationTime = compilerBean.getMethod("getTotalCompilationTime");
+        lastTime = read();
+    }
+
+    @Override
+    public boolean isSupported() {
+        return true;
+    }
+
+    @Override
+    public boolean hasCompiled() {
+        long time = read();
+        boolean compiled = time > lastTime;
+        lastTime = time;
+        return compiled;
+    }
+
+    private long read() {
+        try {
+            return (Long) getTotalCompilationTime.invoke(compiler);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
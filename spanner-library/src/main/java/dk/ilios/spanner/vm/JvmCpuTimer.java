@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.vm;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * CPU timer for desktop JVMs using {@code java.lang.management.ThreadMXBean}.
+ * <p>
+ * The management API is not part of the Android SDK, so it is accessed using reflection. Depending on the OS, the user
+ * time can be a lot less precise than the total CPU time, e.g. on Linux it is only updated every scheduler tick, so
+ * the split is only reported for measurements much longer than that.
+ */
+final class JvmCpuTimer implements CpuTimer {
+
+    private final Object threadBean;
+    private final Method getCurrentThreadCpuTime;
+    private final Method getCurrentThreadUserTime;
+    private long startCpu;
+    private long startUser;
+    private long cpu;
+    private long user;
+
+    JvmCpuTimer() throws Exception {
+        threadBean = Class.forName("java.lang.management.ManagementFactory").getMethod("getThreadMXBean").invoke(null);
+        Class<?> threadBeanClass = Class.forName("java.lang.management.ThreadMXBean");
+        if (!(Boolean) threadBeanClass.getMethod("isCurrentThreadCpuTimeSupported").invoke(threadBean)) {
+            throw new UnsupportedOperationException("The VM does not support measuring thread CPU time");
+        }
+        if (!(Boolean) threadBeanClass.getMethod("isThreadCpuTimeEnabled").invoke(threadBean)) {
+            threadBeanClass.getMethod("setThreadCpuTimeEnabled", boolean.class).invoke(threadBean, true);
+        }
+        getCurrentThreadCpuTime = threadBeanClass.getMethod("getCurrentThreadCpuTime");
+        getCurrentThreadUserTime = threadBeanClass.getMethod("getCurrentThreadUserTime");
+    }
+
+    @Override
+    public boolean measuresUserTime() {
+        return true;
+    }
+
+    @Override
+    public void start() {
+        startUser = read(getCurrentThreadUserTime);
+        startCpu = read(getCurrentThreadCpuTime);
+    }
+
+    @Override
+    public void stop() {
+        cpu = read(getCurrentThreadCpuTime) - startCpu;
+        // The user time can be less precise than the total, so make sure it never exceeds it.
+        user = Math.min(cpu, Math.max(0, read(getCurrentThreadUserTime) - startUser));
+    }
+
+    private long read(Method timer) {
+        try {
+            return (Long) timer.invoke(threadBean);
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @Override
+    public long cpuNanos() {
+        return cpu;
+    }
+
+    @Override
+    public long userNanos() {
+        return user;
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.vm;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import dk.ilios.spanner.bridge.GcLogMessage;
+import dk.ilios.spanner.util.ShortDuration;
+
+/**
+ * GC monitor for desktop JVMs using the counters of the {@code java.lang.management.GarbageCollectorMXBean}s.
+ * <p>
+ * The management API is not part of the Android SDK, so it is accessed using reflection. The counters only report
+ * the total time spent in each collector with millisecond precision, so the time is split evenly between the
+ * collections that happened while monitoring. For concurrent collectors the time includes work done concurrently
+ * with the application.
+ */
+final class JvmGcMonitor implements GcMonitor {
+
+    private final List<?> collectors;
+    private final String[] names;
+    private final Method getCollectionCount;
+    private final Method getCollectionTime;
+    private final long[] startCounts;
+    private final long[] startTimes;
+
+    JvmGcMonitor() throws Exception {
+        collectors = (List<?>) Class.forName("java.lang.management.ManagementFactory")
+                .getMethod("getGarbageCollectorMXBeans").invoke(null);
+        Class<?> collectorBean = Class.forName("java.lang.management.GarbageCollectorMXBean");
+        Method getName = Class.forName("java.lang.management.MemoryManagerMXBean").getMethod("getName");
+        getCollectionCount = collectorBean.getMethod("getCollectionCount");
+        getCollectionTime = collectorBean.getMethod("getCollectionTime");
+        names = new String[collectors.size()];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = (String) getName.invoke(collectors.get(i));
+        }
+        startCounts = new long[names.length];
+        startTimes = new long[names.length];
+    }
+
+    @Override
+    public boolean isSupported() {
+        return true;
+    }
+
+    @Override
+    public void startMonitoring() {
+        for (int i = 0; i < names.length; i++) {
+            startCounts[i] = read(getCollectionCount, i);
+            startTimes[i] = read(getCollectionTime, i);
+        }
+    }
+
+    @Override
+    public List<GcLogMessage> stopMonitoring() {
+        List<GcLogMessage> messages = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            long collections = read(getCollectionCount, i) - startCounts[i];
+            if (collections <= 0) {
+                continue;
+            }
+            long nanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, read(getCollectionTime, i) - startTimes[i]));
+            GcLogMessage.Type type = type(names[i]);
+            for (long j = 0; j < collections; j++) {
+                // Any remainder goes to the first collection, so the total stays the same.
+                long duration = nanos / collections + (j == 0 ? nanos % collections : 0);
+                messages.add(new GcLogMessage(type, ShortDuration.of(duration, TimeUnit.NANOSECONDS)));
+            }
+        }
+        return messages;
+    }
+
+    /**
+     * Returns the type of the collections done by the named collector, e.g. "PS MarkSweep" or "G1 Old Generation"
+     * collect the entire heap.
+     */
+    static GcLogMessage.Type type(String collectorName) {
+        return collectorName.contains("MarkSweep") || collectorName.contains("Old")
+                ? GcLogMessage.Type.FULL
+                : GcLogMessage.Type.INCREMENTAL;
+    }
+
+    private long read(Method counter, int collector) {
+        try {
+            // Counters are -1 if undefined.
+            return Math.max(0, (Long) counter.invoke(collectors.get(collector)));
+        } catch (IllegalAccessException e) {
+            throw new IllegalStateException(e);
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
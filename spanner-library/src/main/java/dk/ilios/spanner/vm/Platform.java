@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.vm;
+
+import java.util.Collections;
+import java.util.List;
+
+import dk.ilios.spanner.bridge.GcLogMessage;
+
+/**
+ * Entry point for features that depend on the VM Spanner is running on, e.g. Dalvik/ART or a desktop JVM.
+ */
+public final class Platform {
+
+    private static final GcMonitor UNSUPPORTED_GC_MONITOR = new GcMonitor() {
+        @Override
+        public boolean isSupported() {
+            return false;
+        }
+
+        @Override
+        public void startMonitoring() {
+        }
+
+        @Override
+        public List<GcLogMessage> stopMonitoring() {
+            return Collections.emptyList();
+        }
+    };
+
+    private static final CompilationMonitor UNSUPPORTED_COMPILATION_MONITOR = new CompilationMonitor() {
+        @Override
+        public boolean isSupported() {
+            return false;
+        }
+
+        @Override
+        public boolean hasCompiled() {
+            return false;
+        }
+    };
+
+    private Platform() {
+    }
+
+    /**
+     * Returns {@code true} if running on Dalvik or ART.
+     */
+    public static boolean isAndroid() {
+        return System.getProperty("java.vm.name", "").startsWith("Dalvik");
+    }
+
+    /**
+     * Returns an allocation counter for the current VM.
+     *
+     * @throws UnsupportedOperationException if the VM does not support counting allocations.
+     */
+    public static AllocationCounter allocationCounter() {
+        if (isAndroid()) {
+            return new AndroidAllocationCounter();
+        }
+        try {
+            return new JvmAllocationCounter();
+        } catch (Exception e) {
+            throw new UnsupportedOperationException("Counting allocations is not supported on this VM: "
+                    + System.getProperty("java.vm.name"), e);
+        }
+    }
+
+    /**
+     * Returns a timer measuring the CPU time of the current thread.
+     *
+     * @throws UnsupportedOperationException if the VM does not support measuring thread CPU time.
+     */
+    public static CpuTimer cpuTimer() {
+        try {
+            return isAndroid() ? new AndroidCpuTimer() : new JvmCpuTimer();
+        } catch (Exception e) {
+            throw new UnsupportedOperationException("Measuring thread CPU time is not supported on this VM: "
+                    + System.getProperty("java.vm.name"), e);
+        }
+    }
+
+    /**
+     * Returns a GC monitor for the current VM. If the VM does not support detecting garbage collections, the monitor
+     * never reports any and {@link GcMonitor#isSupported()} returns {@code false}.
+     */
+    public static GcMonitor gcMonitor() {
+        try {
+            return isAndroid() ? new AndroidGcMonitor() : new JvmGcMonitor();
+        } catch (Exception e) {
+            return UNSUPPORTED_GC_MONITOR;
+        }
+    }
+
+    /**
+     * Returns a compilation monitor for the current VM. Dalvik and ART do not expose any compilation counters, so on
+     * Android and on VMs without a JIT the monitor never reports any compilation and
+     * {@link CompilationMonitor#isSupported()} returns {@code false}.
+     */
+    public static CompilationMonitor compilationMonitor() {
+        if (isAndroid()) {
+            return UNSUPPORTED_COMPILATION_MONITOR;
+        }
+        try {
+            return new JvmCompilationMonitor();
+        } catch (Exception e) {
+            return UNSUPPORTED_COMPILATION_MONITOR;
+        }
+    }
+}
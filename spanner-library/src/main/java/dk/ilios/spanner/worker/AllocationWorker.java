@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.worker;
+
+import com.google.common.collect.ImmutableList;
+
+import java.lang.reflect.Method;
+import java.util.Random;
+import java.util.SortedMap;
+
+import dk.ilios.spanner.benchmark.BenchmarkClass;
+import dk.ilios.spanner.benchmark.BenchmarkMethods;
+import dk.ilios.spanner.config.AllocationInstrumentConfig;
+import dk.ilios.spanner.model.Measurement;
+import dk.ilios.spanner.model.Value;
+import dk.ilios.spanner.vm.AllocationCounter;
+
+/**
+ * The {@link Worker} implementation for counting allocations done by benchmark methods.
+ * <p>
+ * Each measurement is compared against a baseline measurement doing 0 reps (or no invocation at all for methods
+ * without a reps parameter), so allocations done by Spanner itself are not included.
+ */
+public final class AllocationWorker extends Worker {
+
+    private static final int WARMUP_REPS = 10;
+
+    private final Random random;
+    private final AllocationCounter counter;
+    private final int maxReps;
+    private final boolean hasReps;
+
+    public AllocationWorker(BenchmarkClass benchmarkClass,
+                            Method method,
+                            AllocationCounter counter,
+                            AllocationInstrumentConfig options,
+                            SortedMap<String, String> userParameters) {
+        super(benchmarkClass.getInstance(), method, userParameters);
+        this.random = new Random();
+        this.counter = counter;
+        this.maxReps = options.maxReps();
+        this.hasReps = BenchmarkMethods.repsParameterTypes(method).length > 0;
+    }
+
+    @Override
+    public void bootstrap() throws Exception {
+        // Do some initial measurements and throw away the results, so lazy initialization isn't counted.
+        countAllocations(WARMUP_REPS);
+    }
+
+    @Override
+    public Iterable<Measurement> measure() throws Exception {
+        int reps = hasReps ? random.nextInt(maxReps) + 1 : 1;
+
+        countAllocations(0);
+        long baselineBytes = counter.allocatedBytes();
+        long baselineObjects = counter.allocatedObjects();
+
+        countAllocations(reps);
+        long bytes = Math.max(0, counter.allocatedBytes() - baselineBytes);
+        long objects = Math.max(0, counter.allocatedObjects() - baselineObjects);
+
+        ImmutableList.Builder<Measurement> measurements = ImmutableList.builder();
+        measurements.add(new Measurement.Builder()
+                .description("bytes")
+                .value(Value.create(bytes, "B"))
+                .weight(reps)
+                .build());
+        if (counter.countsObjects()) {
+            measurements.add(new Measurement.Builder()
+                    .description("objects")
+                    .value(Value.create(objects, ""))
+                    .weight(reps)
+                    .build());
+        }
+        return measurements.build();
+    }
+
+    /**
+     * Counts the allocations done by the benchmark method. Methods without a reps parameter are not invoked at all
+     * when asked for 0 reps.
+     */
+    private void countAllocations(int reps) throws Exception {
+        // Box the reps outside the counted region, so our own allocations are not counted.
+        invoker.prepare(reps);
+        if (hasReps || reps > 0) {
+            counter.startCounting();
+            invoker.invoke();
+            counter.stopCounting();
+        } else {
+            counter.startCounting();
+            counter.stopCounting();
+        }
+    }
+}
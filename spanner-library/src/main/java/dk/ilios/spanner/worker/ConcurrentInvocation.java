@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.worker;
+
+import com.google.common.base.Throwables;
+import com.google.common.base.Ticker;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+
+import dk.ilios.spanner.Blackhole;
+import dk.ilios.spanner.benchmark.BenchmarkInvoker;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Calls a benchmark method from several threads at the same time. All threads share the same benchmark instance, but
+ * have their own {@link BenchmarkInvoker} and {@link Blackhole}.
+ *
+ * The threads are started by the first invocation and kept until {@link #close()} is called. Between invocations
+ * they wait on a barrier, which releases them at the same time when the next invocation starts. Thread start-up and
+ * argument preparation are therefore not part of the timed region.
+ */
+final class ConcurrentInvocation {
+
+    private final Ticker ticker;
+    private final BenchmarkInvoker[] invokers;
+    private final Blackhole[] blackholes;
+    private final long[] endNanos;
+    private final CyclicBarrier start;
+    private final CyclicBarrier done;
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    // Written before the threads are released by the start barrier, which makes them visible to the threads.
+    private long[] threadNanos;
+    private long startNanos;
+    private Thread[] threads;
+    private boolean closed = false;
+
+    ConcurrentInvocation(Object benchmark, Method method, Ticker ticker, int threads) {
+        checkArgument(threads > 0, "Must use at least one thread: %s", threads);
+        this.ticker = ticker;
+        this.invokers = new BenchmarkInvoker[threads];
+        this.blackholes = new Blackhole[threads];
+        for (int i = 0; i < threads; i++) {
+            blackholes[i] = new Blackhole();
+            invokers[i] = BenchmarkInvoker.create(benchmark, method, blackholes[i]);
+        }
+        this.endNanos = new long[threads];
+        // The thread calling run() is also a party, so it knows when the threads have been released and are done.
+        this.start = new CyclicBarrier(threads + 1, new Runnable() {
+            @Override
+            public void run() {
+                startNanos = ConcurrentInvocation.this.ticker.read();
+            }
+        });
+        this.done = new CyclicBarrier(threads + 1);
+    }
+
+    int threads() {
+        return invokers.length;
+    }
+
+    /**
+     * Calls the benchmark method once from each thread.
+     *
+     * @param reps number of reps each thread should do.
+     * @param threadNanos array that receives the time spent by each thread.
+     * @return the wall time from the threads were released until the last thread finished.
+     */
+    long run(long reps, long[] threadNanos) throws Exception {
+        checkArgument(threadNanos.length == invokers.length);
+        checkState(!closed, "Invocation has been closed");
+        for (BenchmarkInvoker invoker : invokers) {
+            invoker.prepare(reps);
+        }
+        this.threadNanos = threadNanos;
+        failure.set(null);
+        if (threads == null) {
+            startThreads();
+        }
+
+        try {
+            start.await();
+            done.await();
+        } catch (InterruptedException e) {
+            close();
+            throw e;
+        } catch (BrokenBarrierException e) {
+            close();
+            throw e;
+        }
+
+        Throwable error = failure.get();
+        if (error != null) {
+            close();
+            Throwables.propagateIfPossible(error, Exception.class);
+            throw new RuntimeException(error);
+        }
+        long lastEnd = startNanos;
+        for (long end : endNanos) {
+            lastEnd = Math.max(lastEnd, end);
+        }
+        return lastEnd - startNanos;
+    }
+
+    private void startThreads() {
+        threads = new Thread[invokers.length];
+        for (int i = 0; i < invokers.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    invokeRepeatedly(index);
+                }
+            }, "Spanner benchmark thread " + (i + 1));
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+    }
+
+    /**
+     * Runs on benchmark thread {@code index} until the invocation is closed.
+     */
+    private void invokeRepeatedly(int index) {
+        try {
+            while (true) {
+                start.await();
+                try {
+                    long before = ticker.read();
+                    Object result = invokers[index].invoke();
+                    endNanos[index] = ticker.read();
+                    threadNanos[index] = endNanos[index] - before;
+                    blackholes[index].consume(result);
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+                done.await();
+            }
+        } catch (InterruptedException e) {
+            // Closed
+        } catch (BrokenBarrierException e) {
+            // The thread calling run() was interrupted, it closes the invocation.
+        }
+    }
+
+    /**
+     * Stops the benchmark threads. The invocation can not be used afterwards.
+     */
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (threads != null) {
+            for (Thread thread : threads) {
+                thread.interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.worker;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import dk.ilios.spanner.model.Measurement;
+import dk.ilios.spanner.model.Value;
+import dk.ilios.spanner.vm.CpuTimer;
+
+/**
+ * Creates the measurements reported when {@link dk.ilios.spanner.config.RuntimeInstrumentConfig#measureCpuTime()} is
+ * enabled. They are secondary measurements, so they must be added after the runtime measurement.
+ * <p>
+ * The CPU time is reported for every measurement, while the split into user and system time is only reported once for
+ * the whole trial, see {@link #split()}.
+ */
+final class CpuTimeMeasurements {
+
+    static final String CPU_TIME = "cpu time";
+    static final String USER_TIME = "user cpu time";
+    static final String SYSTEM_TIME = "system cpu time";
+    static final String CPU_WALL_RATIO = "cpu/wall";
+
+    /**
+     * User time is only updated every scheduler tick, which is 10 ms on Linux, so the split into user and system time
+     * is only reported when the error is at most 1%.
+     */
+    static final long MIN_SPLIT_CPU_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final CpuTimer timer;
+    private long totalReps;
+    private long totalCpuNanos;
+    private long totalUserNanos;
+
+    /**
+     * @param timer timer measuring the benchmark thread.
+     */
+    CpuTimeMeasurements(CpuTimer timer) {
+        this.timer = timer;
+    }
+
+    /**
+     * Returns the measurements for the CPU time recorded by the timer. Measurements taken after warmup are also added
+     * to the totals reported by {@link #split()}.
+     *
+     * @param reps number of reps done while the timer was running.
+     * @param wallNanos wall-clock time of the same reps.
+     * @param inWarmup whether the measurement is part of warmup.
+     */
+    List<Measurement> create(long reps, long wallNanos, boolean inWarmup) {
+        long cpuNanos = timer.cpuNanos();
+        if (!inWarmup) {
+            totalReps += reps;
+            totalCpuNanos += cpuNanos;
+            if (timer.measuresUserTime()) {
+                totalUserNanos += timer.userNanos();
+            }
+        }
+        return ImmutableList.of(
+                measurement(CPU_TIME, reps, cpuNanos, "ns"),
+                measurement(CPU_WALL_RATIO, 1, (double) cpuNanos / Math.max(1, wallNanos), ""));
+    }
+
+    /**
+     * Returns the user and system time of all measurements after warmup. The error of the user time does not depend
+     * on the length of a measurement, so it is only reported for the total and only if at least
+     * {@link #MIN_SPLIT_CPU_NANOS} of CPU time was used. Empty if the timer cannot measure user time.
+     */
+    List<Measurement> split() {
+        if (!timer.measuresUserTime() || totalCpuNanos < MIN_SPLIT_CPU_NANOS) {
+            return ImmutableList.of();
+        }
+        return ImmutableList.of(
+                measurement(USER_TIME, totalReps, totalUserNanos, "ns"),
+                measurement(SYSTEM_TIME, totalReps, totalCpuNanos - totalUserNanos, "ns"));
+    }
+
+    private static Measurement measurement(String description, long weight, double value, String unit) {
+        return new Measurement.Builder()
+                .description(description)
+                .weight(weight)
+                .value(Value.create(value, unit))
+                .build();
+    }
+}
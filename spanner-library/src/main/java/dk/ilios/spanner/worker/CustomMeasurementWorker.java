@@ -56,7 +56,7 @@ public final class CustomMeasurementWorker extends Worker {
 
     @Override
     public Iterable<Measurement> measure() throws Exception {
-        double measured = (Double) benchmarkMethod.invoke(benchmark);
+        double measured = (Double) invoker.invoke();
         return ImmutableSet.of(new Measurement.Builder()
                 .value(Value.create(measured, unit))
                 .weight(1)
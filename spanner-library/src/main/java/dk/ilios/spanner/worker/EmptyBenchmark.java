@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.worker;
+
+import dk.ilios.spanner.Blackhole;
+
+/**
+ * Benchmark methods that do nothing. They are used to measure the overhead of the benchmark harness, so they must
+ * have the same shape as the user benchmarks, i.e. {@code int} and {@code long} reps, optionally followed by a
+ * {@link Blackhole}.
+ */
+final class EmptyBenchmark {
+
+    public void empty(int reps) {
+        for (int i = 0; i < reps; i++) {
+            // Empty
+        }
+    }
+
+    public void empty(long reps) {
+        for (long i = 0; i < reps; i++) {
+            // Empty
+        }
+    }
+
+    public void empty(int reps, Blackhole blackhole) {
+        for (int i = 0; i < reps; i++) {
+            // Empty
+        }
+    }
+
+    public void empty(long reps, Blackhole blackhole) {
+        for (long i = 0; i < reps; i++) {
+            // Empty
+        }
+    }
+}
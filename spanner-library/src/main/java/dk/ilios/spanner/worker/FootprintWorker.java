@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.worker;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+
+import java.lang.reflect.Method;
+import java.util.SortedMap;
+
+import dk.ilios.spanner.Footprint;
+import dk.ilios.spanner.benchmark.BenchmarkClass;
+import dk.ilios.spanner.config.FootprintInstrumentConfig;
+import dk.ilios.spanner.memory.MemoryLayout;
+import dk.ilios.spanner.memory.ObjectGraphMeasurer;
+import dk.ilios.spanner.model.Measurement;
+import dk.ilios.spanner.model.Value;
+
+/**
+ * Worker for {@link Footprint} methods. Each measurement calls the method and measures the number of bytes and
+ * objects reachable from the returned object.
+ */
+public final class FootprintWorker extends Worker {
+
+    private final MemoryLayout layout;
+    private final Predicate<Object> objectAcceptor;
+
+    public FootprintWorker(BenchmarkClass benchmarkClass,
+                           Method method,
+                           FootprintInstrumentConfig options,
+                           SortedMap<String, String> userParameters) {
+        super(benchmarkClass.getInstance(), method, userParameters);
+        this.layout = options.memoryLayout();
+        final Object benchmarkInstance = benchmark;
+        final Class<?>[] excludedClasses = method.getAnnotation(Footprint.class).exclude();
+        this.objectAcceptor = new Predicate<Object>() {
+            @Override
+            public boolean apply(Object input) {
+                // Inner classes and anonymous classes keep a reference to the benchmark, which is not part of the
+                // footprint.
+                if (input == benchmarkInstance) {
+                    return false;
+                }
+                for (Class<?> excludedClass : excludedClasses) {
+                    if (excludedClass.isInstance(input)) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        };
+    }
+
+    @Override
+    public Iterable<Measurement> measure() throws Exception {
+        Object root = invoker.invoke();
+        long bytes = ObjectGraphMeasurer.measureBytes(root, objectAcceptor, layout);
+        ObjectGraphMeasurer.Footprint footprint = ObjectGraphMeasurer.measure(root, objectAcceptor);
+        return ImmutableList.of(
+                new Measurement.Builder()
+                        .description("bytes")
+                        .value(Value.create(bytes, "B"))
+                        .weight(1)
+                        .build(),
+                new Measurement.Builder()
+                        .description("objects")
+                        .value(Value.create(footprint.getObjects(), ""))
+                        .weight(1)
+                        .build());
+    }
+}
@@ -18,19 +18,24 @@ package dk.ilios.spanner.worker;
 
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 
 import java.lang.reflect.Method;
+import java.util.List;
 import java.util.SortedMap;
 
 import dk.ilios.spanner.AfterRep;
 import dk.ilios.spanner.BeforeRep;
 import dk.ilios.spanner.benchmark.BenchmarkClass;
 import dk.ilios.spanner.config.RuntimeInstrumentConfig;
+import dk.ilios.spanner.model.LatencyHistogram;
 import dk.ilios.spanner.model.Measurement;
 import dk.ilios.spanner.model.Value;
 import dk.ilios.spanner.util.Reflection;
 import dk.ilios.spanner.util.Util;
+import dk.ilios.spanner.vm.CpuTimer;
+import dk.ilios.spanner.vm.Platform;
 
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
@@ -43,6 +48,10 @@ public class MacrobenchmarkWorker extends Worker {
     private final ImmutableSet<Method> beforeRepMethods;
     private final ImmutableSet<Method> afterRepMethods;
     private final boolean gcBeforeEach;
+    private final LatencyHistogram latencies;
+    private final CpuTimer cpuTimer;
+    private final CpuTimeMeasurements cpuTime;
+    private boolean inWarmup;
 
     public MacrobenchmarkWorker(BenchmarkClass benchmarkClass,
                                 Method method,
@@ -55,10 +64,24 @@ public class MacrobenchmarkWorker extends Worker {
         this.beforeRepMethods = Reflection.getAnnotatedMethods(benchmark.getClass(), BeforeRep.class);
         this.afterRepMethods = Reflection.getAnnotatedMethods(benchmark.getClass(), AfterRep.class);
         this.gcBeforeEach = options.gcBeforeEachMeasurement();
+        this.latencies = options.isSamplingLatency() ? new LatencyHistogram() : null;
+        this.cpuTimer = options.measureCpuTime() ? Platform.cpuTimer() : null;
+        this.cpuTime = (cpuTimer != null) ? new CpuTimeMeasurements(cpuTimer) : null;
+    }
+
+    @Override
+    public LatencyHistogram latencyHistogram() {
+        return latencies;
+    }
+
+    @Override
+    public List<Measurement> trialMeasurements() {
+        return (cpuTime != null) ? cpuTime.split() : super.trialMeasurements();
     }
 
     @Override
     public void preMeasure(boolean inWarmup) throws Exception {
+        this.inWarmup = inWarmup;
         for (Method beforeRepMethod : beforeRepMethods) {
             beforeRepMethod.invoke(benchmark);
         }
@@ -69,15 +92,32 @@ public class MacrobenchmarkWorker extends Worker {
 
     @Override
     public Iterable<Measurement> measure() throws Exception {
+        if (cpuTimer != null) {
+            cpuTimer.start();
+        }
         stopwatch.start();
-        benchmarkMethod.invoke(benchmark);
+        Object result = invoker.invoke();
         long nanos = stopwatch.stop().elapsed(NANOSECONDS);
         stopwatch.reset();
-        return ImmutableSet.of(new Measurement.Builder()
+        blackhole.consume(result);
+        if (cpuTimer != null) {
+            cpuTimer.stop();
+        }
+        if (latencies != null && !inWarmup) {
+            latencies.record(nanos);
+        }
+        Measurement runtime = new Measurement.Builder()
                 .description("runtime")
                 .weight(1)
                 .value(Value.create(nanos, "ns"))
-                .build());
+                .build();
+        if (cpuTimer == null) {
+            return ImmutableSet.of(runtime);
+        }
+        return ImmutableList.<Measurement>builder()
+                .add(runtime)
+                .addAll(cpuTime.create(1, nanos, inWarmup))
+                .build();
     }
 
     @Override
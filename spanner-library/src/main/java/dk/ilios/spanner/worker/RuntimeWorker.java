@@ -20,32 +20,77 @@ import android.util.Log;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 
 import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Random;
 import java.util.SortedMap;
 import java.util.concurrent.TimeUnit;
 
 import dk.ilios.spanner.benchmark.BenchmarkClass;
+import dk.ilios.spanner.benchmark.BenchmarkInvoker;
+import dk.ilios.spanner.benchmark.BenchmarkMethods;
 import dk.ilios.spanner.config.RuntimeInstrumentConfig;
 import dk.ilios.spanner.internal.InvalidBenchmarkException;
+import dk.ilios.spanner.model.HarnessOverhead;
+import dk.ilios.spanner.model.LatencyHistogram;
 import dk.ilios.spanner.model.Measurement;
 import dk.ilios.spanner.model.Value;
 import dk.ilios.spanner.util.ShortDuration;
 import dk.ilios.spanner.util.Util;
+import dk.ilios.spanner.vm.CpuTimer;
+import dk.ilios.spanner.vm.Platform;
 
 /**
  * A {@link Worker} base class for micro and pico benchmarks.
+ *
+ * Benchmarks with more than one thread (see {@link dk.ilios.spanner.Benchmark#threads()}) are called by all threads
+ * at the same time. They report the runtime pr. rep as seen by the average and the slowest thread as well as the
+ * combined throughput of all threads.
+ *
+ * If latency sampling is enabled, each measurement is split into samples of
+ * {@link RuntimeInstrumentConfig#latencySampleReps()} reps that are timed on their own. The total runtime of each
+ * sample is recorded in a {@link LatencyHistogram}, which reports it pr. rep. Latency is not sampled for
+ * multi-threaded benchmarks.
+ *
+ * If CPU time is measured, the CPU time of the measuring thread is reported next to the runtime, see
+ * {@link RuntimeInstrumentConfig#measureCpuTime()}. It is not measured for multi-threaded benchmarks either.
  */
 public abstract class RuntimeWorker extends Worker {
 
     @VisibleForTesting
     static final int INITIAL_REPS = 100;
 
+    @VisibleForTesting
+    static final int CALIBRATION_ROUNDS = 15;
+
+    @VisibleForTesting
+    static final int CALIBRATION_REPS = 10000;
+
+    /**
+     * Maximum number of calibrations done while warming up the harness. Calibration stops early once two calibrations
+     * in a row agree within {@link #CALIBRATION_TOLERANCE}.
+     */
+    @VisibleForTesting
+    static final int MAX_CALIBRATIONS = 20;
+
+    @VisibleForTesting
+    static final double CALIBRATION_TOLERANCE = 0.1;
+
     protected final Random random;
     protected final Ticker ticker;
     protected final RuntimeInstrumentConfig options;
+    private final BenchmarkInvoker emptyInvoker;
+    private final ConcurrentInvocation concurrentInvocation;
+    private final LatencyHistogram latencies;
+    private final CpuTimer cpuTimer;
+    private final CpuTimeMeasurements cpuTime;
+    private boolean inWarmup;
+    private HarnessOverhead overhead;
+    private boolean calibratedAfterWarmup;
     private long totalReps;
     private long totalNanos;
     private long nextReps;
@@ -60,16 +105,101 @@ public abstract class RuntimeWorker extends Worker {
         this.random = new Random();
         this.ticker = ticker;
         this.options = options;
+        try {
+            Method emptyMethod = EmptyBenchmark.class.getMethod("empty", method.getParameterTypes());
+            this.emptyInvoker = BenchmarkInvoker.create(new EmptyBenchmark(), emptyMethod, blackhole);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException("Unsupported benchmark method: " + method, e);
+        }
+        this.concurrentInvocation = BenchmarkMethods.isConcurrent(method)
+                ? new ConcurrentInvocation(benchmark, method, ticker, BenchmarkMethods.threads(method, userParameters))
+                : null;
+        this.latencies = (options.isSamplingLatency() && concurrentInvocation == null)
+                ? new LatencyHistogram(LatencyHistogram.DEFAULT_SIGNIFICANT_BITS, options.latencySampleReps())
+                : null;
+        this.cpuTimer = (options.measureCpuTime() && concurrentInvocation == null)
+                ? Platform.cpuTimer()
+                : null;
+        this.cpuTime = (cpuTimer != null) ? new CpuTimeMeasurements(cpuTimer) : null;
     }
 
     @Override
     public void bootstrap() throws Exception {
+        overhead = warmUpHarness();
         totalReps = INITIAL_REPS;
         totalNanos = invokeTimeMethod(INITIAL_REPS);
     }
 
+    @Override
+    public HarnessOverhead harnessOverhead() {
+        return overhead;
+    }
+
+    @Override
+    public LatencyHistogram latencyHistogram() {
+        return latencies;
+    }
+
+    @Override
+    public List<Measurement> trialMeasurements() {
+        return (cpuTime != null) ? cpuTime.split() : super.trialMeasurements();
+    }
+
+    /**
+     * Calibrates the overhead until the estimate stops changing, i.e. the harness has been compiled. Calibrating a cold
+     * harness measures the interpreter, which can be slower than the compiled benchmark itself.
+     */
+    private HarnessOverhead warmUpHarness() throws Exception {
+        HarnessOverhead previous = calibrateOverhead();
+        for (int i = 1; i < MAX_CALIBRATIONS; i++) {
+            HarnessOverhead next = calibrateOverhead();
+            if (isClose(previous.fixedNanos(), next.fixedNanos())
+                    && isClose(previous.perRepNanos(), next.perRepNanos())) {
+                return next;
+            }
+            previous = next;
+        }
+        return previous;
+    }
+
+    private static boolean isClose(double previous, double next) {
+        return Math.abs(previous - next) <= CALIBRATION_TOLERANCE * Math.max(previous, next);
+    }
+
+    /**
+     * Times the empty benchmark method with 1 rep and {@link #CALIBRATION_REPS} reps a number of times and uses the
+     * medians to estimate the fixed and the pr. rep cost of the harness.
+     */
+    private HarnessOverhead calibrateOverhead() throws Exception {
+        long[] singleRep = new long[CALIBRATION_ROUNDS];
+        long[] manyReps = new long[CALIBRATION_ROUNDS];
+        for (int i = 0; i < CALIBRATION_ROUNDS; i++) {
+            singleRep[i] = timeInvocation(emptyInvoker, 1);
+            manyReps[i] = timeInvocation(emptyInvoker, CALIBRATION_REPS);
+        }
+        double perRep = Math.max(0, (median(manyReps) - median(singleRep)) / (CALIBRATION_REPS - 1));
+        double fixed = Math.max(0, median(singleRep) - perRep);
+        return new HarnessOverhead(fixed, perRep);
+    }
+
+    private static double median(long[] values) {
+        Arrays.sort(values);
+        int middle = values.length / 2;
+        if (values.length % 2 == 1) {
+            return values[middle];
+        } else {
+            return (values[middle - 1] + values[middle]) / 2.0;
+        }
+    }
+
     @Override
     public void preMeasure(boolean inWarmup) throws Exception {
+        this.inWarmup = inWarmup;
+        if (!inWarmup && !calibratedAfterWarmup) {
+            // The harness is now compiled the same way it is when measuring, so calibrate again.
+            overhead = calibrateOverhead();
+            calibratedAfterWarmup = true;
+        }
         nextReps = calculateTargetReps(totalReps, totalNanos, TimeUnit.NANOSECONDS.convert(options.timingInterval(), options.timingIntervalUnit()), random.nextGaussian());
         if (options.gcBeforeEachMeasurement() &&  !inWarmup) {
             Util.forceGc();
@@ -78,20 +208,134 @@ public abstract class RuntimeWorker extends Worker {
 
     @Override
     public Iterable<Measurement> measure() throws Exception {
+        if (concurrentInvocation != null) {
+            return measureConcurrently();
+        }
+        if (cpuTimer == null) {
+            return ImmutableSet.of(measureRuntime());
+        }
+        long startNanos = totalNanos;
+        cpuTimer.start();
+        Measurement runtime = measureRuntime();
+        cpuTimer.stop();
+        // totalNanos is the sum of the uncorrected wall-clock time of all measurements.
+        return ImmutableList.<Measurement>builder()
+                .add(runtime)
+                .addAll(cpuTime.create(nextReps, totalNanos - startNanos, inWarmup))
+                .build();
+    }
+
+    private Measurement measureRuntime() throws Exception {
+        if (latencies != null) {
+            return measureSampled();
+        }
         long nanos = invokeTimeMethod(nextReps);
-        Measurement measurement = new Measurement.Builder()
+        totalReps += nextReps;
+        totalNanos += nanos;
+        return runtimeMeasurement("runtime", nanos);
+    }
+
+    private Measurement measureSampled() throws Exception {
+        long sampleReps = options.latencySampleReps();
+        long rawNanos = 0;
+        double correctedNanos = 0;
+        for (long remaining = nextReps; remaining > 0; remaining -= sampleReps) {
+            long reps = Math.min(sampleReps, remaining);
+            long nanos = invokeTimeMethod(reps);
+            double corrected = options.subtractOverhead()
+                    ? Math.max(0, nanos - overhead.nanosFor(reps))
+                    : nanos;
+            if (!inWarmup) {
+                // The total time of the sample is recorded, so reps faster than a nanosecond are not rounded away.
+                // A shorter last sample is scaled up to a full one.
+                latencies.record(Math.round(corrected * sampleReps / reps));
+            }
+            rawNanos += nanos;
+            correctedNanos += corrected;
+        }
+
+        totalReps += nextReps;
+        totalNanos += rawNanos;
+        Measurement.Builder measurement = new Measurement.Builder()
                 .description("runtime")
-                .value(Value.create(nanos, "ns"))
                 .weight(nextReps)
-                .build();
+                .value(Value.create(correctedNanos, "ns"));
+        if (options.subtractOverhead()) {
+            measurement.rawValue(Value.create(rawNanos, "ns"));
+        }
+        return measurement.build();
+    }
+
+    private Iterable<Measurement> measureConcurrently() throws Exception {
+        checkReps(nextReps);
+        int threads = concurrentInvocation.threads();
+        long[] threadNanos = new long[threads];
+        long wallNanos = concurrentInvocation.run(nextReps, threadNanos);
+        long sumNanos = 0;
+        long slowestNanos = 0;
+        for (long nanos : threadNanos) {
+            sumNanos += nanos;
+            slowestNanos = Math.max(slowestNanos, nanos);
+        }
+        double meanNanos = (double) sumNanos / threads;
+        double opsPrSecond = threads * nextReps * 1e9 / Math.max(1, wallNanos);
 
         totalReps += nextReps;
-        totalNanos += nanos;
-        return ImmutableSet.of(measurement);
+        totalNanos += Math.round(meanNanos);
+        // The first measurement is the primary one of the trial.
+        return ImmutableList.of(
+                runtimeMeasurement("runtime", meanNanos),
+                runtimeMeasurement("runtime (slowest thread)", slowestNanos),
+                new Measurement.Builder()
+                        .description("throughput")
+                        .weight(1)
+                        .value(Value.create(opsPrSecond, "ops/s"))
+                        .build());
+    }
+
+    private Measurement runtimeMeasurement(String description, double nanos) {
+        Measurement.Builder measurement = new Measurement.Builder()
+                .description(description)
+                .weight(nextReps);
+        if (options.subtractOverhead()) {
+            double corrected = Math.max(0, nanos - overhead.nanosFor(nextReps));
+            measurement.value(Value.create(corrected, "ns"));
+            measurement.rawValue(Value.create(nanos, "ns"));
+        } else {
+            measurement.value(Value.create(nanos, "ns"));
+        }
+        return measurement.build();
+    }
+
+    @Override
+    protected void releaseResources() {
+        if (concurrentInvocation != null) {
+            concurrentInvocation.close();
+        }
     }
 
     abstract long invokeTimeMethod(long reps) throws Exception;
 
+    /**
+     * Checks that the benchmark method can do the given number of reps.
+     */
+    void checkReps(long reps) throws InvalidBenchmarkException {
+    }
+
+    /**
+     * Times a single invocation of a benchmark method. Only the call itself is inside the timed region. The return
+     * value is consumed by the {@link #blackhole}.
+     */
+    final long timeInvocation(BenchmarkInvoker invoker, long reps) throws Exception {
+        invoker.prepare(reps);
+        long before = ticker.read();
+        Object result = invoker.invoke();
+        long nanos = ticker.read() - before;
+        // The result has been computed at this point, consuming it just makes sure the computation can't be removed.
+        blackhole.consume(result);
+        return nanos;
+    }
+
     /**
      * Returns a random number of reps based on a normal distribution around the estimated number of
      * reps for the timing interval. The distribution used has a standard deviation of one fifth of
@@ -120,8 +364,13 @@ public abstract class RuntimeWorker extends Worker {
 
         @Override
         long invokeTimeMethod(long reps) throws Exception {
-            int intReps = (int) reps;
-            if (reps != intReps) {
+            checkReps(reps);
+            return timeInvocation(invoker, reps);
+        }
+
+        @Override
+        void checkReps(long reps) throws InvalidBenchmarkException {
+            if (reps != (int) reps) {
                 throw new InvalidBenchmarkException("%s.%s takes an int for reps, "
                         + "but requires a greater number to fill the given timing interval (%s). "
                         + "If this is expected (the benchmarked code is very fast), use a long parameter."
@@ -129,9 +378,6 @@ public abstract class RuntimeWorker extends Worker {
                         benchmark.getClass(), benchmarkMethod.getName(),
                         ShortDuration.of(options.timingInterval(), options.timingIntervalUnit()));
             }
-            long before = ticker.read();
-            benchmarkMethod.invoke(benchmark, intReps);
-            return ticker.read() - before;
         }
     }
 
@@ -150,9 +396,7 @@ public abstract class RuntimeWorker extends Worker {
 
         @Override
         long invokeTimeMethod(long reps) throws Exception {
-            long before = ticker.read();
-            benchmarkMethod.invoke(benchmark, reps);
-            return ticker.read() - before;
+            return timeInvocation(invoker, reps);
         }
     }
 }
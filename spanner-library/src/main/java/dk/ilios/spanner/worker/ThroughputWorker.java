@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.worker;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableSet;
+
+import java.lang.reflect.Method;
+import java.util.SortedMap;
+
+import dk.ilios.spanner.benchmark.BenchmarkClass;
+import dk.ilios.spanner.benchmark.BenchmarkMethods;
+import dk.ilios.spanner.config.RuntimeInstrumentConfig;
+import dk.ilios.spanner.model.Measurement;
+import dk.ilios.spanner.model.Value;
+import dk.ilios.spanner.util.Util;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * The {@link Worker} for throughput benchmarks. Each measurement calls the benchmark method repeatedly for one time
+ * slice and reports the number of operations completed pr. second.
+ *
+ * The method is called in batches, so the timer is only read between batches. Batches start with a single operation
+ * and are doubled until a batch takes at least {@link #BATCH_FRACTION} of the time slice. The batch size is kept
+ * between measurements.
+ */
+public class ThroughputWorker extends Worker {
+
+    /**
+     * How large a fraction of the time slice a single batch should take, i.e. the slice is overrun by at most 1%.
+     */
+    @VisibleForTesting
+    static final int BATCH_FRACTION = 100;
+
+    private final Ticker ticker;
+    private final long timeSliceNanos;
+    private final long maxBatchSize;
+    private final boolean repsMethod;
+    private final boolean gcBeforeEach;
+    private long batchSize = 1;
+
+    public ThroughputWorker(BenchmarkClass benchmarkClass,
+                            Method method,
+                            Ticker ticker,
+                            RuntimeInstrumentConfig options,
+                            SortedMap<String, String> userParameters) {
+        super(benchmarkClass.getInstance(), method, userParameters);
+        Class<?>[] parameterTypes = BenchmarkMethods.repsParameterTypes(method);
+        this.ticker = ticker;
+        this.timeSliceNanos = NANOSECONDS.convert(options.timingInterval(), options.timingIntervalUnit());
+        this.repsMethod = parameterTypes.length == 1;
+        this.maxBatchSize = (repsMethod && parameterTypes[0] == long.class) ? Long.MAX_VALUE / 2 : Integer.MAX_VALUE;
+        this.gcBeforeEach = options.gcBeforeEachMeasurement();
+    }
+
+    @Override
+    public void preMeasure(boolean inWarmup) throws Exception {
+        if (gcBeforeEach && !inWarmup) {
+            Util.forceGc();
+        }
+    }
+
+    @Override
+    public Iterable<Measurement> measure() throws Exception {
+        long minBatchNanos = timeSliceNanos / BATCH_FRACTION;
+        long operations = 0;
+        long start = ticker.read();
+        long now = start;
+        long deadline = start + timeSliceNanos;
+        do {
+            invokeBatch(batchSize);
+            long afterBatch = ticker.read();
+            operations += batchSize;
+            if (afterBatch - now < minBatchNanos && batchSize < maxBatchSize) {
+                batchSize = Math.min(batchSize * 2, maxBatchSize);
+            }
+            now = afterBatch;
+        } while (now - deadline < 0);
+
+        return ImmutableSet.of(new Measurement.Builder()
+                .description("throughput")
+                .weight(1)
+                .value(Value.create(opsPrSecond(operations, now - start), "ops/s"))
+                .build());
+    }
+
+    private void invokeBatch(long operations) throws Exception {
+        if (repsMethod) {
+            invoker.prepare(operations);
+            blackhole.consume(invoker.invoke());
+        } else {
+            for (long i = 0; i < operations; i++) {
+                blackhole.consume(invoker.invoke());
+            }
+        }
+    }
+
+    @VisibleForTesting
+    static double opsPrSecond(long operations, long nanos) {
+        return operations * 1e9 / Math.max(1, nanos);
+    }
+}
@@ -15,15 +15,23 @@
  */
 package dk.ilios.spanner.worker;
 
+import com.google.common.collect.ImmutableList;
+
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.text.ParseException;
+import java.util.List;
 import java.util.Set;
 import java.util.SortedMap;
 
 import dk.ilios.spanner.AfterExperiment;
 import dk.ilios.spanner.BeforeExperiment;
+import dk.ilios.spanner.Blackhole;
 import dk.ilios.spanner.Param;
+import dk.ilios.spanner.benchmark.BenchmarkInvoker;
+import dk.ilios.spanner.model.HarnessOverhead;
+import dk.ilios.spanner.model.LatencyHistogram;
 import dk.ilios.spanner.model.Measurement;
 import dk.ilios.spanner.util.Parser;
 import dk.ilios.spanner.util.Parsers;
@@ -40,10 +48,14 @@ public abstract class Worker {
 
     protected final Method benchmarkMethod;
     protected final Object benchmark;
+    protected final BenchmarkInvoker invoker;
+    protected final Blackhole blackhole;
 
     protected Worker(Object benchmark, Method method, SortedMap<String, String> userParameters) {
         this.benchmark = benchmark;
         this.benchmarkMethod = method;
+        this.blackhole = new Blackhole();
+        this.invoker = BenchmarkInvoker.create(benchmark, method, blackhole);
         this.beforeExperimentMethods = Reflection.getAnnotatedMethods(benchmark.getClass(), BeforeExperiment.class);
         this.afterExperimentMethods = Reflection.getAnnotatedMethods(benchmark.getClass(), AfterExperiment.class);
         this.userParameters = userParameters;
@@ -72,11 +84,24 @@ public abstract class Worker {
         }
     }
 
+    /**
+     * Injects the blackhole of this worker into all {@link Blackhole} fields of the class.
+     */
+    private void injectBlackholes() throws IllegalAccessException {
+        for (Field field : benchmark.getClass().getDeclaredFields()) {
+            if (field.getType() == Blackhole.class && !Modifier.isStatic(field.getModifiers())) {
+                field.setAccessible(true);
+                field.set(benchmark, blackhole);
+            }
+        }
+    }
+
     /**
      * Initializes the benchmark object.
      */
     public final void setUpBenchmark() throws Exception {
         injectParams();
+        injectBlackholes();
         for (Method method : beforeExperimentMethods) {
             method.invoke(benchmark);
         }
@@ -88,6 +113,29 @@ public abstract class Worker {
     public void bootstrap() throws Exception {
     }
 
+    /**
+     * Returns the overhead of the benchmark harness or {@code null} if this worker does not measure it. Workers may
+     * calibrate the overhead again during the trial, so this should be read after the last measurement.
+     */
+    public HarnessOverhead harnessOverhead() {
+        return null;
+    }
+
+    /**
+     * Returns the latencies sampled outside of warmup or {@code null} if this worker does not sample latency.
+     */
+    public LatencyHistogram latencyHistogram() {
+        return null;
+    }
+
+    /**
+     * Returns measurements summarizing all measurements taken after warmup. They are added to the trial once, after
+     * the last measurement.
+     */
+    public List<Measurement> trialMeasurements() {
+        return ImmutableList.of();
+    }
+
     /**
      * Called immediately before {@link #measure()}.
      *
@@ -112,8 +160,18 @@ public abstract class Worker {
      * Tears down the benchmark object.
      */
     public final void tearDownBenchmark() throws Exception {
-        for (Method method : afterExperimentMethods) {
-            method.invoke(benchmark);
+        try {
+            for (Method method : afterExperimentMethods) {
+                method.invoke(benchmark);
+            }
+        } finally {
+            releaseResources();
         }
     }
+
+    /**
+     * Called when the benchmark is torn down. Workers holding threads or other resources release them here.
+     */
+    protected void releaseResources() {
+    }
 }
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2016 Christian Melchior.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.worker;
+
+import com.google.common.base.Ticker;
+
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import dk.ilios.spanner.SpannerConfig;
+import dk.ilios.spanner.benchmark.BenchmarkClass;
+import dk.ilios.spanner.bridge.FailureLogMessage;
+import dk.ilios.spanner.bridge.GcLogMessage;
+import dk.ilios.spanner.bridge.HotspotLogMessage;
+import dk.ilios.spanner.bridge.OpenedSocket;
+import dk.ilios.spanner.bridge.ShouldContinueMessage;
+import dk.ilios.spanner.bridge.StartMeasurementLogMessage;
+import dk.ilios.spanner.bridge.StartupAnnounceMessage;
+import dk.ilios.spanner.bridge.StopMeasurementLogMessage;
+import dk.ilios.spanner.bridge.WorkerCompleteMessage;
+import dk.ilios.spanner.bridge.WorkerSpec;
+import dk.ilios.spanner.config.InstrumentConfig;
+import dk.ilios.spanner.internal.Instrument;
+import dk.ilios.spanner.model.Measurement;
+import dk.ilios.spanner.util.NanoTimeGranularityTester;
+import dk.ilios.spanner.util.ShortDuration;
+import dk.ilios.spanner.vm.CompilationMonitor;
+import dk.ilios.spanner.vm.GcMonitor;
+import dk.ilios.spanner.vm.Platform;
+
+/**
+ * Entry point of a forked worker JVM. It connects back to the runner on the port given as the only argument, receives
+ * a {@link WorkerSpec} and runs the trial described by it, sending the measurements back as they are taken.
+ * <p>
+ * The protocol is:
+ * <ol>
+ *     <li>The runner sends the {@link WorkerSpec}.</li>
+ *     <li>The worker answers with a {@link StartupAnnounceMessage}.</li>
+ *     <li>For each measurement the worker sends a {@link StartMeasurementLogMessage}, a {@link GcLogMessage} for
+ *     each garbage collection during the measurement and a {@link StopMeasurementLogMessage}. The runner answers
+ *     with a {@link ShouldContinueMessage}.</li>
+ *     <li>The worker sends a {@link WorkerCompleteMessage} when it has torn down the benchmark, or a
+ *     {@link FailureLogMessage} if anything failed, and exits.</li>
+ * </ol>
+ */
+public final class WorkerMain {
+
+    private WorkerMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = Integer.parseInt(args[0]);
+        Socket socket = new Socket(InetAddress.getByName("127.0.0.1"), port);
+        OpenedSocket openedSocket = OpenedSocket.fromSocket(socket);
+        OpenedSocket.Writer writer = openedSocket.writer();
+        OpenedSocket.Reader reader = openedSocket.reader();
+        int exitCode = 0;
+        try {
+            WorkerSpec spec = (WorkerSpec) reader.read();
+            writer.write(new StartupAnnounceMessage(spec.trialId()));
+            runTrial(spec, reader, writer);
+        } catch (Throwable e) {
+            writer.write(new FailureLogMessage(e));
+            exitCode = 1;
+        } finally {
+            socket.close();
+        }
+        // The benchmark might have started threads that would otherwise keep the worker alive.
+        System.exit(exitCode);
+    }
+
+    private static void runTrial(WorkerSpec spec, OpenedSocket.Reader reader, OpenedSocket.Writer writer)
+            throws Exception {
+        Class<?> benchmarkClass = Class.forName(spec.benchmarkClassName());
+        Method method = findMethod(benchmarkClass, spec);
+        BenchmarkClass benchmark = new BenchmarkClass(benchmarkClass, method);
+        Instrument instrument = createInstrument(benchmark.getConfiguration(), spec);
+        Worker worker = instrument.createInstrumentation(method)
+                .createWorker(benchmark, Ticker.systemTicker(), spec.userParameters());
+
+        worker.setUpBenchmark();
+        worker.bootstrap();
+        boolean isInWarmup = !spec.isWarmupComplete();
+        StopMeasurementLogMessage stopMessage = new StopMeasurementLogMessage(Collections.<Measurement>emptyList());
+        ShouldContinueMessage continueMessage;
+        GcMonitor gcMonitor = Platform.gcMonitor();
+        CompilationMonitor compilationMonitor = Platform.compilationMonitor();
+        do {
+            worker.preMeasure(isInWarmup);
+            if (compilationMonitor.hasCompiled()) {
+                writer.write(new HotspotLogMessage());
+            }
+            writer.write(new StartMeasurementLogMessage());
+            gcMonitor.startMonitoring();
+            stopMessage.setMeasurements(worker.measure());
+            if (compilationMonitor.hasCompiled()) {
+                writer.write(new HotspotLogMessage());
+            }
+            for (GcLogMessage gcMessage : gcMonitor.stopMonitoring()) {
+                writer.write(gcMessage);
+            }
+            writer.write(stopMessage);
+            continueMessage = (ShouldContinueMessage) reader.read();
+            if (continueMessage == null) {
+                throw new IllegalStateException("The runner closed the connection");
+            }
+            isInWarmup = !continueMessage.isWarmupComplete();
+            worker.postMeasure();
+        } while (continueMessage.shouldContinue());
+        worker.tearDownBenchmark();
+        writer.write(new WorkerCompleteMessage(worker.harnessOverhead(), worker.latencyHistogram(),
+                worker.trialMeasurements()));
+    }
+
+    private static Method findMethod(Class<?> benchmarkClass, WorkerSpec spec) throws NoSuchMethodException {
+        for (Method method : benchmarkClass.getDeclaredMethods()) {
+            if (method.getName().equals(spec.methodName())
+                    && parameterClasses(method).equals(spec.methodParameterClasses())) {
+                return method;
+            }
+        }
+        throw new NoSuchMethodException(spec.benchmarkClassName() + "#" + spec.methodName()
+                + spec.methodParameterClasses());
+    }
+
+    /**
+     * Returns the names of the parameter types of the given method.
+     */
+    public static List<String> parameterClasses(Method method) {
+        List<String> names = new ArrayList<>();
+        for (Class<?> type : method.getParameterTypes()) {
+            names.add(type.getName());
+        }
+        return names;
+    }
+
+    /**
+     * Creates the instrument the same way as the runner, from the matching configuration of the benchmark class.
+     */
+    private static Instrument createInstrument(SpannerConfig config, WorkerSpec spec) throws Exception {
+        for (InstrumentConfig instrumentConfig : config.getInstrumentConfigurations()) {
+            if (instrumentConfig.className().equals(spec.instrumentClassName())
+                    && instrumentConfig.options().equals(spec.instrumentOptions())) {
+                ShortDuration timerGranularity = new NanoTimeGranularityTester().testNanoTimeGranularity();
+                return (Instrument) instrumentConfig.getInstrumentClass().getDeclaredConstructors()[0].newInstance(
+                        timerGranularity, instrumentConfig);
+            }
+        }
+        throw new IllegalStateException("No instrument configuration found for " + spec);
+    }
+}
@@ -0,0 +1,196 @@
+package dk.ilios.spanner;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Sets;
+
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import dk.ilios.spanner.benchmark.BenchmarkClass;
+import dk.ilios.spanner.benchmark.BenchmarkMethods;
+import dk.ilios.spanner.config.RuntimeInstrumentConfig;
+import dk.ilios.spanner.internal.InvalidBenchmarkException;
+import dk.ilios.spanner.model.Measurement;
+import dk.ilios.spanner.vm.CompilationMonitor;
+import dk.ilios.spanner.vm.Platform;
+import dk.ilios.spanner.worker.RuntimeWorker;
+
+import static org.junit.Assert.*;
+
+public class BlackholeTests {
+
+    /**
+     * Lower bound for the runtime of {@link #work(long)}, i.e. 16 dependent multiplications at more than 5 GHz.
+     */
+    private static final double MIN_WORK_NANOS = 1;
+
+    /**
+     * Measurements taken before the compilation of the benchmark method is checked, and the most taken while waiting
+     * for it to stop.
+     */
+    private static final int MIN_WARMUP_MEASUREMENTS = 10;
+    private static final int MAX_WARMUP_MEASUREMENTS = 50;
+
+    @Test
+    public void consume_primitivesNeverEscape() throws Exception {
+        Blackhole blackhole = new Blackhole();
+        // Includes the values of the volatile fields they are compared against.
+        for (int i = 0; i < 1000; i++) {
+            blackhole.consume(i == 0);
+            blackhole.consume((byte) i);
+            blackhole.consume((char) i);
+            blackhole.consume(i);
+            blackhole.consume((long) i);
+            blackhole.consume((float) i);
+            blackhole.consume((double) i);
+        }
+        assertNull(sink(blackhole));
+    }
+
+    @Test
+    public void consume_objectsEscapeAtIncreasingIntervals() throws Exception {
+        Blackhole blackhole = new Blackhole();
+        Set<Object> consumed = Sets.newIdentityHashSet();
+        int stores = 0;
+        Object lastSink = null;
+        for (int i = 0; i < 10000; i++) {
+            Object value = new Object();
+            consumed.add(value);
+            blackhole.consume(value);
+            Object sink = sink(blackhole);
+            if (sink != lastSink) {
+                stores++;
+                lastSink = sink;
+            }
+        }
+        // Only consumed objects escape, and the interval doubles after each store, so there are at most 32.
+        assertTrue(consumed.contains(lastSink));
+        assertTrue(stores > 0);
+        assertTrue(stores <= 32);
+    }
+
+    @Test
+    public void benchmarkMethods() throws Exception {
+        Method method = BlackholeBenchmark.class.getMethod("consumingLoop", long.class, Blackhole.class);
+        assertTrue(BenchmarkMethods.takesBlackhole(method));
+        assertArrayEquals(new Class<?>[] {long.class}, BenchmarkMethods.repsParameterTypes(method));
+        assertEquals(BenchmarkMethods.Type.PICO, BenchmarkMethods.Type.of(method));
+
+        Object[] arguments = BenchmarkMethods.arguments(method, 3);
+        assertEquals(3L, arguments[0]);
+        assertTrue(arguments[1] instanceof Blackhole);
+    }
+
+    @Test(expected = InvalidBenchmarkException.class)
+    public void blackholeMustBeLastParameter() throws Exception {
+        new BenchmarkClass(WrongOrderBenchmark.class);
+    }
+
+    @Test
+    public void injectsFieldAndParameter() throws Exception {
+        RuntimeWorker worker = createWorker("injected");
+        worker.setUpBenchmark();
+        worker.bootstrap();
+        worker.preMeasure(false);
+        worker.measure();
+
+        BlackholeBenchmark benchmark = BlackholeBenchmark.lastInstance;
+        assertNotNull(benchmark.fieldBlackhole);
+        assertSame(benchmark.fieldBlackhole, benchmark.parameterBlackhole);
+    }
+
+    @Test
+    public void consumingLoopIsNotRemoved() throws Exception {
+        // The work takes at least 16 cycles pr. rep, unless the compiler removes it. Slow, interpreted or instrumented
+        // VMs only make it take longer. See the BlackholeBenchmarks sample for a loop that is removed.
+        double consumingNanos = nanosPrRep("consumingLoop");
+        assertTrue("consuming: " + consumingNanos + " ns", consumingNanos > MIN_WORK_NANOS);
+    }
+
+    private static Object sink(Blackhole blackhole) throws Exception {
+        Field sink = Blackhole.class.getDeclaredField("sink");
+        sink.setAccessible(true);
+        return sink.get(blackhole);
+    }
+
+    /**
+     * Returns the runtime pr. rep of the first measurement the VM did not compile anything during, or of the last
+     * measurement if it keeps compiling.
+     */
+    private static double nanosPrRep(String methodName) throws Exception {
+        RuntimeWorker worker = createWorker(methodName);
+        worker.setUpBenchmark();
+        worker.bootstrap();
+        CompilationMonitor compilationMonitor = Platform.compilationMonitor();
+        Measurement measurement = null;
+        for (int i = 0; i < MAX_WARMUP_MEASUREMENTS; i++) {
+            worker.preMeasure(false);
+            compilationMonitor.hasCompiled();
+            measurement = Iterables.get(worker.measure(), 0);
+            if (!compilationMonitor.hasCompiled() && i >= MIN_WARMUP_MEASUREMENTS) {
+                break;
+            }
+        }
+        return measurement.value().magnitude() / measurement.weight();
+    }
+
+    private static RuntimeWorker createWorker(String methodName) throws Exception {
+        Method method = BlackholeBenchmark.class.getMethod(methodName, long.class, Blackhole.class);
+        RuntimeInstrumentConfig config = new RuntimeInstrumentConfig.Builder()
+                .timingInterval(10, TimeUnit.MILLISECONDS)
+                .gcBeforeEachMeasurement(false)
+                .build();
+        return new RuntimeWorker.Pico(
+                new BenchmarkClass(BlackholeBenchmark.class, method),
+                method,
+                Ticker.systemTicker(),
+                config,
+                ImmutableSortedMap.<String, String>of());
+    }
+
+    public static class BlackholeBenchmark {
+        static BlackholeBenchmark lastInstance;
+
+        Blackhole fieldBlackhole;
+        Blackhole parameterBlackhole;
+
+        public BlackholeBenchmark() {
+            lastInstance = this;
+        }
+
+        @Benchmark
+        public void injected(long reps, Blackhole blackhole) {
+            parameterBlackhole = blackhole;
+        }
+
+        @Benchmark
+        public void consumingLoop(long reps, Blackhole blackhole) {
+            for (long i = 0; i < reps; i++) {
+                blackhole.consume(work(i));
+            }
+        }
+    }
+
+    /**
+     * A chain of dependent multiplications, which takes a lot longer than the loop around it unless it is removed.
+     */
+    static long work(long value) {
+        long result = value;
+        for (int i = 0; i < 16; i++) {
+            result = result * 31 + value;
+        }
+        return result;
+    }
+
+    public static class WrongOrderBenchmark {
+        @Benchmark
+        public void wrongOrder(Blackhole blackhole, int reps) {
+        }
+    }
+}
@@ -8,6 +8,17 @@ import java.io.File;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import dk.ilios.spanner.config.ParameterSelection;
+import dk.ilios.spanner.model.BenchmarkSpec;
+import dk.ilios.spanner.model.Host;
+import dk.ilios.spanner.model.InstrumentSpec;
+import dk.ilios.spanner.model.Scenario;
+import dk.ilios.spanner.model.Trial;
+import dk.ilios.spanner.stats.StreamingSummary;
+import dk.ilios.spanner.util.ShortDuration;
 
 import static org.junit.Assert.*;
 
@@ -32,7 +43,7 @@ public class ConfigurationTests {
         assertEquals(1, defaultConfig.getNoBenchmarkThreads());
         assertEquals(1, defaultConfig.getTrialsPrExperiment());
         assertEquals(0, defaultConfig.getResultProcessors().size());
-        assertEquals(2, defaultConfig.getInstrumentConfigurations().size());
+        assertEquals(3, defaultConfig.getInstrumentConfigurations().size());
     }
 
     @Test
@@ -71,4 +82,76 @@ public class ConfigurationTests {
         } catch (IllegalArgumentException ignored) {
         }
     }
+
+    @Test
+    public void testTimeLimit() {
+        SpannerConfig defaultConfig = new SpannerConfig.Builder().build();
+        assertEquals(SpannerConfig.DEFAULT_TIME_LIMIT, defaultConfig.getTimeLimit());
+        assertEquals(SpannerConfig.DEFAULT_TIME_LIMIT, defaultConfig.getTimeLimit(null));
+        assertEquals(SpannerConfig.DEFAULT_TIME_LIMIT, defaultConfig.getTimeLimit(baseline(0)));
+        assertEquals(SpannerConfig.MIN_BASELINE_TIME_LIMIT, defaultConfig.getTimeLimit(baseline(2000000000L)));
+        assertEquals(SpannerConfig.MIN_BASELINE_TIME_LIMIT, defaultConfig.getTimeLimit(baseline(1000L)));
+        assertEquals(ShortDuration.of(100, TimeUnit.SECONDS), defaultConfig.getTimeLimit(baseline(20000000000L)));
+        assertNull(defaultConfig.getRunTimeLimit());
+
+        SpannerConfig config = new SpannerConfig.Builder()
+                .trialTimeLimit(30, TimeUnit.SECONDS)
+                .runTimeLimit(1, TimeUnit.HOURS)
+                .build();
+        assertEquals(ShortDuration.of(30, TimeUnit.SECONDS), config.getTimeLimit(baseline(2000000000L)));
+        assertEquals(ShortDuration.of(1, TimeUnit.HOURS), config.getRunTimeLimit());
+
+        SpannerConfig factorConfig = new SpannerConfig.Builder().baselineTimeLimitFactor(2).build();
+        assertEquals(SpannerConfig.MIN_BASELINE_TIME_LIMIT, factorConfig.getTimeLimit(baseline(2000000000L)));
+        assertEquals(ShortDuration.of(40, TimeUnit.SECONDS), factorConfig.getTimeLimit(baseline(20000000000L)));
+    }
+
+    @Test
+    public void testAdaptiveSweepCannotBeSharded() {
+        ParameterSelection sweep = ParameterSelection.adaptiveSweep("size", 0.25, 3, 2);
+        SpannerConfig single = new SpannerConfig.Builder().parameterSelection(sweep).shard(0, 1).build();
+        assertEquals(1, single.getShardCount());
+
+        try {
+            new SpannerConfig.Builder().parameterSelection(sweep).shard(1, 2).build();
+            fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+
+        SpannerConfig sharded = new SpannerConfig.Builder()
+                .parameterSelection(ParameterSelection.pairwise())
+                .shard(1, 2)
+                .build();
+        assertEquals(2, sharded.getShardCount());
+    }
+
+    @Test
+    public void testWrongTimeLimits() {
+        SpannerConfig.Builder builder = new SpannerConfig.Builder();
+        try {
+            builder.trialTimeLimit(0, TimeUnit.SECONDS);
+            fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+        try {
+            builder.runTimeLimit(-1, TimeUnit.SECONDS);
+            fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+        try {
+            builder.baselineTimeLimitFactor(0.5F);
+            fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    private static Trial baseline(long durationNanos) {
+        Scenario scenario = new Scenario.Builder()
+                .host(new Host.Builder())
+                .benchmarkSpec(new BenchmarkSpec.Builder().className("Foo").methodName("bar"))
+                .build();
+        InstrumentSpec instrumentSpec = new InstrumentSpec.Builder().className("Instrument").build();
+        return Trial.fromSummary(UUID.randomUUID(), instrumentSpec, scenario, new StreamingSummary(), null,
+                durationNanos);
+    }
 }
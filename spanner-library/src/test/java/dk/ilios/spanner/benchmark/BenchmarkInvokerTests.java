@@ -0,0 +1,116 @@
+package dk.ilios.spanner.benchmark;
+
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+
+import dk.ilios.spanner.Blackhole;
+
+import static org.junit.Assert.*;
+
+public class BenchmarkInvokerTests {
+
+    @Test
+    public void noReps() throws Exception {
+        Target target = new Target();
+        BenchmarkInvoker invoker = BenchmarkInvoker.create(target, Target.class.getMethod("noReps"));
+        invoker.prepare(42);
+        assertEquals("noReps", invoker.invoke());
+        assertEquals(1, target.calls);
+    }
+
+    @Test
+    public void intReps() throws Exception {
+        Target target = new Target();
+        BenchmarkInvoker invoker = BenchmarkInvoker.create(target, Target.class.getMethod("intReps", int.class));
+        invoker.prepare(7);
+        assertEquals(7, invoker.invoke());
+        invoker.prepare(Integer.MAX_VALUE);
+        assertEquals(Integer.MAX_VALUE, invoker.invoke());
+        assertEquals(2, target.calls);
+    }
+
+    @Test
+    public void intReps_reusesPreparedReps() throws Exception {
+        Target target = new Target();
+        BenchmarkInvoker invoker = BenchmarkInvoker.create(target, Target.class.getMethod("intReps", int.class));
+        invoker.prepare(3);
+        assertEquals(3, invoker.invoke());
+        assertEquals(3, invoker.invoke());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void intReps_overflow() throws Exception {
+        BenchmarkInvoker invoker = BenchmarkInvoker.create(new Target(), Target.class.getMethod("intReps", int.class));
+        invoker.prepare(Integer.MAX_VALUE + 1L);
+    }
+
+    @Test
+    public void longReps() throws Exception {
+        Target target = new Target();
+        BenchmarkInvoker invoker = BenchmarkInvoker.create(target, Target.class.getMethod("longReps", long.class));
+        invoker.prepare(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, invoker.invoke());
+        invoker.prepare(5);
+        assertEquals(5L, invoker.invoke());
+    }
+
+    @Test
+    public void blackholeParameter() throws Exception {
+        Target target = new Target();
+        Blackhole blackhole = new Blackhole();
+        Method method = Target.class.getMethod("withBlackhole", int.class, Blackhole.class);
+        BenchmarkInvoker invoker = BenchmarkInvoker.create(target, method, blackhole);
+        invoker.prepare(2);
+        assertSame(blackhole, invoker.invoke());
+    }
+
+    @Test
+    public void method() throws Exception {
+        Method method = Target.class.getMethod("noReps");
+        assertSame(method, BenchmarkInvoker.create(new Target(), method).method());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidParameters() throws Exception {
+        BenchmarkInvoker.create(new Target(), Target.class.getMethod("invalid", String.class));
+    }
+
+    @Test
+    public void privateMethod() throws Exception {
+        Target target = new Target();
+        BenchmarkInvoker invoker = BenchmarkInvoker.create(target, Target.class.getDeclaredMethod("hidden"));
+        invoker.invoke();
+        assertEquals(1, target.calls);
+    }
+
+    public static class Target {
+        int calls;
+
+        public String noReps() {
+            calls++;
+            return "noReps";
+        }
+
+        public int intReps(int reps) {
+            calls++;
+            return reps;
+        }
+
+        public long longReps(long reps) {
+            calls++;
+            return reps;
+        }
+
+        public Blackhole withBlackhole(int reps, Blackhole blackhole) {
+            return blackhole;
+        }
+
+        public void invalid(String reps) {
+        }
+
+        private void hidden() {
+            calls++;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package dk.ilios.spanner.http;
+
+import com.google.common.io.ByteStreams;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+import com.sun.jersey.api.client.Client;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+import dk.ilios.spanner.config.InvalidConfigurationException;
+import dk.ilios.spanner.config.ResultProcessorConfig;
+import dk.ilios.spanner.json.AnnotationExclusionStrategy;
+import dk.ilios.spanner.log.StdOut;
+import dk.ilios.spanner.model.Trial;
+
+import static org.junit.Assert.*;
+
+public class UploadQueueTests {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private final Gson gson = new GsonBuilder().setExclusionStrategies(new AnnotationExclusionStrategy()).create();
+    private HttpServer server;
+
+    @After
+    public void tearDown() {
+        if (server != null) {
+            server.stop(0);
+        }
+    }
+
+    private Trial trial(int i) {
+        return gson.fromJson(String.format("{\"id\":\"00000000-0000-0000-0000-%012d\","
+                + "\"run\":{\"id\":\"00000000-0000-0000-0000-000000000099\"}}", i), Trial.class);
+    }
+
+    private static JsonArray decode(byte[] gzippedJson) throws IOException {
+        InputStreamReader reader = new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(gzippedJson)), "UTF-8");
+        try {
+            return new JsonParser().parse(reader).getAsJsonArray();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Fails the first {@code failures} uploads and records the rest.
+     */
+    private static class FlakySender implements UploadQueue.Sender {
+        final List<JsonArray> batches = Collections.synchronizedList(new ArrayList<JsonArray>());
+        final AtomicInteger failures;
+
+        FlakySender(int failures) {
+            this.failures = new AtomicInteger(failures);
+        }
+
+        @Override
+        public void send(byte[] gzippedJson) throws Exception {
+            if (failures.getAndDecrement() > 0) {
+                throw new IOException("Network is down");
+            }
+            batches.add(decode(gzippedJson));
+        }
+    }
+
+    @Test
+    public void testRetriesFailedUploads() throws Exception {
+        File spool = tempFolder.newFolder();
+        FlakySender sender = new FlakySender(3);
+        UploadQueue queue = new UploadQueue(spool, gson, sender, 1, 10);
+        queue.start();
+        queue.add(Arrays.asList(trial(1), trial(2)));
+        queue.add(Arrays.asList(trial(3)));
+
+        assertEquals(0, queue.close(10, TimeUnit.SECONDS));
+        assertEquals(2, queue.uploadedBatches());
+        assertEquals(2, sender.batches.size());
+        assertEquals(2, sender.batches.get(0).size());
+        assertEquals(1, sender.batches.get(1).size());
+        assertEquals(trial(3).id().toString(),
+                sender.batches.get(1).get(0).getAsJsonObject().get("id").getAsString());
+        assertEquals(0, spool.listFiles().length);
+    }
+
+    @Test
+    public void testResumesAfterRestart() throws Exception {
+        File spool = tempFolder.newFolder();
+        UploadQueue offline = new UploadQueue(spool, gson, new FlakySender(Integer.MAX_VALUE), 1, 10);
+        offline.start();
+        offline.add(Arrays.asList(trial(1)));
+        offline.add(Arrays.asList(trial(2)));
+        assertEquals(2, offline.close(50, TimeUnit.MILLISECONDS));
+
+        FlakySender sender = new FlakySender(0);
+        UploadQueue online = new UploadQueue(spool, gson, sender, 1, 10);
+        online.start();
+        assertEquals(0, online.close(10, TimeUnit.SECONDS));
+        assertEquals(2, sender.batches.size());
+        assertEquals(trial(1).id().toString(),
+                sender.batches.get(0).get(0).getAsJsonObject().get("id").getAsString());
+    }
+
+    @Test
+    public void testRejectedBatchesAreSetAside() throws Exception {
+        File spool = tempFolder.newFolder();
+        UploadQueue queue = new UploadQueue(spool, gson, new UploadQueue.Sender() {
+            @Override
+            public void send(byte[] gzippedJson) throws Exception {
+                throw new UploadQueue.RejectedBatchException("Bad request", null);
+            }
+        }, 1, 10);
+        queue.start();
+        queue.add(Arrays.asList(trial(1)));
+
+        assertEquals(0, queue.close(10, TimeUnit.SECONDS));
+        assertEquals(0, queue.uploadedBatches());
+        File[] files = spool.listFiles();
+        assertEquals(1, files.length);
+        assertTrue(files[0].getName().endsWith(UploadQueue.REJECTED_SUFFIX));
+    }
+
+    @Test
+    public void testUploadsToServer() throws Exception {
+        final List<JsonArray> received = Collections.synchronizedList(new ArrayList<JsonArray>());
+        final AtomicInteger requests = new AtomicInteger();
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/data/trials", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = ByteStreams.toByteArray(exchange.getRequestBody());
+                // The first request fails like an overloaded server would.
+                if (requests.getAndIncrement() == 0) {
+                    exchange.sendResponseHeaders(503, -1);
+                } else {
+                    assertEquals("gzip", exchange.getRequestHeaders().getFirst("Content-Encoding"));
+                    received.add(decode(body));
+                    exchange.sendResponseHeaders(200, -1);
+                }
+                exchange.close();
+            }
+        });
+        server.start();
+
+        File spool = tempFolder.newFolder();
+        ResultProcessorConfig config = new ResultProcessorConfig.Builder()
+                .className(TestUploader.class.getName())
+                .addOption("url", "http://127.0.0.1:" + server.getAddress().getPort())
+                .addOption("spool", spool.getAbsolutePath())
+                .build();
+        TestUploader uploader = new TestUploader(config);
+        uploader.processTrials(Arrays.asList(trial(1), trial(2)));
+        uploader.processTrial(trial(3));
+        uploader.close();
+
+        assertEquals(3, requests.get());
+        assertEquals(2, received.size());
+        assertEquals(2, received.get(0).size());
+        assertEquals(1, received.get(1).size());
+        assertEquals(0, spool.listFiles().length);
+    }
+
+    private static class TestUploader extends CaliperResultsUploader {
+        TestUploader(ResultProcessorConfig config) throws InvalidConfigurationException {
+            super(new SilentStdOut(), new GsonBuilder().setExclusionStrategies(new AnnotationExclusionStrategy())
+                    .create(), Client.create(), config);
+        }
+    }
+
+    private static class SilentStdOut implements StdOut {
+        @Override
+        public void println(String line) {
+        }
+
+        @Override
+        public void format(String s, Object... args) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void println() {
+        }
+
+        @Override
+        public void printf(String s, Object... args) {
+        }
+
+        @Override
+        public void print(String s) {
+        }
+    }
+}
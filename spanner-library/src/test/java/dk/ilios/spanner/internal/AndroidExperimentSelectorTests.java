@@ -0,0 +1,226 @@
+package dk.ilios.spanner.internal;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.ImmutableSetMultimap;
+
+import org.junit.Test;
+
+import org.threeten.bp.Instant;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import dk.ilios.spanner.Benchmark;
+import dk.ilios.spanner.Param;
+import dk.ilios.spanner.SpannerConfig;
+import dk.ilios.spanner.benchmark.BenchmarkClass;
+import dk.ilios.spanner.config.ParameterSelection;
+import dk.ilios.spanner.config.RuntimeInstrumentConfig;
+import dk.ilios.spanner.model.Host;
+import dk.ilios.spanner.model.Measurement;
+import dk.ilios.spanner.model.Run;
+import dk.ilios.spanner.model.Scenario;
+import dk.ilios.spanner.model.Trial;
+import dk.ilios.spanner.model.Value;
+import dk.ilios.spanner.trial.TrialContext;
+import dk.ilios.spanner.util.ShortDuration;
+
+import static org.junit.Assert.*;
+
+public class AndroidExperimentSelectorTests {
+
+    public static class SweepBenchmark {
+        @Param({"1", "2", "64", "128"}) int size;
+        @Param({"a", "b"}) String mode;
+
+        @Benchmark
+        public void foo(int reps) {
+        }
+    }
+
+    public static class ParameterizedBenchmark {
+        @Param({"1", "2", "3"}) int size;
+        @Param({"a", "b"}) String mode;
+
+        @Benchmark
+        public void foo(int reps) {
+        }
+
+        @Benchmark
+        public void bar(int reps) {
+        }
+    }
+
+    private final BaselineIndex noBaselines = new BaselineIndex(
+            Collections.<Trial>emptyList(), 1);
+
+    private AndroidExperimentSelector selector(ImmutableSetMultimap<String, String> parameters, int index, int count)
+            throws InvalidBenchmarkException {
+        return selector(ParameterizedBenchmark.class, parameters, ParameterSelection.fullCartesian(), index, count);
+    }
+
+    private AndroidExperimentSelector selector(Class<?> benchmark, ParameterSelection selection)
+            throws InvalidBenchmarkException {
+        return selector(benchmark, ImmutableSetMultimap.<String, String>of(), selection, 0, 1);
+    }
+
+    private AndroidExperimentSelector selector(Class<?> benchmark, ImmutableSetMultimap<String, String> parameters,
+                                               ParameterSelection selection, int index, int count)
+            throws InvalidBenchmarkException {
+        Instrument instrument = new RuntimeInstrument(ShortDuration.of(1, TimeUnit.NANOSECONDS),
+                RuntimeInstrumentConfig.defaultConfig());
+        return new AndroidExperimentSelector(new BenchmarkClass(benchmark),
+                ImmutableSet.of(instrument), parameters, selection, index, count);
+    }
+
+    private static Trial trial(Experiment experiment, double nanos) {
+        Trial trial = new Trial.Builder(new TrialContext(UUID.randomUUID(), 1, experiment))
+                .run(new Run.Builder(UUID.randomUUID())
+                        .startTime(Instant.now())
+                        .configuration(new SpannerConfig.Builder().build()))
+                .instrumentSpec(experiment.instrumentation().instrument().getSpec())
+                .scenario(new Scenario.Builder()
+                        .host(new Host.Builder())
+                        .benchmarkSpec(experiment.benchmarkSpec())
+                        .build())
+                .build();
+        trial.addMeasurement(new Measurement.Builder()
+                .value(Value.create(nanos, "ns"))
+                .weight(1)
+                .description("runtime"));
+        return trial.getResult().getTrial();
+    }
+
+    @Test
+    public void testDefaultParameters() throws InvalidBenchmarkException {
+        AndroidExperimentSelector selector = selector(ImmutableSetMultimap.<String, String>of(), 0, 1);
+        assertEquals(ImmutableSet.of("1", "2", "3"), selector.userParameters().get("size"));
+        assertEquals(ImmutableSet.of("a", "b"), selector.userParameters().get("mode"));
+        assertEquals(2 * 3 * 2, selector.selectExperiments(noBaselines).size());
+    }
+
+    @Test
+    public void testConfiguredParameters() throws InvalidBenchmarkException {
+        AndroidExperimentSelector selector = selector(ImmutableSetMultimap.of("size", "10"), 0, 1);
+        assertEquals(ImmutableSet.of("10"), selector.userParameters().get("size"));
+        ImmutableSet<Experiment> experiments = selector.selectExperiments(noBaselines);
+        assertEquals(2 * 1 * 2, experiments.size());
+        for (Experiment experiment : experiments) {
+            assertEquals("10", experiment.userParameters().get("size"));
+        }
+    }
+
+    @Test(expected = InvalidBenchmarkException.class)
+    public void testUnknownParameterThrows() throws InvalidBenchmarkException {
+        selector(ImmutableSetMultimap.of("unknown", "1"), 0, 1);
+    }
+
+    @Test(expected = InvalidBenchmarkException.class)
+    public void testInvalidParameterValueThrows() throws InvalidBenchmarkException {
+        selector(ImmutableSetMultimap.of("size", "large"), 0, 1);
+    }
+
+    @Test
+    public void testShardsCoverAllExperimentsOnce() throws InvalidBenchmarkException {
+        int shards = 5;
+        Set<String> all = new HashSet<>();
+        int total = 0;
+        for (int i = 0; i < shards; i++) {
+            ImmutableSet<Experiment> shard = selector(ImmutableSetMultimap.<String, String>of(), i, shards)
+                    .selectExperiments(noBaselines);
+            assertTrue(shard.size() == 2 || shard.size() == 3);
+            for (Experiment experiment : shard) {
+                all.add(experiment.toString());
+            }
+            total += shard.size();
+        }
+        assertEquals(12, total);
+        assertEquals(12, all.size());
+
+        // Sharding is deterministic.
+        assertEquals(selector(ImmutableSetMultimap.<String, String>of(), 2, shards).selectExperiments(noBaselines)
+                        .toString(),
+                selector(ImmutableSetMultimap.<String, String>of(), 2, shards).selectExperiments(noBaselines)
+                        .toString());
+    }
+
+    @Test
+    public void testPairwiseSelection() throws InvalidBenchmarkException {
+        AndroidExperimentSelector selector = selector(ParameterizedBenchmark.class,
+                ImmutableSetMultimap.of("size", "1", "size", "2", "size", "3", "mode", "a", "mode", "b"),
+                ParameterSelection.pairwise(), 0, 1);
+        // With two parameters every pair is a full combination.
+        assertEquals(2 * 3 * 2, selector.selectExperiments(noBaselines).size());
+        assertTrue(selector.selectionType().startsWith("Pairwise"));
+    }
+
+    @Test
+    public void testRandomSelection() throws InvalidBenchmarkException {
+        ImmutableSet<Experiment> sample = selector(ParameterizedBenchmark.class, ParameterSelection.random(4, 42))
+                .selectExperiments(noBaselines);
+        assertEquals(2 * 4, sample.size());
+        assertEquals(sample.toString(), selector(ParameterizedBenchmark.class, ParameterSelection.random(4, 42))
+                .selectExperiments(noBaselines).toString());
+
+        // Larger samples than the number of combinations select everything.
+        assertEquals(2 * 6, selector(ParameterizedBenchmark.class, ParameterSelection.random(100, 42))
+                .selectExperiments(noBaselines).size());
+    }
+
+    @Test
+    public void testAdaptiveSweepRefinesAroundCliff() throws InvalidBenchmarkException {
+        AndroidExperimentSelector selector = selector(SweepBenchmark.class,
+                ParameterSelection.adaptiveSweep("size", 0.5, 2, 10));
+        ImmutableSet<Experiment> experiments = selector.selectExperiments(noBaselines);
+        assertEquals(4 * 2, experiments.size());
+
+        // The cost pr. element jumps between 2 and 64.
+        List<Trial> trials = new ArrayList<>();
+        for (Experiment experiment : experiments) {
+            int size = Integer.parseInt(experiment.userParameters().get("size"));
+            trials.add(trial(experiment, size <= 2 ? 10 : 100));
+        }
+        ImmutableSet<Experiment> refined = selector.refineExperiments(trials, noBaselines);
+        assertEquals(2, refined.size());
+        for (Experiment experiment : refined) {
+            // 64 / 2 >= 4, so the interval is split at the geometric mean.
+            assertEquals("11", experiment.userParameters().get("size"));
+        }
+
+        trials.clear();
+        for (Experiment experiment : refined) {
+            trials.add(trial(experiment, 100));
+        }
+        ImmutableSet<Experiment> refinedAgain = selector.refineExperiments(trials, noBaselines);
+        assertEquals(2, refinedAgain.size());
+        for (Experiment experiment : refinedAgain) {
+            assertEquals("5", experiment.userParameters().get("size"));
+        }
+
+        // Maximum number of rounds reached.
+        assertTrue(selector.refineExperiments(Collections.<Trial>emptyList(), noBaselines).isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testShardedAdaptiveSweepThrows() throws InvalidBenchmarkException {
+        selector(SweepBenchmark.class, ImmutableSetMultimap.<String, String>of(),
+                ParameterSelection.adaptiveSweep("size", 0.5, 2, 10), 0, 2);
+    }
+
+    @Test(expected = InvalidBenchmarkException.class)
+    public void testAdaptiveSweepOfNonNumericParameterThrows() throws InvalidBenchmarkException {
+        selector(SweepBenchmark.class, ParameterSelection.adaptiveSweep("mode", 0.5, 2, 10));
+    }
+
+    @Test
+    public void testFullCartesianIsNotRefined() throws InvalidBenchmarkException {
+        AndroidExperimentSelector selector = selector(ImmutableSetMultimap.<String, String>of(), 0, 1);
+        selector.selectExperiments(noBaselines);
+        assertTrue(selector.refineExperiments(Collections.<Trial>emptyList(), noBaselines).isEmpty());
+    }
+}
@@ -0,0 +1,88 @@
+package dk.ilios.spanner.internal;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+import dk.ilios.spanner.model.BenchmarkSpec;
+import dk.ilios.spanner.model.Host;
+import dk.ilios.spanner.model.InstrumentSpec;
+import dk.ilios.spanner.model.Scenario;
+import dk.ilios.spanner.model.Trial;
+import dk.ilios.spanner.stats.StreamingSummary;
+
+import static org.junit.Assert.*;
+
+public class BaselineIndexTests {
+
+    private static final InstrumentSpec INSTRUMENT = new InstrumentSpec.Builder()
+            .className("RuntimeInstrument")
+            .addOption("measurements", "9")
+            .build();
+    private static final BenchmarkSpec FOO = benchmark("foo");
+    private static final BenchmarkSpec BAR = benchmark("bar");
+
+    private static BenchmarkSpec benchmark(String methodName) {
+        return new BenchmarkSpec.Builder().className("Benchmarks").methodName(methodName).build();
+    }
+
+    private static Trial trial(BenchmarkSpec benchmarkSpec, double median) {
+        Scenario scenario = new Scenario.Builder()
+                .host(new Host.Builder().build())
+                .benchmarkSpec(benchmarkSpec)
+                .build();
+        return Trial.fromSummary(UUID.randomUUID(), INSTRUMENT, scenario, StreamingSummary.of(new double[] {median}));
+    }
+
+    @Test
+    public void empty() {
+        BaselineIndex index = BaselineIndex.empty();
+        assertEquals(0, index.size());
+        assertNull(index.findBaseline(INSTRUMENT, FOO));
+    }
+
+    @Test
+    public void find_onlyMatchingTrialsInRecordedOrder() {
+        Trial first = trial(FOO, 1);
+        Trial other = trial(BAR, 2);
+        Trial second = trial(FOO, 3);
+        BaselineIndex index = new BaselineIndex(Arrays.asList(first, other, second), 1);
+
+        assertEquals(3, index.size());
+        assertEquals(Arrays.asList(first, second), index.find(INSTRUMENT, FOO));
+        assertEquals(Arrays.asList(other), index.find(INSTRUMENT, BAR));
+        assertTrue(index.find(INSTRUMENT, benchmark("baz")).isEmpty());
+    }
+
+    @Test
+    public void findBaseline_singleTrialUsesMostRecent() {
+        Trial oldest = trial(FOO, 1);
+        Trial newest = trial(FOO, 2);
+        BaselineIndex index = new BaselineIndex(Arrays.asList(oldest, newest), 1);
+        assertSame(newest, index.findBaseline(INSTRUMENT, FOO));
+    }
+
+    @Test
+    public void findBaseline_usesMedianOfMostRecent() {
+        Trial outdated = trial(FOO, 50);
+        Trial fast = trial(FOO, 10);
+        Trial slow = trial(FOO, 100);
+        Trial typical = trial(FOO, 20);
+        BaselineIndex index = new BaselineIndex(Arrays.asList(outdated, fast, slow, typical), 3);
+        assertSame(typical, index.findBaseline(INSTRUMENT, FOO));
+    }
+
+    @Test
+    public void findBaseline_fewerTrialsThanConsidered() {
+        Trial fast = trial(FOO, 10);
+        Trial slow = trial(FOO, 100);
+        BaselineIndex index = new BaselineIndex(Arrays.asList(slow, fast), 5);
+        assertSame(fast, index.findBaseline(INSTRUMENT, FOO));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_noTrialsPrBaselineThrows() {
+        new BaselineIndex(Arrays.<Trial>asList(), 0);
+    }
+}
@@ -0,0 +1,54 @@
+package dk.ilios.spanner.internal;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CoveringArrayTests {
+
+    private static void assertAllPairsCovered(int[] sizes, List<int[]> rows) {
+        for (int i = 0; i < sizes.length; i++) {
+            for (int j = i + 1; j < sizes.length; j++) {
+                for (int vi = 0; vi < sizes[i]; vi++) {
+                    for (int vj = 0; vj < sizes[j]; vj++) {
+                        boolean found = false;
+                        for (int[] row : rows) {
+                            found |= row[i] == vi && row[j] == vj;
+                        }
+                        assertTrue(String.format("(%d=%d, %d=%d) not covered", i, vi, j, vj), found);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testCoversAllPairs() {
+        int[][] cases = {{2, 2, 2}, {3, 3, 3, 3}, {5, 2, 4, 3, 2}, {10, 10, 2}, {3, 1, 4}};
+        for (int[] sizes : cases) {
+            assertAllPairsCovered(sizes, CoveringArray.pairwise(sizes));
+        }
+    }
+
+    @Test
+    public void testSmallerThanCartesianProduct() {
+        // 4 parameters with 3 values each have 81 combinations, but 9 rows can cover all pairs.
+        List<int[]> rows = CoveringArray.pairwise(new int[] {3, 3, 3, 3});
+        assertTrue(rows.size() < 81);
+        assertTrue(rows.size() >= 9);
+        assertTrue(rows.size() <= 15);
+    }
+
+    @Test
+    public void testTwoParametersIsCartesianProduct() {
+        assertEquals(12, CoveringArray.pairwise(new int[] {3, 4}).size());
+    }
+
+    @Test
+    public void testFewerThanTwoParameters() {
+        assertEquals(1, CoveringArray.pairwise(new int[0]).size());
+        assertEquals(4, CoveringArray.pairwise(new int[] {4}).size());
+    }
+}
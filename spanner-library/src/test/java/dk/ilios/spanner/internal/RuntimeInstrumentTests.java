@@ -0,0 +1,234 @@
+package dk.ilios.spanner.internal;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import dk.ilios.spanner.Benchmark;
+import dk.ilios.spanner.bridge.GcLogMessage;
+import dk.ilios.spanner.bridge.HotspotLogMessage;
+import dk.ilios.spanner.bridge.StartMeasurementLogMessage;
+import dk.ilios.spanner.bridge.StopMeasurementLogMessage;
+import dk.ilios.spanner.config.RuntimeInstrumentConfig;
+import dk.ilios.spanner.model.Measurement;
+import dk.ilios.spanner.model.Value;
+import dk.ilios.spanner.util.ShortDuration;
+
+import static org.junit.Assert.*;
+
+public class RuntimeInstrumentTests {
+
+    @Test
+    public void isDoneCollecting_fixedNumberOfMeasurements() throws Exception {
+        MeasurementCollectingVisitor collector = createCollector(noWarmup().measurements(3));
+        measure(collector, 100, 200);
+        assertFalse(collector.isDoneCollecting());
+        measure(collector, 300);
+        assertTrue(collector.isDoneCollecting());
+        assertNull(collector.getConfidenceInterval());
+    }
+
+    @Test
+    public void isDoneCollecting_adaptiveStopsWhenPreciseEnough() throws Exception {
+        MeasurementCollectingVisitor collector = createCollector(noWarmup()
+                .measurements(3)
+                .targetPrecision(0.01));
+        measure(collector, 100, 100, 100);
+        assertTrue(collector.isDoneCollecting());
+        assertEquals(0, collector.getConfidenceInterval().relativeHalfWidth(), 0.0);
+        assertTrue(collector.getMessages().isEmpty());
+    }
+
+    @Test
+    public void isDoneCollecting_adaptiveContinuesWhileImprecise() throws Exception {
+        MeasurementCollectingVisitor collector = createCollector(noWarmup()
+                .measurements(3)
+                .maxMeasurements(10)
+                .targetPrecision(0.01));
+        measure(collector, 50, 150, 100);
+        assertFalse(collector.isDoneCollecting());
+        assertTrue(collector.getConfidenceInterval().relativeHalfWidth() > 0.01);
+    }
+
+    @Test
+    public void isDoneCollecting_adaptiveStopsAtMaxMeasurements() throws Exception {
+        MeasurementCollectingVisitor collector = createCollector(noWarmup()
+                .measurements(3)
+                .maxMeasurements(4)
+                .targetPrecision(0.01));
+        measure(collector, 50, 150, 100);
+        assertFalse(collector.isDoneCollecting());
+        measure(collector, 50);
+        assertTrue(collector.isDoneCollecting());
+        assertEquals(1, collector.getMessages().size());
+        assertTrue(collector.getMessages().get(0).contains("Target precision of 1.00% was not reached"));
+    }
+
+    @Test
+    public void interruptedWarmup_warnsOnce() throws Exception {
+        MeasurementCollectingVisitor collector = createCollector(new RuntimeInstrumentConfig.Builder()
+                .warmupTime(10, TimeUnit.SECONDS)
+                .maxWarmupTime(1, TimeUnit.MILLISECONDS)
+                .warmupPolicy(RuntimeInstrumentConfig.WarmupPolicy.STEADY_STATE)
+                .suggestGranularity(false)
+                .measurements(5));
+        measure(collector, 100);
+        Thread.sleep(10);
+        assertTrue(collector.isWarmupComplete());
+        measure(collector, 100, 100, 100);
+
+        assertEquals(1, collector.getMessages().size());
+        String message = collector.getMessages().get(0);
+        assertTrue(message.startsWith("WARNING: Warmup was interrupted"));
+        assertTrue(message.contains("was spent in the benchmark method for warmup"));
+        assertTrue(message.contains("had not reached a steady state after 1 warmup measurements"));
+    }
+
+    @Test
+    public void completedWarmup_doesNotWarn() throws Exception {
+        MeasurementCollectingVisitor collector = createCollector(noWarmup().measurements(3));
+        measure(collector, 100, 100, 100);
+        assertTrue(collector.getMessages().isEmpty());
+    }
+
+    @Test
+    public void gcWhileMeasuring_discardsEveryAffectedMeasurement() throws Exception {
+        MeasurementCollectingVisitor collector = createCollector(noWarmup().measurements(10));
+        measure(collector, 100);
+        measureWithGc(collector, 900, 900);
+        measure(collector, 100);
+
+        assertEquals(2, collector.getMeasurements().size());
+        for (Measurement measurement : collector.getMeasurements()) {
+            assertEquals(100, measurement.value().magnitude(), 0.0);
+        }
+        assertEquals(1, collector.getMessages().size());
+        assertTrue(collector.getMessages().get(0).startsWith("ERROR: GC occurred during timing"));
+    }
+
+    @Test
+    public void gcWhileMeasuring_keepsMeasurementsAfterTooManyInARow() throws Exception {
+        MeasurementCollectingVisitor collector = createCollector(noWarmup().measurements(100));
+        for (int i = 0; i < RuntimeInstrument.RuntimeMeasurementCollector.MAX_CONSECUTIVE_DISCARDS + 2; i++) {
+            measureWithGc(collector, 900);
+        }
+
+        assertEquals(2, collector.getMeasurements().size());
+        assertEquals(2, collector.getMessages().size());
+        assertTrue(collector.getMessages().get(1).startsWith("WARNING: 10 measurements were discarded, 10 of them"));
+    }
+
+    @Test
+    public void gcWhileMeasuring_keepsMeasurementsAfterTooManyInTotal() throws Exception {
+        MeasurementCollectingVisitor collector = createCollector(noWarmup().measurements(200));
+        for (int i = 0; i < RuntimeInstrument.RuntimeMeasurementCollector.MAX_DISCARDS + 1; i++) {
+            measure(collector, 100);
+            measureWithGc(collector, 900);
+        }
+
+        measureWithGc(collector, 900);
+
+        assertEquals(RuntimeInstrument.RuntimeMeasurementCollector.MAX_DISCARDS + 3,
+                collector.getMeasurements().size());
+        assertEquals(2, collector.getMessages().size());
+    }
+
+    @Test
+    public void gcWhileMeasuring_discardedMeasurementsCountTowardsMax() throws Exception {
+        MeasurementCollectingVisitor collector = createCollector(noWarmup()
+                .measurements(3)
+                .maxMeasurements(5)
+                .targetPrecision(0.01));
+        measure(collector, 50, 150);
+        measureWithGc(collector, 900, 900);
+        measure(collector, 100);
+        assertTrue(collector.isDoneCollecting());
+        assertEquals(3, collector.getMeasurements().size());
+    }
+
+    @Test
+    public void hotspotWhileMeasuring_keepsMeasurementsAfterTooManyInARow() throws Exception {
+        MeasurementCollectingVisitor collector = createCollector(noWarmup().measurements(100));
+        for (int i = 0; i < RuntimeInstrument.RuntimeMeasurementCollector.MAX_CONSECUTIVE_DISCARDS + 2; i++) {
+            collector.visit(new StartMeasurementLogMessage());
+            collector.visit(new HotspotLogMessage());
+            collector.visit(stop(900));
+        }
+
+        assertEquals(2, collector.getMeasurements().size());
+        assertEquals(2, collector.getMessages().size());
+        assertTrue(collector.getMessages().get(0).startsWith("ERROR: Hotspot compilation occurred during timing"));
+        assertTrue(collector.getMessages().get(1).startsWith("WARNING: 10 measurements were discarded"));
+    }
+
+    @Test
+    public void compilationDuringWarmup_extendsWarmupALimitedNumberOfMeasurements() throws Exception {
+        MeasurementCollectingVisitor collector = createCollector(noWarmup()
+                .warmupTime(50, TimeUnit.NANOSECONDS)
+                .measurements(3));
+        for (int i = 0; i < RuntimeInstrument.RuntimeMeasurementCollector.MAX_CONSECUTIVE_DISCARDS; i++) {
+            collector.visit(new HotspotLogMessage());
+            assertFalse(collector.isWarmupComplete());
+            measure(collector, 100);
+        }
+
+        assertTrue(collector.isWarmupComplete());
+        assertEquals(1, collector.getMessages().size());
+        assertTrue(collector.getMessages().get(0).startsWith("WARNING: The VM was still compiling code"));
+    }
+
+    static RuntimeInstrumentConfig.Builder noWarmup() {
+        return new RuntimeInstrumentConfig.Builder()
+                .warmupTime(0, TimeUnit.NANOSECONDS)
+                .suggestGranularity(false);
+    }
+
+    static MeasurementCollectingVisitor createCollector(RuntimeInstrumentConfig.Builder config) throws Exception {
+        RuntimeInstrument instrument = new RuntimeInstrument(ShortDuration.of(1, TimeUnit.NANOSECONDS), config.build());
+        return instrument.createInstrumentation(RepsBenchmark.class.getMethod("reps", int.class))
+                .getMeasurementCollectingVisitor();
+    }
+
+    /**
+     * Sends one measurement of a single rep for each of the given runtimes to the collector.
+     */
+    static void measure(MeasurementCollectingVisitor collector, double... nanos) {
+        for (double value : nanos) {
+            collector.visit(new StartMeasurementLogMessage());
+            collector.visit(stop(value));
+        }
+    }
+
+    /**
+     * Like {@link #measure(MeasurementCollectingVisitor, double...)}, but reports a garbage collection during each
+     * measurement.
+     */
+    static void measureWithGc(MeasurementCollectingVisitor collector, double... nanos) {
+        GcLogMessage gc = new GcLogMessage(GcLogMessage.Type.INCREMENTAL, ShortDuration.of(1, TimeUnit.MILLISECONDS));
+        for (double value : nanos) {
+            collector.visit(new StartMeasurementLogMessage());
+            collector.visit(gc);
+            collector.visit(stop(value));
+        }
+    }
+
+    /**
+     * Returns the message ending a measurement of a single rep with the given runtime.
+     */
+    static StopMeasurementLogMessage stop(double nanos) {
+        return new StopMeasurementLogMessage(ImmutableList.of(new Measurement.Builder()
+                .description("runtime")
+                .value(Value.create(nanos, "ns"))
+                .weight(1)
+                .build()));
+    }
+
+    public static class RepsBenchmark {
+
+        @Benchmark
+        public void reps(int reps) {
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package dk.ilios.spanner.json;
+
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import org.junit.Test;
+
+import org.threeten.bp.Instant;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import dk.ilios.spanner.Benchmark;
+import dk.ilios.spanner.SpannerConfig;
+import dk.ilios.spanner.config.RuntimeInstrumentConfig;
+import dk.ilios.spanner.internal.Experiment;
+import dk.ilios.spanner.internal.RuntimeInstrument;
+import dk.ilios.spanner.model.BenchmarkSpec;
+import dk.ilios.spanner.model.Host;
+import dk.ilios.spanner.model.Measurement;
+import dk.ilios.spanner.model.Run;
+import dk.ilios.spanner.model.Scenario;
+import dk.ilios.spanner.model.Trial;
+import dk.ilios.spanner.model.Value;
+import dk.ilios.spanner.trial.TrialContext;
+import dk.ilios.spanner.util.ShortDuration;
+
+import static org.junit.Assert.*;
+
+public class BaselineReaderTests {
+
+    private final Gson gson = new GsonBuilder().setExclusionStrategies(new AnnotationExclusionStrategy()).create();
+
+    private static String trial(String id, String method, String measurements) {
+        return "{\"id\":\"" + id + "\","
+                + "\"run\":{\"label\":\"ignored\"},"
+                + "\"instrumentSpec\":{\"className\":\"RuntimeInstrument\",\"options\":{\"measurements\":\"9\"}},"
+                + "\"scenario\":{\"host\":{\"properties\":{}},"
+                + "\"benchmarkSpec\":{\"className\":\"Foo\",\"methodName\":\"" + method + "\",\"parameters\":{}}},"
+                + "\"measurements\":[" + measurements + "],"
+                + "\"messages\":[\"ignored\"],"
+                + "\"durationNanos\":1500000000,"
+                + "\"experiment\":{\"baseline\":{\"measurements\":[]}}}";
+    }
+
+    private static String measurement(double magnitude, double weight, String description) {
+        return "{\"value\":{\"magnitude\":" + magnitude + ",\"unit\":\"ns\"},\"weight\":" + weight
+                + ",\"description\":\"" + description + "\"}";
+    }
+
+    @Test
+    public void testSummarizesPrimaryMeasurements() throws IOException {
+        String json = "[" + trial("00000000-0000-0000-0000-000000000001", "bar",
+                measurement(100, 10, "runtime") + ","
+                        + measurement(300, 10, "runtime") + ","
+                        + measurement(5, 1, "objects") + ","
+                        + measurement(200, 10, "runtime")) + "]";
+
+        List<Trial> trials = new BaselineReader(gson, Predicates.<BenchmarkSpec>alwaysTrue())
+                .read(new StringReader(json));
+
+        assertEquals(1, trials.size());
+        Trial trial = trials.get(0);
+        assertEquals("bar", trial.scenario().benchmarkSpec().methodName());
+        assertEquals("9", trial.instrumentSpec().options().get("measurements"));
+        assertTrue(trial.measurements().isEmpty());
+        trial.calculateResults();
+        assertEquals(20.0, trial.getMedian(), 0.0);
+        assertEquals(3, trial.statistics().count());
+        assertEquals(1500000000L, trial.durationNanos());
+    }
+
+    @Test
+    public void testSkipsUnselectedBenchmarks() throws IOException {
+        String json = "[" + trial("00000000-0000-0000-0000-000000000001", "bar", measurement(1, 1, "runtime")) + ","
+                + trial("00000000-0000-0000-0000-000000000002", "baz", measurement(2, 1, "runtime")) + "]";
+
+        List<Trial> trials = new BaselineReader(gson, new Predicate<BenchmarkSpec>() {
+            @Override
+            public boolean apply(BenchmarkSpec spec) {
+                return spec.methodName().equals("baz");
+            }
+        }).read(new StringReader(json));
+
+        assertEquals(1, trials.size());
+        assertEquals("baz", trials.get(0).scenario().benchmarkSpec().methodName());
+    }
+
+    @Test
+    public void testComparesCpuTimeAgainstBaseline() throws Exception {
+        String json = "[" + trial("00000000-0000-0000-0000-000000000001", "bar",
+                measurement(100, 10, "runtime") + ","
+                        + measurement(80, 10, "cpu time") + ","
+                        + measurement(100, 10, "runtime") + ","
+                        + measurement(80, 10, "cpu time")) + "]";
+        Trial baseline = new BaselineReader(gson, Predicates.<BenchmarkSpec>alwaysTrue())
+                .read(new StringReader(json)).get(0);
+        assertEquals(2, baseline.statistics("cpu time").count());
+        assertNull(baseline.statistics("objects"));
+
+        RuntimeInstrument instrument = new RuntimeInstrument(ShortDuration.of(1, TimeUnit.NANOSECONDS),
+                RuntimeInstrumentConfig.defaultConfig());
+        Experiment experiment = new Experiment(
+                instrument.createInstrumentation(CpuBenchmark.class.getMethod("bar", int.class)),
+                ImmutableMap.<String, String>of());
+        experiment.setBaseline(baseline);
+        Trial trial = new Trial.Builder(new TrialContext(UUID.randomUUID(), 1, experiment))
+                .run(new Run.Builder(UUID.randomUUID())
+                        .startTime(Instant.now())
+                        .configuration(new SpannerConfig.Builder().build()))
+                .instrumentSpec(baseline.instrumentSpec())
+                .scenario(new Scenario.Builder()
+                        .host(new Host.Builder())
+                        .benchmarkSpec(experiment.benchmarkSpec())
+                        .build())
+                .build();
+        trial.addMeasurement(measurement(100, "runtime"));
+        trial.addMeasurement(measurement(60, "cpu time"));
+
+        // The cpu time dropped from 8 to 6 ns pr. rep.
+        assertEquals(0.25, trial.getChangeFromBaseline("cpu time", 50), 0.0001);
+        assertNull(trial.getChangeFromBaseline("objects", 50));
+    }
+
+    private static Measurement.Builder measurement(double nanos, String description) {
+        return new Measurement.Builder()
+                .value(Value.create(nanos, "ns"))
+                .weight(10)
+                .description(description);
+    }
+
+    public static class CpuBenchmark {
+        @Benchmark
+        public void bar(int reps) {
+        }
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright (C) 2012 Google Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package dk.ilios.spanner.memory;
+
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableMultiset;
+
+import org.junit.Test;
+
+import dk.ilios.spanner.memory.ObjectGraphMeasurer.Footprint;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for ObjectGraphMeasurer.
+ */
+public class ObjectGraphMeasurerTests {
+
+    private static final ImmutableMultiset<Class<?>> NO_PRIMITIVES = ImmutableMultiset.of();
+    private static final MemoryLayout LAYOUT = new MemoryLayout(8, 12, 4, 8);
+
+    enum DummyEnum {
+        VALUE;
+    }
+
+    static final Object oneEnumField = new Object() {
+        @SuppressWarnings("unused") DummyEnum enumField = DummyEnum.VALUE;
+    };
+
+    // enums are treated as statics (and ignored)
+    @Test
+    public void testEnum() {
+        Footprint footprint = ObjectGraphMeasurer.measure(oneEnumField);
+        assertEquals(new Footprint(1, 1, 0, NO_PRIMITIVES), footprint);
+    }
+
+    static final Object oneClassField = new Object() {
+        @SuppressWarnings("unused") Class<?> clazz = Object.class;
+    };
+
+    // Class instances are treated as statics (and ignored)
+    @Test
+    public void testClass() {
+        Footprint footprint = ObjectGraphMeasurer.measure(oneClassField);
+        assertEquals(new Footprint(1, 1, 0, NO_PRIMITIVES), footprint);
+    }
+
+    static final Object oneObjectField = new Object() {
+        @SuppressWarnings("unused") Object objectField = new Object();
+    };
+
+    @Test
+    public void testObject() {
+        Footprint footprint = ObjectGraphMeasurer.measure(oneObjectField);
+        assertEquals(new Footprint(2, 1, 0, NO_PRIMITIVES), footprint);
+    }
+
+    static final Object withCycle = new Object() {
+        Object[] array = new Object[1];
+        {
+            array[0] = this;
+        }
+    };
+
+    @Test
+    public void testCycle() {
+        Footprint footprint = ObjectGraphMeasurer.measure(withCycle);
+        assertEquals(new Footprint(2, 2, 0, NO_PRIMITIVES), footprint);
+    }
+
+    static final Object multiplePathsToObject = new Object() {
+        Object object = new Object();
+        @SuppressWarnings("unused") Object ref1 = object;
+        @SuppressWarnings("unused") Object ref2 = object;
+    };
+
+    @Test
+    public void testMultiplePathsToObject() {
+        Footprint footprint = ObjectGraphMeasurer.measure(multiplePathsToObject);
+        assertEquals(new Footprint(2, 3, 0, NO_PRIMITIVES), footprint);
+    }
+
+    static final Object multiplePathsToClass = new Object() {
+        Object object = Object.class;
+        @SuppressWarnings("unused") Object ref1 = object;
+        @SuppressWarnings("unused") Object ref2 = object;
+    };
+
+    @Test
+    public void testMultiplePathsToClass() {
+        Footprint footprint = ObjectGraphMeasurer.measure(multiplePathsToClass);
+        assertEquals(new Footprint(1, 3, 0, NO_PRIMITIVES), footprint);
+    }
+
+    static class WithStaticField {
+        static WithStaticField INSTANCE = new WithStaticField();
+    }
+
+    @Test
+    public void testStaticFields() {
+        Footprint footprint = ObjectGraphMeasurer.measure(new WithStaticField());
+        assertEquals(new Footprint(1, 0, 0, NO_PRIMITIVES), footprint);
+    }
+
+    @SuppressWarnings("unused") // unused test fields
+    static final Object oneNullOneNonNull = new Object() {
+        Object nonNull1 = new Object();
+        Object nonNull2 = nonNull1;
+        Object null1 = null;
+        Object null2 = null;
+        Object null3 = null;
+    };
+
+    @Test
+    public void testNullField() {
+        Footprint footprint = ObjectGraphMeasurer.measure(oneNullOneNonNull);
+        assertEquals(new Footprint(2, 2, 3, NO_PRIMITIVES), footprint);
+    }
+
+    static class IntAndArray {
+        int value = 42;
+        long[] array = new long[3];
+    }
+
+    @Test
+    public void testBytes() {
+        // IntAndArray: 8 header + 4 int + 4 reference = 16. long[3]: 12 header + 24 = 36, aligned to 40.
+        long bytes = ObjectGraphMeasurer.measureBytes(new IntAndArray(), Predicates.alwaysTrue(), LAYOUT);
+        assertEquals(56, bytes);
+    }
+
+    @Test
+    public void testBytesCountsSharedObjectsOnce() {
+        // Root: 8 header + 3 references = 20, aligned to 24. Object: 8 header.
+        long bytes = ObjectGraphMeasurer.measureBytes(multiplePathsToObject, Predicates.alwaysTrue(), LAYOUT);
+        assertEquals(32, bytes);
+    }
+}
@@ -0,0 +1,32 @@
+package dk.ilios.spanner.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HarnessOverheadTests {
+
+    @Test
+    public void nanosFor() {
+        HarnessOverhead overhead = new HarnessOverhead(20, 0.5);
+        assertEquals(20, overhead.nanosFor(0), 0.0);
+        assertEquals(70, overhead.nanosFor(100), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeFixedNanos() {
+        new HarnessOverhead(-1, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativePerRepNanos() {
+        new HarnessOverhead(0, -1);
+    }
+
+    @Test
+    public void equality() {
+        assertEquals(new HarnessOverhead(1, 2), new HarnessOverhead(1, 2));
+        assertEquals(new HarnessOverhead(1, 2).hashCode(), new HarnessOverhead(1, 2).hashCode());
+        assertNotEquals(new HarnessOverhead(1, 2), new HarnessOverhead(2, 1));
+    }
+}
@@ -0,0 +1,129 @@
+package dk.ilios.spanner.model;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import org.junit.Test;
+
+import dk.ilios.spanner.json.AnnotationExclusionStrategy;
+
+import static org.junit.Assert.*;
+
+public class LatencyHistogramTests {
+
+    @Test
+    public void smallValuesAreExact() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        assertEquals(100, histogram.count());
+        assertEquals(1, histogram.min());
+        assertEquals(100, histogram.max());
+        assertEquals(50, histogram.valueAtPercentile(50));
+        assertEquals(99, histogram.valueAtPercentile(99));
+        assertEquals(100, histogram.valueAtPercentile(100));
+    }
+
+    @Test
+    public void largeValuesKeepRelativePrecision() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        long[] values = {1000, 123456, 987654321, 60000000000L};
+        for (long value : values) {
+            LatencyHistogram single = new LatencyHistogram();
+            single.record(value);
+            single.record(0);
+            double error = Math.abs(single.valueAtPercentile(75) - value) / (double) value;
+            assertTrue("Error for " + value + " was " + error, error <= 1.0 / 128);
+            histogram.record(value);
+        }
+        assertEquals(60000000000L, histogram.max());
+        assertEquals(1000, histogram.min());
+    }
+
+    @Test
+    public void valuesAboveTrackableRangeOnlyKeepMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, histogram.max());
+        assertEquals(Long.MAX_VALUE, histogram.valueAtPercentile(50));
+    }
+
+    @Test
+    public void tailPercentiles() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100, 990);
+        histogram.record(10000, 9);
+        histogram.record(1000000, 1);
+        assertEquals(100, histogram.valueAtPercentile(50));
+        assertEquals(100, histogram.valueAtPercentile(99));
+        assertEquals(10000, histogram.valueAtPercentile(99.9), 10000 / 128);
+        assertEquals(1000000, histogram.valueAtPercentile(100));
+    }
+
+    @Test
+    public void add() {
+        LatencyHistogram first = new LatencyHistogram();
+        first.record(10);
+        LatencyHistogram second = new LatencyHistogram();
+        second.record(5000);
+        first.add(second);
+        assertEquals(2, first.count());
+        assertEquals(10, first.min());
+        assertEquals(5000, first.max());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeValuesThrows() {
+        new LatencyHistogram().record(-1);
+    }
+
+    @Test
+    public void jsonRoundTrip() {
+        Gson gson = new GsonBuilder().setExclusionStrategies(new AnnotationExclusionStrategy()).create();
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(17, 3);
+        histogram.record(123457);
+        histogram.record(987654321);
+
+        String json = gson.toJson(histogram);
+        assertTrue(json, json.contains("\"buckets\":[[17,3],"));
+        LatencyHistogram copy = gson.fromJson(json, LatencyHistogram.class);
+        assertEquals(histogram, copy);
+        assertEquals(987654321, copy.max());
+    }
+
+    @Test
+    public void subNanosecondLatencies() {
+        LatencyHistogram histogram = new LatencyHistogram(LatencyHistogram.DEFAULT_SIGNIFICANT_BITS, 1000);
+        histogram.record(40, 90);
+        histogram.record(2500, 10);
+        assertEquals(40, histogram.valueAtPercentile(50));
+        assertEquals(0.04, histogram.latencyAtPercentile(50), 0.0);
+        assertEquals(2.5, histogram.latencyAtPercentile(99), 2.5 / 128);
+        assertEquals(2.5, histogram.maxLatency(), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void addWithDifferentRepsPrValueThrows() {
+        new LatencyHistogram(LatencyHistogram.DEFAULT_SIGNIFICANT_BITS, 10).add(new LatencyHistogram());
+    }
+
+    @Test
+    public void jsonRoundTrip_keepsRepsPrValue() {
+        Gson gson = new GsonBuilder().setExclusionStrategies(new AnnotationExclusionStrategy()).create();
+        LatencyHistogram histogram = new LatencyHistogram(LatencyHistogram.DEFAULT_SIGNIFICANT_BITS, 100);
+        histogram.record(42);
+
+        LatencyHistogram copy = gson.fromJson(gson.toJson(histogram), LatencyHistogram.class);
+        assertEquals(histogram, copy);
+        assertEquals(100, copy.repsPrValue());
+        assertEquals(0.42, copy.latencyAtPercentile(50), 0.0);
+    }
+
+    @Test
+    public void percentileLabel() {
+        assertEquals("p50", LatencyHistogram.percentileLabel(50));
+        assertEquals("p99.9", LatencyHistogram.percentileLabel(99.9));
+    }
+}
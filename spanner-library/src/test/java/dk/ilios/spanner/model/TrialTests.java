@@ -0,0 +1,115 @@
+package dk.ilios.spanner.model;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import org.junit.Test;
+
+import org.threeten.bp.Instant;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import dk.ilios.spanner.Benchmark;
+import dk.ilios.spanner.SpannerConfig;
+import dk.ilios.spanner.config.RuntimeInstrumentConfig;
+import dk.ilios.spanner.internal.Experiment;
+import dk.ilios.spanner.internal.RuntimeInstrument;
+import dk.ilios.spanner.stats.BaselineComparator;
+import dk.ilios.spanner.stats.BaselineComparison;
+import dk.ilios.spanner.stats.ComparisonMethod;
+import dk.ilios.spanner.stats.StreamingSummary;
+import dk.ilios.spanner.trial.TrialContext;
+import dk.ilios.spanner.util.ShortDuration;
+
+import static org.junit.Assert.*;
+
+public class TrialTests {
+
+    private static final InstrumentSpec INSTRUMENT = new InstrumentSpec.Builder()
+            .className("RuntimeInstrument")
+            .build();
+
+    @Test
+    public void changeFromBaseline_comparesSamePercentile() throws Exception {
+        double[] values = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        Trial trial = trial(values, values);
+
+        // The median of the baseline differs a lot from its 90th percentile, but nothing changed.
+        assertEquals(0.0, trial.getChangeFromBaseline(90), 0.0);
+        assertEquals(0.0, trial.getChangeFromBaseline(50), 0.0);
+        assertEquals(0.0, trial.getChangeFromBaselineMean(), 0.0);
+    }
+
+    @Test
+    public void changeFromBaseline_matchesStatisticalComparison() throws Exception {
+        Trial trial = trial(new double[] {10, 10, 10, 10, 20}, new double[] {10, 10, 10, 10, 15});
+
+        BaselineComparison comparison = trial.getBaselineComparison(90);
+        assertNotNull(comparison);
+        assertEquals(comparison.change(), trial.getChangeFromBaseline(90), 1e-12);
+        assertTrue(trial.getChangeFromBaseline(90) > 0);
+        assertEquals(0.0, trial.getChangeFromBaseline(50), 0.0);
+    }
+
+    @Test
+    public void changeFromBaseline_throughputDropIsNegative() throws Exception {
+        Trial trial = trial(new double[] {100, 100, 100, 100}, new double[] {88, 88, 88, 88}, "ops/s");
+
+        assertEquals(-0.12, trial.getChangeFromBaseline(50), 1e-9);
+        assertEquals(-0.12, trial.getChangeFromBaselineMean(), 1e-9);
+        BaselineComparison comparison = trial.getBaselineComparison(50);
+        assertEquals(-0.12, comparison.change(), 1e-9);
+        assertTrue(comparison.lower() <= comparison.change());
+        assertTrue(comparison.upper() >= comparison.change());
+    }
+
+    @Test
+    public void changeFromBaseline_runtimeDropIsPositive() throws Exception {
+        Trial trial = trial(new double[] {100, 100, 100, 100}, new double[] {88, 88, 88, 88});
+
+        assertEquals(0.12, trial.getChangeFromBaseline(50), 1e-9);
+        assertEquals(0.12, trial.getBaselineComparison(50).change(), 1e-9);
+    }
+
+    private static Trial trial(double[] baselineValues, double[] values) throws Exception {
+        return trial(baselineValues, values, "ns");
+    }
+
+    private static Trial trial(double[] baselineValues, double[] values, String unit) throws Exception {
+        RuntimeInstrument instrument = new RuntimeInstrument(ShortDuration.of(1, TimeUnit.NANOSECONDS),
+                RuntimeInstrumentConfig.defaultConfig());
+        Experiment experiment = new Experiment(
+                instrument.createInstrumentation(SimpleBenchmark.class.getMethod("foo", int.class)),
+                ImmutableMap.<String, String>of());
+        Scenario scenario = new Scenario.Builder()
+                .host(new Host.Builder())
+                .benchmarkSpec(experiment.benchmarkSpec())
+                .build();
+        experiment.setBaseline(Trial.fromSummary(UUID.randomUUID(), INSTRUMENT, scenario,
+                StreamingSummary.of(baselineValues)));
+
+        Trial trial = new Trial.Builder(new TrialContext(UUID.randomUUID(), 1, experiment))
+                .run(new Run.Builder(UUID.randomUUID())
+                        .startTime(Instant.now())
+                        .configuration(new SpannerConfig.Builder().build()))
+                .instrumentSpec(INSTRUMENT)
+                .scenario(scenario)
+                .baselineComparator(new BaselineComparator(ComparisonMethod.BOOTSTRAP, 0.05,
+                        ImmutableSet.of(50.0F, 90.0F), true))
+                .build();
+        for (double value : values) {
+            trial.addMeasurement(new Measurement.Builder()
+                    .value(Value.create(value, unit))
+                    .weight(1)
+                    .description("runtime"));
+        }
+        return trial.getResult().getTrial();
+    }
+
+    public static class SimpleBenchmark {
+        @Benchmark
+        public void foo(int reps) {
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package dk.ilios.spanner.output;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Predicate;
+import com.google.common.io.Files;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import dk.ilios.spanner.json.AnnotationExclusionStrategy;
+import dk.ilios.spanner.model.BenchmarkSpec;
+import dk.ilios.spanner.model.Trial;
+
+import static org.junit.Assert.*;
+
+public class BinaryResultTests {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private final Gson gson = new GsonBuilder().setExclusionStrategies(new AnnotationExclusionStrategy()).create();
+
+    private Trial trial(String id, String method) {
+        String json = "{\"id\":\"" + id + "\","
+                + "\"instrumentSpec\":{\"className\":\"RuntimeInstrument\",\"options\":{\"measurements\":\"9\"}},"
+                + "\"scenario\":{\"host\":{\"properties\":{}},"
+                + "\"benchmarkSpec\":{\"className\":\"Foo\",\"methodName\":\"" + method + "\",\"parameters\":{}}},"
+                + "\"measurements\":["
+                + "{\"value\":{\"magnitude\":100.5,\"unit\":\"ns\"},\"rawValue\":{\"magnitude\":110.5,\"unit\":\"ns\"},"
+                + "\"weight\":10.0,\"description\":\"runtime\"},"
+                + "{\"value\":{\"magnitude\":300.0,\"unit\":\"ns\"},\"weight\":20.0,\"description\":\"runtime\"},"
+                + "{\"value\":{\"magnitude\":7.0,\"unit\":\"\"},\"weight\":1.0,\"description\":\"objects\"}],"
+                + "\"messages\":[\"hello\"]}";
+        return gson.fromJson(json, Trial.class);
+    }
+
+    private File write(boolean compress, Trial... trials) throws IOException {
+        File file = new File(tempFolder.getRoot(), "results.bin");
+        BinaryFileDumper dumper = new BinaryFileDumper(gson, file, compress);
+        for (Trial trial : trials) {
+            dumper.processTrial(trial);
+        }
+        dumper.close();
+        return file;
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        for (boolean compress : new boolean[] {false, true}) {
+            Trial original = trial("00000000-0000-0000-0000-000000000001", "bar");
+            File file = write(compress, original);
+
+            assertTrue(BinaryResultReader.isBinaryResultFile(file));
+            List<Trial> trials = new BinaryResultReader(gson).read(file);
+            assertEquals(1, trials.size());
+            Trial trial = trials.get(0);
+            assertEquals(original.id(), trial.id());
+            assertEquals(original.instrumentSpec(), trial.instrumentSpec());
+            assertEquals(original.scenario(), trial.scenario());
+            assertEquals(original.measurements(), trial.measurements());
+            assertEquals(gson.toJsonTree(original), gson.toJsonTree(trial));
+        }
+    }
+
+    @Test
+    public void testFilter() throws IOException {
+        File file = write(true, trial("00000000-0000-0000-0000-000000000001", "bar"),
+                trial("00000000-0000-0000-0000-000000000002", "baz"));
+
+        List<Trial> trials = new BinaryResultReader(gson).read(file, new Predicate<BenchmarkSpec>() {
+            @Override
+            public boolean apply(BenchmarkSpec spec) {
+                return spec.methodName().equals("baz");
+            }
+        });
+        assertEquals(1, trials.size());
+        assertEquals("baz", trials.get(0).scenario().benchmarkSpec().methodName());
+    }
+
+    @Test
+    public void testConvertToJson() throws IOException {
+        Trial original = trial("00000000-0000-0000-0000-000000000001", "bar");
+        File json = new File(tempFolder.getRoot(), "results.json");
+        BinaryResultConverter.toJson(gson, write(true, original), json);
+
+        JsonArray trials = new JsonParser().parse(Files.toString(json, Charsets.UTF_8)).getAsJsonArray();
+        assertEquals(1, trials.size());
+        assertEquals(gson.toJsonTree(original), trials.get(0));
+        assertFalse(BinaryResultReader.isBinaryResultFile(json));
+    }
+
+    @Test
+    public void testReadBaselines() throws IOException {
+        for (boolean compress : new boolean[] {false, true}) {
+            File file = write(compress,
+                    trial("00000000-0000-0000-0000-000000000001", "bar"),
+                    trial("00000000-0000-0000-0000-000000000002", "baz"));
+
+            List<Trial> baselines = new BinaryResultReader(gson).readBaselines(file, new Predicate<BenchmarkSpec>() {
+                @Override
+                public boolean apply(BenchmarkSpec spec) {
+                    return spec.methodName().equals("bar");
+                }
+            });
+
+            // Same summarized form as baselines read from JSON
+            assertEquals(1, baselines.size());
+            Trial baseline = baselines.get(0);
+            assertEquals("00000000-0000-0000-0000-000000000001", baseline.id().toString());
+            assertEquals("bar", baseline.scenario().benchmarkSpec().methodName());
+            assertEquals("9", baseline.instrumentSpec().options().get("measurements"));
+            assertTrue(baseline.measurements().isEmpty());
+            baseline.calculateResults();
+            assertEquals(2, baseline.statistics().count());
+            assertEquals((10.05 + 15) / 2, baseline.getMedian(), 1e-9);
+            assertEquals(7.0, baseline.statistics("objects").median(), 0.0);
+            assertNull(baseline.statistics("cpu time"));
+        }
+    }
+}
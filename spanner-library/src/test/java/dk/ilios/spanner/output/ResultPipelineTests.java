@@ -0,0 +1,139 @@
+package dk.ilios.spanner.output;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import dk.ilios.spanner.json.AnnotationExclusionStrategy;
+import dk.ilios.spanner.model.Trial;
+
+import static org.junit.Assert.*;
+
+public class ResultPipelineTests {
+
+    private static final Gson gson = new GsonBuilder().setExclusionStrategies(new AnnotationExclusionStrategy()).create();
+
+    private static Trial trial(int i) {
+        return gson.fromJson(String.format("{\"id\":\"00000000-0000-0000-0000-%012d\"}", i), Trial.class);
+    }
+
+    private static class RecordingProcessor implements BatchResultProcessor {
+        final List<Trial> trials = Collections.synchronizedList(new ArrayList<Trial>());
+        final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+        final CountDownLatch firstBatch = new CountDownLatch(1);
+        volatile CountDownLatch blocked = new CountDownLatch(0);
+        volatile boolean closed = false;
+
+        @Override
+        public void processTrials(List<Trial> batch) {
+            firstBatch.countDown();
+            try {
+                blocked.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            batchSizes.add(batch.size());
+            trials.addAll(batch);
+        }
+
+        @Override
+        public void processTrial(Trial trial) {
+            processTrials(Collections.singletonList(trial));
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @Test
+    public void testCloseFlushesAllTrialsInOrder() throws InterruptedException {
+        RecordingProcessor processor = new RecordingProcessor();
+        processor.blocked = new CountDownLatch(1);
+        ResultPipeline pipeline = new ResultPipeline(ImmutableSet.<ResultProcessor>of(processor), 100, 4);
+
+        List<Trial> expected = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            Trial trial = trial(i);
+            expected.add(trial);
+            pipeline.processTrial(trial);
+        }
+        processor.firstBatch.await();
+        processor.blocked.countDown();
+        pipeline.close();
+
+        assertTrue(processor.closed);
+        assertEquals(expected, processor.trials);
+        for (int size : processor.batchSizes) {
+            assertTrue(size <= 4);
+        }
+        // Everything queued while the first batch was blocked is handed over in full batches.
+        assertTrue(processor.batchSizes.size() < expected.size());
+    }
+
+    @Test
+    public void testBackpressureWhenFull() throws InterruptedException {
+        final RecordingProcessor processor = new RecordingProcessor();
+        processor.blocked = new CountDownLatch(1);
+        final ResultPipeline pipeline = new ResultPipeline(ImmutableSet.<ResultProcessor>of(processor), 2, 1);
+
+        pipeline.processTrial(trial(0));
+        processor.firstBatch.await(); // Consumer is now stuck processing trial 0.
+        pipeline.processTrial(trial(1));
+        pipeline.processTrial(trial(2));
+
+        final CountDownLatch submitted = new CountDownLatch(1);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                pipeline.processTrial(trial(3));
+                submitted.countDown();
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertEquals(1, submitted.getCount());
+
+        processor.blocked.countDown();
+        submitted.await();
+        pipeline.close();
+        assertEquals(4, processor.trials.size());
+    }
+
+    @Test
+    public void testFailingProcessorDoesNotStopOthers() {
+        ResultProcessor failing = new ResultProcessor() {
+            @Override
+            public void processTrial(Trial trial) {
+                throw new IllegalStateException("Boom");
+            }
+
+            @Override
+            public void close() {
+            }
+        };
+        RecordingProcessor processor = new RecordingProcessor();
+        ResultPipeline pipeline = new ResultPipeline(ImmutableSet.of(failing, processor));
+        pipeline.processTrial(trial(0));
+        pipeline.processTrial(trial(1));
+        pipeline.close();
+
+        assertEquals(2, processor.trials.size());
+        assertTrue(processor.closed);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testProcessAfterCloseThrows() {
+        ResultPipeline pipeline = new ResultPipeline(ImmutableSet.<ResultProcessor>of());
+        pipeline.close();
+        pipeline.processTrial(trial(0));
+    }
+}
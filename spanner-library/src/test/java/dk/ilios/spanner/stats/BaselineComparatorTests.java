@@ -0,0 +1,67 @@
+package dk.ilios.spanner.stats;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class BaselineComparatorTests {
+
+    @Test
+    public void testMannWhitneyPValue() {
+        // Completely separated samples of 10 values each: U = 0, z = (50 - 0.5) / 13.23
+        double[] a = new double[10];
+        double[] b = new double[10];
+        for (int i = 0; i < 10; i++) {
+            a[i] = i;
+            b[i] = i + 10;
+        }
+        assertEquals(0.000183, BaselineComparator.mannWhitneyPValue(a, b), 0.00001);
+        assertEquals(1.0, BaselineComparator.mannWhitneyPValue(a, a), 0.000001);
+    }
+
+    @Test
+    public void testSameDistributionIsNotSignificant() {
+        for (ComparisonMethod method : new ComparisonMethod[] {ComparisonMethod.BOOTSTRAP, ComparisonMethod.MANN_WHITNEY}) {
+            BaselineComparator comparator = new BaselineComparator(method, 0.05, Collections.singleton(50.0F), true);
+            List<BaselineComparison> comparisons = comparator.compare(sample(1000, 50, 1), sample(1000, 50, 101));
+            assertEquals(2, comparisons.size());
+            BaselineComparison median = comparisons.get(0);
+            assertEquals(50.0F, median.percentile(), 0.0F);
+            assertFalse(method.toString(), median.isSignificant());
+            assertTrue(median.lower() <= median.change() && median.change() <= median.upper());
+            assertEquals(BaselineComparison.MEAN, comparisons.get(1).percentile(), 0.0F);
+        }
+    }
+
+    @Test
+    public void testSmallShiftIsSignificant() {
+        for (ComparisonMethod method : new ComparisonMethod[] {ComparisonMethod.BOOTSTRAP, ComparisonMethod.MANN_WHITNEY}) {
+            BaselineComparator comparator = new BaselineComparator(method, 0.05, Collections.singleton(50.0F), false);
+            BaselineComparison median = comparator.compare(sample(1000, 200, 1), sample(1050, 200, 2)).get(0);
+            assertTrue(method.toString(), median.isSignificant());
+            assertTrue(median.upper() < 0); // Slower than the baseline
+        }
+    }
+
+    @Test
+    public void testResultsAreReproducible() {
+        BaselineComparator comparator = new BaselineComparator(
+                ComparisonMethod.BOOTSTRAP, 0.05, Collections.singleton(50.0F), false);
+        StreamingSummary baseline = sample(1000, 30, 1);
+        StreamingSummary current = sample(1010, 30, 2);
+        assertEquals(comparator.compare(baseline, current), comparator.compare(baseline, current));
+    }
+
+    private static StreamingSummary sample(double mean, int count, long seed) {
+        Random random = new Random(seed);
+        StreamingSummary summary = new StreamingSummary();
+        for (int i = 0; i < count; i++) {
+            summary.add(mean + random.nextGaussian() * 20);
+        }
+        return summary;
+    }
+}
@@ -0,0 +1,84 @@
+package dk.ilios.spanner.stats;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ConfidenceIntervalTests {
+
+    private static final double DELTA = 1e-3;
+
+    @Test
+    public void forMean() {
+        // mean = 3, standard error = sqrt(2.5 / 5), t(4, 0.975) = 2.776
+        ConfidenceInterval interval = ConfidenceInterval.forMean(new double[] {1, 2, 3, 4, 5}, 0.95);
+        assertEquals(3, interval.estimate(), 0.0);
+        assertEquals(3 - 1.963, interval.lower(), DELTA);
+        assertEquals(3 + 1.963, interval.upper(), DELTA);
+        assertEquals(0.95, interval.level(), 0.0);
+        assertEquals(5, interval.sampleSize());
+    }
+
+    @Test
+    public void forMean_narrowsWithMoreValues() {
+        double[] few = new double[10];
+        double[] many = new double[1000];
+        for (int i = 0; i < many.length; i++) {
+            if (i < few.length) {
+                few[i] = i % 2;
+            }
+            many[i] = i % 2;
+        }
+        assertTrue(ConfidenceInterval.forMean(many, 0.95).relativeHalfWidth()
+                < ConfidenceInterval.forMean(few, 0.95).relativeHalfWidth());
+    }
+
+    @Test
+    public void forMedian() {
+        // Ranks are 50 -+ 1.96 * sqrt(100) / 2, rounded outwards
+        double[] values = new double[100];
+        for (int i = 0; i < values.length; i++) {
+            values[values.length - 1 - i] = i + 1;
+        }
+        ConfidenceInterval interval = ConfidenceInterval.forMedian(values, 0.95);
+        assertEquals(50.5, interval.estimate(), 0.0);
+        assertEquals(40, interval.lower(), 0.0);
+        assertEquals(61, interval.upper(), 0.0);
+        assertEquals(100, interval.sampleSize());
+    }
+
+    @Test
+    public void forMedian_isBoundedBySmallSamples() {
+        ConfidenceInterval interval = ConfidenceInterval.forMedian(new double[] {3, 1, 2}, 0.95);
+        assertEquals(2, interval.estimate(), 0.0);
+        assertEquals(1, interval.lower(), 0.0);
+        assertEquals(3, interval.upper(), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void forMean_singleValueThrows() {
+        ConfidenceInterval.forMean(new double[] {1}, 0.95);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_estimateOutsideIntervalThrows() {
+        new ConfidenceInterval(1, 3, 2, 0.95, 2);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_invalidLevelThrows() {
+        new ConfidenceInterval(1, 2, 3, 1, 2);
+    }
+
+    @Test
+    public void relativeHalfWidth() {
+        assertEquals(0.1, new ConfidenceInterval(90, 100, 105, 0.95, 2).relativeHalfWidth(), DELTA);
+        assertEquals(0.1, new ConfidenceInterval(-105, -100, -90, 0.95, 2).relativeHalfWidth(), DELTA);
+    }
+
+    @Test
+    public void relativeHalfWidth_zeroEstimate() {
+        assertEquals(0, new ConfidenceInterval(0, 0, 0, 0.95, 2).relativeHalfWidth(), 0.0);
+        assertEquals(Double.POSITIVE_INFINITY, new ConfidenceInterval(-1, 0, 1, 0.95, 2).relativeHalfWidth(), 0.0);
+    }
+}
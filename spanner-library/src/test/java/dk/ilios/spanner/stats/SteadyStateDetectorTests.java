@@ -0,0 +1,86 @@
+package dk.ilios.spanner.stats;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SteadyStateDetectorTests {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_smallWindowThrows() {
+        new SteadyStateDetector(3, 0.05);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_negativeToleranceThrows() {
+        new SteadyStateDetector(10, -0.05);
+    }
+
+    @Test
+    public void notSteadyUntilWindowIsFull() {
+        SteadyStateDetector detector = new SteadyStateDetector(10, 0.05);
+        for (int i = 0; i < 9; i++) {
+            detector.add(100);
+            assertFalse(detector.isSteady());
+        }
+        detector.add(100);
+        assertTrue(detector.isSteady());
+        assertEquals(10, detector.count());
+    }
+
+    @Test
+    public void noisyButFlatSeriesIsSteady() {
+        SteadyStateDetector detector = new SteadyStateDetector(20, 0.05);
+        Random random = new Random(42);
+        for (int i = 0; i < 20; i++) {
+            detector.add(100 + random.nextGaussian());
+        }
+        assertTrue(detector.isSteady());
+    }
+
+    @Test
+    public void decreasingSeriesIsNotSteady() {
+        // Like a benchmark being compiled: every value is a little faster than the last.
+        SteadyStateDetector detector = new SteadyStateDetector(20, 0.05);
+        for (int i = 0; i < 20; i++) {
+            detector.add(100 - i * 0.1);
+        }
+        assertFalse(detector.isSteady());
+    }
+
+    @Test
+    public void jumpBetweenHalvesIsNotSteady() {
+        SteadyStateDetector detector = new SteadyStateDetector(10, 0.05);
+        for (int i = 0; i < 5; i++) {
+            detector.add(200);
+        }
+        for (int i = 0; i < 5; i++) {
+            detector.add(100);
+        }
+        assertFalse(detector.isSteady());
+    }
+
+    @Test
+    public void becomesSteadyWhenOldValuesLeaveWindow() {
+        SteadyStateDetector detector = new SteadyStateDetector(10, 0.05);
+        for (int i = 0; i < 10; i++) {
+            detector.add(1000 - i * 100);
+        }
+        assertFalse(detector.isSteady());
+        for (int i = 0; i < 10; i++) {
+            detector.add(100);
+        }
+        assertTrue(detector.isSteady());
+    }
+
+    @Test
+    public void zeroValues() {
+        SteadyStateDetector detector = new SteadyStateDetector(4, 0.05);
+        for (int i = 0; i < 4; i++) {
+            detector.add(0);
+        }
+        assertTrue(detector.isSteady());
+    }
+}
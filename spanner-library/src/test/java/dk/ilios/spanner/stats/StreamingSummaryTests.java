@@ -0,0 +1,110 @@
+package dk.ilios.spanner.stats;
+
+import org.apache.commons.math.stat.descriptive.DescriptiveStatistics;
+import org.apache.commons.math.stat.descriptive.rank.Percentile;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class StreamingSummaryTests {
+
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void testEmpty() {
+        StreamingSummary summary = new StreamingSummary();
+        assertEquals(0, summary.count());
+        assertTrue(Double.isNaN(summary.mean()));
+        assertTrue(Double.isNaN(summary.min()));
+        assertTrue(Double.isNaN(summary.max()));
+        assertTrue(Double.isNaN(summary.median()));
+    }
+
+    @Test
+    public void testMatchesCommonsMath() {
+        Random random = new Random(42);
+        for (int size : new int[] {1, 2, 3, 10, 101, 1000}) {
+            double[] values = new double[size];
+            StreamingSummary summary = new StreamingSummary();
+            for (int i = 0; i < size; i++) {
+                values[i] = random.nextGaussian() * 100 + 1000;
+                summary.add(values[i]);
+                if (i % 7 == 0) {
+                    summary.median(); // Percentiles in between adds must not break later results
+                }
+            }
+            DescriptiveStatistics expected = new DescriptiveStatistics(values);
+            Percentile percentile = new Percentile();
+            percentile.setData(values);
+
+            assertEquals(size, summary.count());
+            assertEquals(expected.getMean(), summary.mean(), DELTA);
+            assertEquals(expected.getVariance(), summary.variance(), 1e-6);
+            assertEquals(expected.getMin(), summary.min(), DELTA);
+            assertEquals(expected.getMax(), summary.max(), DELTA);
+            for (double p : new double[] {1, 5, 25, 50, 75, 90, 99, 99.9}) {
+                assertEquals(percentile.evaluate(p), summary.percentile(p), DELTA);
+            }
+        }
+    }
+
+    @Test
+    public void testWeightedMean() {
+        StreamingSummary summary = new StreamingSummary();
+        summary.add(10, 1);
+        summary.add(20, 3);
+        assertEquals(15, summary.mean(), DELTA);
+        assertEquals(17.5, summary.weightedMean(), DELTA);
+        assertEquals(4, summary.totalWeight(), DELTA);
+    }
+
+    @Test
+    public void testPercentilesBetweenBatchesOfAdds() {
+        Random random = new Random(42);
+        StreamingSummary summary = new StreamingSummary();
+        DescriptiveStatistics expected = new DescriptiveStatistics();
+        for (int batch = 0; batch < 50; batch++) {
+            int size = random.nextInt(20);
+            for (int i = 0; i < size; i++) {
+                double value = random.nextInt(100); // Duplicates must be merged correctly as well
+                summary.add(value);
+                expected.addValue(value);
+            }
+            if (summary.count() > 0) {
+                assertEquals(expected.getPercentile(50), summary.median(), DELTA);
+                assertEquals(expected.getPercentile(90), summary.percentile(90), DELTA);
+            }
+        }
+        double[] sorted = summary.toSortedArray();
+        for (int i = 1; i < sorted.length; i++) {
+            assertTrue(sorted[i - 1] <= sorted[i]);
+        }
+    }
+
+    @Test
+    public void testQuantileEstimator() {
+        Random random = new Random(42);
+        QuantileEstimator median = new QuantileEstimator(50);
+        QuantileEstimator p99 = new QuantileEstimator(99);
+        StreamingSummary summary = new StreamingSummary();
+        for (int i = 0; i < 100000; i++) {
+            double value = random.nextDouble() * 1000;
+            median.add(value);
+            p99.add(value);
+            summary.add(value);
+        }
+        assertEquals(summary.median(), median.estimate(), 10);
+        assertEquals(summary.percentile(99), p99.estimate(), 10);
+    }
+
+    @Test
+    public void testQuantileEstimatorIsExactForFewValues() {
+        QuantileEstimator median = new QuantileEstimator(50);
+        median.add(3);
+        median.add(1);
+        median.add(2);
+        assertEquals(2, median.estimate(), DELTA);
+    }
+}
@@ -0,0 +1,92 @@
+package dk.ilios.spanner.trial;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CoreBudgetTests {
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_emptyBudgetThrows() {
+        new CoreBudget(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void reserve_noCoresThrows() throws InterruptedException {
+        new CoreBudget(2).reserve(0);
+    }
+
+    @Test
+    public void concurrentTrials_dependsOnConfigurationOnly() throws InterruptedException {
+        CoreBudget budget = new CoreBudget(4);
+        CoreBudget.Reservation first = budget.reserve(1);
+        assertEquals(4, first.concurrentTrials());
+
+        // Other trials starting or stopping do not change what was recorded.
+        CoreBudget.Reservation second = budget.reserve(1);
+        second.release();
+        assertEquals(4, first.concurrentTrials());
+        first.release();
+
+        CoreBudget.Reservation pair = budget.reserve(2);
+        assertEquals(2, pair.concurrentTrials());
+        pair.release();
+
+        CoreBudget.Reservation uneven = budget.reserve(3);
+        assertEquals(1, uneven.concurrentTrials());
+        uneven.release();
+    }
+
+    @Test
+    public void reserve_moreThanBudgetReservesAll() throws InterruptedException {
+        CoreBudget budget = new CoreBudget(2);
+        CoreBudget.Reservation reservation = budget.reserve(8);
+        assertEquals(1, reservation.concurrentTrials());
+        reservation.release();
+    }
+
+    @Test
+    public void reserve_blocksUntilReleased() throws InterruptedException {
+        CoreBudget budget = new CoreBudget(2);
+        CoreBudget.Reservation all = budget.reserve(2);
+        assertFalse(reservedWithin(budget, 100));
+        all.release();
+        assertTrue(reservedWithin(budget, 10000));
+    }
+
+    @Test
+    public void release_isIdempotent() throws InterruptedException {
+        CoreBudget budget = new CoreBudget(2);
+        CoreBudget.Reservation reservation = budget.reserve(1);
+        reservation.release();
+        reservation.release();
+
+        // Releasing twice must not add cores to the budget.
+        CoreBudget.Reservation all = budget.reserve(2);
+        assertFalse(reservedWithin(budget, 100));
+        all.release();
+        assertTrue(reservedWithin(budget, 10000));
+    }
+
+    private static boolean reservedWithin(final CoreBudget budget, long millis) throws InterruptedException {
+        final CountDownLatch reserved = new CountDownLatch(1);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    budget.reserve(1).release();
+                    reserved.countDown();
+                } catch (InterruptedException ignored) {
+                }
+            }
+        });
+        thread.start();
+        boolean result = reserved.await(millis, TimeUnit.MILLISECONDS);
+        thread.interrupt();
+        thread.join();
+        return result;
+    }
+}
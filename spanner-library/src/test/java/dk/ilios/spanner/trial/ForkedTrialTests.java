@@ -0,0 +1,141 @@
+package dk.ilios.spanner.trial;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import dk.ilios.spanner.Benchmark;
+import dk.ilios.spanner.BenchmarkConfiguration;
+import dk.ilios.spanner.Spanner;
+import dk.ilios.spanner.SpannerCallbackAdapter;
+import dk.ilios.spanner.SpannerConfig;
+import dk.ilios.spanner.config.RuntimeInstrumentConfig;
+import dk.ilios.spanner.model.Measurement;
+import dk.ilios.spanner.model.Trial;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs benchmarks end-to-end in forked worker processes.
+ */
+public class ForkedTrialTests {
+
+    private static final RuntimeInstrumentConfig FAST_RUNTIME = new RuntimeInstrumentConfig.Builder()
+            .warmupTime(100, TimeUnit.MILLISECONDS)
+            .timingInterval(10, TimeUnit.MILLISECONDS)
+            .measurements(3)
+            .gcBeforeEachMeasurement(false)
+            .build();
+
+    @Test
+    public void forkedTrial_measuresInWorkerProcess() throws InterruptedException {
+        CollectingCallback callback = run(CountingBenchmark.class);
+
+        assertTrue(callback.failures.toString(), callback.failures.isEmpty());
+        assertEquals(1, callback.successes.size());
+        Trial trial = callback.successes.get(0);
+        assertNotNull(trial.harnessOverhead());
+        assertNotNull(trial.warmup());
+
+        // Only the dry run calls the benchmark in this process, all measured reps ran in the worker.
+        int runtimeMeasurements = 0;
+        double measuredReps = 0;
+        for (Measurement measurement : trial.measurements()) {
+            if (measurement.description().equals("runtime")) {
+                runtimeMeasurements++;
+                measuredReps += measurement.weight();
+            }
+        }
+        assertEquals(3, runtimeMeasurements);
+        assertTrue(CountingBenchmark.reps.get() < measuredReps);
+    }
+
+    @Test
+    public void forkedTrial_killedWhenExceedingTimeLimit() throws InterruptedException {
+        CollectingCallback callback = run(HangingBenchmark.class);
+
+        assertTrue(callback.successes.isEmpty());
+        assertEquals(1, callback.failures.size());
+        String message = callback.failures.get(0).getMessage();
+        assertTrue(message, message.startsWith("Trial exceeded the time limit of"));
+    }
+
+    private static CollectingCallback run(Class<?> benchmarkClass) throws InterruptedException {
+        CollectingCallback callback = new CollectingCallback();
+        Spanner.runAllBenchmarks(benchmarkClass, callback);
+        assertTrue("Run did not complete", callback.completed.await(2, TimeUnit.MINUTES));
+        assertNull(callback.error);
+        return callback;
+    }
+
+    private static class CollectingCallback extends SpannerCallbackAdapter {
+        final List<Trial> successes = new CopyOnWriteArrayList<>();
+        final List<Throwable> failures = new CopyOnWriteArrayList<>();
+        final CountDownLatch completed = new CountDownLatch(1);
+        volatile Exception error;
+
+        @Override
+        public void trialSuccess(Trial trial, Trial.Result result) {
+            successes.add(trial);
+        }
+
+        @Override
+        public void trialFailure(Trial trial, Throwable error) {
+            failures.add(error);
+        }
+
+        @Override
+        public void onComplete() {
+            completed.countDown();
+        }
+
+        @Override
+        public void onError(Exception exception) {
+            error = exception;
+            completed.countDown();
+        }
+    }
+
+    public static class CountingBenchmark {
+
+        static final AtomicLong reps = new AtomicLong();
+
+        @BenchmarkConfiguration
+        public SpannerConfig configuration = new SpannerConfig.Builder()
+                .addInstrument(FAST_RUNTIME)
+                .forkTrials()
+                .build();
+
+        @Benchmark
+        public long count(long reps) {
+            long sum = 0;
+            for (long i = 0; i < reps; i++) {
+                sum += i;
+            }
+            CountingBenchmark.reps.addAndGet(reps);
+            return sum;
+        }
+    }
+
+    public static class HangingBenchmark {
+
+        @BenchmarkConfiguration
+        public SpannerConfig configuration = new SpannerConfig.Builder()
+                .addInstrument(FAST_RUNTIME)
+                .forkTrials("-Dspanner.test.hang=true")
+                .trialTimeLimit(2, TimeUnit.SECONDS)
+                .build();
+
+        @Benchmark
+        public void hang(int reps) throws InterruptedException {
+            // The dry run happens in this process, only the worker hangs.
+            if (Boolean.getBoolean("spanner.test.hang")) {
+                Thread.sleep(TimeUnit.HOURS.toMillis(1));
+            }
+        }
+    }
+}
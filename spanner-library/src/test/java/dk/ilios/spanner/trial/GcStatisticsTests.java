@@ -0,0 +1,45 @@
+package dk.ilios.spanner.trial;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import dk.ilios.spanner.bridge.GcLogMessage;
+import dk.ilios.spanner.model.Measurement;
+import dk.ilios.spanner.util.ShortDuration;
+
+import static org.junit.Assert.*;
+
+public class GcStatisticsTests {
+
+    @Test
+    public void measurements() {
+        GcStatistics statistics = new GcStatistics();
+        statistics.add(gc(2000000));
+        statistics.add(gc(3000000));
+
+        List<Measurement> measurements = statistics.measurements();
+        assertEquals("gc count", measurements.get(0).description());
+        assertEquals(2, measurements.get(0).value().magnitude(), 0.0);
+        assertEquals("gc pause", measurements.get(1).description());
+        assertEquals(5000000, measurements.get(1).value().magnitude(), 0.0);
+        assertTrue(statistics.messages().isEmpty());
+    }
+
+    @Test
+    public void messages_reportsPausesBelowTimerResolution() {
+        GcStatistics statistics = new GcStatistics();
+        statistics.add(gc(0));
+        statistics.add(gc(0));
+        statistics.add(gc(1000000));
+
+        List<String> messages = statistics.messages();
+        assertEquals(1, messages.size());
+        assertTrue(messages.get(0).startsWith("INFO: 2 of 3 garbage collections paused for less than the 1 ms"));
+    }
+
+    private static GcLogMessage gc(long nanos) {
+        return new GcLogMessage(GcLogMessage.Type.INCREMENTAL, ShortDuration.of(nanos, TimeUnit.NANOSECONDS));
+    }
+}
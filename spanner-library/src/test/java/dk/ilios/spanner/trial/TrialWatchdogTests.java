@@ -0,0 +1,99 @@
+package dk.ilios.spanner.trial;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import dk.ilios.spanner.exception.TrialFailureException;
+import dk.ilios.spanner.util.ShortDuration;
+
+import static org.junit.Assert.*;
+
+public class TrialWatchdogTests {
+
+    private final TrialWatchdog watchdog = new TrialWatchdog(ShortDuration.of(200, TimeUnit.MILLISECONDS));
+
+    @Test
+    public void call_returnsResult() throws Exception {
+        String result = watchdog.call("trial", new Callable<String>() {
+            @Override
+            public String call() {
+                return "done";
+            }
+        }, ShortDuration.of(10, TimeUnit.SECONDS));
+        assertEquals("done", result);
+    }
+
+    @Test(expected = IOException.class)
+    public void call_rethrowsTrialException() throws Exception {
+        watchdog.call("trial", new Callable<String>() {
+            @Override
+            public String call() throws IOException {
+                throw new IOException();
+            }
+        }, ShortDuration.of(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void call_interruptsTrialExceedingTimeLimit() throws Exception {
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        try {
+            watchdog.call("trial", new Callable<String>() {
+                @Override
+                public String call() {
+                    try {
+                        Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                    }
+                    return "interrupted";
+                }
+            }, ShortDuration.of(50, TimeUnit.MILLISECONDS));
+            fail();
+        } catch (TrialFailureException e) {
+            assertTrue(e.getMessage().contains("was stopped"));
+        }
+        assertEquals(0, interrupted.getCount());
+    }
+
+    @Test
+    public void call_abandonsTrialIgnoringInterrupt() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        try {
+            watchdog.call("trial", new Callable<String>() {
+                @Override
+                public String call() {
+                    while (release.getCount() > 0) {
+                        // Ignores interrupts
+                    }
+                    return "done";
+                }
+            }, ShortDuration.of(50, TimeUnit.MILLISECONDS));
+            fail();
+        } catch (TrialFailureException e) {
+            assertTrue(e.getMessage().contains("abandoned"));
+        } finally {
+            release.countDown();
+        }
+    }
+
+    @Test
+    public void runTimeBudget_limitsTrials() {
+        ShortDuration trialLimit = ShortDuration.of(1, TimeUnit.SECONDS);
+        assertEquals(trialLimit, RunTimeBudget.unlimited().trialTimeLimit(trialLimit));
+        assertEquals(trialLimit, new RunTimeBudget(ShortDuration.of(1, TimeUnit.HOURS)).trialTimeLimit(trialLimit));
+        ShortDuration limit = new RunTimeBudget(ShortDuration.of(100, TimeUnit.MILLISECONDS))
+                .trialTimeLimit(trialLimit);
+        assertTrue(limit.compareTo(ShortDuration.of(100, TimeUnit.MILLISECONDS)) <= 0);
+    }
+
+    @Test(expected = TrialFailureException.class)
+    public void runTimeBudget_usedUp() throws InterruptedException {
+        RunTimeBudget budget = new RunTimeBudget(ShortDuration.of(1, TimeUnit.MILLISECONDS));
+        Thread.sleep(5);
+        budget.trialTimeLimit(ShortDuration.of(1, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,41 @@
+package dk.ilios.spanner.trial;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import dk.ilios.spanner.api.VmOptions;
+import dk.ilios.spanner.worker.WorkerMain;
+
+import static org.junit.Assert.*;
+
+public class WorkerProcessTests {
+
+    @Test
+    public void command_runsWorkerMainWithPort() {
+        List<String> command = WorkerProcess.command(Collections.<String>emptyList(), NoOptions.class, 1234);
+
+        assertTrue(command.get(0).endsWith("java"));
+        assertEquals(WorkerMain.class.getName(), command.get(command.size() - 2));
+        assertEquals("1234", command.get(command.size() - 1));
+        int classPath = command.indexOf("-cp");
+        assertEquals(System.getProperty("java.class.path"), command.get(classPath + 1));
+    }
+
+    @Test
+    public void command_benchmarkOptionsAfterConfiguredOptions() {
+        List<String> command = WorkerProcess.command(Arrays.asList("-Xmx1g", "-Dfoo=bar"), WithOptions.class, 1);
+
+        assertEquals(Arrays.asList("-Xmx1g", "-Dfoo=bar", "-Xmx64m", "-Xint"), command.subList(1, 5));
+        assertEquals("-cp", command.get(5));
+    }
+
+    public static class NoOptions {
+    }
+
+    @VmOptions({"-Xmx64m", "-Xint"})
+    public static class WithOptions {
+    }
+}
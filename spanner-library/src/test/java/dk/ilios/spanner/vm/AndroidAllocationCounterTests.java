@@ -0,0 +1,26 @@
+package dk.ilios.spanner.vm;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class AndroidAllocationCounterTests {
+
+    @Test
+    public void capabilities() {
+        AllocationCounter counter = new AndroidAllocationCounter();
+        assertTrue(counter.countsObjects());
+        // Debug.startAllocCounting() is process wide, so parallel trials would stop each others counters.
+        assertFalse(counter.supportsParallelTrials());
+    }
+
+    @Test
+    public void readsThreadCountersWhenStopped() {
+        // The Android framework is mocked to return default values in unit tests.
+        AllocationCounter counter = new AndroidAllocationCounter();
+        counter.startCounting();
+        counter.stopCounting();
+        assertEquals(0, counter.allocatedBytes());
+        assertEquals(0, counter.allocatedObjects());
+    }
+}
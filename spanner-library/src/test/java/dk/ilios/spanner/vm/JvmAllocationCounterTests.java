@@ -0,0 +1,57 @@
+package dk.ilios.spanner.vm;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class JvmAllocationCounterTests {
+
+    private static final int ARRAY_SIZE = 1024 * 1024;
+
+    private volatile Object sink;
+
+    @Test
+    public void capabilities() throws Exception {
+        AllocationCounter counter = new JvmAllocationCounter();
+        assertFalse(counter.countsObjects());
+        assertTrue(counter.supportsParallelTrials());
+    }
+
+    @Test
+    public void countsAllocatedBytes() throws Exception {
+        AllocationCounter counter = new JvmAllocationCounter();
+        counter.startCounting();
+        sink = new byte[ARRAY_SIZE];
+        counter.stopCounting();
+
+        assertTrue(counter.allocatedBytes() >= ARRAY_SIZE);
+        assertEquals(0, counter.allocatedObjects());
+    }
+
+    @Test
+    public void ignoresOtherThreads() throws Exception {
+        AllocationCounter counter = new JvmAllocationCounter();
+        counter.startCounting();
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                sink = new byte[ARRAY_SIZE];
+            }
+        });
+        thread.start();
+        thread.join();
+        counter.stopCounting();
+
+        assertTrue(counter.allocatedBytes() < ARRAY_SIZE);
+    }
+
+    @Test
+    public void ignoresAllocationsAfterStop() throws Exception {
+        AllocationCounter counter = new JvmAllocationCounter();
+        counter.startCounting();
+        counter.stopCounting();
+        sink = new byte[ARRAY_SIZE];
+
+        assertTrue(counter.allocatedBytes() < ARRAY_SIZE);
+    }
+}
@@ -0,0 +1,45 @@
+package dk.ilios.spanner.vm;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class JvmCompilationMonitorTests {
+
+    @Test
+    public void hasCompiled_reportsCompilation() throws Exception {
+        CompilationMonitor monitor = new JvmCompilationMonitor();
+        assertTrue(monitor.isSupported());
+
+        // Compilation happens in the background, so keep running hot code until it shows up.
+        boolean compiled = false;
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        for (int i = 0; !compiled && System.nanoTime() < deadline; i++) {
+            assertTrue(hotMethod(i) >= 0);
+            compiled = monitor.hasCompiled();
+        }
+        assertTrue(compiled);
+    }
+
+    @Test
+    public void hasCompiled_resetsAfterCall() throws Exception {
+        CompilationMonitor monitor = new JvmCompilationMonitor();
+        monitor.hasCompiled();
+        // Other threads may still be compiling, but it must settle eventually.
+        boolean compiled = true;
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (compiled && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            compiled = monitor.hasCompiled();
+        }
+        assertFalse(compiled);
+    }
+
+    private static long hotMethod(int seed) {
+        long result = 0;
+        for (int i = 0; i < 10000; i++) {
+            result += (seed ^ i) & 0xff;
+        }
+        return result;
+    }
+}
@@ -0,0 +1,35 @@
+package dk.ilios.spanner.vm;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class JvmCpuTimerTests {
+
+    @Test
+    public void measuresBusyThread() throws Exception {
+        CpuTimer timer = new JvmCpuTimer();
+        assertTrue(timer.measuresUserTime());
+
+        timer.start();
+        long end = System.nanoTime() + 50000000;
+        while (System.nanoTime() < end) {
+            // Spin
+        }
+        timer.stop();
+
+        assertTrue(timer.cpuNanos() > 0);
+        assertTrue(timer.userNanos() >= 0);
+        assertTrue(timer.userNanos() <= timer.cpuNanos());
+    }
+
+    @Test
+    public void excludesSleepingThread() throws Exception {
+        CpuTimer timer = new JvmCpuTimer();
+        timer.start();
+        Thread.sleep(100);
+        timer.stop();
+
+        assertTrue(timer.cpuNanos() < 50000000);
+    }
+}
@@ -0,0 +1,39 @@
+package dk.ilios.spanner.vm;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import dk.ilios.spanner.bridge.GcLogMessage;
+
+import static org.junit.Assert.*;
+
+public class JvmGcMonitorTests {
+
+    @Test
+    public void stopMonitoring_reportsCollections() throws Exception {
+        GcMonitor monitor = new JvmGcMonitor();
+        assertTrue(monitor.isSupported());
+
+        monitor.startMonitoring();
+        System.gc();
+        List<GcLogMessage> messages = monitor.stopMonitoring();
+
+        assertFalse(messages.isEmpty());
+    }
+
+    @Test
+    public void stopMonitoring_nothingWithoutCollections() throws Exception {
+        GcMonitor monitor = new JvmGcMonitor();
+        monitor.startMonitoring();
+        assertTrue(monitor.stopMonitoring().isEmpty());
+    }
+
+    @Test
+    public void type() {
+        assertEquals(GcLogMessage.Type.FULL, JvmGcMonitor.type("PS MarkSweep"));
+        assertEquals(GcLogMessage.Type.FULL, JvmGcMonitor.type("G1 Old Generation"));
+        assertEquals(GcLogMessage.Type.INCREMENTAL, JvmGcMonitor.type("PS Scavenge"));
+        assertEquals(GcLogMessage.Type.INCREMENTAL, JvmGcMonitor.type("G1 Young Generation"));
+    }
+}
@@ -0,0 +1,161 @@
+package dk.ilios.spanner.worker;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSortedMap;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+import dk.ilios.spanner.Benchmark;
+import dk.ilios.spanner.benchmark.BenchmarkClass;
+import dk.ilios.spanner.config.AllocationInstrumentConfig;
+import dk.ilios.spanner.model.Measurement;
+import dk.ilios.spanner.vm.AllocationCounter;
+
+import static org.junit.Assert.*;
+
+public class AllocationWorkerTests {
+
+    /**
+     * Fake allocations. Every benchmark rep "allocates" {@link #REP_BYTES} and a single object, and reading the
+     * counter itself "allocates" {@link #COUNTER_BYTES}.
+     */
+    private static final long REP_BYTES = 16;
+    private static final long COUNTER_BYTES = 8;
+    private static long allocatedBytes;
+    private static long allocatedObjects;
+
+    @Before
+    public void setUp() {
+        allocatedBytes = 0;
+        allocatedObjects = 0;
+    }
+
+    @Test
+    public void measure_subtractsBaseline() throws Exception {
+        List<Measurement> measurements = measure(new FakeAllocationCounter(true), "reps");
+        assertEquals(2, measurements.size());
+
+        Measurement bytes = measurements.get(0);
+        assertEquals("bytes", bytes.description());
+        assertEquals(REP_BYTES * bytes.weight(), bytes.value().magnitude(), 0.0);
+
+        Measurement objects = measurements.get(1);
+        assertEquals("objects", objects.description());
+        assertEquals(objects.weight(), objects.value().magnitude(), 0.0);
+    }
+
+    @Test
+    public void measure_withoutObjectCounts() throws Exception {
+        List<Measurement> measurements = measure(new FakeAllocationCounter(false), "reps");
+        assertEquals(1, measurements.size());
+        assertEquals("bytes", measurements.get(0).description());
+    }
+
+    @Test
+    public void measure_withoutReps() throws Exception {
+        List<Measurement> measurements = measure(new FakeAllocationCounter(true), "noReps");
+        Measurement bytes = measurements.get(0);
+        assertEquals(1, bytes.weight(), 0.0);
+        assertEquals(REP_BYTES, bytes.value().magnitude(), 0.0);
+    }
+
+    @Test
+    public void measure_isBetweenOneAndMaxReps() throws Exception {
+        AllocationWorker worker = createWorker(new FakeAllocationCounter(true), "reps", 3);
+        worker.setUpBenchmark();
+        worker.bootstrap();
+        for (int i = 0; i < 20; i++) {
+            double weight = worker.measure().iterator().next().weight();
+            assertTrue(weight >= 1 && weight <= 3);
+        }
+    }
+
+    private static List<Measurement> measure(AllocationCounter counter, String method) throws Exception {
+        AllocationWorker worker = createWorker(counter, method, 100);
+        worker.setUpBenchmark();
+        worker.bootstrap();
+        return ImmutableList.copyOf(worker.measure());
+    }
+
+    private static AllocationWorker createWorker(AllocationCounter counter, String methodName, int maxReps)
+            throws Exception {
+        Method method = "reps".equals(methodName)
+                ? AllocatingBenchmark.class.getMethod(methodName, int.class)
+                : AllocatingBenchmark.class.getMethod(methodName);
+        AllocationInstrumentConfig config = new AllocationInstrumentConfig.Builder()
+                .maxReps(maxReps)
+                .allocationCounter(counter)
+                .build();
+        return new AllocationWorker(
+                new BenchmarkClass(AllocatingBenchmark.class, method),
+                method,
+                counter,
+                config,
+                ImmutableSortedMap.<String, String>of());
+    }
+
+    public static class AllocatingBenchmark {
+
+        @Benchmark
+        public void reps(int reps) {
+            allocatedBytes += reps * REP_BYTES;
+            allocatedObjects += reps;
+        }
+
+        @Benchmark
+        public void noReps() {
+            reps(1);
+        }
+    }
+
+    private static class FakeAllocationCounter implements AllocationCounter {
+
+        private final boolean countsObjects;
+        private long startBytes;
+        private long startObjects;
+        private long bytes;
+        private long objects;
+
+        FakeAllocationCounter(boolean countsObjects) {
+            this.countsObjects = countsObjects;
+        }
+
+        @Override
+        public boolean countsObjects() {
+            return countsObjects;
+        }
+
+        @Override
+        public boolean supportsParallelTrials() {
+            return true;
+        }
+
+        @Override
+        public void startCounting() {
+            startBytes = allocatedBytes;
+            startObjects = allocatedObjects;
+        }
+
+        @Override
+        public void stopCounting() {
+            allocatedBytes += COUNTER_BYTES;
+            allocatedObjects++;
+            bytes = allocatedBytes - startBytes;
+            objects = allocatedObjects - startObjects;
+        }
+
+        @Override
+        public long allocatedBytes() {
+            return bytes;
+        }
+
+        @Override
+        public long allocatedObjects() {
+            return objects;
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package dk.ilios.spanner.worker;
+
+import com.google.common.base.Ticker;
+
+import org.junit.Test;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentInvocationTests {
+
+    @Test
+    public void run_allThreadsCallTheSameInstance() throws Exception {
+        ContendedBenchmark benchmark = new ContendedBenchmark(4);
+        ConcurrentInvocation invocation = new ConcurrentInvocation(benchmark,
+                ContendedBenchmark.class.getMethod("increment", long.class), Ticker.systemTicker(), 4);
+        long[] threadNanos = new long[4];
+
+        long wallNanos = invocation.run(1000, threadNanos);
+
+        assertEquals(4000, benchmark.counter.get());
+        assertEquals(4, benchmark.threadNames.size());
+        for (long nanos : threadNanos) {
+            assertTrue(nanos > 0);
+            assertTrue(nanos <= wallNanos);
+        }
+    }
+
+    @Test
+    public void run_reusesThreads() throws Exception {
+        ContendedBenchmark benchmark = new ContendedBenchmark(3);
+        ConcurrentInvocation invocation = new ConcurrentInvocation(benchmark,
+                ContendedBenchmark.class.getMethod("increment", long.class), Ticker.systemTicker(), 3);
+        for (int i = 0; i < 5; i++) {
+            invocation.run(10, new long[3]);
+        }
+
+        assertEquals(150, benchmark.counter.get());
+        assertEquals(3, benchmark.threads.size());
+        invocation.close();
+        for (Thread thread : benchmark.threads) {
+            thread.join(10000);
+            assertFalse(thread.isAlive());
+        }
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void run_afterCloseThrows() throws Exception {
+        ContendedBenchmark benchmark = new ContendedBenchmark(2);
+        ConcurrentInvocation invocation = new ConcurrentInvocation(benchmark,
+                ContendedBenchmark.class.getMethod("increment", long.class), Ticker.systemTicker(), 2);
+        invocation.run(1, new long[2]);
+        invocation.close();
+        invocation.run(1, new long[2]);
+    }
+
+    @Test
+    public void run_propagatesBenchmarkFailures() throws Exception {
+        ContendedBenchmark benchmark = new ContendedBenchmark(1);
+        ConcurrentInvocation invocation = new ConcurrentInvocation(benchmark,
+                ContendedBenchmark.class.getMethod("fail", int.class), Ticker.systemTicker(), 3);
+        try {
+            invocation.run(1, new long[3]);
+            fail();
+        } catch (InvocationTargetException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    public static class ContendedBenchmark {
+        final AtomicLong counter = new AtomicLong();
+        final Set<String> threadNames = Collections.synchronizedSet(new HashSet<String>());
+        final Set<Thread> threads = Collections.synchronizedSet(new HashSet<Thread>());
+        final CyclicBarrier allStarted;
+
+        ContendedBenchmark(int threads) {
+            allStarted = new CyclicBarrier(threads);
+        }
+
+        public void increment(long reps) throws Exception {
+            // Only returns if all threads are running at the same time.
+            allStarted.await();
+            threadNames.add(Thread.currentThread().getName());
+            threads.add(Thread.currentThread());
+            for (long i = 0; i < reps; i++) {
+                counter.incrementAndGet();
+            }
+        }
+
+        public void fail(int reps) {
+            throw new IllegalStateException("Boom");
+        }
+    }
+}
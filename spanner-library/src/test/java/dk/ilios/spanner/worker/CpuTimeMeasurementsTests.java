@@ -0,0 +1,88 @@
+package dk.ilios.spanner.worker;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import dk.ilios.spanner.model.Measurement;
+import dk.ilios.spanner.vm.CpuTimer;
+
+import static org.junit.Assert.*;
+
+public class CpuTimeMeasurementsTests {
+
+    @Test
+    public void create_reportsCpuTimeAndRatio() {
+        CpuTimeMeasurements cpuTime = new CpuTimeMeasurements(new FixedCpuTimer(2000000000L, 1500000000L));
+        List<Measurement> measurements = cpuTime.create(10, 4000000000L, false);
+        assertEquals(2, measurements.size());
+        assertEquals(CpuTimeMeasurements.CPU_TIME, measurements.get(0).description());
+        assertEquals(2000000000L, measurements.get(0).value().magnitude(), 0.0);
+        assertEquals(10, measurements.get(0).weight(), 0.0);
+        assertEquals(CpuTimeMeasurements.CPU_WALL_RATIO, measurements.get(1).description());
+        assertEquals(0.5, measurements.get(1).value().magnitude(), 0.0);
+    }
+
+    @Test
+    public void split_shortTrialIsNotSplit() {
+        CpuTimeMeasurements cpuTime = new CpuTimeMeasurements(
+                new FixedCpuTimer(CpuTimeMeasurements.MIN_SPLIT_CPU_NANOS - 1, 1000));
+        cpuTime.create(10, 2000000000L, false);
+        assertTrue(cpuTime.split().isEmpty());
+    }
+
+    @Test
+    public void split_totalOfShortMeasurementsIsSplit() {
+        CpuTimeMeasurements cpuTime = new CpuTimeMeasurements(new FixedCpuTimer(200000000L, 150000000L));
+        for (int i = 0; i < 10; i++) {
+            cpuTime.create(10, 400000000L, false);
+        }
+        List<Measurement> split = cpuTime.split();
+        assertEquals(2, split.size());
+        assertEquals(CpuTimeMeasurements.USER_TIME, split.get(0).description());
+        assertEquals(1500000000L, split.get(0).value().magnitude(), 0.0);
+        assertEquals(100, split.get(0).weight(), 0.0);
+        assertEquals(CpuTimeMeasurements.SYSTEM_TIME, split.get(1).description());
+        assertEquals(500000000L, split.get(1).value().magnitude(), 0.0);
+    }
+
+    @Test
+    public void split_ignoresWarmup() {
+        CpuTimeMeasurements cpuTime = new CpuTimeMeasurements(new FixedCpuTimer(2000000000L, 1500000000L));
+        cpuTime.create(10, 4000000000L, true);
+        assertTrue(cpuTime.split().isEmpty());
+    }
+
+    private static final class FixedCpuTimer implements CpuTimer {
+        private final long cpuNanos;
+        private final long userNanos;
+
+        FixedCpuTimer(long cpuNanos, long userNanos) {
+            this.cpuNanos = cpuNanos;
+            this.userNanos = userNanos;
+        }
+
+        @Override
+        public boolean measuresUserTime() {
+            return true;
+        }
+
+        @Override
+        public void start() {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public long cpuNanos() {
+            return cpuNanos;
+        }
+
+        @Override
+        public long userNanos() {
+            return userNanos;
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package dk.ilios.spanner.worker;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+import dk.ilios.spanner.Benchmark;
+import dk.ilios.spanner.benchmark.BenchmarkClass;
+import dk.ilios.spanner.config.RuntimeInstrumentConfig;
+import dk.ilios.spanner.model.Measurement;
+
+import static org.junit.Assert.*;
+
+public class MacrobenchmarkWorkerTests {
+
+    @Test
+    public void measure_runtimeOnlyByDefault() throws Exception {
+        List<Measurement> measurements = measure(new RuntimeInstrumentConfig.Builder()
+                .gcBeforeEachMeasurement(false)
+                .build());
+        assertEquals(1, measurements.size());
+        assertEquals("runtime", measurements.get(0).description());
+    }
+
+    @Test
+    public void measure_cpuTime() throws Exception {
+        List<Measurement> measurements = measure(new RuntimeInstrumentConfig.Builder()
+                .gcBeforeEachMeasurement(false)
+                .measureCpuTime(true)
+                .build());
+
+        // The user and system time are only reported for the whole trial, see Worker.trialMeasurements().
+        assertEquals(3, measurements.size());
+        assertEquals("runtime", measurements.get(0).description());
+        assertEquals(CpuTimeMeasurements.CPU_TIME, measurements.get(1).description());
+        assertEquals("ns", measurements.get(1).value().unit());
+        assertEquals(CpuTimeMeasurements.CPU_WALL_RATIO, measurements.get(2).description());
+
+        // The benchmark sleeps, so it hardly uses any CPU time.
+        double wallNanos = measurements.get(0).value().magnitude();
+        double cpuNanos = measurements.get(1).value().magnitude();
+        assertTrue(wallNanos >= 50000000);
+        assertTrue(cpuNanos < wallNanos / 2);
+        assertEquals(cpuNanos / wallNanos, measurements.get(2).value().magnitude(), 0.001);
+    }
+
+    private List<Measurement> measure(RuntimeInstrumentConfig config) throws Exception {
+        Method method = SleepingBenchmark.class.getMethod("sleep");
+        MacrobenchmarkWorker worker = new MacrobenchmarkWorker(
+                new BenchmarkClass(SleepingBenchmark.class, method),
+                method,
+                Ticker.systemTicker(),
+                config,
+                ImmutableSortedMap.<String, String>of());
+        worker.setUpBenchmark();
+        worker.preMeasure(false);
+        List<Measurement> measurements = Lists.newArrayList(worker.measure());
+        worker.postMeasure();
+        return measurements;
+    }
+
+    public static class SleepingBenchmark {
+
+        @Benchmark
+        public void sleep() throws InterruptedException {
+            Thread.sleep(50);
+        }
+    }
+}
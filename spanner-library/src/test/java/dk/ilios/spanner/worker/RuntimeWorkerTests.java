@@ -0,0 +1,104 @@
+package dk.ilios.spanner.worker;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Iterables;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import dk.ilios.spanner.Benchmark;
+import dk.ilios.spanner.benchmark.BenchmarkClass;
+import dk.ilios.spanner.config.RuntimeInstrumentConfig;
+import dk.ilios.spanner.model.HarnessOverhead;
+import dk.ilios.spanner.model.Measurement;
+
+import static org.junit.Assert.*;
+
+public class RuntimeWorkerTests {
+
+    /**
+     * Fake clock. Reading it costs {@link #READ_NANOS} and the benchmark costs {@link #REP_NANOS} pr. rep, so the
+     * harness has a fixed overhead of {@code READ_NANOS} for each timed invocation.
+     */
+    private static final long READ_NANOS = 5;
+    private static final long REP_NANOS = 10;
+    private static long nanos;
+
+    private static final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            nanos += READ_NANOS;
+            return nanos;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        nanos = 0;
+    }
+
+    @Test
+    public void harnessOverhead() throws Exception {
+        RuntimeWorker worker = createWorker(false);
+        worker.setUpBenchmark();
+        worker.bootstrap();
+        assertEquals(new HarnessOverhead(READ_NANOS, 0), worker.harnessOverhead());
+    }
+
+    @Test
+    public void measure_withoutSubtraction() throws Exception {
+        Measurement measurement = measure(createWorker(false));
+        assertEquals(REP_NANOS * measurement.weight() + READ_NANOS, measurement.value().magnitude(), 0.0);
+        assertNull(measurement.rawValue());
+    }
+
+    @Test
+    public void measure_subtractsOverhead() throws Exception {
+        Measurement measurement = measure(createWorker(true));
+        assertEquals(REP_NANOS * measurement.weight(), measurement.value().magnitude(), 0.0);
+        assertEquals(REP_NANOS * measurement.weight() + READ_NANOS, measurement.rawValue().magnitude(), 0.0);
+    }
+
+    @Test
+    public void calculateTargetReps() {
+        assertEquals(1000, RuntimeWorker.calculateTargetReps(100, 1000, 10000, 0));
+        assertEquals(1200, RuntimeWorker.calculateTargetReps(100, 1000, 10000, 1));
+        assertEquals(1, RuntimeWorker.calculateTargetReps(100, 1000, 1, 0));
+    }
+
+    private static Measurement measure(RuntimeWorker worker) throws Exception {
+        worker.setUpBenchmark();
+        worker.bootstrap();
+        worker.preMeasure(true);
+        worker.measure();
+        worker.preMeasure(false);
+        return Iterables.getOnlyElement(worker.measure());
+    }
+
+    private static RuntimeWorker createWorker(boolean subtractOverhead) throws Exception {
+        Method method = FakeClockBenchmark.class.getMethod("reps", int.class);
+        RuntimeInstrumentConfig config = new RuntimeInstrumentConfig.Builder()
+                .timingInterval(1, TimeUnit.MILLISECONDS)
+                .gcBeforeEachMeasurement(false)
+                .subtractOverhead(subtractOverhead)
+                .build();
+        return new RuntimeWorker.Micro(
+                new BenchmarkClass(FakeClockBenchmark.class, method),
+                method,
+                ticker,
+                config,
+                ImmutableSortedMap.<String, String>of());
+    }
+
+    public static class FakeClockBenchmark {
+
+        @Benchmark
+        public void reps(int reps) {
+            nanos += reps * REP_NANOS;
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package dk.ilios.spanner.worker;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Iterables;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import dk.ilios.spanner.Throughput;
+import dk.ilios.spanner.benchmark.BenchmarkClass;
+import dk.ilios.spanner.config.RuntimeInstrumentConfig;
+import dk.ilios.spanner.model.Measurement;
+
+import static org.junit.Assert.*;
+
+public class ThroughputWorkerTests {
+
+    /**
+     * Fake clock that only advances when the benchmark does work, 1 microsecond pr. operation.
+     */
+    private static long nanos;
+
+    private static final Ticker ticker = new Ticker() {
+        @Override
+        public long read() {
+            return nanos;
+        }
+    };
+
+    private RuntimeInstrumentConfig config;
+
+    @Before
+    public void setUp() {
+        nanos = 0;
+        config = new RuntimeInstrumentConfig.Builder()
+                .timingInterval(1, TimeUnit.MILLISECONDS)
+                .gcBeforeEachMeasurement(false)
+                .build();
+    }
+
+    @Test
+    public void measure_noArgMethod() throws Exception {
+        Measurement measurement = measure("singleOperation");
+        assertEquals("ops/s", measurement.value().unit());
+        assertEquals("throughput", measurement.description());
+        assertEquals(1000000, measurement.value().magnitude(), 0.001);
+        assertTrue(nanos >= 1000000);
+    }
+
+    @Test
+    public void measure_repsMethod() throws Exception {
+        Measurement measurement = measure("manyOperations");
+        assertEquals(1000000, measurement.value().magnitude(), 0.001);
+        // Batches stop growing at 16 ops (16us), so the 1ms slice is overrun by less than that.
+        assertTrue(nanos >= 1000000);
+        assertTrue(nanos < 1016000);
+    }
+
+    @Test
+    public void opsPrSecond() {
+        assertEquals(2000, ThroughputWorker.opsPrSecond(2, 1000000), 0.0);
+        assertEquals(3e9, ThroughputWorker.opsPrSecond(3, 0), 0.0);
+    }
+
+    private Measurement measure(String methodName) throws Exception {
+        Method method = FakeClockBenchmark.class.getMethod(methodName, methodName.equals("manyOperations")
+                ? new Class<?>[] {long.class} : new Class<?>[0]);
+        ThroughputWorker worker = new ThroughputWorker(
+                new BenchmarkClass(FakeClockBenchmark.class, method),
+                method,
+                ticker,
+                config,
+                ImmutableSortedMap.<String, String>of());
+        worker.setUpBenchmark();
+        worker.preMeasure(false);
+        return Iterables.getOnlyElement(worker.measure());
+    }
+
+    public static class FakeClockBenchmark {
+
+        @Throughput
+        public void singleOperation() {
+            nanos += 1000;
+        }
+
+        @Throughput
+        public void manyOperations(long reps) {
+            nanos += reps * 1000;
+        }
+    }
+}